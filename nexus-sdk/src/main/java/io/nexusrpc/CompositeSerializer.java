@@ -0,0 +1,202 @@
+package io.nexusrpc;
+
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Serializer that delegates to one of several serializers by content type, so a single handler can
+ * serve, for example, a binary format to some callers and JSON to others.
+ *
+ * <p>The content type is read from the {@code type} content header, as Nexus content headers are
+ * named without their {@code Content-} prefix, or else from the {@code content-type} header.
+ * Content types are matched without regard to case, first in full and then without parameters.
+ * Content without a content type uses the first registered serializer.
+ *
+ * <p>Codecs from {@link #codecFor} are resolved up front for every delegate. Their {@link
+ * Serializer.Codec#forHeaders} returns a codec that serializes responses in the content type of
+ * the request. Dispatch is a single map lookup of the raw header value. Content types with no
+ * registered serializer fail with {@link IllegalArgumentException}, which a {@link
+ * io.nexusrpc.handler.ServiceHandler} reports to the caller as a bad request.
+ */
+@Experimental
+public class CompositeSerializer implements Serializer {
+  /** Create a builder for a composite serializer. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final String TYPE_HEADER = "type";
+  private static final String CONTENT_TYPE_HEADER = "content-type";
+  // Raw header values come from callers, so only so many are remembered
+  private static final int MAX_CACHED_HEADER_VALUES = 256;
+
+  private final String[] contentTypes;
+  private final Serializer[] serializers;
+  private final Map<String, Integer> indexByContentType;
+  private final Map<String, Integer> indexByHeaderValue = new ConcurrentHashMap<>();
+
+  private CompositeSerializer(String[] contentTypes, Serializer[] serializers) {
+    this.contentTypes = contentTypes;
+    this.serializers = serializers;
+    indexByContentType = new HashMap<>(contentTypes.length * 2);
+    for (int i = 0; i < contentTypes.length; i++) {
+      indexByContentType.put(normalize(contentTypes[i]), i);
+    }
+  }
+
+  /** Content types in the order registered. The first is the default. */
+  public List<String> getContentTypes() {
+    return Collections.unmodifiableList(Arrays.asList(contentTypes));
+  }
+
+  /** Serializer for the given content type, or null if none. */
+  public @Nullable Serializer getSerializer(String contentType) {
+    Integer index = indexByContentType.get(normalize(contentType));
+    return index == null ? null : serializers[index];
+  }
+
+  /** Serialize the value with the default serializer. */
+  @Override
+  public Content serialize(@Nullable Object value) {
+    return withContentType(serializers[0].serialize(value), 0);
+  }
+
+  /**
+   * Deserialize the content with the serializer for its content type.
+   *
+   * @throws IllegalArgumentException If no serializer is registered for the content type.
+   */
+  @Override
+  public @Nullable Object deserialize(Content content, Type type) {
+    return serializers[indexFor(content.getHeaders())].deserialize(content, type);
+  }
+
+  /** Whether any of the delegate serializers requires copies. */
+  @Override
+  public boolean isCopyRequired() {
+    for (Serializer serializer : serializers) {
+      if (serializer.isCopyRequired()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Codec<Object> codecFor(Type type) {
+    ContentTypeCodec[] codecs = new ContentTypeCodec[serializers.length];
+    for (int i = 0; i < serializers.length; i++) {
+      codecs[i] = new ContentTypeCodec(serializers[i].codecFor(type), i, codecs);
+    }
+    return codecs[0];
+  }
+
+  private int indexFor(Map<String, String> headers) {
+    String contentType = headers.get(TYPE_HEADER);
+    if (contentType == null) {
+      contentType = headers.get(CONTENT_TYPE_HEADER);
+      if (contentType == null) {
+        return 0;
+      }
+    }
+    Integer index = indexByHeaderValue.get(contentType);
+    if (index != null) {
+      return index;
+    }
+    String normalized = normalize(contentType);
+    index = indexByContentType.get(normalized);
+    if (index == null) {
+      int paramsStart = normalized.indexOf(';');
+      if (paramsStart >= 0) {
+        index = indexByContentType.get(normalized.substring(0, paramsStart).trim());
+      }
+      if (index == null) {
+        throw new IllegalArgumentException("Unsupported content type " + contentType);
+      }
+    }
+    if (indexByHeaderValue.size() < MAX_CACHED_HEADER_VALUES) {
+      indexByHeaderValue.put(contentType, index);
+    }
+    return index;
+  }
+
+  private Content withContentType(Content content, int index) {
+    if (content.getHeaders().containsKey(TYPE_HEADER)) {
+      return content;
+    }
+    return Content.newBuilder(content).putHeader(TYPE_HEADER, contentTypes[index]).build();
+  }
+
+  private static String normalize(String contentType) {
+    return contentType.trim().toLowerCase(Locale.ROOT);
+  }
+
+  private class ContentTypeCodec implements Codec<Object> {
+    private final Codec<Object> codec;
+    private final int index;
+    // Codecs for the same type for every content type, shared by all of them
+    private final ContentTypeCodec[] siblings;
+
+    private ContentTypeCodec(Codec<Object> codec, int index, ContentTypeCodec[] siblings) {
+      this.codec = codec;
+      this.index = index;
+      this.siblings = siblings;
+    }
+
+    @Override
+    public Content serialize(@Nullable Object value) {
+      return withContentType(codec.serialize(value), index);
+    }
+
+    @Override
+    public @Nullable Object deserialize(Content content) {
+      return siblings[indexFor(content.getHeaders())].codec.deserialize(content);
+    }
+
+    @Override
+    public Codec<Object> forHeaders(Map<String, String> headers) {
+      return siblings[indexFor(headers)];
+    }
+  }
+
+  /** Builder for a composite serializer. */
+  public static class Builder {
+    private final Map<String, Serializer> serializers;
+
+    private Builder() {
+      serializers = new LinkedHashMap<>();
+    }
+
+    /**
+     * Add a serializer for the given content type. The first added is the default used for
+     * content without a content type. At least one is required.
+     */
+    public Builder addSerializer(String contentType, Serializer serializer) {
+      serializers.put(contentType, serializer);
+      return this;
+    }
+
+    /** Get serializers to mutate, by content type in registration order. */
+    public Map<String, Serializer> getSerializers() {
+      return serializers;
+    }
+
+    /** Build the serializer. */
+    public CompositeSerializer build() {
+      if (serializers.isEmpty()) {
+        throw new IllegalStateException("At least one serializer required");
+      }
+      Set<String> normalized = new HashSet<>();
+      for (String contentType : serializers.keySet()) {
+        if (!normalized.add(normalize(contentType))) {
+          throw new IllegalStateException("Multiple serializers for content type " + contentType);
+        }
+      }
+      return new CompositeSerializer(
+          serializers.keySet().toArray(new String[0]),
+          serializers.values().toArray(new Serializer[0]));
+    }
+  }
+}
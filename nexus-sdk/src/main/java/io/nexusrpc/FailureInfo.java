@@ -1,5 +1,7 @@
 package io.nexusrpc;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -20,17 +22,21 @@ public class FailureInfo {
   }
 
   private final String message;
-  private final @Nullable String stackTrace;
+  // Rendered from the throwable on first use if not set directly
+  private @Nullable String stackTrace;
+  private final @Nullable Throwable stackTraceThrowable;
   private final Map<String, String> metadata;
   private final @Nullable String detailsJson;
 
   private FailureInfo(
       String message,
       @Nullable String stackTrace,
+      @Nullable Throwable stackTraceThrowable,
       Map<String, String> metadata,
       @Nullable String detailsJson) {
     this.message = message;
     this.stackTrace = stackTrace;
+    this.stackTraceThrowable = stackTraceThrowable;
     this.metadata = metadata;
     this.detailsJson = detailsJson;
   }
@@ -40,8 +46,19 @@ public class FailureInfo {
     return message;
   }
 
-  /** Failure stack trace. */
+  /**
+   * Failure stack trace. If built with {@link Builder#setStackTraceFrom}, this is rendered on first
+   * call.
+   */
   public @Nullable String getStackTrace() {
+    String stackTrace = this.stackTrace;
+    if (stackTrace == null && stackTraceThrowable != null) {
+      // Racing renders produce equal strings, so this needs no synchronization
+      StringWriter writer = new StringWriter();
+      stackTraceThrowable.printStackTrace(new PrintWriter(writer));
+      stackTrace = writer.toString();
+      this.stackTrace = stackTrace;
+    }
     return stackTrace;
   }
 
@@ -61,14 +78,14 @@ public class FailureInfo {
     if (o == null || getClass() != o.getClass()) return false;
     FailureInfo that = (FailureInfo) o;
     return Objects.equals(message, that.message)
-        && Objects.equals(stackTrace, that.stackTrace)
+        && Objects.equals(getStackTrace(), that.getStackTrace())
         && Objects.equals(metadata, that.metadata)
         && Objects.equals(detailsJson, that.detailsJson);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(message, stackTrace, metadata, detailsJson);
+    return Objects.hash(message, getStackTrace(), metadata, detailsJson);
   }
 
   @Override
@@ -78,7 +95,7 @@ public class FailureInfo {
         + message
         + '\''
         + ", stackTrace='"
-        + stackTrace
+        + getStackTrace()
         + '\''
         + ", metadata="
         + metadata
@@ -91,6 +108,7 @@ public class FailureInfo {
   public static class Builder {
     private @Nullable String message;
     private @Nullable String stackTrace;
+    private @Nullable Throwable stackTraceThrowable;
     private final Map<String, String> metadata;
     private @Nullable String detailsJson;
 
@@ -101,6 +119,7 @@ public class FailureInfo {
     private Builder(FailureInfo failure) {
       message = failure.message;
       stackTrace = failure.stackTrace;
+      stackTraceThrowable = failure.stackTraceThrowable;
       metadata = new HashMap<>(failure.metadata);
       detailsJson = failure.detailsJson;
     }
@@ -131,6 +150,17 @@ public class FailureInfo {
     /** Set stack trace. */
     public Builder setStackTrace(@Nullable String stackTrace) {
       this.stackTrace = stackTrace;
+      this.stackTraceThrowable = null;
+      return this;
+    }
+
+    /**
+     * Set stack trace to that of the given throwable. It is only rendered to a string when {@link
+     * FailureInfo#getStackTrace} is first called, such as when serializing the failure.
+     */
+    public Builder setStackTraceFrom(@Nullable Throwable throwable) {
+      this.stackTrace = null;
+      this.stackTraceThrowable = throwable;
       return this;
     }
 
@@ -138,7 +168,11 @@ public class FailureInfo {
     public FailureInfo build() {
       Objects.requireNonNull(message, "Message required");
       return new FailureInfo(
-          message, stackTrace, Collections.unmodifiableMap(new HashMap<>(metadata)), detailsJson);
+          message,
+          stackTrace,
+          stackTraceThrowable,
+          Collections.unmodifiableMap(new HashMap<>(metadata)),
+          detailsJson);
     }
   }
 }
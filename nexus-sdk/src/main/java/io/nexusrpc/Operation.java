@@ -20,4 +20,22 @@ import java.lang.annotation.*;
 public @interface Operation {
   /** Override the name of the operation. If not set, defaults to the unqualified method name. */
   String name() default "";
+
+  /**
+   * Cache synchronous results of this operation for this many milliseconds. If not set or 0,
+   * results are not cached. See {@link OperationDefinition#getResultCacheTtl} for details.
+   */
+  long resultCacheTtlMillis() default 0;
+
+  /**
+   * Names of request headers whose values are part of the result cache key in addition to the
+   * input. Only used if {@link #resultCacheTtlMillis} is set.
+   */
+  String[] resultCacheKeyHeaders() default {};
+
+  /**
+   * Whether this operation synchronously returns a sequence of results. If set, the return type
+   * must be an {@link java.util.Iterator}. See {@link OperationDefinition#isStreaming} for details.
+   */
+  boolean streaming() default false;
 }
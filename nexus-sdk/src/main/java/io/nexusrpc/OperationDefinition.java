@@ -2,8 +2,12 @@ package io.nexusrpc;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.Objects;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.time.Duration;
+import java.util.*;
 import org.jspecify.annotations.Nullable;
 
 /** Definition of an operation on a service. */
@@ -22,14 +26,41 @@ public class OperationDefinition {
       throw new IllegalArgumentException("Cannot have default implementation");
     } else if (Modifier.isStatic(method.getModifiers())) {
       throw new IllegalArgumentException("Cannot be static");
+    } else if (operation.resultCacheTtlMillis() < 0) {
+      throw new IllegalArgumentException("Result cache TTL cannot be negative");
+    } else if (operation.streaming() && method.getReturnType() != Iterator.class) {
+      throw new IllegalArgumentException("Streaming return type must be an Iterator");
+    } else if (operation.streaming()
+        && !(method.getGenericReturnType() instanceof ParameterizedType)) {
+      throw new IllegalArgumentException(
+          "Streaming return type must be a parameterized Iterator, not a raw Iterator");
+    } else if (operation.streaming()
+        && !isConcreteElementType(method.getGenericReturnType())) {
+      throw new IllegalArgumentException(
+          "Streaming return type must be an Iterator of a concrete element type, not "
+              + method.getGenericReturnType().getTypeName());
+    } else if (operation.streaming() && operation.resultCacheTtlMillis() > 0) {
+      throw new IllegalArgumentException("Streaming operations cannot have a result cache TTL");
     }
-    return newBuilder()
-        .setName(operation.name().isEmpty() ? method.getName() : operation.name())
-        .setMethodName(method.getName())
-        .setInputType(
-            method.getParameterCount() == 0 ? Void.TYPE : method.getGenericParameterTypes()[0])
-        .setOutputType(method.getGenericReturnType())
-        .build();
+    Builder builder =
+        newBuilder()
+            .setName(operation.name().isEmpty() ? method.getName() : operation.name())
+            .setMethodName(method.getName())
+            .setInputType(
+                method.getParameterCount() == 0 ? Void.TYPE : method.getGenericParameterTypes()[0])
+            .setOutputType(method.getGenericReturnType())
+            .setStreaming(operation.streaming());
+    if (operation.resultCacheTtlMillis() > 0) {
+      builder.setResultCacheTtl(Duration.ofMillis(operation.resultCacheTtlMillis()));
+      builder.getResultCacheKeyHeaders().addAll(Arrays.asList(operation.resultCacheKeyHeaders()));
+    }
+    return builder.build();
+  }
+
+  // Element codecs are looked up by the element type, which cannot be a wildcard or type variable
+  private static boolean isConcreteElementType(Type iteratorType) {
+    Type elementType = ((ParameterizedType) iteratorType).getActualTypeArguments()[0];
+    return !(elementType instanceof WildcardType) && !(elementType instanceof TypeVariable);
   }
 
   /** Create a builder for an operation definition. */
@@ -46,13 +77,25 @@ public class OperationDefinition {
   private final @Nullable String methodName;
   private final Type inputType;
   private final Type outputType;
+  private final @Nullable Duration resultCacheTtl;
+  private final List<String> resultCacheKeyHeaders;
+  private final @Nullable Type streamElementType;
 
   private OperationDefinition(
-      String name, @Nullable String methodName, Type inputType, Type outputType) {
+      String name,
+      @Nullable String methodName,
+      Type inputType,
+      Type outputType,
+      @Nullable Duration resultCacheTtl,
+      List<String> resultCacheKeyHeaders,
+      @Nullable Type streamElementType) {
     this.name = name;
     this.methodName = methodName;
     this.inputType = inputType;
     this.outputType = outputType;
+    this.resultCacheTtl = resultCacheTtl;
+    this.resultCacheKeyHeaders = resultCacheKeyHeaders;
+    this.streamElementType = streamElementType;
   }
 
   /** Operation name. */
@@ -73,11 +116,48 @@ public class OperationDefinition {
     return inputType;
   }
 
-  /** Output type. Will be {@link Void#TYPE} if void return. */
+  /**
+   * Output type. Will be {@link Void#TYPE} if void return. For streaming operations this is an
+   * {@link Iterator} of {@link #getStreamElementType}.
+   */
   public Type getOutputType() {
     return outputType;
   }
 
+  /**
+   * Whether this operation synchronously returns a sequence of results as an {@link Iterator}.
+   *
+   * <p>Handlers that support streaming serialize each element as the caller reads the result
+   * stream, so the sequence is never held in memory. Streaming operations cannot have a result
+   * cache TTL.
+   */
+  public boolean isStreaming() {
+    return streamElementType != null;
+  }
+
+  /** Type of each result of a streaming operation, or null if the operation is not streaming. */
+  public @Nullable Type getStreamElementType() {
+    return streamElementType;
+  }
+
+  /**
+   * How long synchronous results of this operation may be cached, or null if they are not cached.
+   *
+   * <p>This should only be set for operations whose result depends on nothing but the input and
+   * the headers in {@link #getResultCacheKeyHeaders}. Handlers that support caching return a cached
+   * result without invoking the operation handler. Middlewares still run for every start, so
+   * authorization and rate limits apply to cached calls too. Handlers that support request
+   * coalescing may also share the result of one in-flight start with identical concurrent starts.
+   */
+  public @Nullable Duration getResultCacheTtl() {
+    return resultCacheTtl;
+  }
+
+  /** Names of request headers whose values are part of the result cache key. */
+  public List<String> getResultCacheKeyHeaders() {
+    return resultCacheKeyHeaders;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -86,12 +166,22 @@ public class OperationDefinition {
     return Objects.equals(name, that.name)
         && Objects.equals(methodName, that.methodName)
         && Objects.equals(inputType, that.inputType)
-        && Objects.equals(outputType, that.outputType);
+        && Objects.equals(outputType, that.outputType)
+        && Objects.equals(resultCacheTtl, that.resultCacheTtl)
+        && Objects.equals(resultCacheKeyHeaders, that.resultCacheKeyHeaders)
+        && Objects.equals(streamElementType, that.streamElementType);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(name, methodName, inputType, outputType);
+    return Objects.hash(
+        name,
+        methodName,
+        inputType,
+        outputType,
+        resultCacheTtl,
+        resultCacheKeyHeaders,
+        streamElementType);
   }
 
   @Override
@@ -107,6 +197,12 @@ public class OperationDefinition {
         + inputType
         + ", outputType="
         + outputType
+        + ", resultCacheTtl="
+        + resultCacheTtl
+        + ", resultCacheKeyHeaders="
+        + resultCacheKeyHeaders
+        + ", streaming="
+        + isStreaming()
         + '}';
   }
 
@@ -116,14 +212,22 @@ public class OperationDefinition {
     @Nullable private String methodName;
     @Nullable private Type inputType;
     @Nullable private Type outputType;
+    @Nullable private Duration resultCacheTtl;
+    private final List<String> resultCacheKeyHeaders;
+    private boolean streaming;
 
-    private Builder() {}
+    private Builder() {
+      resultCacheKeyHeaders = new ArrayList<>();
+    }
 
     private Builder(OperationDefinition definition) {
       name = definition.name;
       methodName = definition.methodName;
       inputType = definition.inputType;
       outputType = definition.outputType;
+      resultCacheTtl = definition.resultCacheTtl;
+      resultCacheKeyHeaders = new ArrayList<>(definition.resultCacheKeyHeaders);
+      streaming = definition.isStreaming();
     }
 
     /** Set operation name. Required. */
@@ -150,12 +254,61 @@ public class OperationDefinition {
       return this;
     }
 
+    /** Set how long synchronous results may be cached. Optional, default is no caching. */
+    public Builder setResultCacheTtl(@Nullable Duration resultCacheTtl) {
+      this.resultCacheTtl = resultCacheTtl;
+      return this;
+    }
+
+    /** Get result cache key header names to mutate. */
+    public List<String> getResultCacheKeyHeaders() {
+      return resultCacheKeyHeaders;
+    }
+
+    /** Add a request header whose value is part of the result cache key. */
+    public Builder addResultCacheKeyHeader(String header) {
+      resultCacheKeyHeaders.add(header);
+      return this;
+    }
+
+    /**
+     * Set whether the operation synchronously returns a sequence of results. If set, the output
+     * type must be a parameterized {@link Iterator}. Default is false.
+     */
+    public Builder setStreaming(boolean streaming) {
+      this.streaming = streaming;
+      return this;
+    }
+
     /** Build the operation definition. */
     public OperationDefinition build() {
       Objects.requireNonNull(name, "Name required");
       Objects.requireNonNull(inputType, "Input type required");
       Objects.requireNonNull(outputType, "Output type required");
-      return new OperationDefinition(name, methodName, inputType, outputType);
+      if (resultCacheTtl != null && (resultCacheTtl.isNegative() || resultCacheTtl.isZero())) {
+        throw new IllegalStateException("Result cache TTL must be positive");
+      }
+      Type streamElementType = null;
+      if (streaming) {
+        if (!(outputType instanceof ParameterizedType)
+            || ((ParameterizedType) outputType).getRawType() != Iterator.class) {
+          throw new IllegalStateException("Streaming output type must be a parameterized Iterator");
+        } else if (!isConcreteElementType(outputType)) {
+          throw new IllegalStateException(
+              "Streaming output type must be an Iterator of a concrete element type");
+        } else if (resultCacheTtl != null) {
+          throw new IllegalStateException("Streaming operations cannot have a result cache TTL");
+        }
+        streamElementType = ((ParameterizedType) outputType).getActualTypeArguments()[0];
+      }
+      return new OperationDefinition(
+          name,
+          methodName,
+          inputType,
+          outputType,
+          resultCacheTtl,
+          Collections.unmodifiableList(new ArrayList<>(resultCacheKeyHeaders)),
+          streamElementType);
     }
   }
 }
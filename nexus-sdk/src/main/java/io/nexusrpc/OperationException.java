@@ -5,15 +5,30 @@ import org.jspecify.annotations.Nullable;
 /** An operation has failed or was canceled. */
 public class OperationException extends Exception {
   private final OperationState state;
+  private final @Nullable FailureInfo originalFailure;
 
   private OperationException(OperationState state, String message, @Nullable Throwable cause) {
     super(message, cause);
     this.state = state;
+    this.originalFailure = null;
   }
 
   private OperationException(OperationState state, @Nullable Throwable cause) {
     super(cause);
     this.state = state;
+    this.originalFailure = null;
+  }
+
+  private OperationException(OperationState state, String message, boolean writableStackTrace) {
+    super(message, null, writableStackTrace, writableStackTrace);
+    this.state = state;
+    this.originalFailure = null;
+  }
+
+  private OperationException(OperationState state, FailureInfo originalFailure) {
+    super(originalFailure.getMessage());
+    this.state = state;
+    this.originalFailure = originalFailure;
   }
 
   /**
@@ -47,6 +62,17 @@ public class OperationException extends Exception {
     return new OperationException(OperationState.FAILED, message, cause);
   }
 
+  /**
+   * Create a failed operation exception with a message and no stack trace. This is much cheaper to
+   * create for expected failures, and the result can be created once and thrown repeatedly.
+   *
+   * @param message The failure message.
+   * @return The operation exception.
+   */
+  public static OperationException failedWithoutStackTrace(String message) {
+    return new OperationException(OperationState.FAILED, message, false);
+  }
+
   /**
    * Create a failed operation exception with a cause.
    *
@@ -91,7 +117,40 @@ public class OperationException extends Exception {
     return new OperationException(OperationState.CANCELED, message, cause);
   }
 
+  /**
+   * Create a canceled operation exception with a message and no stack trace. This is much cheaper
+   * to create for expected cancellations, and the result can be created once and thrown
+   * repeatedly.
+   *
+   * @param message The cancellation message.
+   * @return The operation exception.
+   */
+  public static OperationException canceledWithoutStackTrace(String message) {
+    return new OperationException(OperationState.CANCELED, message, false);
+  }
+
+  /**
+   * Create an operation exception for a failure received from elsewhere, such as from an upstream
+   * handler, keeping the failure as its original failure so it can be passed on as is.
+   *
+   * @param state The state of the operation, {@link OperationState#FAILED} or {@link
+   *     OperationState#CANCELED}.
+   * @param originalFailure The failure.
+   * @return The operation exception.
+   */
+  public static OperationException fromFailure(OperationState state, FailureInfo originalFailure) {
+    if (state != OperationState.FAILED && state != OperationState.CANCELED) {
+      throw new IllegalArgumentException("State must be failed or canceled, got " + state);
+    }
+    return new OperationException(state, originalFailure);
+  }
+
   public OperationState getState() {
     return state;
   }
+
+  /** Original FailureInfo if available */
+  public @Nullable FailureInfo getOriginalFailure() {
+    return originalFailure;
+  }
 }
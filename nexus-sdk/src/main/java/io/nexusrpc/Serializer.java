@@ -14,6 +14,55 @@ public interface Serializer {
   /** Deserialize the content as a value of the given type. */
   @Nullable Object deserialize(Content content, Type type);
 
+  /**
+   * Resolve a codec bound to the given type. Handlers call this once per operation input and
+   * output type up front and then use the codec for every call, so serializers that resolve type
+   * information per call should override this to do that resolution once. The default delegates
+   * to {@link #serialize} and {@link #deserialize} with the given type.
+   */
+  default Codec<Object> codecFor(Type type) {
+    return new Codec<Object>() {
+      @Override
+      public Content serialize(@Nullable Object value) {
+        return Serializer.this.serialize(value);
+      }
+
+      @Override
+      public @Nullable Object deserialize(Content content) {
+        return Serializer.this.deserialize(content, type);
+      }
+    };
+  }
+
+  /**
+   * Whether values passed between a caller and a handler in the same process must be copied, by
+   * serializing and deserializing them, instead of being passed as is. Serializers of mutable types
+   * or whose round trip changes values should return true. The default is false.
+   */
+  default boolean isCopyRequired() {
+    return false;
+  }
+
+  /** Serializer for values of a single type, see {@link Serializer#codecFor}. */
+  interface Codec<T> {
+    /** Serialize the value as content. */
+    Content serialize(@Nullable T value);
+
+    /** Deserialize the content as a value of this codec's type. */
+    @Nullable T deserialize(Content content);
+
+    /**
+     * Codec to serialize the response to a request with the given content headers, such as one
+     * for the request's content type. The default returns this codec.
+     *
+     * @throws IllegalArgumentException If the headers name a content type the codec does not
+     *     support.
+     */
+    default Codec<T> forHeaders(Map<String, String> headers) {
+      return this;
+    }
+  }
+
   /** Data + headers used by serializers. */
   class Content {
     /** Create a builder for content. */
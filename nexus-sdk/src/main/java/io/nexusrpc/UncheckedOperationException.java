@@ -0,0 +1,27 @@
+package io.nexusrpc;
+
+import java.util.Objects;
+
+/**
+ * Unchecked form of an {@link OperationException}, thrown where the checked exception cannot be
+ * declared, such as from stubs implementing a {@link Service} interface whose methods cannot have
+ * a throws clause.
+ */
+@Experimental
+public class UncheckedOperationException extends RuntimeException {
+  /** Create an unchecked exception for the given operation exception. */
+  public UncheckedOperationException(OperationException cause) {
+    super(Objects.requireNonNull(cause).getMessage(), cause);
+  }
+
+  /** The operation exception. */
+  @Override
+  public synchronized OperationException getCause() {
+    return (OperationException) super.getCause();
+  }
+
+  /** State of the operation, failed or canceled. */
+  public OperationState getState() {
+    return getCause().getState();
+  }
+}
@@ -0,0 +1,86 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/** A single operation start in a {@link Handler#startOperations} batch. */
+@Experimental
+public class BatchStartRequest {
+  /** Create a builder. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Create a builder from an existing request. */
+  public static Builder newBuilder(BatchStartRequest request) {
+    return new Builder(request);
+  }
+
+  private final OperationContext context;
+  private final OperationStartDetails details;
+  private final HandlerInputContent input;
+
+  private BatchStartRequest(
+      OperationContext context, OperationStartDetails details, HandlerInputContent input) {
+    this.context = context;
+    this.details = details;
+    this.input = input;
+  }
+
+  /** Context of the operation start. */
+  public OperationContext getContext() {
+    return context;
+  }
+
+  /** Details of the operation start. */
+  public OperationStartDetails getDetails() {
+    return details;
+  }
+
+  /** Input of the operation start. */
+  public HandlerInputContent getInput() {
+    return input;
+  }
+
+  /** Builder for a batch start request. */
+  public static class Builder {
+    private @Nullable OperationContext context;
+    private @Nullable OperationStartDetails details;
+    private @Nullable HandlerInputContent input;
+
+    private Builder() {}
+
+    private Builder(BatchStartRequest request) {
+      context = request.context;
+      details = request.details;
+      input = request.input;
+    }
+
+    /** Set context. Required. */
+    public Builder setContext(OperationContext context) {
+      this.context = context;
+      return this;
+    }
+
+    /** Set details. Required. */
+    public Builder setDetails(OperationStartDetails details) {
+      this.details = details;
+      return this;
+    }
+
+    /** Set input. Required. */
+    public Builder setInput(HandlerInputContent input) {
+      this.input = input;
+      return this;
+    }
+
+    /** Build the request. */
+    public BatchStartRequest build() {
+      Objects.requireNonNull(context, "Context required");
+      Objects.requireNonNull(details, "Details required");
+      Objects.requireNonNull(input, "Input required");
+      return new BatchStartRequest(context, details, input);
+    }
+  }
+}
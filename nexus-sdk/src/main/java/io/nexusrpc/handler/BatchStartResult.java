@@ -0,0 +1,110 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationException;
+import java.util.*;
+import java.util.function.Function;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Outcome of a single operation start in a {@link Handler#startOperations} batch. This is either
+ * the start result (created via {@link #success}) or the exception the start failed with (created
+ * via {@link #failure}), which is an {@link OperationException}, a {@link HandlerException}, or
+ * another runtime exception.
+ */
+@Experimental
+public class BatchStartResult {
+  /** Create a successful batch start result. */
+  public static BatchStartResult success(OperationStartResult<HandlerResultContent> result) {
+    return new BatchStartResult(Objects.requireNonNull(result), null);
+  }
+
+  /** Create a failed batch start result. */
+  public static BatchStartResult failure(OperationException exception) {
+    return new BatchStartResult(null, Objects.requireNonNull(exception));
+  }
+
+  /** Create a failed batch start result. */
+  public static BatchStartResult failure(RuntimeException exception) {
+    return new BatchStartResult(null, Objects.requireNonNull(exception));
+  }
+
+  /** Start the request on the handler, capturing any failure instead of throwing it. */
+  static BatchStartResult start(Handler handler, BatchStartRequest request) {
+    try {
+      return success(
+          handler.startOperation(request.getContext(), request.getDetails(), request.getInput()));
+    } catch (OperationException e) {
+      return failure(e);
+    } catch (RuntimeException e) {
+      return failure(e);
+    }
+  }
+
+  /**
+   * Start each request on the handler the router picks for it, passing the requests picked for the
+   * same handler to it as one batch. Requests the router throws for fail on their own.
+   */
+  static List<BatchStartResult> startRouted(
+      List<BatchStartRequest> requests, Function<BatchStartRequest, ? extends Handler> router) {
+    BatchStartResult[] results = new BatchStartResult[requests.size()];
+    Map<Handler, List<Integer>> indexesByHandler = new IdentityHashMap<>();
+    for (int i = 0; i < results.length; i++) {
+      try {
+        Handler handler = router.apply(requests.get(i));
+        indexesByHandler.computeIfAbsent(handler, k -> new ArrayList<>()).add(i);
+      } catch (RuntimeException e) {
+        results[i] = failure(e);
+      }
+    }
+    for (Map.Entry<Handler, List<Integer>> entry : indexesByHandler.entrySet()) {
+      List<Integer> indexes = entry.getValue();
+      List<BatchStartRequest> batch = new ArrayList<>(indexes.size());
+      for (int index : indexes) {
+        batch.add(requests.get(index));
+      }
+      List<BatchStartResult> batchResults = entry.getKey().startOperations(batch);
+      for (int i = 0; i < indexes.size(); i++) {
+        results[indexes.get(i)] = batchResults.get(i);
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  private final @Nullable OperationStartResult<HandlerResultContent> result;
+  private final @Nullable Exception exception;
+
+  private BatchStartResult(
+      @Nullable OperationStartResult<HandlerResultContent> result, @Nullable Exception exception) {
+    this.result = result;
+    this.exception = exception;
+  }
+
+  /** Whether the start succeeded. */
+  public boolean isSuccess() {
+    return exception == null;
+  }
+
+  /** Start result if the start succeeded. */
+  public @Nullable OperationStartResult<HandlerResultContent> getResult() {
+    return result;
+  }
+
+  /**
+   * Exception if the start failed. This is an {@link OperationException} or a runtime exception,
+   * usually a {@link HandlerException}.
+   */
+  public @Nullable Exception getException() {
+    return exception;
+  }
+
+  /** Start result if the start succeeded, otherwise throw the exception it failed with. */
+  public OperationStartResult<HandlerResultContent> getResultOrThrow() throws OperationException {
+    if (exception instanceof OperationException) {
+      throw (OperationException) exception;
+    } else if (exception != null) {
+      throw (RuntimeException) exception;
+    }
+    return Objects.requireNonNull(result);
+  }
+}
@@ -0,0 +1,227 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Bound on the number of operation handler calls running at once so that a slow operation cannot
+ * take all of the caller's threads. Bulkheads are assigned to services and operations on {@link
+ * ServiceHandler.Builder}.
+ *
+ * <p>Calls run on the calling thread, so the input is read on the thread the transport handed it
+ * to. When the bulkhead is full, calls wait in a bounded queue for a running call to complete, up
+ * to the context deadline and until method cancellation. When the queue is full too, calls fail
+ * fast with a {@link HandlerException} of type {@link
+ * HandlerException.ErrorType#RESOURCE_EXHAUSTED}. Only waiting is bounded by the deadline, a
+ * running call is expected to watch the deadline and method cancellation itself.
+ */
+@Experimental
+public class Bulkhead {
+  /** Create a builder for a bulkhead. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private final String name;
+  private final int maxConcurrency;
+  private final int maxQueueSize;
+  private final Semaphore permits;
+  private final AtomicInteger queued = new AtomicInteger();
+  // Only used by calls that wait, running calls take a permit without locking
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private volatile boolean shutdown;
+
+  private Bulkhead(String name, int maxConcurrency, int maxQueueSize) {
+    this.name = name;
+    this.maxConcurrency = maxConcurrency;
+    this.maxQueueSize = maxQueueSize;
+    permits = new Semaphore(maxConcurrency);
+  }
+
+  /** Name of the bulkhead. */
+  public String getName() {
+    return name;
+  }
+
+  /** Maximum number of calls running at once. */
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /** Maximum number of calls waiting to run before new calls are rejected. */
+  public int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+
+  /** Number of calls currently running. */
+  public int getActiveCount() {
+    return maxConcurrency - permits.availablePermits();
+  }
+
+  /** Number of calls currently waiting to run. */
+  public int getQueuedCount() {
+    return queued.get();
+  }
+
+  /**
+   * Stop accepting calls. Calls already running complete. Calls after this, and calls still
+   * waiting, fail as if the bulkhead were saturated.
+   */
+  public void shutdown() {
+    shutdown = true;
+    signalAll();
+  }
+
+  <T> @Nullable T execute(OperationContext context, Callable<T> call) throws OperationException {
+    acquire(context);
+    try {
+      return call.call();
+    } catch (OperationException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    } finally {
+      permits.release();
+      if (queued.get() > 0) {
+        signalAll();
+      }
+    }
+  }
+
+  private void acquire(OperationContext context) {
+    if (shutdown) {
+      throw newSaturatedException();
+    }
+    if (permits.tryAcquire()) {
+      return;
+    }
+    if (queued.incrementAndGet() > maxQueueSize) {
+      queued.decrementAndGet();
+      throw newSaturatedException();
+    }
+    OperationMethodCancellationListener listener = this::signalAll;
+    context.addMethodCancellationListener(listener);
+    lock.lock();
+    try {
+      Instant deadline = context.getDeadline();
+      // Counted as queued before trying, so a call completing after a failed try signals
+      while (!permits.tryAcquire()) {
+        if (shutdown) {
+          throw newSaturatedException();
+        } else if (context.isMethodCancelled()) {
+          throw new HandlerException(
+              HandlerException.ErrorType.REQUEST_TIMEOUT,
+              "Operation handler method waiting on bulkhead "
+                  + name
+                  + " cancelled: "
+                  + context.getMethodCancellationReason(),
+              null,
+              HandlerException.RetryBehavior.UNSPECIFIED);
+        }
+        if (deadline == null) {
+          changed.await();
+          continue;
+        }
+        long remainingNanos = Duration.between(Instant.now(), deadline).toNanos();
+        if (remainingNanos <= 0) {
+          throw new HandlerException(
+              HandlerException.ErrorType.REQUEST_TIMEOUT,
+              "Operation handler method did not start on bulkhead " + name + " before deadline",
+              null,
+              HandlerException.RetryBehavior.UNSPECIFIED);
+        }
+        changed.awaitNanos(remainingNanos);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new HandlerException(
+          HandlerException.ErrorType.INTERNAL,
+          "Interrupted waiting on bulkhead " + name,
+          e,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    } finally {
+      lock.unlock();
+      queued.decrementAndGet();
+      context.removeMethodCancellationListener(listener);
+    }
+  }
+
+  private void signalAll() {
+    lock.lock();
+    try {
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private HandlerException newSaturatedException() {
+    return new HandlerException(
+        HandlerException.ErrorType.RESOURCE_EXHAUSTED,
+        "Bulkhead " + name + " is saturated",
+        null,
+        HandlerException.RetryBehavior.UNSPECIFIED,
+        false);
+  }
+
+  @Override
+  public String toString() {
+    return "Bulkhead{"
+        + "name='"
+        + name
+        + '\''
+        + ", maxConcurrency="
+        + maxConcurrency
+        + ", maxQueueSize="
+        + maxQueueSize
+        + '}';
+  }
+
+  /** Builder for a bulkhead. */
+  public static class Builder {
+    private @Nullable String name;
+    private int maxConcurrency;
+    private int maxQueueSize;
+
+    private Builder() {}
+
+    /** Set name, used in errors. Required. */
+    public Builder setName(String name) {
+      this.name = name;
+      return this;
+    }
+
+    /** Set maximum number of calls running at once. Required. */
+    public Builder setMaxConcurrency(int maxConcurrency) {
+      this.maxConcurrency = maxConcurrency;
+      return this;
+    }
+
+    /** Set maximum number of calls waiting to run. Default is 0 to fail when all busy. */
+    public Builder setMaxQueueSize(int maxQueueSize) {
+      this.maxQueueSize = maxQueueSize;
+      return this;
+    }
+
+    /** Build the bulkhead. */
+    public Bulkhead build() {
+      Objects.requireNonNull(name, "Name required");
+      if (maxConcurrency < 1) {
+        throw new IllegalArgumentException("Max concurrency must be at least 1");
+      } else if (maxQueueSize < 0) {
+        throw new IllegalArgumentException("Max queue size cannot be negative");
+      }
+      return new Bulkhead(name, maxConcurrency, maxQueueSize);
+    }
+  }
+}
@@ -0,0 +1,337 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Handler that decompresses operation input and compresses operation results around another
+ * handler, typically placed between a transport and a {@link ServiceHandler}.
+ *
+ * <p>Input is decoded when its content headers have an {@code encoding} (or {@code
+ * content-encoding}) header naming a registered {@link ContentEncoding}. Input with an unknown
+ * encoding fails with {@link HandlerException.ErrorType#BAD_REQUEST}. Sync results are encoded
+ * with the first encoding in the request's {@code Accept-Encoding} header that is registered, and
+ * get an {@code encoding} content header. Byte results smaller than the minimum size are left as
+ * is.
+ * Decoding and stream encoding are lazy, so nothing is buffered beyond what is read. Decoded input
+ * larger than the maximum decoded size fails with {@link HandlerException.ErrorType#BAD_REQUEST}
+ * when read, so a small compressed body cannot expand without bound.
+ */
+@Experimental
+public class CompressingHandler implements Handler {
+  /** Create a builder for a compressing handler. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final String ENCODING_HEADER = "encoding";
+  private static final String CONTENT_ENCODING_HEADER = "content-encoding";
+  private static final String LENGTH_HEADER = "length";
+  private static final String CONTENT_LENGTH_HEADER = "content-length";
+  private static final String ACCEPT_ENCODING_HEADER = "accept-encoding";
+
+  private final Handler handler;
+  private final Map<String, ContentEncoding> encodings;
+  private final int minimumSize;
+  private final long maxDecodedSize;
+
+  private CompressingHandler(
+      Handler handler,
+      Map<String, ContentEncoding> encodings,
+      int minimumSize,
+      long maxDecodedSize) {
+    this.handler = handler;
+    this.encodings = encodings;
+    this.minimumSize = minimumSize;
+    this.maxDecodedSize = maxDecodedSize;
+  }
+
+  /** Handler being delegated to. */
+  public Handler getHandler() {
+    return handler;
+  }
+
+  /** Encodings, by lowercase name. */
+  public Map<String, ContentEncoding> getEncodings() {
+    return encodings;
+  }
+
+  /** Minimum size in bytes of a byte result to be encoded. */
+  public int getMinimumSize() {
+    return minimumSize;
+  }
+
+  /** Maximum size in bytes of decoded input. */
+  public long getMaxDecodedSize() {
+    return maxDecodedSize;
+  }
+
+  @Override
+  public OperationStartResult<HandlerResultContent> startOperation(
+      OperationContext context, OperationStartDetails details, HandlerInputContent input)
+      throws OperationException {
+    return encodeResult(context, handler.startOperation(context, details, decodeInput(input)));
+  }
+
+  /**
+   * Start a batch of operations on the delegate handler as a single batch, so it can start them
+   * concurrently. Requests whose input cannot be decoded fail on their own.
+   */
+  @Override
+  public List<BatchStartResult> startOperations(List<BatchStartRequest> requests) {
+    BatchStartResult[] results = new BatchStartResult[requests.size()];
+    List<BatchStartRequest> decoded = new ArrayList<>(requests.size());
+    int[] decodedIndexes = new int[requests.size()];
+    for (int i = 0; i < results.length; i++) {
+      BatchStartRequest request = requests.get(i);
+      try {
+        HandlerInputContent input = decodeInput(request.getInput());
+        decodedIndexes[decoded.size()] = i;
+        decoded.add(BatchStartRequest.newBuilder(request).setInput(input).build());
+      } catch (RuntimeException e) {
+        results[i] = BatchStartResult.failure(e);
+      }
+    }
+    List<BatchStartResult> handlerResults = handler.startOperations(decoded);
+    for (int i = 0; i < handlerResults.size(); i++) {
+      BatchStartResult result = handlerResults.get(i);
+      int index = decodedIndexes[i];
+      results[index] =
+          result.isSuccess()
+              ? BatchStartResult.success(
+                  encodeResult(
+                      requests.get(index).getContext(), Objects.requireNonNull(result.getResult())))
+              : result;
+    }
+    return Arrays.asList(results);
+  }
+
+  private OperationStartResult<HandlerResultContent> encodeResult(
+      OperationContext context, OperationStartResult<HandlerResultContent> result) {
+    if (!result.isSync()) {
+      return result;
+    }
+    ContentEncoding encoding = acceptedEncoding(context.getHeaders().get(ACCEPT_ENCODING_HEADER));
+    if (encoding == null) {
+      return result;
+    }
+    HandlerResultContent encoded =
+        encodeContent(Objects.requireNonNull(result.getSyncResult()), encoding);
+    return encoded == null ? result : OperationStartResult.sync(encoded);
+  }
+
+  @Override
+  public void cancelOperation(OperationContext context, OperationCancelDetails details) {
+    handler.cancelOperation(context, details);
+  }
+
+  private HandlerInputContent decodeInput(HandlerInputContent input) {
+    String encodingName = input.getHeaders().get(ENCODING_HEADER);
+    if (encodingName == null) {
+      encodingName = input.getHeaders().get(CONTENT_ENCODING_HEADER);
+    }
+    if (encodingName == null || encodingName.trim().equalsIgnoreCase("identity")) {
+      return input;
+    }
+    ContentEncoding encoding = encodings.get(encodingName.trim().toLowerCase(Locale.ROOT));
+    if (encoding == null) {
+      throw new HandlerException(
+          HandlerException.ErrorType.BAD_REQUEST,
+          "Unsupported content encoding " + encodingName,
+          null,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    }
+    HandlerInputContent.Builder builder = HandlerInputContent.newBuilder();
+    builder.getHeaders().putAll(input.getHeaders());
+    removeEncodingHeaders(builder.getHeaders());
+    try {
+      InputStream decoded = encoding.decode(input.consumeStream());
+      return builder.setDataStream(new LimitedInputStream(decoded, maxDecodedSize)).build();
+    } catch (IOException e) {
+      throw new HandlerException(
+          HandlerException.ErrorType.BAD_REQUEST,
+          "Invalid " + encoding.getName() + " content",
+          e,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    }
+  }
+
+  private @Nullable HandlerResultContent encodeContent(
+      HandlerResultContent content, ContentEncoding encoding) {
+    if (content.getHeaders().containsKey(ENCODING_HEADER)
+        || content.getHeaders().containsKey(CONTENT_ENCODING_HEADER)) {
+      return null;
+    }
+    HandlerResultContent.Builder builder = HandlerResultContent.newBuilder(content);
+    byte[] dataBytes = content.getDataBytes();
+    if (dataBytes != null) {
+      if (dataBytes.length < minimumSize) {
+        return null;
+      }
+      builder.setData(encoding.encode(dataBytes));
+    } else {
+      builder.setData(encoding.encode(Objects.requireNonNull(content.getDataStream())));
+    }
+    removeEncodingHeaders(builder.getHeaders());
+    return builder.putHeader(ENCODING_HEADER, encoding.getName()).build();
+  }
+
+  private @Nullable ContentEncoding acceptedEncoding(@Nullable String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+    // Encodings are picked in the order the caller lists them, skipping any it refuses with q=0
+    for (String entry : acceptEncoding.split(",")) {
+      String[] parts = entry.split(";");
+      ContentEncoding encoding = encodings.get(parts[0].trim().toLowerCase(Locale.ROOT));
+      if (encoding != null && !isRefused(parts)) {
+        return encoding;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isRefused(String[] acceptEncodingParts) {
+    for (int i = 1; i < acceptEncodingParts.length; i++) {
+      String param = acceptEncodingParts[i].trim();
+      if (param.startsWith("q=")) {
+        try {
+          return Double.parseDouble(param.substring(2)) <= 0;
+        } catch (NumberFormatException e) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static void removeEncodingHeaders(Map<String, String> headers) {
+    headers.remove(ENCODING_HEADER);
+    headers.remove(CONTENT_ENCODING_HEADER);
+    headers.remove(LENGTH_HEADER);
+    headers.remove(CONTENT_LENGTH_HEADER);
+  }
+
+  // Fails once more than the maximum number of bytes are read
+  private static final class LimitedInputStream extends FilterInputStream {
+    private final long maxSize;
+    private long size;
+
+    private LimitedInputStream(InputStream in, long maxSize) {
+      super(in);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count(n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count(skipped);
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void count(long read) {
+      size += read;
+      if (size > maxSize) {
+        throw new HandlerException(
+            HandlerException.ErrorType.BAD_REQUEST,
+            "Decoded input larger than " + maxSize + " bytes",
+            null,
+            HandlerException.RetryBehavior.UNSPECIFIED);
+      }
+    }
+  }
+
+  /** Builder for a compressing handler. */
+  public static class Builder {
+    private @Nullable Handler handler;
+    private final List<ContentEncoding> encodings;
+    private int minimumSize = 1024;
+    private long maxDecodedSize = 16L * 1024 * 1024;
+
+    private Builder() {
+      encodings = new ArrayList<>();
+    }
+
+    /** Set handler to delegate to. Required. */
+    public Builder setHandler(Handler handler) {
+      this.handler = handler;
+      return this;
+    }
+
+    /** Add an encoding. Default is gzip and deflate if none are added. */
+    public Builder addEncoding(ContentEncoding encoding) {
+      encodings.add(encoding);
+      return this;
+    }
+
+    /** Get encodings to mutate. */
+    public List<ContentEncoding> getEncodings() {
+      return encodings;
+    }
+
+    /** Set minimum size in bytes of a byte result to be encoded. Default is 1024. */
+    public Builder setMinimumSize(int minimumSize) {
+      this.minimumSize = minimumSize;
+      return this;
+    }
+
+    /**
+     * Set maximum size in bytes of decoded input. Reading more fails with {@link
+     * HandlerException.ErrorType#BAD_REQUEST}. Default is 16MB.
+     */
+    public Builder setMaxDecodedSize(long maxDecodedSize) {
+      this.maxDecodedSize = maxDecodedSize;
+      return this;
+    }
+
+    /** Build the handler. */
+    public CompressingHandler build() {
+      Objects.requireNonNull(handler, "Handler required");
+      if (minimumSize < 0) {
+        throw new IllegalArgumentException("Minimum size cannot be negative");
+      } else if (maxDecodedSize < 0) {
+        throw new IllegalArgumentException("Max decoded size cannot be negative");
+      }
+      List<ContentEncoding> encodings = this.encodings;
+      if (encodings.isEmpty()) {
+        encodings = Arrays.asList(ContentEncoding.gzip(), ContentEncoding.deflate());
+      }
+      Map<String, ContentEncoding> encodingsByName = new LinkedHashMap<>();
+      for (ContentEncoding encoding : encodings) {
+        if (encodingsByName.put(encoding.getName().toLowerCase(Locale.ROOT), encoding) != null) {
+          throw new IllegalStateException("Multiple encodings named " + encoding.getName());
+        }
+      }
+      return new CompressingHandler(
+          handler, Collections.unmodifiableMap(encodingsByName), minimumSize, maxDecodedSize);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content encoding, such as a compression format, that can be used by {@link CompressingHandler}.
+ * Implementations must be safe for concurrent use.
+ */
+@Experimental
+public interface ContentEncoding {
+  /** Gzip encoding using pooled deflaters and inflaters. */
+  static ContentEncoding gzip() {
+    return DeflateContentEncoding.GZIP;
+  }
+
+  /** Deflate (zlib) encoding using pooled deflaters and inflaters. */
+  static ContentEncoding deflate() {
+    return DeflateContentEncoding.DEFLATE;
+  }
+
+  /** Name of the encoding as used in encoding headers, e.g. {@code gzip}. */
+  String getName();
+
+  /** Encode the given bytes. */
+  byte[] encode(byte[] data);
+
+  /**
+   * Lazily encode the given stream. Closing the returned stream closes the given stream and
+   * releases any resources.
+   */
+  InputStream encode(InputStream data);
+
+  /**
+   * Lazily decode the given stream. Closing the returned stream closes the given stream and
+   * releases any resources.
+   *
+   * @throws IOException If the start of the stream cannot be read or is invalid.
+   */
+  InputStream decode(InputStream data) throws IOException;
+}
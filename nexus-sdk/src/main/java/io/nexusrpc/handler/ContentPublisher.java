@@ -0,0 +1,64 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Non-blocking source of content as a sequence of byte buffers, with demand-based backpressure.
+ *
+ * <p>This follows the contract of Reactive Streams and {@code java.util.concurrent.Flow}, which is
+ * not available on Java 8: the publisher calls {@link Subscriber#onSubscribe} once, then {@link
+ * Subscriber#onNext} no more times than the subscriber has requested via {@link
+ * Subscription#request}, then at most one of {@link Subscriber#onError} or {@link
+ * Subscriber#onComplete}. Signals to a subscriber are never concurrent. Publishers of operation
+ * input support a single subscriber.
+ */
+@Experimental
+public interface ContentPublisher {
+  /**
+   * Create a publisher that reads the given stream in chunks of up to the given size as they are
+   * requested. Reads block the thread that calls {@link Subscription#request}, so this is meant
+   * for streams that are already buffered or for callers that request from a thread that may
+   * block.
+   */
+  static ContentPublisher fromStream(InputStream stream, int chunkSize) {
+    return new StreamContentPublisher(stream, chunkSize);
+  }
+
+  /**
+   * Subscribe to the content. Publishers that do not support another subscriber signal {@link
+   * Subscriber#onError} with an {@link IllegalStateException} right after {@link
+   * Subscriber#onSubscribe}.
+   */
+  void subscribe(Subscriber subscriber);
+
+  /** Receiver of content from a {@link ContentPublisher}. */
+  interface Subscriber {
+    /** Called once before any other signal with the subscription to request content on. */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Called with the next chunk of content. The buffer is owned by the subscriber once passed.
+     */
+    void onNext(ByteBuffer chunk);
+
+    /** Called once if the content fails. No other signals follow. */
+    void onError(Throwable error);
+
+    /** Called once when all content has been delivered. No other signals follow. */
+    void onComplete();
+  }
+
+  /** Link between a {@link ContentPublisher} and a {@link Subscriber}. */
+  interface Subscription {
+    /**
+     * Request up to the given number of additional chunks. Non-positive values fail the
+     * subscription with an {@link IllegalArgumentException}.
+     */
+    void request(long n);
+
+    /** Stop delivery of content. Chunks already in flight may still be delivered. */
+    void cancel();
+  }
+}
@@ -0,0 +1,373 @@
+package io.nexusrpc.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Gzip and deflate content encodings. Deflaters and inflaters hold native memory and are costly to
+ * create, so a bounded number of them are pooled and reset between uses. The gzip header and
+ * trailer are handled here around a raw deflate stream so that pooled instances can be used for
+ * gzip too.
+ */
+final class DeflateContentEncoding implements ContentEncoding {
+  private static final int MAX_POOLED = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+  private static final int BUFFER_SIZE = 8192;
+  // Magic, deflate method, no flags, no modification time, no extra flags, unknown OS
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+  private static final int GZIP_FLAG_HEADER_CRC = 2;
+  private static final int GZIP_FLAG_EXTRA = 4;
+  private static final int GZIP_FLAG_NAME = 8;
+  private static final int GZIP_FLAG_COMMENT = 16;
+
+  // After the constants above so they are initialized first
+  static final DeflateContentEncoding GZIP = new DeflateContentEncoding("gzip", true);
+  static final DeflateContentEncoding DEFLATE = new DeflateContentEncoding("deflate", false);
+
+  private final String name;
+  // Gzip uses raw deflate streams with its own header and trailer
+  private final boolean gzip;
+  private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(MAX_POOLED);
+  private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(MAX_POOLED);
+
+  private DeflateContentEncoding(String name, boolean gzip) {
+    this.name = name;
+    this.gzip = gzip;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public byte[] encode(byte[] data) {
+    Deflater deflater = borrowDeflater();
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+      if (gzip) {
+        out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+      }
+      deflater.setInput(data);
+      deflater.finish();
+      byte[] buffer = new byte[Math.min(BUFFER_SIZE, Math.max(64, data.length))];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      if (gzip) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeIntLittleEndian(out, (int) crc.getValue());
+        writeIntLittleEndian(out, data.length);
+      }
+      return out.toByteArray();
+    } finally {
+      releaseDeflater(deflater);
+    }
+  }
+
+  @Override
+  public InputStream encode(InputStream data) {
+    return new DeflatingInputStream(data);
+  }
+
+  @Override
+  public InputStream decode(InputStream data) throws IOException {
+    if (gzip) {
+      readGzipHeader(data);
+    }
+    return new InflatingInputStream(data);
+  }
+
+  @Override
+  public String toString() {
+    return "DeflateContentEncoding{name='" + name + "'}";
+  }
+
+  private Deflater borrowDeflater() {
+    Deflater deflater = deflaters.poll();
+    return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+  }
+
+  private void releaseDeflater(Deflater deflater) {
+    deflater.reset();
+    if (!deflaters.offer(deflater)) {
+      deflater.end();
+    }
+  }
+
+  private Inflater borrowInflater() {
+    Inflater inflater = inflaters.poll();
+    return inflater != null ? inflater : new Inflater(gzip);
+  }
+
+  private void releaseInflater(Inflater inflater) {
+    inflater.reset();
+    if (!inflaters.offer(inflater)) {
+      inflater.end();
+    }
+  }
+
+  private static void writeIntLittleEndian(ByteArrayOutputStream out, int value) {
+    out.write(value);
+    out.write(value >>> 8);
+    out.write(value >>> 16);
+    out.write(value >>> 24);
+  }
+
+  private static int readIntLittleEndian(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xff)
+        | (bytes[offset + 1] & 0xff) << 8
+        | (bytes[offset + 2] & 0xff) << 16
+        | (bytes[offset + 3] & 0xff) << 24;
+  }
+
+  private static void readGzipHeader(InputStream in) throws IOException {
+    byte[] header = new byte[GZIP_HEADER.length];
+    readFully(in, header, 0, header.length);
+    if (header[0] != 0x1f || header[1] != (byte) 0x8b || header[2] != 8) {
+      throw new IOException("Invalid gzip header");
+    }
+    int flags = header[3];
+    if ((flags & GZIP_FLAG_EXTRA) != 0) {
+      byte[] length = new byte[2];
+      readFully(in, length, 0, 2);
+      skipFully(in, (length[0] & 0xff) | (length[1] & 0xff) << 8);
+    }
+    if ((flags & GZIP_FLAG_NAME) != 0) {
+      skipZeroTerminated(in);
+    }
+    if ((flags & GZIP_FLAG_COMMENT) != 0) {
+      skipZeroTerminated(in);
+    }
+    if ((flags & GZIP_FLAG_HEADER_CRC) != 0) {
+      skipFully(in, 2);
+    }
+  }
+
+  private static void readFully(InputStream in, byte[] bytes, int offset, int length)
+      throws IOException {
+    while (length > 0) {
+      int read = in.read(bytes, offset, length);
+      if (read == -1) {
+        throw new EOFException("Unexpected end of gzip stream");
+      }
+      offset += read;
+      length -= read;
+    }
+  }
+
+  private static void skipFully(InputStream in, int length) throws IOException {
+    for (int i = 0; i < length; i++) {
+      if (in.read() == -1) {
+        throw new EOFException("Unexpected end of gzip stream");
+      }
+    }
+  }
+
+  private static void skipZeroTerminated(InputStream in) throws IOException {
+    int b;
+    do {
+      b = in.read();
+      if (b == -1) {
+        throw new EOFException("Unexpected end of gzip stream");
+      }
+    } while (b != 0);
+  }
+
+  /** Stream of the encoded form of a source stream, compressed as it is read. */
+  private final class DeflatingInputStream extends InputStream {
+    private final InputStream source;
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private final CRC32 crc = new CRC32();
+    // Borrowed on first read so that a stream that is never read holds no native memory
+    private @Nullable Deflater deflater;
+    private int size;
+    private boolean sourceDone;
+    private boolean done;
+    // Gzip header or trailer bytes not yet read
+    private byte @Nullable [] pending;
+    private int pendingPos;
+
+    private DeflatingInputStream(InputStream source) {
+      this.source = source;
+      this.pending = gzip ? GZIP_HEADER : null;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (true) {
+        if (pending != null) {
+          int n = Math.min(len, pending.length - pendingPos);
+          System.arraycopy(pending, pendingPos, b, off, n);
+          pendingPos += n;
+          if (pendingPos == pending.length) {
+            pending = null;
+            pendingPos = 0;
+          }
+          return n;
+        }
+        if (done) {
+          return -1;
+        }
+        Deflater deflater = this.deflater;
+        if (deflater == null) {
+          deflater = borrowDeflater();
+          this.deflater = deflater;
+        }
+        if (deflater.finished()) {
+          releaseDeflater(deflater);
+          this.deflater = null;
+          done = true;
+          if (gzip) {
+            ByteArrayOutputStream trailer = new ByteArrayOutputStream(8);
+            writeIntLittleEndian(trailer, (int) crc.getValue());
+            writeIntLittleEndian(trailer, size);
+            pending = trailer.toByteArray();
+          }
+          continue;
+        }
+        if (deflater.needsInput() && !sourceDone) {
+          int read = source.read(input, 0, input.length);
+          if (read == -1) {
+            sourceDone = true;
+            deflater.finish();
+          } else {
+            if (gzip) {
+              crc.update(input, 0, read);
+            }
+            size += read;
+            deflater.setInput(input, 0, read);
+          }
+        }
+        int n = deflater.deflate(b, off, len);
+        if (n > 0) {
+          return n;
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (deflater != null) {
+        releaseDeflater(deflater);
+        deflater = null;
+      }
+      done = true;
+      pending = null;
+      source.close();
+    }
+  }
+
+  /** Stream of the decoded form of a source stream, decompressed as it is read. */
+  private final class InflatingInputStream extends InputStream {
+    private final InputStream source;
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private final CRC32 crc = new CRC32();
+    // Borrowed on first read so that a stream that is never read holds no native memory
+    private @Nullable Inflater inflater;
+    private int inputLength;
+    private int size;
+    private boolean done;
+    private boolean closed;
+
+    private InflatingInputStream(InputStream source) {
+      this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (done) {
+        return -1;
+      } else if (len == 0) {
+        return 0;
+      }
+      Inflater inflater = this.inflater;
+      if (inflater == null) {
+        inflater = borrowInflater();
+        this.inflater = inflater;
+      }
+      while (true) {
+        int n;
+        try {
+          n = inflater.inflate(b, off, len);
+        } catch (DataFormatException e) {
+          throw new IOException("Invalid " + name + " data", e);
+        }
+        if (n > 0) {
+          if (gzip) {
+            crc.update(b, off, n);
+          }
+          size += n;
+          return n;
+        } else if (inflater.finished()) {
+          finish(inflater);
+          return -1;
+        } else if (inflater.needsDictionary()) {
+          throw new IOException("Invalid " + name + " data, preset dictionaries not supported");
+        } else if (inflater.needsInput()) {
+          inputLength = source.read(input, 0, input.length);
+          if (inputLength == -1) {
+            throw new EOFException("Unexpected end of " + name + " stream");
+          }
+          inflater.setInput(input, 0, inputLength);
+        }
+      }
+    }
+
+    private void finish(Inflater inflater) throws IOException {
+      int remaining = inflater.getRemaining();
+      releaseInflater(inflater);
+      this.inflater = null;
+      done = true;
+      if (!gzip) {
+        return;
+      }
+      // The trailer starts with whatever the inflater did not consume
+      byte[] trailer = new byte[8];
+      int fromInput = Math.min(remaining, trailer.length);
+      System.arraycopy(input, inputLength - remaining, trailer, 0, fromInput);
+      readFully(source, trailer, fromInput, trailer.length - fromInput);
+      if (readIntLittleEndian(trailer, 0) != (int) crc.getValue()
+          || readIntLittleEndian(trailer, 4) != size) {
+        throw new IOException("Corrupt gzip stream, trailer mismatch");
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (inflater != null) {
+        releaseInflater(inflater);
+        inflater = null;
+      }
+      closed = true;
+      source.close();
+    }
+  }
+}
@@ -0,0 +1,619 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.FailureInfo;
+import io.nexusrpc.OperationException;
+import io.nexusrpc.OperationState;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Encoder and decoder between {@link FailureInfo} and the Nexus JSON failure format, an object with
+ * {@code message}, {@code stackTrace}, {@code metadata}, and {@code details} fields.
+ *
+ * <p>Failures are written directly as UTF-8 to an {@link OutputStream} or {@link ByteBuffer}
+ * without intermediate strings, and {@link FailureInfo#getDetailsJson} is embedded as is without
+ * being parsed, so it must be valid JSON. When decoding, the details value is captured as its raw
+ * JSON text.
+ *
+ * <p>Handler and operation exceptions are represented as failures with a {@code type} metadata
+ * value of {@value #HANDLER_ERROR_TYPE} or {@value #OPERATION_ERROR_TYPE}, with the error type,
+ * retry behavior, or operation state in the details.
+ */
+@Experimental
+public final class FailureInfoCodec {
+  /** Metadata {@code type} value of failures representing a {@link HandlerException}. */
+  public static final String HANDLER_ERROR_TYPE = "nexus.HandlerError";
+
+  /** Metadata {@code type} value of failures representing an {@link OperationException}. */
+  public static final String OPERATION_ERROR_TYPE = "nexus.OperationError";
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private FailureInfoCodec() {}
+
+  /** Write the failure as UTF-8 JSON to the stream. The stream is not flushed or closed. */
+  public static void write(FailureInfo failure, OutputStream out) throws IOException {
+    StreamSink sink = new StreamSink(out);
+    writeFailure(failure, sink);
+    sink.flush();
+  }
+
+  /**
+   * Write the failure as UTF-8 JSON to the buffer at its position.
+   *
+   * @throws java.nio.BufferOverflowException If the buffer does not have enough space remaining.
+   */
+  public static void write(FailureInfo failure, ByteBuffer buffer) {
+    try {
+      writeFailure(failure, buffer::put);
+    } catch (IOException e) {
+      // Buffer sinks do not throw IO exceptions
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Encode the failure as UTF-8 JSON. */
+  public static byte[] toBytes(FailureInfo failure) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    try {
+      write(failure, out);
+    } catch (IOException e) {
+      // Byte array streams do not throw IO exceptions
+      throw new IllegalStateException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decode a failure from UTF-8 JSON.
+   *
+   * @throws IllegalArgumentException If the JSON is invalid or has no message.
+   */
+  public static FailureInfo read(byte[] bytes) {
+    return read(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Decode a failure from the UTF-8 JSON remaining in the buffer, advancing its position to the
+   * limit.
+   *
+   * @throws IllegalArgumentException If the JSON is invalid or has no message.
+   */
+  public static FailureInfo read(ByteBuffer buffer) {
+    FailureInfo failure;
+    if (buffer.hasArray()) {
+      failure = read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    } else {
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.duplicate().get(bytes);
+      failure = read(bytes);
+    }
+    buffer.position(buffer.limit());
+    return failure;
+  }
+
+  /**
+   * Decode a failure from UTF-8 JSON read to the end of the stream. The stream is not closed.
+   *
+   * @throws IllegalArgumentException If the JSON is invalid or has no message.
+   */
+  public static FailureInfo read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    byte[] chunk = new byte[1024];
+    int read;
+    while ((read = in.read(chunk)) != -1) {
+      out.write(chunk, 0, read);
+    }
+    return read(out.toByteArray());
+  }
+
+  private static FailureInfo read(byte[] bytes, int offset, int length) {
+    return new Reader(bytes, offset, offset + length).readFailure();
+  }
+
+  /**
+   * Convert a handler exception to a failure. If the exception has an original failure, that is
+   * returned as is. Otherwise the stack trace is only rendered when the failure is written.
+   */
+  public static FailureInfo fromHandlerException(HandlerException exception) {
+    FailureInfo original = exception.getOriginalFailure();
+    if (original != null) {
+      return original;
+    }
+    StringBuilder details = new StringBuilder(64).append("{\"type\":");
+    appendQuoted(details, exception.getRawErrorType());
+    if (exception.getRetryBehavior() != HandlerException.RetryBehavior.UNSPECIFIED) {
+      details
+          .append(",\"retryableOverride\":")
+          .append(exception.getRetryBehavior() == HandlerException.RetryBehavior.RETRYABLE);
+    }
+    return FailureInfo.newBuilder()
+        .setMessage(messageOf(exception))
+        .setStackTraceFrom(exception)
+        .putMetadata("type", HANDLER_ERROR_TYPE)
+        .setDetailsJson(details.append('}').toString())
+        .build();
+  }
+
+  /**
+   * Convert a failure to a handler exception with the failure as its original failure. Failures
+   * that do not represent a handler exception become {@link HandlerException.ErrorType#INTERNAL}.
+   */
+  public static HandlerException toHandlerException(FailureInfo failure) {
+    String rawErrorType = HandlerException.ErrorType.INTERNAL.name();
+    HandlerException.RetryBehavior retryBehavior = HandlerException.RetryBehavior.UNSPECIFIED;
+    byte[] details = detailsOfType(failure, HANDLER_ERROR_TYPE);
+    if (details != null) {
+      String type = new Reader(details).readStringField("type");
+      if (type != null) {
+        rawErrorType = type;
+      }
+      Boolean retryable = new Reader(details).readBooleanField("retryableOverride");
+      if (retryable != null) {
+        retryBehavior =
+            retryable
+                ? HandlerException.RetryBehavior.RETRYABLE
+                : HandlerException.RetryBehavior.NON_RETRYABLE;
+      }
+    }
+    return new HandlerException(rawErrorType, failure.getMessage(), null, retryBehavior, failure);
+  }
+
+  /**
+   * Convert an operation exception to a failure. If the exception has an original failure, that is
+   * returned as is. Otherwise the stack trace is only rendered when the failure is written.
+   */
+  public static FailureInfo fromOperationException(OperationException exception) {
+    FailureInfo original = exception.getOriginalFailure();
+    if (original != null) {
+      return original;
+    }
+    return FailureInfo.newBuilder()
+        .setMessage(messageOf(exception))
+        .setStackTraceFrom(exception)
+        .putMetadata("type", OPERATION_ERROR_TYPE)
+        .setDetailsJson(
+            exception.getState() == OperationState.CANCELED
+                ? "{\"state\":\"canceled\"}"
+                : "{\"state\":\"failed\"}")
+        .build();
+  }
+
+  /**
+   * Convert a failure to an operation exception with the failure as its original failure. The
+   * exception is canceled if the failure represents a canceled operation, otherwise failed.
+   */
+  public static OperationException toOperationException(FailureInfo failure) {
+    byte[] details = detailsOfType(failure, OPERATION_ERROR_TYPE);
+    if (details != null && "canceled".equals(new Reader(details).readStringField("state"))) {
+      return OperationException.fromFailure(OperationState.CANCELED, failure);
+    }
+    return OperationException.fromFailure(OperationState.FAILED, failure);
+  }
+
+  // Top-level string field of other Nexus JSON bodies, such as the token of an async start response
+  static @Nullable String readStringField(byte[] json, String name) {
+    return new Reader(json).readStringField(name);
+  }
+
+  private static byte @Nullable [] detailsOfType(FailureInfo failure, String type) {
+    String detailsJson = failure.getDetailsJson();
+    if (detailsJson == null || !type.equals(failure.getMetadata().get("type"))) {
+      return null;
+    }
+    return detailsJson.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String messageOf(Throwable throwable) {
+    String message = throwable.getMessage();
+    return message == null ? "" : message;
+  }
+
+  private static void appendQuoted(StringBuilder builder, String value) {
+    builder.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      } else if (c < 0x20) {
+        builder.append(String.format("\\u%04x", (int) c));
+      } else {
+        builder.append(c);
+      }
+    }
+    builder.append('"');
+  }
+
+  private static void writeFailure(FailureInfo failure, ByteSink sink) throws IOException {
+    sink.write((byte) '{');
+    writeAscii(sink, "\"message\":");
+    writeString(sink, failure.getMessage());
+    String stackTrace = failure.getStackTrace();
+    if (stackTrace != null) {
+      writeAscii(sink, ",\"stackTrace\":");
+      writeString(sink, stackTrace);
+    }
+    if (!failure.getMetadata().isEmpty()) {
+      writeAscii(sink, ",\"metadata\":{");
+      boolean first = true;
+      for (Map.Entry<String, String> entry : failure.getMetadata().entrySet()) {
+        if (!first) {
+          sink.write((byte) ',');
+        }
+        first = false;
+        writeString(sink, entry.getKey());
+        sink.write((byte) ':');
+        writeString(sink, entry.getValue());
+      }
+      sink.write((byte) '}');
+    }
+    String detailsJson = failure.getDetailsJson();
+    if (detailsJson != null) {
+      writeAscii(sink, ",\"details\":");
+      writeUtf8(sink, detailsJson);
+    }
+    sink.write((byte) '}');
+  }
+
+  private static void writeAscii(ByteSink sink, String value) throws IOException {
+    for (int i = 0; i < value.length(); i++) {
+      sink.write((byte) value.charAt(i));
+    }
+  }
+
+  private static void writeString(ByteSink sink, String value) throws IOException {
+    sink.write((byte) '"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sink.write((byte) '\\');
+        sink.write((byte) c);
+      } else if (c == '\n') {
+        sink.write((byte) '\\');
+        sink.write((byte) 'n');
+      } else if (c == '\r') {
+        sink.write((byte) '\\');
+        sink.write((byte) 'r');
+      } else if (c == '\t') {
+        sink.write((byte) '\\');
+        sink.write((byte) 't');
+      } else if (c < 0x20) {
+        writeAscii(sink, "\\u00");
+        sink.write(HEX[c >> 4]);
+        sink.write(HEX[c & 0xf]);
+      } else {
+        i = writeUtf8Char(sink, value, i);
+      }
+    }
+    sink.write((byte) '"');
+  }
+
+  private static void writeUtf8(ByteSink sink, String value) throws IOException {
+    for (int i = 0; i < value.length(); i++) {
+      i = writeUtf8Char(sink, value, i);
+    }
+  }
+
+  // Returns the index of the last char consumed
+  private static int writeUtf8Char(ByteSink sink, String value, int i) throws IOException {
+    char c = value.charAt(i);
+    if (c < 0x80) {
+      sink.write((byte) c);
+    } else if (c < 0x800) {
+      sink.write((byte) (0xc0 | (c >> 6)));
+      sink.write((byte) (0x80 | (c & 0x3f)));
+    } else if (Character.isHighSurrogate(c)
+        && i + 1 < value.length()
+        && Character.isLowSurrogate(value.charAt(i + 1))) {
+      int codePoint = Character.toCodePoint(c, value.charAt(i + 1));
+      sink.write((byte) (0xf0 | (codePoint >> 18)));
+      sink.write((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+      sink.write((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+      sink.write((byte) (0x80 | (codePoint & 0x3f)));
+      return i + 1;
+    } else if (Character.isSurrogate(c)) {
+      // Unpaired surrogate, replaced the same as String.getBytes does
+      sink.write((byte) '?');
+    } else {
+      sink.write((byte) (0xe0 | (c >> 12)));
+      sink.write((byte) (0x80 | ((c >> 6) & 0x3f)));
+      sink.write((byte) (0x80 | (c & 0x3f)));
+    }
+    return i;
+  }
+
+  @FunctionalInterface
+  private interface ByteSink {
+    void write(byte b) throws IOException;
+  }
+
+  // Buffers bytes so the stream is not called per byte
+  private static final class StreamSink implements ByteSink {
+    private final OutputStream out;
+    private final byte[] buffer = new byte[512];
+    private int count;
+
+    private StreamSink(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(byte b) throws IOException {
+      if (count == buffer.length) {
+        flush();
+      }
+      buffer[count++] = b;
+    }
+
+    private void flush() throws IOException {
+      out.write(buffer, 0, count);
+      count = 0;
+    }
+  }
+
+  /** Minimal JSON reader over UTF-8 bytes for the failure format. */
+  private static final class Reader {
+    private final byte[] bytes;
+    private final int end;
+    private int pos;
+
+    private Reader(byte[] bytes) {
+      this(bytes, 0, bytes.length);
+    }
+
+    private Reader(byte[] bytes, int offset, int end) {
+      this.bytes = bytes;
+      this.pos = offset;
+      this.end = end;
+    }
+
+    private FailureInfo readFailure() {
+      FailureInfo.Builder builder = FailureInfo.newBuilder();
+      boolean hasMessage = false;
+      expect('{');
+      if (!tryConsume('}')) {
+        do {
+          String field = readString();
+          expect(':');
+          switch (field) {
+            case "message":
+              builder.setMessage(readString());
+              hasMessage = true;
+              break;
+            case "stackTrace":
+              builder.setStackTrace(readNullableString());
+              break;
+            case "metadata":
+              readMetadata(builder);
+              break;
+            case "details":
+              int start = skipWhitespace();
+              skipValue();
+              builder.setDetailsJson(new String(bytes, start, pos - start, StandardCharsets.UTF_8));
+              break;
+            default:
+              skipValue();
+          }
+        } while (tryConsume(','));
+        expect('}');
+      }
+      if (!hasMessage) {
+        throw new IllegalArgumentException("Failure JSON has no message");
+      }
+      return builder.build();
+    }
+
+    private void readMetadata(FailureInfo.Builder builder) {
+      if (tryConsumeLiteral("null")) {
+        return;
+      }
+      expect('{');
+      if (tryConsume('}')) {
+        return;
+      }
+      do {
+        String key = readString();
+        expect(':');
+        builder.putMetadata(key, readString());
+      } while (tryConsume(','));
+      expect('}');
+    }
+
+    // Find a top-level string field of an object, or null if absent or not a string
+    private @Nullable String readStringField(String name) {
+      if (!seekField(name) || peek() != '"') {
+        return null;
+      }
+      return readString();
+    }
+
+    private @Nullable Boolean readBooleanField(String name) {
+      if (!seekField(name)) {
+        return null;
+      } else if (tryConsumeLiteral("true")) {
+        return true;
+      } else if (tryConsumeLiteral("false")) {
+        return false;
+      }
+      return null;
+    }
+
+    private boolean seekField(String name) {
+      expect('{');
+      if (tryConsume('}')) {
+        return false;
+      }
+      do {
+        String field = readString();
+        expect(':');
+        if (field.equals(name)) {
+          skipWhitespace();
+          return true;
+        }
+        skipValue();
+      } while (tryConsume(','));
+      return false;
+    }
+
+    private @Nullable String readNullableString() {
+      return tryConsumeLiteral("null") ? null : readString();
+    }
+
+    private String readString() {
+      expect('"');
+      int start = pos;
+      // Fast path for strings without escapes
+      while (pos < end && bytes[pos] != '"' && bytes[pos] != '\\') {
+        pos++;
+      }
+      if (pos >= end) {
+        throw error("Unterminated string");
+      }
+      if (bytes[pos] == '"') {
+        return new String(bytes, start, pos++ - start, StandardCharsets.UTF_8);
+      }
+      StringBuilder builder = new StringBuilder(pos - start + 16);
+      builder.append(new String(bytes, start, pos - start, StandardCharsets.UTF_8));
+      while (true) {
+        if (pos >= end) {
+          throw error("Unterminated string");
+        }
+        byte b = bytes[pos];
+        if (b == '"') {
+          pos++;
+          return builder.toString();
+        } else if (b == '\\') {
+          pos++;
+          if (pos >= end) {
+            throw error("Unterminated string");
+          }
+          char escaped = (char) bytes[pos++];
+          switch (escaped) {
+            case '"':
+            case '\\':
+            case '/':
+              builder.append(escaped);
+              break;
+            case 'b':
+              builder.append('\b');
+              break;
+            case 'f':
+              builder.append('\f');
+              break;
+            case 'n':
+              builder.append('\n');
+              break;
+            case 'r':
+              builder.append('\r');
+              break;
+            case 't':
+              builder.append('\t');
+              break;
+            case 'u':
+              if (pos + 4 > end) {
+                throw error("Invalid unicode escape");
+              }
+              builder.append((char) Integer.parseInt(asciiAt(pos, 4), 16));
+              pos += 4;
+              break;
+            default:
+              throw error("Invalid escape");
+          }
+        } else {
+          int runStart = pos;
+          while (pos < end && bytes[pos] != '"' && bytes[pos] != '\\') {
+            pos++;
+          }
+          builder.append(new String(bytes, runStart, pos - runStart, StandardCharsets.UTF_8));
+        }
+      }
+    }
+
+    private void skipValue() {
+      byte b = peek();
+      if (b == '"') {
+        readString();
+      } else if (b == '{' || b == '[') {
+        char close = b == '{' ? '}' : ']';
+        pos++;
+        if (tryConsume(close)) {
+          return;
+        }
+        do {
+          if (close == '}') {
+            readString();
+            expect(':');
+          }
+          skipValue();
+        } while (tryConsume(','));
+        expect(close);
+      } else {
+        // Number or literal
+        int start = pos;
+        while (pos < end && "{}[],: \t\r\n\"".indexOf(bytes[pos]) < 0) {
+          pos++;
+        }
+        if (pos == start) {
+          throw error("Expected value");
+        }
+      }
+    }
+
+    private boolean tryConsumeLiteral(String literal) {
+      skipWhitespace();
+      if (pos + literal.length() > end || !asciiAt(pos, literal.length()).equals(literal)) {
+        return false;
+      }
+      pos += literal.length();
+      return true;
+    }
+
+    private String asciiAt(int start, int length) {
+      return new String(bytes, start, length, StandardCharsets.US_ASCII);
+    }
+
+    private byte peek() {
+      skipWhitespace();
+      if (pos >= end) {
+        throw error("Unexpected end of JSON");
+      }
+      return bytes[pos];
+    }
+
+    private boolean tryConsume(char c) {
+      if (peek() == c) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(char c) {
+      if (!tryConsume(c)) {
+        throw error("Expected '" + c + "'");
+      }
+    }
+
+    private int skipWhitespace() {
+      while (pos < end && isWhitespace(bytes[pos])) {
+        pos++;
+      }
+      return pos;
+    }
+
+    private static boolean isWhitespace(byte b) {
+      return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException("Invalid failure JSON at offset " + pos + ": " + message);
+    }
+  }
+}
@@ -0,0 +1,627 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.UnaryOperator;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Handler that forwards operations over HTTP to upstream Nexus endpoints, for relays such as
+ * regional edges. The upstream of a call is the endpoint routed for its operation, else for its
+ * service, else the default endpoint.
+ *
+ * <p>Input is streamed to the upstream as it is read, and a sync result is a stream of the upstream
+ * response, so content is never buffered or deserialized. Context headers other than hop-by-hop
+ * headers are forwarded, and the deadline, if any, is forwarded as the remaining request timeout.
+ * The callback URL of starts and the operation tokens of async results and cancels can be rewritten
+ * on the way through.
+ *
+ * <p>Upstream connections are kept alive and reused from the JDK connection cache. A connection
+ * only returns to the cache once the result stream using it is read to the end or closed, so
+ * callers must always close result streams.
+ */
+@Experimental
+public class ForwardingHandler implements Handler {
+  /** Create a builder for a forwarding handler. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final String REQUEST_ID_HEADER = "Nexus-Request-Id";
+  private static final String LINK_HEADER = "Nexus-Link";
+  private static final String OPERATION_STATE_HEADER = "Nexus-Operation-State";
+  private static final String CALLBACK_HEADER_PREFIX = "Nexus-Callback-";
+  private static final String CONTENT_HEADER_PREFIX = "Content-";
+  private static final String LENGTH_HEADER = "length";
+  private static final int STREAM_CHUNK_SIZE = 8192;
+  // Headers that only apply to one connection, or that are set from the call itself
+  private static final Set<String> UNFORWARDED_HEADERS =
+      new HashSet<>(
+          Arrays.asList(
+              "connection",
+              "expect",
+              "host",
+              "keep-alive",
+              "proxy-authenticate",
+              "proxy-authorization",
+              "proxy-connection",
+              "te",
+              "trailer",
+              "transfer-encoding",
+              "upgrade",
+              "nexus-link",
+              "nexus-operation-id",
+              "nexus-operation-token",
+              "nexus-request-id"));
+
+  private final @Nullable String defaultEndpoint;
+  private final Map<String, String> serviceEndpoints;
+  private final Map<String, Map<String, String>> operationEndpoints;
+  private final UnaryOperator<String> callbackUrlRewriter;
+  private final UnaryOperator<String> operationTokenRewriter;
+  private final UnaryOperator<String> operationTokenResolver;
+  private final int connectTimeoutMillis;
+  private final int readTimeoutMillis;
+
+  private ForwardingHandler(
+      @Nullable String defaultEndpoint,
+      Map<String, String> serviceEndpoints,
+      Map<String, Map<String, String>> operationEndpoints,
+      UnaryOperator<String> callbackUrlRewriter,
+      UnaryOperator<String> operationTokenRewriter,
+      UnaryOperator<String> operationTokenResolver,
+      int connectTimeoutMillis,
+      int readTimeoutMillis) {
+    this.defaultEndpoint = defaultEndpoint;
+    this.serviceEndpoints = serviceEndpoints;
+    this.operationEndpoints = operationEndpoints;
+    this.callbackUrlRewriter = callbackUrlRewriter;
+    this.operationTokenRewriter = operationTokenRewriter;
+    this.operationTokenResolver = operationTokenResolver;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  /** Endpoint for calls with no service or operation route, if any. */
+  public @Nullable String getDefaultEndpoint() {
+    return defaultEndpoint;
+  }
+
+  /** Endpoints for all operations of a service, by service name. */
+  public Map<String, String> getServiceEndpoints() {
+    return serviceEndpoints;
+  }
+
+  /** Endpoints for specific operations, by service name then operation name. */
+  public Map<String, Map<String, String>> getOperationEndpoints() {
+    return operationEndpoints;
+  }
+
+  @Override
+  public OperationStartResult<HandlerResultContent> startOperation(
+      OperationContext context, OperationStartDetails details, HandlerInputContent input)
+      throws OperationException {
+    return receive(context, send(context, details, input));
+  }
+
+  /**
+   * Start a batch of operations by sending every request upstream before reading any response, so
+   * the upstreams handle them concurrently without a thread per start.
+   */
+  @Override
+  public List<BatchStartResult> startOperations(List<BatchStartRequest> requests) {
+    BatchStartResult[] results = new BatchStartResult[requests.size()];
+    HttpURLConnection[] connections = new HttpURLConnection[requests.size()];
+    for (int i = 0; i < results.length; i++) {
+      BatchStartRequest request = requests.get(i);
+      try {
+        connections[i] = send(request.getContext(), request.getDetails(), request.getInput());
+      } catch (RuntimeException e) {
+        results[i] = BatchStartResult.failure(e);
+      }
+    }
+    for (int i = 0; i < results.length; i++) {
+      HttpURLConnection connection = connections[i];
+      if (connection == null) {
+        continue;
+      }
+      try {
+        results[i] = BatchStartResult.success(receive(requests.get(i).getContext(), connection));
+      } catch (OperationException e) {
+        results[i] = BatchStartResult.failure(e);
+      } catch (RuntimeException e) {
+        results[i] = BatchStartResult.failure(e);
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  // Send the start request with its input, leaving the response to be read
+  private HttpURLConnection send(
+      OperationContext context, OperationStartDetails details, HandlerInputContent input) {
+    StringBuilder url = operationUrl(context);
+    String callbackUrl = details.getCallbackUrl();
+    if (callbackUrl != null) {
+      url.append("?callback=").append(encode(callbackUrlRewriter.apply(callbackUrl)));
+    }
+    HttpURLConnection connection = open(url.toString(), context);
+    connection.setRequestProperty(REQUEST_ID_HEADER, details.getRequestId());
+    for (Map.Entry<String, String> header : details.getCallbackHeaders().entrySet()) {
+      connection.setRequestProperty(CALLBACK_HEADER_PREFIX + header.getKey(), header.getValue());
+    }
+    for (Link link : details.getLinks()) {
+      connection.addRequestProperty(
+          LINK_HEADER, "<" + link.getUri() + ">; type=\"" + link.getType() + "\"");
+    }
+    // Content headers are named without their prefix
+    long length = -1;
+    for (Map.Entry<String, String> header : input.getHeaders().entrySet()) {
+      if (header.getKey().equals(LENGTH_HEADER)) {
+        length = parseLength(header.getValue());
+      } else {
+        connection.setRequestProperty(CONTENT_HEADER_PREFIX + header.getKey(), header.getValue());
+      }
+    }
+    if (length >= 0) {
+      connection.setFixedLengthStreamingMode(length);
+    } else {
+      connection.setChunkedStreamingMode(STREAM_CHUNK_SIZE);
+    }
+    try (InputStream in = input.consumeStream();
+        OutputStream out = connection.getOutputStream()) {
+      byte[] buffer = new byte[STREAM_CHUNK_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw newUpstreamException(e);
+    }
+    return connection;
+  }
+
+  private OperationStartResult<HandlerResultContent> receive(
+      OperationContext context, HttpURLConnection connection) throws OperationException {
+    int status;
+    try {
+      status = connection.getResponseCode();
+    } catch (IOException e) {
+      throw newUpstreamException(e);
+    }
+    if (status == HttpURLConnection.HTTP_CREATED) {
+      String token = readAsyncToken(context, connection);
+      return OperationStartResult.async(operationTokenRewriter.apply(token));
+    } else if (status == 424) {
+      throw readOperationException(connection);
+    } else if (status / 100 != 2) {
+      throw readHandlerException(connection, status);
+    }
+    addLinks(context, connection);
+    HandlerResultContent.Builder result = HandlerResultContent.newBuilder();
+    for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+      String name = header.getKey();
+      int prefixLength = CONTENT_HEADER_PREFIX.length();
+      if (name != null && name.regionMatches(true, 0, CONTENT_HEADER_PREFIX, 0, prefixLength)) {
+        result.putHeader(name.substring(prefixLength), String.join(",", header.getValue()));
+      }
+    }
+    try {
+      return OperationStartResult.sync(result.setData(connection.getInputStream()).build());
+    } catch (IOException e) {
+      throw newUpstreamException(e);
+    }
+  }
+
+  @Override
+  public void cancelOperation(OperationContext context, OperationCancelDetails details) {
+    String url = operationUrl(context).append("/cancel").toString();
+    HttpURLConnection connection = open(url, context);
+    connection.setRequestProperty(
+        Header.OPERATION_TOKEN, operationTokenResolver.apply(details.getOperationToken()));
+    connection.setFixedLengthStreamingMode(0);
+    int status;
+    try {
+      connection.getOutputStream().close();
+      status = connection.getResponseCode();
+      if (status / 100 == 2) {
+        // Read to the end so the connection can be reused
+        readAll(connection.getInputStream());
+        return;
+      }
+    } catch (IOException e) {
+      throw newUpstreamException(e);
+    }
+    throw readHandlerException(connection, status);
+  }
+
+  private StringBuilder operationUrl(OperationContext context) {
+    String endpoint = null;
+    Map<String, String> serviceOperationEndpoints = operationEndpoints.get(context.getService());
+    if (serviceOperationEndpoints != null) {
+      endpoint = serviceOperationEndpoints.get(context.getOperation());
+    }
+    if (endpoint == null) {
+      endpoint = serviceEndpoints.get(context.getService());
+    }
+    if (endpoint == null) {
+      endpoint = defaultEndpoint;
+    }
+    if (endpoint == null) {
+      throw new HandlerException(
+          HandlerException.ErrorType.NOT_FOUND,
+          "No upstream for service "
+              + context.getService()
+              + " or operation "
+              + context.getOperation(),
+          null,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    }
+    return new StringBuilder(endpoint)
+        .append('/')
+        .append(encode(context.getService()))
+        .append('/')
+        .append(encode(context.getOperation()));
+  }
+
+  private HttpURLConnection open(String url, OperationContext context) {
+    HttpURLConnection connection;
+    try {
+      connection = (HttpURLConnection) new URL(url).openConnection();
+      connection.setRequestMethod("POST");
+    } catch (IOException e) {
+      throw newUpstreamException(e);
+    }
+    connection.setDoOutput(true);
+    connection.setUseCaches(false);
+    connection.setInstanceFollowRedirects(false);
+    connection.setConnectTimeout(connectTimeoutMillis);
+    for (Map.Entry<String, String> header : context.getHeaders().entrySet()) {
+      String name = header.getKey().toLowerCase(Locale.ROOT);
+      if (!UNFORWARDED_HEADERS.contains(name)
+          && !name.startsWith("content-")
+          && !name.startsWith("nexus-callback-")) {
+        connection.setRequestProperty(header.getKey(), header.getValue());
+      }
+    }
+    int readTimeout = readTimeoutMillis;
+    Instant deadline = context.getDeadline();
+    if (deadline != null) {
+      long remaining = Duration.between(Instant.now(), deadline).toMillis();
+      if (remaining <= 0) {
+        throw new HandlerException(
+            HandlerException.ErrorType.REQUEST_TIMEOUT,
+            "Deadline exceeded before forwarding",
+            null,
+            HandlerException.RetryBehavior.UNSPECIFIED);
+      }
+      connection.setRequestProperty(Header.REQUEST_TIMEOUT, remaining + "ms");
+      int remainingMillis = (int) Math.min(remaining, Integer.MAX_VALUE);
+      readTimeout = readTimeout == 0 ? remainingMillis : Math.min(readTimeout, remainingMillis);
+    }
+    connection.setReadTimeout(readTimeout);
+    return connection;
+  }
+
+  private static String readAsyncToken(OperationContext context, HttpURLConnection connection) {
+    String token;
+    try {
+      byte[] body = readAll(connection.getInputStream());
+      token = FailureInfoCodec.readStringField(body, "token");
+      if (token == null) {
+        // Upstreams on older protocol versions only return an ID
+        token = FailureInfoCodec.readStringField(body, "id");
+      }
+    } catch (IOException e) {
+      throw newUpstreamException(e);
+    } catch (IllegalArgumentException e) {
+      token = null;
+    }
+    if (token == null) {
+      throw new HandlerException(
+          HandlerException.ErrorType.INTERNAL,
+          "Upstream async response has no operation token",
+          null,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    }
+    addLinks(context, connection);
+    return token;
+  }
+
+  private static void addLinks(OperationContext context, HttpURLConnection connection) {
+    for (String value : headerValues(connection, LINK_HEADER)) {
+      Link link = parseLink(value);
+      if (link != null) {
+        context.addLinks(link);
+      }
+    }
+  }
+
+  // The upstream failure is kept as the original failure, so it is passed on to the caller as is
+  private static OperationException readOperationException(HttpURLConnection connection) {
+    FailureInfo failure = readFailure(connection);
+    List<String> stateHeader = headerValues(connection, OPERATION_STATE_HEADER);
+    OperationState state =
+        !stateHeader.isEmpty() && stateHeader.get(0).trim().equalsIgnoreCase("canceled")
+            ? OperationState.CANCELED
+            : OperationState.FAILED;
+    if (failure == null) {
+      String message = "Upstream operation did not complete successfully";
+      return state == OperationState.CANCELED
+          ? OperationException.canceled(message)
+          : OperationException.failed(message);
+    }
+    return OperationException.fromFailure(state, failure);
+  }
+
+  private static HandlerException readHandlerException(HttpURLConnection connection, int status) {
+    FailureInfo failure = readFailure(connection);
+    HandlerException.RetryBehavior retryBehavior = HandlerException.RetryBehavior.UNSPECIFIED;
+    List<String> retryable = headerValues(connection, Header.RETRYABLE);
+    if (!retryable.isEmpty()) {
+      retryBehavior =
+          Boolean.parseBoolean(retryable.get(0).trim())
+              ? HandlerException.RetryBehavior.RETRYABLE
+              : HandlerException.RetryBehavior.NON_RETRYABLE;
+    }
+    HandlerException.ErrorType errorType = errorTypeOf(status);
+    if (failure == null) {
+      return new HandlerException(
+          errorType, "Upstream responded with status " + status, null, retryBehavior);
+    }
+    return new HandlerException(errorType, failure.getMessage(), null, retryBehavior, failure);
+  }
+
+  private static @Nullable FailureInfo readFailure(HttpURLConnection connection) {
+    InputStream in = connection.getErrorStream();
+    if (in == null) {
+      return null;
+    }
+    try {
+      // Read to the end so the connection can be reused
+      byte[] body = readAll(in);
+      return body.length == 0 ? null : FailureInfoCodec.read(body);
+    } catch (IOException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static HandlerException.ErrorType errorTypeOf(int status) {
+    switch (status) {
+      case 400:
+        return HandlerException.ErrorType.BAD_REQUEST;
+      case 401:
+        return HandlerException.ErrorType.UNAUTHENTICATED;
+      case 403:
+        return HandlerException.ErrorType.UNAUTHORIZED;
+      case 404:
+        return HandlerException.ErrorType.NOT_FOUND;
+      case 408:
+        return HandlerException.ErrorType.REQUEST_TIMEOUT;
+      case 409:
+        return HandlerException.ErrorType.CONFLICT;
+      case 429:
+        return HandlerException.ErrorType.RESOURCE_EXHAUSTED;
+      case 500:
+        return HandlerException.ErrorType.INTERNAL;
+      case 501:
+        return HandlerException.ErrorType.NOT_IMPLEMENTED;
+      case 503:
+        return HandlerException.ErrorType.UNAVAILABLE;
+      case 520:
+        return HandlerException.ErrorType.UPSTREAM_TIMEOUT;
+      default:
+        return HandlerException.ErrorType.UNKNOWN;
+    }
+  }
+
+  private static HandlerException newUpstreamException(IOException e) {
+    if (e instanceof SocketTimeoutException) {
+      return new HandlerException(
+          HandlerException.ErrorType.UPSTREAM_TIMEOUT,
+          "Upstream timed out",
+          e,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    }
+    return new HandlerException(
+        HandlerException.ErrorType.UNAVAILABLE,
+        "Upstream unavailable",
+        e,
+        HandlerException.RetryBehavior.UNSPECIFIED);
+  }
+
+  private static List<String> headerValues(HttpURLConnection connection, String name) {
+    for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey())) {
+        return header.getValue();
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  // Links are formatted as <uri>; type="type"
+  private static @Nullable Link parseLink(String value) {
+    int uriEnd = value.indexOf('>');
+    int typeStart = value.indexOf("type=\"", uriEnd);
+    if (!value.startsWith("<") || uriEnd < 0 || typeStart < 0) {
+      return null;
+    }
+    typeStart += "type=\"".length();
+    int typeEnd = value.indexOf('"', typeStart);
+    if (typeEnd < 0) {
+      return null;
+    }
+    try {
+      return Link.newBuilder()
+          .setUri(new URI(value.substring(1, uriEnd)))
+          .setType(value.substring(typeStart, typeEnd))
+          .build();
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  private static long parseLength(String value) {
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    try (InputStream closing = in) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+      byte[] chunk = new byte[1024];
+      int read;
+      while ((read = closing.read(chunk)) != -1) {
+        out.write(chunk, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  private static String encode(String value) {
+    try {
+      // Path segments and query values both need spaces as %20
+      return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+    } catch (UnsupportedEncodingException e) {
+      // UTF-8 is always supported
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Builder for a forwarding handler. */
+  public static class Builder {
+    private @Nullable String defaultEndpoint;
+    private final Map<String, String> serviceEndpoints;
+    private final Map<String, Map<String, String>> operationEndpoints;
+    private UnaryOperator<String> callbackUrlRewriter = UnaryOperator.identity();
+    private UnaryOperator<String> operationTokenRewriter = UnaryOperator.identity();
+    private UnaryOperator<String> operationTokenResolver = UnaryOperator.identity();
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private @Nullable Duration readTimeout;
+
+    private Builder() {
+      serviceEndpoints = new HashMap<>();
+      operationEndpoints = new HashMap<>();
+    }
+
+    /**
+     * Set the endpoint for calls with no service or operation route, as the base URL that service
+     * and operation path segments are appended to.
+     */
+    public Builder setDefaultEndpoint(String endpoint) {
+      this.defaultEndpoint = endpoint;
+      return this;
+    }
+
+    /** Set the endpoint for all operations of a service. */
+    public Builder putServiceEndpoint(String service, String endpoint) {
+      serviceEndpoints.put(service, endpoint);
+      return this;
+    }
+
+    /** Set the endpoint for a specific operation. Takes precedence over the service endpoint. */
+    public Builder putOperationEndpoint(String service, String operation, String endpoint) {
+      operationEndpoints.computeIfAbsent(service, k -> new HashMap<>()).put(operation, endpoint);
+      return this;
+    }
+
+    /** Set the function applied to callback URLs of starts before forwarding. Default is none. */
+    public Builder setCallbackUrlRewriter(UnaryOperator<String> callbackUrlRewriter) {
+      this.callbackUrlRewriter = callbackUrlRewriter;
+      return this;
+    }
+
+    /**
+     * Set the function applied to upstream operation tokens of async results before they are
+     * returned. Default is none.
+     */
+    public Builder setOperationTokenRewriter(UnaryOperator<String> operationTokenRewriter) {
+      this.operationTokenRewriter = operationTokenRewriter;
+      return this;
+    }
+
+    /**
+     * Set the function applied to operation tokens of cancels before forwarding, typically the
+     * inverse of the operation token rewriter. Default is none.
+     */
+    public Builder setOperationTokenResolver(UnaryOperator<String> operationTokenResolver) {
+      this.operationTokenResolver = operationTokenResolver;
+      return this;
+    }
+
+    /** Set the timeout to connect to an upstream. Default is 10 seconds. */
+    public Builder setConnectTimeout(Duration connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+    }
+
+    /**
+     * Set the timeout for each read from an upstream. Default is none, bounded only by the
+     * deadline of the call if it has one.
+     */
+    public Builder setReadTimeout(@Nullable Duration readTimeout) {
+      this.readTimeout = readTimeout;
+      return this;
+    }
+
+    /** Build the handler. */
+    public ForwardingHandler build() {
+      if (defaultEndpoint == null && serviceEndpoints.isEmpty() && operationEndpoints.isEmpty()) {
+        throw new IllegalStateException("At least one endpoint required");
+      }
+      if (connectTimeout.isNegative() || (readTimeout != null && readTimeout.isNegative())) {
+        throw new IllegalArgumentException("Timeouts cannot be negative");
+      }
+      Map<String, String> serviceEndpoints = new HashMap<>();
+      for (Map.Entry<String, String> entry : this.serviceEndpoints.entrySet()) {
+        serviceEndpoints.put(entry.getKey(), normalizeEndpoint(entry.getValue()));
+      }
+      Map<String, Map<String, String>> operationEndpoints = new HashMap<>();
+      for (Map.Entry<String, Map<String, String>> service : this.operationEndpoints.entrySet()) {
+        Map<String, String> endpoints = new HashMap<>();
+        for (Map.Entry<String, String> entry : service.getValue().entrySet()) {
+          endpoints.put(entry.getKey(), normalizeEndpoint(entry.getValue()));
+        }
+        operationEndpoints.put(service.getKey(), Collections.unmodifiableMap(endpoints));
+      }
+      return new ForwardingHandler(
+          defaultEndpoint == null ? null : normalizeEndpoint(defaultEndpoint),
+          Collections.unmodifiableMap(serviceEndpoints),
+          Collections.unmodifiableMap(operationEndpoints),
+          callbackUrlRewriter,
+          operationTokenRewriter,
+          operationTokenResolver,
+          (int) Math.min(connectTimeout.toMillis(), Integer.MAX_VALUE),
+          readTimeout == null ? 0 : (int) Math.min(readTimeout.toMillis(), Integer.MAX_VALUE));
+    }
+
+    private static String normalizeEndpoint(String endpoint) {
+      URL url;
+      try {
+        url = new URL(endpoint);
+      } catch (MalformedURLException e) {
+        throw new IllegalArgumentException("Invalid endpoint " + endpoint, e);
+      }
+      if (!url.getProtocol().equals("http") && !url.getProtocol().equals("https")) {
+        throw new IllegalArgumentException("Endpoint must be HTTP or HTTPS: " + endpoint);
+      }
+      return endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+    }
+  }
+}
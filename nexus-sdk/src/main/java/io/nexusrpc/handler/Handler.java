@@ -2,6 +2,8 @@ package io.nexusrpc.handler;
 
 import io.nexusrpc.Experimental;
 import io.nexusrpc.OperationException;
+import java.util.ArrayList;
+import java.util.List;
 
 /** Top-level handler for service calls. */
 @Experimental
@@ -17,6 +19,22 @@ public interface Handler {
       OperationContext context, OperationStartDetails details, HandlerInputContent input)
       throws OperationException, HandlerException;
 
+  /**
+   * Handle the start of a batch of operations, returning a result for each request in the same
+   * order. A failure of one start does not fail the others, it is captured in its result instead.
+   *
+   * <p>The default implementation starts each operation in turn via {@link #startOperation}.
+   * Implementations may start them concurrently. As with {@link #startOperation}, input streams are
+   * closed by the caller once this returns.
+   */
+  default List<BatchStartResult> startOperations(List<BatchStartRequest> requests) {
+    List<BatchStartResult> results = new ArrayList<>(requests.size());
+    for (BatchStartRequest request : requests) {
+      results.add(BatchStartResult.start(this, request));
+    }
+    return results;
+  }
+
   /**
    * Cancel the asynchronously started operation. See {@link OperationHandler#cancel} for details.
    */
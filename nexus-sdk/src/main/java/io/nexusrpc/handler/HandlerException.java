@@ -1,7 +1,8 @@
 package io.nexusrpc.handler;
 
 import io.nexusrpc.FailureInfo;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import org.jspecify.annotations.Nullable;
 
 /** Thrown from a handler for any unexpected error. */
@@ -31,6 +32,16 @@ public class HandlerException extends RuntimeException {
     NON_RETRYABLE
   }
 
+  private static final Map<String, ErrorType> ERROR_TYPES_BY_NAME;
+
+  static {
+    ErrorType[] errorTypes = ErrorType.values();
+    ERROR_TYPES_BY_NAME = new HashMap<>(errorTypes.length * 2);
+    for (ErrorType errorType : errorTypes) {
+      ERROR_TYPES_BY_NAME.put(errorType.name(), errorType);
+    }
+  }
+
   private final String rawErrorType;
   private final ErrorType errorType;
   private final RetryBehavior retryBehavior;
@@ -129,14 +140,39 @@ public class HandlerException extends RuntimeException {
       FailureInfo originalFailure) {
     super(message, cause);
     this.rawErrorType = errorType.name();
-    this.errorType =
-        Arrays.stream(ErrorType.values()).anyMatch((t) -> t.name().equals(rawErrorType))
-            ? ErrorType.valueOf(rawErrorType)
-            : ErrorType.UNKNOWN;
+    this.errorType = errorType;
     this.retryBehavior = retryBehavior;
     this.originalFailure = originalFailure;
   }
 
+  /**
+   * Create a handler exception with the given error type, message, cause, and retry behavior,
+   * optionally without a stack trace.
+   *
+   * <p>Filling in the stack trace is most of the cost of creating an exception. Handlers that throw
+   * these for expected conditions such as load shedding can disable it. An exception without a
+   * stack trace also has suppression disabled, so one without a cause can be created once and
+   * thrown repeatedly.
+   *
+   * @param errorType The error type.
+   * @param message The error message.
+   * @param cause The cause of this exception.
+   * @param retryBehavior The retry behavior for this exception.
+   * @param writableStackTrace Whether the stack trace is filled in.
+   */
+  public HandlerException(
+      ErrorType errorType,
+      String message,
+      @Nullable Throwable cause,
+      RetryBehavior retryBehavior,
+      boolean writableStackTrace) {
+    super(message, cause, writableStackTrace, writableStackTrace);
+    this.rawErrorType = errorType.name();
+    this.errorType = errorType;
+    this.retryBehavior = retryBehavior;
+    this.originalFailure = null;
+  }
+
   /**
    * Create a handler exception with a raw error type string, cause, and retry behavior.
    *
@@ -184,10 +220,7 @@ public class HandlerException extends RuntimeException {
       @Nullable FailureInfo originalFailure) {
     super(message, cause);
     this.rawErrorType = rawErrorType;
-    this.errorType =
-        Arrays.stream(ErrorType.values()).anyMatch((t) -> t.name().equals(rawErrorType))
-            ? ErrorType.valueOf(rawErrorType)
-            : ErrorType.UNKNOWN;
+    this.errorType = ERROR_TYPES_BY_NAME.getOrDefault(rawErrorType, ErrorType.UNKNOWN);
     this.retryBehavior = retryBehavior;
     this.originalFailure = originalFailure;
   }
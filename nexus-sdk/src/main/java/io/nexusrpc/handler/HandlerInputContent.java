@@ -9,7 +9,10 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import org.jspecify.annotations.Nullable;
 
-/** Content that can be fixed or streaming for start operation input. */
+/**
+ * Content that can be fixed or streaming for start operation input. The data can be consumed as a
+ * blocking stream or as a non-blocking {@link ContentPublisher}, whichever it was created with.
+ */
 @Experimental
 public class HandlerInputContent {
   /** Create a builder for content. */
@@ -17,11 +20,17 @@ public class HandlerInputContent {
     return new Builder();
   }
 
-  private final AtomicReference<InputStream> dataStream;
+  // Number of chunks requested ahead when a publisher is read as a stream
+  private static final int STREAM_PREFETCH = 4;
+  // Size of chunks when a stream is read as a publisher
+  private static final int PUBLISHER_CHUNK_SIZE = 8192;
+
+  // Input stream or content publisher
+  private final AtomicReference<Object> data;
   private final Map<String, String> headers;
 
-  private HandlerInputContent(InputStream dataStream, Map<String, String> headers) {
-    this.dataStream = new AtomicReference<>(dataStream);
+  private HandlerInputContent(Object data, Map<String, String> headers) {
+    this.data = new AtomicReference<>(data);
     this.headers = headers;
   }
 
@@ -29,13 +38,39 @@ public class HandlerInputContent {
    * Consume stream. Once called, this cannot be called again nor can {@link #consumeBytes} be
    * called. Users should not close this stream, it is closed externally when the operation method
    * is complete. Therefore, the InputStream cannot be used after the operation method is complete.
+   *
+   * <p>If the content was created with a publisher, reads block until it delivers content, so the
+   * stream must not be read on a thread the publisher delivers content on, such as the event loop
+   * of a non-blocking transport. Such reads never return.
    */
   public InputStream consumeStream() {
-    InputStream stream = dataStream.getAndSet(null);
-    if (stream == null) {
+    Object data = consumeData();
+    if (data instanceof ContentPublisher) {
+      return new PublisherInputStream((ContentPublisher) data, STREAM_PREFETCH);
+    }
+    return (InputStream) data;
+  }
+
+  /**
+   * Consume the data as a publisher that content can be requested from without blocking. Once
+   * called, this cannot be called again nor can {@link #consumeStream} or {@link #consumeBytes} be
+   * called. If the content was created with a stream, the stream is read on the thread requesting
+   * content, see {@link ContentPublisher#fromStream}.
+   */
+  public ContentPublisher consumePublisher() {
+    Object data = consumeData();
+    if (data instanceof InputStream) {
+      return ContentPublisher.fromStream((InputStream) data, PUBLISHER_CHUNK_SIZE);
+    }
+    return (ContentPublisher) data;
+  }
+
+  private Object consumeData() {
+    Object data = this.data.getAndSet(null);
+    if (data == null) {
       throw new IllegalStateException("Data already consumed");
     }
-    return stream;
+    return data;
   }
 
   /**
@@ -64,15 +99,27 @@ public class HandlerInputContent {
   /** Builder for content. */
   public static class Builder {
     private @Nullable InputStream dataStream;
+    private @Nullable ContentPublisher dataPublisher;
     private final SortedMap<String, String> headers;
 
     private Builder() {
       headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     }
 
-    /** Set data stream. Required. */
+    /** Set data stream. Unsets any data publisher set before. This or a publisher is required. */
     public Builder setDataStream(InputStream data) {
       dataStream = data;
+      dataPublisher = null;
+      return this;
+    }
+
+    /**
+     * Set data publisher, for transports that receive content without blocking. Unsets any data
+     * stream set before. This or a stream is required.
+     */
+    public Builder setDataPublisher(ContentPublisher data) {
+      dataPublisher = data;
+      dataStream = null;
       return this;
     }
 
@@ -88,7 +135,8 @@ public class HandlerInputContent {
     }
 
     public HandlerInputContent build() {
-      Objects.requireNonNull(dataStream, "Data stream required");
+      Object data = dataStream != null ? dataStream : dataPublisher;
+      Objects.requireNonNull(data, "Data stream or publisher required");
       // TODO(cretz): Most of the time the headers come over immutable
       // anyways, are we unnecessarily introducing overhead copying them every
       // time?
@@ -101,7 +149,7 @@ public class HandlerInputContent {
                       (a, b) -> a,
                       () -> new TreeMap<>(String.CASE_INSENSITIVE_ORDER)));
       return new HandlerInputContent(
-          dataStream, Collections.unmodifiableMap(new TreeMap<>(normalizedHeaders)));
+          data, Collections.unmodifiableMap(new TreeMap<>(normalizedHeaders)));
     }
   }
 }
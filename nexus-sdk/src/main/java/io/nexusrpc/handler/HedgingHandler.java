@@ -0,0 +1,547 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.Link;
+import io.nexusrpc.OperationException;
+import io.nexusrpc.ServiceDefinition;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Handler that hedges starts of latency-critical idempotent operations across handlers, typically
+ * one per replica. A start is first sent to one handler, and if it has not completed within the
+ * hedge delay, a second attempt is sent to the next handler. The first attempt to succeed, or to
+ * fail with an {@link OperationException} or a non-retryable {@link HandlerException}, wins. An
+ * attempt failing with a retryable handler exception is hedged right away instead.
+ *
+ * <p>The hedge delay is a percentile of recent start latencies, or the initial delay until there
+ * are enough of them. Hedges are limited by a budget, a ratio of hedges to hedged calls, to cap
+ * the extra load. Both attempts share the same start details, so the request ID lets handlers
+ * deduplicate them.
+ *
+ * <p>The losing attempt has its handler method cancelled. If it still completes, its sync result
+ * stream is closed, or its async operation is cancelled unless it has the operation token of the
+ * winner, as handlers deduplicating by request ID return for both attempts. Attempts run on the
+ * executor and the input is read up front so that both attempts can be sent it. Cancels are sent
+ * to one handler, so handlers are assumed to share operation state.
+ */
+@Experimental
+public class HedgingHandler implements Handler {
+  /** Create a builder for a hedging handler. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final int LATENCY_WINDOW = 128;
+  // Latencies needed before the percentile is used, and how often it is recomputed after that
+  private static final int LATENCY_RECOMPUTE_INTERVAL = 16;
+  private static final long BUDGET_TOKEN = 1000;
+  // Hedges that can be saved up from a run of calls without any
+  private static final long MAX_BUDGET_TOKENS = 10 * BUDGET_TOKEN;
+
+  private final List<Handler> handlers;
+  private final Executor executor;
+  private final Predicate<OperationContext> hedgeFilter;
+  private final double delayPercentile;
+  private final Duration initialDelay;
+  private final double budget;
+  private final long budgetTokensPerCall;
+  private final AtomicInteger nextHandler = new AtomicInteger();
+  private final AtomicLong budgetTokens = new AtomicLong();
+  // Guarded by itself
+  private final long[] latencies = new long[LATENCY_WINDOW];
+  private long latencyCount;
+  private volatile long hedgeDelayNanos;
+
+  private HedgingHandler(
+      List<Handler> handlers,
+      Executor executor,
+      Predicate<OperationContext> hedgeFilter,
+      double delayPercentile,
+      Duration initialDelay,
+      double budget) {
+    this.handlers = handlers;
+    this.executor = executor;
+    this.hedgeFilter = hedgeFilter;
+    this.delayPercentile = delayPercentile;
+    this.initialDelay = initialDelay;
+    this.budget = budget;
+    this.budgetTokensPerCall = (long) (budget * BUDGET_TOKEN);
+    this.hedgeDelayNanos = initialDelay.toNanos();
+  }
+
+  /** Handlers that attempts are sent to, in turn. */
+  public List<Handler> getHandlers() {
+    return handlers;
+  }
+
+  /** Executor that attempts run on. */
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /** Filter for which calls are hedged. */
+  public Predicate<OperationContext> getHedgeFilter() {
+    return hedgeFilter;
+  }
+
+  /** Percentile of recent start latencies used as the hedge delay, between 0 and 1. */
+  public double getDelayPercentile() {
+    return delayPercentile;
+  }
+
+  /** Hedge delay used until there are enough recent start latencies. */
+  public Duration getInitialDelay() {
+    return initialDelay;
+  }
+
+  /** Maximum ratio of hedges to hedged calls. */
+  public double getBudget() {
+    return budget;
+  }
+
+  /** Current hedge delay. */
+  public Duration getHedgeDelay() {
+    return Duration.ofNanos(hedgeDelayNanos);
+  }
+
+  @Override
+  public OperationStartResult<HandlerResultContent> startOperation(
+      OperationContext context, OperationStartDetails details, HandlerInputContent input)
+      throws OperationException {
+    int first = Math.floorMod(nextHandler.getAndIncrement(), handlers.size());
+    if (!hedgeFilter.test(context)) {
+      return handlers.get(first).startOperation(context, details, input);
+    }
+    HedgedStart start = newHedgedStart(context, details, input);
+    start.launchPrimary(first);
+    return start.await();
+  }
+
+  /**
+   * Start a batch of operations. Calls not hedged are passed to one handler as a batch. The primary
+   * attempts of hedged calls are all launched before waiting on any, so they run concurrently.
+   */
+  @Override
+  public List<BatchStartResult> startOperations(List<BatchStartRequest> requests) {
+    BatchStartResult[] results = new BatchStartResult[requests.size()];
+    HedgedStart[] hedged = new HedgedStart[requests.size()];
+    List<BatchStartRequest> unhedged = new ArrayList<>();
+    List<Integer> unhedgedIndexes = new ArrayList<>();
+    for (int i = 0; i < results.length; i++) {
+      BatchStartRequest request = requests.get(i);
+      if (!hedgeFilter.test(request.getContext())) {
+        unhedged.add(request);
+        unhedgedIndexes.add(i);
+        continue;
+      }
+      try {
+        hedged[i] = newHedgedStart(request.getContext(), request.getDetails(), request.getInput());
+        hedged[i].launchPrimary(Math.floorMod(nextHandler.getAndIncrement(), handlers.size()));
+      } catch (RuntimeException e) {
+        results[i] = BatchStartResult.failure(e);
+      }
+    }
+    if (!unhedged.isEmpty()) {
+      int index = Math.floorMod(nextHandler.getAndIncrement(), handlers.size());
+      List<BatchStartResult> unhedgedResults = handlers.get(index).startOperations(unhedged);
+      for (int i = 0; i < unhedgedIndexes.size(); i++) {
+        results[unhedgedIndexes.get(i)] = unhedgedResults.get(i);
+      }
+    }
+    for (int i = 0; i < results.length; i++) {
+      HedgedStart start = hedged[i];
+      if (start == null) {
+        continue;
+      }
+      try {
+        results[i] = BatchStartResult.success(start.await());
+      } catch (OperationException e) {
+        results[i] = BatchStartResult.failure(e);
+      } catch (RuntimeException e) {
+        results[i] = BatchStartResult.failure(e);
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  @Override
+  public void cancelOperation(OperationContext context, OperationCancelDetails details) {
+    int index = Math.floorMod(nextHandler.getAndIncrement(), handlers.size());
+    handlers.get(index).cancelOperation(context, details);
+  }
+
+  private HedgedStart newHedgedStart(
+      OperationContext context, OperationStartDetails details, HandlerInputContent input) {
+    // Every call adds to the budget, up to the limit
+    budgetTokens.getAndUpdate(tokens -> Math.min(MAX_BUDGET_TOKENS, tokens + budgetTokensPerCall));
+    byte[] inputBytes;
+    try {
+      inputBytes = input.consumeBytes();
+    } catch (IOException e) {
+      throw new HandlerException(
+          HandlerException.ErrorType.BAD_REQUEST,
+          "Failed reading input",
+          e,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    }
+    return new HedgedStart(context, details, input.getHeaders(), inputBytes);
+  }
+
+  private boolean tryAcquireBudget() {
+    long tokens;
+    do {
+      tokens = budgetTokens.get();
+      if (tokens < BUDGET_TOKEN) {
+        return false;
+      }
+    } while (!budgetTokens.compareAndSet(tokens, tokens - BUDGET_TOKEN));
+    return true;
+  }
+
+  private static boolean isRetryable(@Nullable Throwable failure) {
+    return failure instanceof HandlerException && ((HandlerException) failure).isRetryable();
+  }
+
+  private void recordLatency(long latencyNanos) {
+    synchronized (latencies) {
+      latencies[(int) (latencyCount++ % LATENCY_WINDOW)] = latencyNanos;
+      if (latencyCount % LATENCY_RECOMPUTE_INTERVAL != 0) {
+        return;
+      }
+      long[] sorted = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_WINDOW));
+      Arrays.sort(sorted);
+      hedgeDelayNanos = sorted[(int) Math.min(sorted.length - 1, delayPercentile * sorted.length)];
+    }
+  }
+
+  private static class Attempt {
+    private final Handler handler;
+    private final OperationContext context;
+    private final OperationMethodCanceller canceller;
+    private @Nullable OperationStartResult<HandlerResultContent> result;
+    private @Nullable Throwable failure;
+
+    private Attempt(Handler handler, OperationContext context, OperationMethodCanceller canceller) {
+      this.handler = handler;
+      this.context = context;
+      this.canceller = canceller;
+    }
+  }
+
+  // State of one hedged start, shared by its attempts
+  private class HedgedStart {
+    private final OperationContext context;
+    private final OperationStartDetails details;
+    private final Map<String, String> inputHeaders;
+    private final byte[] inputBytes;
+    private final BlockingQueue<Attempt> completed = new LinkedBlockingQueue<>();
+    private final OperationMethodCancellationListener listener;
+    private int first;
+    private long hedgeAtNanos;
+    // Guarded by this
+    private final List<Attempt> attempts = new ArrayList<>(2);
+    private boolean done;
+    // Set before done, so seen by attempts discarded after it
+    private @Nullable String winnerOperationToken;
+
+    private HedgedStart(
+        OperationContext context,
+        OperationStartDetails details,
+        Map<String, String> inputHeaders,
+        byte[] inputBytes) {
+      this.context = context;
+      this.details = details;
+      this.inputHeaders = inputHeaders;
+      this.inputBytes = inputBytes;
+      this.listener =
+          () -> cancelAll(Objects.toString(context.getMethodCancellationReason(), "cancelled"));
+    }
+
+    private void launchPrimary(int first) {
+      this.first = first;
+      context.addMethodCancellationListener(listener);
+      hedgeAtNanos = System.nanoTime() + hedgeDelayNanos;
+      launch(first);
+    }
+
+    private OperationStartResult<HandlerResultContent> await() throws OperationException {
+      try {
+        return awaitWinner();
+      } finally {
+        context.removeMethodCancellationListener(listener);
+      }
+    }
+
+    private OperationStartResult<HandlerResultContent> awaitWinner() throws OperationException {
+      boolean hedgeable = true;
+      int pending = 1;
+      Attempt winner = null;
+      try {
+        while (winner == null) {
+          // The hedge delay counts from the launch, which may be well before waiting in a batch
+          Attempt attempt =
+              hedgeable
+                  ? completed.poll(hedgeAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS)
+                  : completed.take();
+          if (attempt != null) {
+            pending--;
+            if (!isRetryable(attempt.failure)) {
+              winner = attempt;
+              continue;
+            } else if (pending > 0) {
+              continue;
+            }
+          }
+          // Timed out, or failed retryably with nothing else pending, so hedge if the budget allows
+          if (hedgeable) {
+            hedgeable = false;
+            if (tryAcquireBudget()) {
+              pending++;
+              launch(first + 1);
+              continue;
+            }
+          }
+          winner = attempt;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancelAll("Interrupted");
+        throw new HandlerException(
+            HandlerException.ErrorType.INTERNAL,
+            "Interrupted waiting for hedged start",
+            e,
+            HandlerException.RetryBehavior.UNSPECIFIED);
+      }
+      finish(winner);
+      if (winner.failure != null) {
+        if (winner.failure instanceof OperationException) {
+          throw (OperationException) winner.failure;
+        } else if (winner.failure instanceof RuntimeException) {
+          throw (RuntimeException) winner.failure;
+        }
+        throw (Error) winner.failure;
+      }
+      // Links the winning attempt adds after it is copied are dropped
+      context.addLinks(winner.context.freezeLinks().toArray(new Link[0]));
+      return Objects.requireNonNull(winner.result);
+    }
+
+    private void launch(int index) {
+      // Each attempt gets its own canceller and links
+      OperationContext.Builder builder =
+          OperationContext.newBuilder()
+              .setService(context.getService())
+              .setOperation(context.getOperation());
+      builder.getHeaders().putAll(context.getHeaders());
+      Instant deadline = context.getDeadline();
+      if (deadline != null) {
+        builder.setDeadline(deadline);
+      }
+      ServiceDefinition serviceDefinition = context.getServiceDefinition();
+      if (serviceDefinition != null) {
+        builder.setServiceDefinition(serviceDefinition);
+      }
+      OperationMethodCanceller canceller = new OperationMethodCanceller();
+      Attempt attempt =
+          new Attempt(
+              handlers.get(index % handlers.size()),
+              builder.setMethodCanceller(canceller).build(),
+              canceller);
+      boolean primary;
+      synchronized (this) {
+        attempts.add(attempt);
+        primary = attempts.size() == 1;
+      }
+      Runnable run = () -> runAttempt(attempt, primary);
+      try {
+        executor.execute(run);
+      } catch (RejectedExecutionException e) {
+        run.run();
+      }
+    }
+
+    private void runAttempt(Attempt attempt, boolean primary) {
+      HandlerInputContent.Builder input =
+          HandlerInputContent.newBuilder().setDataStream(new ByteArrayInputStream(inputBytes));
+      input.getHeaders().putAll(inputHeaders);
+      long start = System.nanoTime();
+      try {
+        attempt.result = attempt.handler.startOperation(attempt.context, details, input.build());
+        if (primary) {
+          recordLatency(System.nanoTime() - start);
+        }
+      } catch (Throwable e) {
+        attempt.failure = e;
+      }
+      boolean lost;
+      synchronized (this) {
+        lost = done;
+      }
+      if (lost) {
+        discard(attempt);
+      } else {
+        completed.add(attempt);
+      }
+    }
+
+    private void finish(Attempt winner) {
+      List<Attempt> losers = new ArrayList<>(1);
+      synchronized (this) {
+        winnerOperationToken =
+            winner.result == null ? null : winner.result.getAsyncOperationToken();
+        done = true;
+        for (Attempt attempt : attempts) {
+          if (attempt != winner) {
+            losers.add(attempt);
+          }
+        }
+      }
+      for (Attempt loser : losers) {
+        loser.canceller.cancel("Hedged attempt lost");
+      }
+      // Attempts that completed before the winner was picked are discarded here, the others when
+      // they complete
+      Attempt attempt;
+      while ((attempt = completed.poll()) != null) {
+        discard(attempt);
+      }
+    }
+
+    private void cancelAll(String reason) {
+      List<Attempt> current;
+      synchronized (this) {
+        current = new ArrayList<>(attempts);
+      }
+      for (Attempt attempt : current) {
+        attempt.canceller.cancel(reason);
+      }
+    }
+
+    private void discard(Attempt attempt) {
+      OperationStartResult<HandlerResultContent> result = attempt.result;
+      if (result == null) {
+        return;
+      }
+      try {
+        String operationToken = result.getAsyncOperationToken();
+        if (operationToken != null) {
+          String winnerOperationToken;
+          synchronized (this) {
+            winnerOperationToken = this.winnerOperationToken;
+          }
+          // Both attempts share the request ID, so they may have started the same operation
+          if (operationToken.equals(winnerOperationToken)) {
+            return;
+          }
+          attempt.handler.cancelOperation(
+              attempt.context,
+              OperationCancelDetails.newBuilder().setOperationToken(operationToken).build());
+          return;
+        }
+        HandlerResultContent content = result.getSyncResult();
+        InputStream stream = content == null ? null : content.getDataStream();
+        if (stream != null) {
+          stream.close();
+        }
+      } catch (IOException | RuntimeException e) {
+        // The losing attempt is best effort to clean up
+      }
+    }
+  }
+
+  /** Builder for a hedging handler. */
+  public static class Builder {
+    private final List<Handler> handlers;
+    private @Nullable Executor executor;
+    private Predicate<OperationContext> hedgeFilter = context -> true;
+    private double delayPercentile = 0.95;
+    private Duration initialDelay = Duration.ofMillis(100);
+    private double budget = 0.1;
+
+    private Builder() {
+      handlers = new ArrayList<>();
+    }
+
+    /**
+     * Add a handler that attempts are sent to. At least one is required. With only one, both
+     * attempts are sent to it, which suits a handler that balances across replicas itself.
+     */
+    public Builder addHandler(Handler handler) {
+      handlers.add(handler);
+      return this;
+    }
+
+    /** Get handlers to mutate. */
+    public List<Handler> getHandlers() {
+      return handlers;
+    }
+
+    /** Set the executor that attempts run on. Required. */
+    public Builder setExecutor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Set the filter for which calls are hedged, which should only accept idempotent operations.
+     * Calls not hedged are sent to one handler on the calling thread. Default accepts all calls.
+     */
+    public Builder setHedgeFilter(Predicate<OperationContext> hedgeFilter) {
+      this.hedgeFilter = hedgeFilter;
+      return this;
+    }
+
+    /** Set the percentile of recent start latencies used as the hedge delay. Default is 0.95. */
+    public Builder setDelayPercentile(double delayPercentile) {
+      this.delayPercentile = delayPercentile;
+      return this;
+    }
+
+    /** Set the hedge delay used until there are enough start latencies. Default is 100ms. */
+    public Builder setInitialDelay(Duration initialDelay) {
+      this.initialDelay = initialDelay;
+      return this;
+    }
+
+    /** Set the maximum ratio of hedges to hedged calls, between 0 and 1. Default is 0.1. */
+    public Builder setBudget(double budget) {
+      this.budget = budget;
+      return this;
+    }
+
+    /** Build the handler. */
+    public HedgingHandler build() {
+      Objects.requireNonNull(executor, "Executor required");
+      if (handlers.isEmpty()) {
+        throw new IllegalStateException("At least one handler required");
+      } else if (!(delayPercentile > 0 && delayPercentile <= 1)) {
+        throw new IllegalArgumentException("Delay percentile must be above 0 and at most 1");
+      } else if (!(budget >= 0 && budget <= 1)) {
+        throw new IllegalArgumentException("Budget must be between 0 and 1");
+      } else if (initialDelay.isNegative()) {
+        throw new IllegalArgumentException("Initial delay cannot be negative");
+      }
+      return new HedgingHandler(
+          Collections.unmodifiableList(new ArrayList<>(handlers)),
+          executor,
+          hedgeFilter,
+          delayPercentile,
+          initialDelay,
+          budget);
+    }
+  }
+}
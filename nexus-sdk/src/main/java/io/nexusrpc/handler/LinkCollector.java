@@ -0,0 +1,89 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Link;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Links of an operation context, shared by the context and builders made from it. Links are
+ * appended without locking from any thread, by replacing an immutable array. Reads return a
+ * snapshot that is only created again after a change. Once frozen, when the response is written,
+ * changes are dropped.
+ */
+final class LinkCollector {
+  private static final State EMPTY = new State(new Link[0], false);
+
+  private final AtomicReference<State> state = new AtomicReference<>(EMPTY);
+
+  /** Append the links, unless frozen. */
+  void add(Link... links) {
+    if (links.length == 0) {
+      return;
+    }
+    while (true) {
+      State current = state.get();
+      if (current.frozen) {
+        return;
+      }
+      Link[] next = Arrays.copyOf(current.links, current.links.length + links.length);
+      System.arraycopy(links, 0, next, current.links.length, links.length);
+      if (state.compareAndSet(current, new State(next, false))) {
+        return;
+      }
+    }
+  }
+
+  /** Replace the links, unless frozen. */
+  void set(Link... links) {
+    State next = new State(links.clone(), false);
+    while (true) {
+      State current = state.get();
+      if (current.frozen || state.compareAndSet(current, next)) {
+        return;
+      }
+    }
+  }
+
+  /** Freeze the links and return them. */
+  List<Link> freeze() {
+    while (true) {
+      State current = state.get();
+      if (current.frozen || state.compareAndSet(current, new State(current.links, true))) {
+        return state.get().snapshot();
+      }
+    }
+  }
+
+  /** Read only snapshot of the links. */
+  List<Link> get() {
+    return state.get().snapshot();
+  }
+
+  boolean isFrozen() {
+    return state.get().frozen;
+  }
+
+  private static final class State {
+    private final Link[] links;
+    private final boolean frozen;
+    // Created on first read, racing readers create equal snapshots
+    private @Nullable List<Link> snapshot;
+
+    private State(Link[] links, boolean frozen) {
+      this.links = links;
+      this.frozen = frozen;
+    }
+
+    private List<Link> snapshot() {
+      List<Link> snapshot = this.snapshot;
+      if (snapshot == null) {
+        snapshot = Collections.unmodifiableList(Arrays.asList(links));
+        this.snapshot = snapshot;
+      }
+      return snapshot;
+    }
+  }
+}
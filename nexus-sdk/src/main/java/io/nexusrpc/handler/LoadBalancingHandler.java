@@ -0,0 +1,452 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Handler that spreads calls across replicas of an endpoint, each with its own handler, typically
+ * a {@link ForwardingHandler}.
+ *
+ * <p>Each call picks two replicas at random and uses the one with the lower product of its
+ * exponentially weighted moving average latency and its outstanding calls plus one. Failures often
+ * return fast, so a failed call counts as twice the latency of the slowest replica's successful
+ * calls, rather than making a failing replica look fast. Penalties are not based on earlier
+ * penalties, so estimates stay bounded through an outage, and they fade over the ejection duration,
+ * so a replica is tried again once it may have recovered. Replicas
+ * that fail a call with a non-retryable {@link HandlerException}, time out, or fail several calls
+ * in a row, such as while unavailable, are ejected for the ejection duration. Failures that are
+ * the caller's fault, such as bad requests and authorization failures, do not count against a
+ * replica. If every replica is ejected, calls are spread across all of them.
+ *
+ * <p>Endpoints are either added to the builder or read from a file of one endpoint per line, where
+ * blank lines and lines starting with {@code #} are skipped. The file is read again on a call at
+ * most once per reload interval. Replicas of endpoints still in the file keep their state, and a
+ * file that cannot be read or has no endpoints leaves the endpoints as they were.
+ *
+ * <p>Replicas are assumed to share operation state, so cancels are balanced like starts.
+ */
+@Experimental
+public class LoadBalancingHandler implements Handler {
+  /** Create a builder for a load balancing handler. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  // Weight of each new latency sample in the moving average
+  private static final double LATENCY_WEIGHT = 0.2;
+  // Factor a failed call's latency sample is scaled by
+  private static final double FAILURE_PENALTY = 2;
+  // Retryable failures in a row that eject a replica
+  private static final int EJECTION_FAILURES = 3;
+
+  private final @Nullable Path endpointsFile;
+  private final Function<String, ? extends Handler> replicaFactory;
+  private final Duration reloadInterval;
+  private final long reloadIntervalNanos;
+  private final Duration ejectionDuration;
+  private final long ejectionDurationNanos;
+  private final AtomicLong lastReloadNanos = new AtomicLong(System.nanoTime());
+  private volatile Replica[] replicas;
+
+  private LoadBalancingHandler(
+      @Nullable Path endpointsFile,
+      List<String> endpoints,
+      Function<String, ? extends Handler> replicaFactory,
+      Duration reloadInterval,
+      Duration ejectionDuration) {
+    this.endpointsFile = endpointsFile;
+    this.replicaFactory = replicaFactory;
+    this.reloadInterval = reloadInterval;
+    this.reloadIntervalNanos = reloadInterval.toNanos();
+    this.ejectionDuration = ejectionDuration;
+    this.ejectionDurationNanos = ejectionDuration.toNanos();
+    this.replicas = newReplicas(endpoints, new Replica[0]);
+  }
+
+  /** File the endpoints are read from, if any. */
+  public @Nullable Path getEndpointsFile() {
+    return endpointsFile;
+  }
+
+  /** Factory creating the handler of a replica from its endpoint. */
+  public Function<String, ? extends Handler> getReplicaFactory() {
+    return replicaFactory;
+  }
+
+  /** Minimum time between reads of the endpoints file. */
+  public Duration getReloadInterval() {
+    return reloadInterval;
+  }
+
+  /** How long a replica is ejected for after a failure. */
+  public Duration getEjectionDuration() {
+    return ejectionDuration;
+  }
+
+  /** Current endpoints, in the order listed. */
+  public List<String> getEndpoints() {
+    Replica[] replicas = this.replicas;
+    List<String> endpoints = new ArrayList<>(replicas.length);
+    for (Replica replica : replicas) {
+      endpoints.add(replica.endpoint);
+    }
+    return Collections.unmodifiableList(endpoints);
+  }
+
+  /** Whether the replica of the given endpoint is currently ejected. */
+  public boolean isEjected(String endpoint) {
+    long now = System.nanoTime();
+    for (Replica replica : replicas) {
+      if (replica.endpoint.equals(endpoint)) {
+        return !replica.isAvailable(now);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Read the endpoints file now, regardless of the reload interval. Does nothing if endpoints are
+   * not read from a file.
+   */
+  public void reload() {
+    Path endpointsFile = this.endpointsFile;
+    if (endpointsFile == null) {
+      return;
+    }
+    List<String> endpoints;
+    try {
+      endpoints = readEndpoints(endpointsFile);
+    } catch (IOException e) {
+      return;
+    }
+    synchronized (this) {
+      if (!endpoints.isEmpty() && !endpoints.equals(getEndpoints())) {
+        replicas = newReplicas(endpoints, replicas);
+      }
+    }
+  }
+
+  @Override
+  public OperationStartResult<HandlerResultContent> startOperation(
+      OperationContext context, OperationStartDetails details, HandlerInputContent input)
+      throws OperationException {
+    Replica replica = choose();
+    replica.outstanding.incrementAndGet();
+    long start = System.nanoTime();
+    boolean failed = false;
+    try {
+      return replica.handler.startOperation(context, details, input);
+    } catch (HandlerException e) {
+      failed = onFailure(replica, e);
+      throw e;
+    } finally {
+      complete(replica, System.nanoTime() - start, failed);
+    }
+  }
+
+  /**
+   * Start a batch of operations, picking a replica for each request and passing the requests picked
+   * for the same replica to its handler as one batch.
+   */
+  @Override
+  public List<BatchStartResult> startOperations(List<BatchStartRequest> requests) {
+    BatchStartResult[] results = new BatchStartResult[requests.size()];
+    Map<Replica, List<Integer>> indexesByReplica = new IdentityHashMap<>();
+    for (int i = 0; i < results.length; i++) {
+      Replica replica = choose();
+      replica.outstanding.incrementAndGet();
+      indexesByReplica.computeIfAbsent(replica, k -> new ArrayList<>()).add(i);
+    }
+    for (Map.Entry<Replica, List<Integer>> entry : indexesByReplica.entrySet()) {
+      Replica replica = entry.getKey();
+      List<Integer> indexes = entry.getValue();
+      List<BatchStartRequest> batch = new ArrayList<>(indexes.size());
+      for (int index : indexes) {
+        batch.add(requests.get(index));
+      }
+      long start = System.nanoTime();
+      List<BatchStartResult> batchResults;
+      try {
+        batchResults = replica.handler.startOperations(batch);
+      } catch (RuntimeException e) {
+        batchResults = Collections.nCopies(batch.size(), BatchStartResult.failure(e));
+      }
+      long elapsed = System.nanoTime() - start;
+      for (int i = 0; i < indexes.size(); i++) {
+        BatchStartResult result = batchResults.get(i);
+        boolean failed =
+            result.getException() instanceof HandlerException
+                && onFailure(replica, (HandlerException) result.getException());
+        complete(replica, elapsed, failed);
+        results[indexes.get(i)] = result;
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  @Override
+  public void cancelOperation(OperationContext context, OperationCancelDetails details) {
+    Replica replica = choose();
+    replica.outstanding.incrementAndGet();
+    long start = System.nanoTime();
+    boolean failed = false;
+    try {
+      replica.handler.cancelOperation(context, details);
+    } catch (HandlerException e) {
+      failed = onFailure(replica, e);
+      throw e;
+    } finally {
+      complete(replica, System.nanoTime() - start, failed);
+    }
+  }
+
+  private void complete(Replica replica, long elapsedNanos, boolean failed) {
+    double latency = elapsedNanos;
+    if (failed) {
+      // Only successful latencies, so penalties cannot feed on each other during an outage
+      for (Replica other : replicas) {
+        latency = Math.max(latency, other.successLatencyNanos);
+      }
+      latency *= FAILURE_PENALTY;
+    }
+    replica.complete(latency, failed);
+  }
+
+  private Replica choose() {
+    long now = System.nanoTime();
+    long lastReload = lastReloadNanos.get();
+    // Only one caller reads the file per interval
+    if (endpointsFile != null
+        && now - lastReload >= reloadIntervalNanos
+        && lastReloadNanos.compareAndSet(lastReload, now)) {
+      reload();
+    }
+    Replica[] replicas = this.replicas;
+    if (replicas.length == 1) {
+      return replicas[0];
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int firstIndex = random.nextInt(replicas.length);
+    int secondIndex = (firstIndex + 1 + random.nextInt(replicas.length - 1)) % replicas.length;
+    Replica first = replicas[firstIndex];
+    Replica second = replicas[secondIndex];
+    boolean firstAvailable = first.isAvailable(now);
+    if (firstAvailable != second.isAvailable(now)) {
+      return firstAvailable ? first : second;
+    } else if (!firstAvailable) {
+      // Both are ejected, so look for any replica that is not
+      for (int i = 0; i < replicas.length; i++) {
+        Replica replica = replicas[(firstIndex + i) % replicas.length];
+        if (replica.isAvailable(now)) {
+          return replica;
+        }
+      }
+    }
+    return first.load(now, ejectionDurationNanos) <= second.load(now, ejectionDurationNanos)
+        ? first
+        : second;
+  }
+
+  // Returns whether the failure counts against the replica
+  private boolean onFailure(Replica replica, HandlerException e) {
+    switch (e.getErrorType()) {
+      case BAD_REQUEST:
+      case UNAUTHENTICATED:
+      case UNAUTHORIZED:
+      case NOT_FOUND:
+      case CONFLICT:
+      case NOT_IMPLEMENTED:
+        // The caller's fault, which every replica would fail the same way
+        return false;
+      default:
+        break;
+    }
+    if (!e.isRetryable()
+        || e.getErrorType() == HandlerException.ErrorType.UPSTREAM_TIMEOUT
+        || e.getErrorType() == HandlerException.ErrorType.REQUEST_TIMEOUT
+        || replica.consecutiveFailures.incrementAndGet() >= EJECTION_FAILURES) {
+      replica.consecutiveFailures.set(0);
+      replica.ejectedUntilNanos = System.nanoTime() + ejectionDurationNanos;
+    }
+    return true;
+  }
+
+  private Replica[] newReplicas(List<String> endpoints, Replica[] current) {
+    Map<String, Replica> existing = new HashMap<>();
+    for (Replica replica : current) {
+      existing.put(replica.endpoint, replica);
+    }
+    Replica[] replicas = new Replica[endpoints.size()];
+    for (int i = 0; i < replicas.length; i++) {
+      String endpoint = endpoints.get(i);
+      Replica replica = existing.get(endpoint);
+      replicas[i] =
+          replica != null
+              ? replica
+              : new Replica(endpoint, Objects.requireNonNull(replicaFactory.apply(endpoint)));
+    }
+    return replicas;
+  }
+
+  private static List<String> readEndpoints(Path file) throws IOException {
+    Set<String> endpoints = new LinkedHashSet<>();
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      String endpoint = line.trim();
+      if (!endpoint.isEmpty() && !endpoint.startsWith("#")) {
+        endpoints.add(endpoint);
+      }
+    }
+    return new ArrayList<>(endpoints);
+  }
+
+  private static class Replica {
+    private final String endpoint;
+    private final Handler handler;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // Updated without synchronization, a lost sample under contention does not matter
+    private volatile double latencyNanos;
+    // Moving average of successful calls only, which failure penalties are based on
+    private volatile double successLatencyNanos;
+    private volatile long completedNanos = System.nanoTime();
+    private volatile long ejectedUntilNanos = System.nanoTime();
+
+    private Replica(String endpoint, Handler handler) {
+      this.endpoint = endpoint;
+      this.handler = handler;
+    }
+
+    private boolean isAvailable(long now) {
+      return now - ejectedUntilNanos >= 0;
+    }
+
+    private double load(long now, long penaltyDecayNanos) {
+      double latency = latencyNanos;
+      double successLatency = successLatencyNanos;
+      if (latency > successLatency) {
+        // Fade the penalty of failures, since a replica no longer chosen gets no new samples
+        double idleNanos = Math.max(0, now - completedNanos);
+        latency =
+            penaltyDecayNanos == 0
+                ? successLatency
+                : successLatency
+                    + (latency - successLatency) * Math.exp(-idleNanos / penaltyDecayNanos);
+      }
+      return latency * (outstanding.get() + 1);
+    }
+
+    private void complete(double sampleNanos, boolean failed) {
+      outstanding.decrementAndGet();
+      if (!failed && consecutiveFailures.get() != 0) {
+        consecutiveFailures.set(0);
+      }
+      if (!Double.isFinite(sampleNanos) || sampleNanos < 0) {
+        return;
+      }
+      latencyNanos = average(latencyNanos, sampleNanos);
+      if (!failed) {
+        successLatencyNanos = average(successLatencyNanos, sampleNanos);
+      }
+      completedNanos = System.nanoTime();
+    }
+
+    private static double average(double average, double sample) {
+      return average == 0 ? sample : average + (sample - average) * LATENCY_WEIGHT;
+    }
+  }
+
+  /** Builder for a load balancing handler. */
+  public static class Builder {
+    private final List<String> endpoints;
+    private @Nullable Path endpointsFile;
+    private @Nullable Function<String, ? extends Handler> replicaFactory;
+    private Duration reloadInterval = Duration.ofSeconds(5);
+    private Duration ejectionDuration = Duration.ofSeconds(30);
+
+    private Builder() {
+      endpoints = new ArrayList<>();
+    }
+
+    /** Add an endpoint. Cannot be combined with an endpoints file. */
+    public Builder addEndpoint(String endpoint) {
+      endpoints.add(endpoint);
+      return this;
+    }
+
+    /** Get endpoints to mutate. */
+    public List<String> getEndpoints() {
+      return endpoints;
+    }
+
+    /** Set the file to read endpoints from. Cannot be combined with added endpoints. */
+    public Builder setEndpointsFile(Path endpointsFile) {
+      this.endpointsFile = endpointsFile;
+      return this;
+    }
+
+    /**
+     * Set the factory creating the handler of a replica from its endpoint. Default creates a
+     * {@link ForwardingHandler} with the endpoint as its default endpoint.
+     */
+    public Builder setReplicaFactory(Function<String, ? extends Handler> replicaFactory) {
+      this.replicaFactory = replicaFactory;
+      return this;
+    }
+
+    /** Set the minimum time between reads of the endpoints file. Default is 5 seconds. */
+    public Builder setReloadInterval(Duration reloadInterval) {
+      this.reloadInterval = reloadInterval;
+      return this;
+    }
+
+    /** Set how long a replica is ejected for after a failure. Default is 30 seconds. */
+    public Builder setEjectionDuration(Duration ejectionDuration) {
+      this.ejectionDuration = ejectionDuration;
+      return this;
+    }
+
+    /**
+     * Build the handler.
+     *
+     * @throws IllegalStateException If there are no endpoints or the endpoints file cannot be
+     *     read.
+     */
+    public LoadBalancingHandler build() {
+      if (endpointsFile != null && !endpoints.isEmpty()) {
+        throw new IllegalStateException("Cannot set both endpoints and an endpoints file");
+      }
+      if (reloadInterval.isNegative() || ejectionDuration.isNegative()) {
+        throw new IllegalArgumentException("Durations cannot be negative");
+      }
+      List<String> endpoints = new ArrayList<>(new LinkedHashSet<>(this.endpoints));
+      if (endpointsFile != null) {
+        try {
+          endpoints = readEndpoints(endpointsFile);
+        } catch (IOException e) {
+          throw new IllegalStateException("Failed reading endpoints file " + endpointsFile, e);
+        }
+      }
+      if (endpoints.isEmpty()) {
+        throw new IllegalStateException("At least one endpoint required");
+      }
+      Function<String, ? extends Handler> replicaFactory = this.replicaFactory;
+      if (replicaFactory == null) {
+        replicaFactory =
+            endpoint -> ForwardingHandler.newBuilder().setDefaultEndpoint(endpoint).build();
+      }
+      return new LoadBalancingHandler(
+          endpointsFile, endpoints, replicaFactory, reloadInterval, ejectionDuration);
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationDefinition;
+import io.nexusrpc.OperationException;
+import io.nexusrpc.ServiceDefinition;
+import io.nexusrpc.UncheckedOperationException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Client for a service hosted by a {@link ServiceHandler} in the same process. Calls go straight
+ * to the operation handler with the input object via {@link ServiceHandler#startLocalOperation},
+ * so there is no serialization unless the serializer requires copies.
+ *
+ * <p>The stub from {@link #getStub} implements the service interface. Its methods return the
+ * result of synchronous operations, those whose handler is from {@link OperationHandler#sync}.
+ * Other operations may start asynchronously, so stub methods for them fail with {@link
+ * IllegalStateException} without starting them, and must be started with {@link #startOperation}.
+ * Operation methods cannot declare exceptions, so an {@link OperationException} from the operation
+ * is thrown from stub methods as an {@link UncheckedOperationException}.
+ *
+ * @param <T> The service interface.
+ */
+@Experimental
+public class LocalServiceClient<T> {
+  /** Create a builder for a client of the given {@link io.nexusrpc.Service} interface. */
+  public static <T> Builder<T> newBuilder(Class<T> serviceInterface) {
+    return new Builder<>(serviceInterface);
+  }
+
+  private final ServiceHandler handler;
+  private final ServiceDefinition definition;
+  private final Map<String, String> headers;
+  private final @Nullable Duration timeout;
+  private final Map<String, String> operationsByMethod;
+  // Operations whose handler only completes synchronously, which stub methods may start
+  private final Set<String> syncOperations;
+  private final T stub;
+
+  private LocalServiceClient(
+      Class<T> serviceInterface,
+      ServiceHandler handler,
+      ServiceDefinition definition,
+      Map<String, String> headers,
+      @Nullable Duration timeout) {
+    this.handler = handler;
+    this.definition = definition;
+    this.headers = headers;
+    this.timeout = timeout;
+    operationsByMethod = new HashMap<>();
+    syncOperations = new HashSet<>();
+    Map<String, OperationHandler<Object, Object>> operationHandlers =
+        Objects.requireNonNull(handler.getInstances().get(definition.getName()))
+            .getOperationHandlers();
+    for (OperationDefinition operation : definition.getOperations().values()) {
+      operationsByMethod.put(operation.getMethodName(), operation.getName());
+      if (operationHandlers.get(operation.getName()) instanceof SynchronousOperationHandler) {
+        syncOperations.add(operation.getName());
+      }
+    }
+    stub =
+        serviceInterface.cast(
+            Proxy.newProxyInstance(
+                serviceInterface.getClassLoader(),
+                new Class<?>[] {serviceInterface},
+                new StubInvocationHandler()));
+  }
+
+  /** Handler hosting the service. */
+  public ServiceHandler getHandler() {
+    return handler;
+  }
+
+  /** Definition of the service. */
+  public ServiceDefinition getDefinition() {
+    return definition;
+  }
+
+  /** Headers sent with every call. */
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  /** Time each call may take before its deadline, or null if there is no deadline. */
+  public @Nullable Duration getTimeout() {
+    return timeout;
+  }
+
+  /** Stub implementing the service interface. */
+  public T getStub() {
+    return stub;
+  }
+
+  /** Start the operation with the given input. */
+  public OperationStartResult<Object> startOperation(String operation, @Nullable Object input)
+      throws OperationException {
+    return startOperation(operation, input, null);
+  }
+
+  /**
+   * Start the operation with the given input. The method canceller, if given, can cancel the
+   * operation handler method like a transport does when the caller goes away.
+   */
+  public OperationStartResult<Object> startOperation(
+      String operation, @Nullable Object input, @Nullable OperationMethodCanceller canceller)
+      throws OperationException {
+    OperationContext.Builder context =
+        OperationContext.newBuilder().setService(definition.getName()).setOperation(operation);
+    context.getHeaders().putAll(headers);
+    if (timeout != null) {
+      context.setDeadline(Instant.now().plus(timeout));
+    }
+    if (canceller != null) {
+      context.setMethodCanceller(canceller);
+    }
+    return handler.startLocalOperation(
+        context.build(),
+        OperationStartDetails.newBuilder().setRequestId(UUID.randomUUID().toString()).build(),
+        input);
+  }
+
+  private class StubInvocationHandler implements InvocationHandler {
+    @Override
+    public @Nullable Object invoke(Object proxy, Method method, Object @Nullable [] args) {
+      if (method.getDeclaringClass() == Object.class) {
+        switch (method.getName()) {
+          case "equals":
+            return args != null && proxy == args[0];
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          default:
+            return "LocalServiceClient{service='" + definition.getName() + "'}";
+        }
+      }
+      String operation = operationsByMethod.get(method.getName());
+      if (operation == null) {
+        throw new UnsupportedOperationException("No operation for method " + method.getName());
+      }
+      if (!syncOperations.contains(operation)) {
+        throw new IllegalStateException(
+            "Operation "
+                + operation
+                + " may start asynchronously, so it must be started with startOperation");
+      }
+      OperationStartResult<Object> result;
+      try {
+        result = startOperation(operation, args == null || args.length == 0 ? null : args[0]);
+      } catch (OperationException e) {
+        throw new UncheckedOperationException(e);
+      }
+      // Middlewares could still start it asynchronously
+      if (!result.isSync()) {
+        throw new IllegalStateException(
+            "Operation "
+                + operation
+                + " started asynchronously with token "
+                + result.getAsyncOperationToken());
+      }
+      return result.getSyncResult();
+    }
+  }
+
+  /** Builder for a local service client. */
+  public static class Builder<T> {
+    private final Class<T> serviceInterface;
+    private @Nullable ServiceHandler handler;
+    private final Map<String, String> headers;
+    private @Nullable Duration timeout;
+
+    private Builder(Class<T> serviceInterface) {
+      this.serviceInterface = serviceInterface;
+      headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /** Set the handler hosting the service. Required. */
+    public Builder<T> setHandler(ServiceHandler handler) {
+      this.handler = handler;
+      return this;
+    }
+
+    /** Get headers to mutate. */
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    /** Add a header sent with every call. */
+    public Builder<T> putHeader(String key, String value) {
+      headers.put(key, value);
+      return this;
+    }
+
+    /** Set the time each call may take before its deadline. Default is no deadline. */
+    public Builder<T> setTimeout(@Nullable Duration timeout) {
+      this.timeout = timeout;
+      return this;
+    }
+
+    /**
+     * Build the client.
+     *
+     * @throws IllegalStateException If the handler has no instance of the service.
+     */
+    public LocalServiceClient<T> build() {
+      Objects.requireNonNull(handler, "Handler required");
+      ServiceDefinition definition = ServiceDefinition.fromClass(serviceInterface);
+      if (!handler.getInstances().containsKey(definition.getName())) {
+        throw new IllegalStateException(
+            "Handler has no instance registered for service name '" + definition.getName() + "'");
+      }
+      return new LocalServiceClient<>(
+          serviceInterface,
+          handler,
+          definition,
+          Collections.unmodifiableMap(new TreeMap<>(headers)),
+          timeout);
+    }
+  }
+}
@@ -1,13 +1,24 @@
 package io.nexusrpc.handler;
 
+import io.nexusrpc.Experimental;
 import io.nexusrpc.Link;
+import io.nexusrpc.OperationDefinition;
 import io.nexusrpc.ServiceDefinition;
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 import org.jspecify.annotations.Nullable;
 
-/** Context for use in operation handling. */
+/**
+ * Context for use in operation handling.
+ *
+ * <p>Handlers attach what they resolve for the call, such as the service definition, to a shallow
+ * copy that shares the headers, links and method canceller of the context it came from, so the
+ * headers are not copied or normalized again.
+ *
+ * <p>Links can be added from any thread, such as from completions of work a handler fanned out,
+ * without locking. They are frozen with {@link #freezeLinks()} when the response is written.
+ */
 public class OperationContext {
   /** Create a builder. */
   public static Builder newBuilder() {
@@ -21,28 +32,68 @@ public class OperationContext {
 
   private final String service;
   private final String operation;
+  private final int operationId;
   private final Map<String, String> headers;
   // This is not included in equals, hashCode, or toString
   private final @Nullable OperationMethodCanceller methodCanceller;
   private final Instant deadline;
-  private final List<Link> links;
+  private final LinkCollector links;
   private final @Nullable ServiceDefinition serviceDefinition;
+  // Derived from the service definition, so not included in equals, hashCode, or toString
+  private @Nullable OperationDefinition operationDefinition;
+  // Set when built from a resolver entry of a service handler, so it can skip looking the
+  // operation up by name. Not included in equals, hashCode, or toString.
+  private final ServiceHandler.@Nullable ResolvedOperation resolvedOperation;
 
   private OperationContext(
       String service,
       String operation,
+      int operationId,
       Map<String, String> headers,
       @Nullable OperationMethodCanceller methodCanceller,
       Instant deadline,
       @Nullable ServiceDefinition serviceDefinition,
-      List<Link> links) {
+      LinkCollector links,
+      ServiceHandler.@Nullable ResolvedOperation resolvedOperation) {
     this.service = service;
     this.operation = operation;
+    this.operationId = operationId;
     this.headers = headers;
     this.methodCanceller = methodCanceller;
     this.deadline = deadline;
     this.serviceDefinition = serviceDefinition;
     this.links = links;
+    this.resolvedOperation = resolvedOperation;
+    if (resolvedOperation != null) {
+      this.operationDefinition = resolvedOperation.getDefinition();
+    }
+  }
+
+  // Attach what a handler resolved for the call, sharing everything else with this context
+  OperationContext withResolved(
+      ServiceDefinition serviceDefinition,
+      OperationDefinition operationDefinition,
+      int operationId) {
+    OperationContext context = this;
+    if (this.serviceDefinition != serviceDefinition || this.operationId != operationId) {
+      context =
+          new OperationContext(
+              service,
+              operation,
+              operationId,
+              headers,
+              methodCanceller,
+              deadline,
+              serviceDefinition,
+              links,
+              resolvedOperation);
+    }
+    context.operationDefinition = operationDefinition;
+    return context;
+  }
+
+  ServiceHandler.@Nullable ResolvedOperation getResolvedOperation() {
+    return resolvedOperation;
   }
 
   /** Service name for the call. */
@@ -55,14 +106,28 @@ public class OperationContext {
     return operation;
   }
 
+  /**
+   * Dense ID of the service and operation, or -1 if none was assigned. A {@link ServiceHandler}
+   * assigns IDs to its operations when built, counting up from 0. Handlers of the same services
+   * assign the same IDs, and handlers derived from another keep the IDs of the operations they
+   * still have, but unrelated handlers may give the same ID to different operations. They index
+   * the values of {@link OperationSlots}.
+   */
+  public int getOperationId() {
+    return operationId;
+  }
+
   /** Headers for the call. The returned map operates without regard to case. */
   public Map<String, String> getHeaders() {
     return headers;
   }
 
-  /** Get a read only list of links attached to this context. */
+  /**
+   * Get a read only snapshot of the links attached to this context. The snapshot is reused until
+   * links are changed.
+   */
   public List<Link> getLinks() {
-    return Collections.unmodifiableList(new ArrayList<>(links));
+    return links.get();
   }
 
   /**
@@ -86,6 +151,20 @@ public class OperationContext {
     return serviceDefinition;
   }
 
+  /**
+   * Get the definition of the operation from the service definition, if there is a service
+   * definition with the operation.
+   */
+  public @Nullable OperationDefinition getOperationDefinition() {
+    OperationDefinition operationDefinition = this.operationDefinition;
+    if (operationDefinition == null && serviceDefinition != null) {
+      // Racing threads resolve the same definition
+      operationDefinition = serviceDefinition.getOperations().get(operation);
+      this.operationDefinition = operationDefinition;
+    }
+    return operationDefinition;
+  }
+
   /**
    * Get the deadline for the operation handler method. This is the time by which the method should
    * complete. This is not the operation's deadline.
@@ -111,28 +190,43 @@ public class OperationContext {
 
   /**
    * Associates links with the current operation to be propagated back to the caller. Links will
-   * only be attached on successful responses.
+   * only be attached on successful responses. This can be called from any thread, but links added
+   * after {@link #freezeLinks()} are dropped.
    *
    * @return this
    */
   public OperationContext addLinks(Link... links) {
-    this.links.addAll(Arrays.asList(links));
+    this.links.add(links);
     return this;
   }
 
   /**
    * Associates links with the current operation to be propagated back to the caller. It is
    * recommended to use {@link #addLinks(Link...)} to avoid accidental override. Links will only be
-   * attached on successful responses.
+   * attached on successful responses. Links set after {@link #freezeLinks()} are dropped.
    *
    * @return this
    */
   public OperationContext setLinks(Link... links) {
-    this.links.clear();
-    this.links.addAll(Arrays.asList(links));
+    this.links.set(links);
     return this;
   }
 
+  /**
+   * Freeze the links and return them. Transports call this when writing the response, so links
+   * added later, such as by work still running, are dropped instead of racing the response.
+   */
+  @Experimental
+  public List<Link> freezeLinks() {
+    return links.freeze();
+  }
+
+  /** True if the links have been frozen with {@link #freezeLinks()}. */
+  @Experimental
+  public boolean isLinksFrozen() {
+    return links.isFrozen();
+  }
+
   /**
    * Remove a listener, if present, for method cancellation using hash code. This is not reentrant
    * and therefore must not be called in another cancellation listener.
@@ -151,17 +245,19 @@ public class OperationContext {
     OperationContext that = (OperationContext) o;
     return Objects.equals(service, that.service)
         && Objects.equals(operation, that.operation)
+        && operationId == that.operationId
         && Objects.equals(headers, that.headers)
         && Objects.equals(methodCanceller, that.methodCanceller)
         && Objects.equals(deadline, that.deadline)
-        && Objects.equals(links, that.links)
+        && Objects.equals(links.get(), that.links.get())
         && Objects.equals(serviceDefinition, that.serviceDefinition);
   }
 
   @Override
   public int hashCode() {
+    // The service definition is left out since hashing it is costly and it follows the service
     return Objects.hash(
-        service, operation, headers, methodCanceller, deadline, links, serviceDefinition);
+        service, operation, operationId, headers, methodCanceller, deadline, links.get());
   }
 
   @Override
@@ -173,6 +269,8 @@ public class OperationContext {
         + ", operation='"
         + operation
         + '\''
+        + ", operationId="
+        + operationId
         + ", headers="
         + headers
         + ", methodCanceller="
@@ -180,7 +278,7 @@ public class OperationContext {
         + ", deadline="
         + deadline
         + ", links="
-        + links
+        + links.get()
         + ", serviceDefinition="
         + serviceDefinition
         + '}';
@@ -190,50 +288,83 @@ public class OperationContext {
   public static class Builder {
     private @Nullable String service;
     private @Nullable String operation;
-    private final SortedMap<String, String> headers;
+    private int operationId = -1;
+    private Map<String, String> headers;
+    // Whether the headers are the normalized headers of an existing context, copied on mutation
+    private boolean headersShared;
     private @Nullable OperationMethodCanceller methodCanceller;
     private @Nullable Instant deadline;
     private @Nullable ServiceDefinition serviceDefinition;
+    private ServiceHandler.@Nullable ResolvedOperation resolvedOperation;
     // Currently links are not set in the builder, but they need to be passed though to go from
     // OperationContext -> Builder
     // and back to OperationContext, so we keep them here.
-    private final List<Link> links;
+    private final LinkCollector links;
 
     private Builder() {
       headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-      links = new ArrayList<>();
+      links = new LinkCollector();
     }
 
     private Builder(OperationContext context) {
       service = context.service;
       operation = context.operation;
-      headers = new TreeMap<>(context.headers);
+      operationId = context.operationId;
+      headers = context.headers;
+      headersShared = true;
       methodCanceller = context.methodCanceller;
       deadline = context.deadline;
       serviceDefinition = context.serviceDefinition;
+      resolvedOperation = context.resolvedOperation;
       links = context.links;
     }
 
     /** Set service. Required. */
     public Builder setService(String service) {
       this.service = service;
+      resolvedOperation = null;
       return this;
     }
 
     /** Set operation name. Required. */
     public Builder setOperation(String operation) {
       this.operation = operation;
+      resolvedOperation = null;
+      return this;
+    }
+
+    /**
+     * Set the dense ID of the service and operation, see {@link OperationContext#getOperationId}.
+     * Set by {@link ServiceHandler}, so transports do not need to.
+     */
+    public Builder setOperationId(int operationId) {
+      this.operationId = operationId;
+      resolvedOperation = null;
+      return this;
+    }
+
+    // Set what a service handler resolved for the service and operation, along with its service
+    // definition. Dropped if the service, operation or operation ID change after.
+    Builder setResolvedOperation(ServiceHandler.ResolvedOperation resolvedOperation) {
+      this.resolvedOperation = resolvedOperation;
+      serviceDefinition = resolvedOperation.getServiceDefinition();
       return this;
     }
 
     /** Get headers to mutate. The returned map operates without regard to case. */
     public Map<String, String> getHeaders() {
+      if (headersShared) {
+        Map<String, String> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        copy.putAll(headers);
+        headers = copy;
+        headersShared = false;
+      }
       return headers;
     }
 
     /** Put a header into the header map. */
     public Builder putHeader(String key, String value) {
-      headers.put(key, value);
+      getHeaders().put(key, value);
       return this;
     }
 
@@ -259,22 +390,29 @@ public class OperationContext {
     public OperationContext build() {
       Objects.requireNonNull(service, "Service required");
       Objects.requireNonNull(operation, "Operation required");
-      SortedMap<String, String> normalizedHeaders =
-          headers.entrySet().stream()
-              .collect(
-                  Collectors.toMap(
-                      (k) -> k.getKey().toLowerCase(),
-                      Map.Entry::getValue,
-                      (a, b) -> a,
-                      () -> new TreeMap<>(String.CASE_INSENSITIVE_ORDER)));
+      Map<String, String> normalizedHeaders = headers;
+      // Headers of an existing context are already normalized
+      if (!headersShared) {
+        normalizedHeaders =
+            Collections.unmodifiableMap(
+                headers.entrySet().stream()
+                    .collect(
+                        Collectors.toMap(
+                            (k) -> k.getKey().toLowerCase(),
+                            Map.Entry::getValue,
+                            (a, b) -> a,
+                            () -> new TreeMap<>(String.CASE_INSENSITIVE_ORDER))));
+      }
       return new OperationContext(
           service,
           operation,
-          Collections.unmodifiableMap(new TreeMap<>(normalizedHeaders)),
+          operationId,
+          normalizedHeaders,
           methodCanceller,
           deadline,
           serviceDefinition,
-          links);
+          links,
+          resolvedOperation);
     }
   }
 }
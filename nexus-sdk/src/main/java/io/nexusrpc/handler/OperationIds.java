@@ -0,0 +1,63 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.ServiceDefinition;
+import java.util.*;
+
+/**
+ * Dense IDs of the operations of a handler or resolver, counting up from 0. Immutable, so lookups
+ * take no lock. New operations get the lowest free IDs in order of service then operation name, so
+ * handlers of the same services agree on IDs, and handlers derived from another keep the IDs of the
+ * operations they still have. Only used when handlers are built.
+ */
+final class OperationIds {
+  static final OperationIds EMPTY = new OperationIds(Collections.emptyMap());
+
+  /** IDs of the operations of the given service definitions. */
+  static OperationIds of(Collection<ServiceDefinition> definitions) {
+    return EMPTY.with(definitions);
+  }
+
+  private final Map<String, Map<String, Integer>> ids;
+
+  private OperationIds(Map<String, Map<String, Integer>> ids) {
+    this.ids = ids;
+  }
+
+  /** ID of the operation, or -1 if it has none. */
+  int get(String service, String operation) {
+    Map<String, Integer> serviceIds = ids.get(service);
+    Integer id = serviceIds == null ? null : serviceIds.get(operation);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * IDs of the operations of the given service definitions, keeping the ID of each operation that
+   * already has one here.
+   */
+  OperationIds with(Collection<ServiceDefinition> definitions) {
+    Map<String, Map<String, Integer>> newIds = new HashMap<>(definitions.size());
+    BitSet used = new BitSet();
+    List<String[]> added = new ArrayList<>();
+    for (ServiceDefinition service : definitions) {
+      Map<String, Integer> serviceIds = new HashMap<>(service.getOperations().size());
+      newIds.put(service.getName(), serviceIds);
+      for (String operation : service.getOperations().keySet()) {
+        int id = get(service.getName(), operation);
+        if (id < 0) {
+          added.add(new String[] {service.getName(), operation});
+        } else {
+          serviceIds.put(operation, id);
+          used.set(id);
+        }
+      }
+    }
+    added.sort(Comparator.comparing((String[] name) -> name[0]).thenComparing(name -> name[1]));
+    int id = 0;
+    for (String[] name : added) {
+      id = used.nextClearBit(id);
+      used.set(id);
+      newIds.get(name[0]).put(name[1], id);
+    }
+    return new OperationIds(newIds);
+  }
+}
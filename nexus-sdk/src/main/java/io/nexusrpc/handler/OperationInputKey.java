@@ -0,0 +1,95 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.OperationDefinition;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Identity of an operation start by service, operation, a digest of the raw input bytes and input
+ * headers, and the values of the operation's {@link OperationDefinition#getResultCacheKeyHeaders}.
+ */
+final class OperationInputKey {
+  private static final ThreadLocal<MessageDigest> DIGEST =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+              throw new IllegalStateException(e);
+            }
+          });
+
+  static OperationInputKey of(
+      OperationContext context,
+      OperationDefinition definition,
+      Map<String, String> inputHeaders,
+      byte[] input) {
+    MessageDigest digest = DIGEST.get();
+    digest.reset();
+    // Header maps are sorted, so their iteration order is stable
+    for (Map.Entry<String, String> header : inputHeaders.entrySet()) {
+      updateDigest(digest, header.getKey());
+      updateDigest(digest, header.getValue());
+    }
+    digest.update(input);
+    List<String> keyHeaders = definition.getResultCacheKeyHeaders();
+    String[] keyHeaderValues = new String[keyHeaders.size()];
+    for (int i = 0; i < keyHeaderValues.length; i++) {
+      keyHeaderValues[i] = context.getHeaders().get(keyHeaders.get(i));
+    }
+    return new OperationInputKey(
+        context.getService(), context.getOperation(), keyHeaderValues, digest.digest());
+  }
+
+  private static void updateDigest(MessageDigest digest, String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+    // Separator so adjacent values cannot run together
+    digest.update((byte) 0);
+  }
+
+  private final String service;
+  private final String operation;
+  private final @Nullable String[] headerValues;
+  private final byte[] digest;
+  private final int hash;
+
+  private OperationInputKey(
+      String service, String operation, @Nullable String[] headerValues, byte[] digest) {
+    this.service = service;
+    this.operation = operation;
+    this.headerValues = headerValues;
+    this.digest = digest;
+    hash =
+        31 * Objects.hash(service, operation, Arrays.hashCode(headerValues))
+            + Arrays.hashCode(digest);
+  }
+
+  /** Approximate size in bytes. */
+  long weight() {
+    long weight = 2L * (service.length() + operation.length()) + digest.length;
+    for (String value : headerValues) {
+      weight += value == null ? 0 : 2L * value.length();
+    }
+    return weight;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    OperationInputKey that = (OperationInputKey) o;
+    return hash == that.hash
+        && Arrays.equals(digest, that.digest)
+        && service.equals(that.service)
+        && operation.equals(that.operation)
+        && Arrays.equals(headerValues, that.headerValues);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+}
@@ -1,6 +1,8 @@
 package io.nexusrpc.handler;
 
 import io.nexusrpc.Experimental;
+import io.nexusrpc.Serializer;
+import org.jspecify.annotations.Nullable;
 
 /** Middleware for intercepting operations. */
 @Experimental
@@ -9,4 +11,39 @@ public interface OperationMiddleware {
   /** Intercepts the given operation. Called once for each operation invocation. */
   OperationHandler<Object, Object> intercept(
       OperationContext context, OperationHandler<Object, Object> next);
+
+  /**
+   * Intercepts the codec that deserializes the input or serializes the sync result of a start by a
+   * {@link ServiceHandler}, such as to measure them. Called after {@link #intercept} for each codec
+   * of the start, except for raw content and the results of streaming operations. The default
+   * returns the codec as is.
+   *
+   * @param context Context the start was intercepted with.
+   * @param intercepted Handler this middleware returned from {@link #intercept} for the start.
+   * @param codec Codec to intercept.
+   */
+  @Experimental
+  default Serializer.Codec<Object> interceptCodec(
+      OperationContext context,
+      OperationHandler<Object, Object> intercepted,
+      Serializer.Codec<Object> codec) {
+    return codec;
+  }
+
+  /**
+   * Called when a start by a {@link ServiceHandler} whose codecs this middleware could intercept
+   * is over, after any sync result is serialized. The start of the intercepted handler may not
+   * have run, such as when the input failed to deserialize or an outer middleware rejected the
+   * start, so anything begun in {@link #interceptCodec} can be cleaned up here. The default does
+   * nothing.
+   *
+   * @param context Context the start was intercepted with.
+   * @param intercepted Handler this middleware returned from {@link #intercept} for the start.
+   * @param failure What the start failed with, or null if it succeeded.
+   */
+  @Experimental
+  default void onStartFinished(
+      OperationContext context,
+      OperationHandler<Object, Object> intercepted,
+      @Nullable Throwable failure) {}
 }
@@ -0,0 +1,269 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationDefinition;
+import io.nexusrpc.ServiceDefinition;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Resolves service and operation names to pre-resolved entries without allocating, so transports
+ * can go from a request path to a context without creating strings for known names. Names can be
+ * given as ranges of UTF-8 bytes, such as the segments of a path in a request buffer, or as
+ * character sequences. Path segments with percent escapes must be decoded first.
+ *
+ * <p>Names are kept in open addressing tables hashed over their UTF-8 bytes, so byte ranges and
+ * character sequences hash alike without being converted. Unknown names resolve to null, and
+ * transports then pass the names to the handler as strings, which fails with a {@link
+ * HandlerException} of type {@link HandlerException.ErrorType#NOT_FOUND} as before.
+ */
+@Experimental
+public final class OperationResolver {
+  /** Create a resolver of the operations of the given service definitions. */
+  public static OperationResolver fromDefinitions(Collection<ServiceDefinition> definitions) {
+    return new OperationResolver(definitions, OperationIds.of(definitions), null);
+  }
+
+  // Resolver of the operations of a handler, whose entries carry what the handler resolved
+  static OperationResolver fromHandler(
+      Collection<ServiceDefinition> definitions,
+      OperationIds operationIds,
+      ServiceHandler handler) {
+    return new OperationResolver(definitions, operationIds, handler);
+  }
+
+  private final NameTable<NameTable<Entry>> services;
+
+  private OperationResolver(
+      Collection<ServiceDefinition> definitions,
+      OperationIds operationIds,
+      @Nullable ServiceHandler handler) {
+    Map<String, NameTable<Entry>> services = new HashMap<>(definitions.size());
+    for (ServiceDefinition service : definitions) {
+      Map<String, Entry> operations = new HashMap<>(service.getOperations().size());
+      for (OperationDefinition operation : service.getOperations().values()) {
+        operations.put(
+            operation.getName(),
+            new Entry(
+                service,
+                operation,
+                operationIds.get(service.getName(), operation.getName()),
+                handler == null
+                    ? null
+                    : handler.resolveOperation(service.getName(), operation.getName())));
+      }
+      services.put(service.getName(), new NameTable<>(operations));
+    }
+    this.services = new NameTable<>(services);
+  }
+
+  /**
+   * Resolve the operation whose service and operation names are the UTF-8 bytes in the given
+   * ranges, each from a start index inclusive to an end index exclusive, or null if unknown.
+   */
+  public @Nullable Entry resolve(
+      byte[] bytes, int serviceStart, int serviceEnd, int operationStart, int operationEnd) {
+    NameTable<Entry> operations = services.get(bytes, serviceStart, serviceEnd);
+    return operations == null ? null : operations.get(bytes, operationStart, operationEnd);
+  }
+
+  /** Resolve the operation of the given service and operation names, or null if unknown. */
+  public @Nullable Entry resolve(CharSequence service, CharSequence operation) {
+    NameTable<Entry> operations = services.get(service);
+    return operations == null ? null : operations.get(operation);
+  }
+
+  /** Pre-resolved operation of a service. */
+  public static final class Entry {
+    private final String service;
+    private final OperationDefinition definition;
+    private final int operationId;
+    private final ServiceHandler.@Nullable ResolvedOperation resolvedOperation;
+
+    private Entry(
+        ServiceDefinition service,
+        OperationDefinition definition,
+        int operationId,
+        ServiceHandler.@Nullable ResolvedOperation resolvedOperation) {
+      this.service = service.getName();
+      this.definition = definition;
+      this.operationId = operationId;
+      this.resolvedOperation = resolvedOperation;
+    }
+
+    /** Service name. */
+    public String getService() {
+      return service;
+    }
+
+    /** Operation name. */
+    public String getOperation() {
+      return definition.getName();
+    }
+
+    /** Operation ID, see {@link OperationContext#getOperationId}. */
+    public int getOperationId() {
+      return operationId;
+    }
+
+    /** Definition of the operation. */
+    public OperationDefinition getDefinition() {
+      return definition;
+    }
+
+    /**
+     * Create a context builder with the service, operation and operation ID set. Contexts built
+     * from an entry of {@link ServiceHandler#getOperationResolver} also carry the definitions,
+     * handler and codecs of the operation, so that handler does not look the operation up by name.
+     * Changing the service, operation or operation ID on the builder drops them.
+     */
+    public OperationContext.Builder newContextBuilder() {
+      OperationContext.Builder builder =
+          OperationContext.newBuilder()
+              .setService(service)
+              .setOperation(definition.getName())
+              .setOperationId(operationId);
+      if (resolvedOperation != null) {
+        builder.setResolvedOperation(resolvedOperation);
+      }
+      return builder;
+    }
+
+    @Override
+    public String toString() {
+      return "Entry{"
+          + "service='"
+          + service
+          + '\''
+          + ", operation='"
+          + definition.getName()
+          + '\''
+          + ", operationId="
+          + operationId
+          + '}';
+    }
+  }
+
+  // Open addressing table with linear probing, at most half full
+  private static final class NameTable<T> {
+    // FNV-1a
+    private static final int HASH_SEED = 0x811c9dc5;
+    private static final int HASH_PRIME = 0x01000193;
+
+    private final String[] names;
+    private final byte[][] keys;
+    private final int[] hashes;
+    private final Object[] values;
+    private final int mask;
+
+    private NameTable(Map<String, T> entries) {
+      int capacity = Integer.highestOneBit(Math.max(1, entries.size()) * 4 - 1);
+      names = new String[capacity];
+      keys = new byte[capacity][];
+      hashes = new int[capacity];
+      values = new Object[capacity];
+      mask = capacity - 1;
+      for (Map.Entry<String, T> entry : entries.entrySet()) {
+        byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key, 0, key.length);
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        names[slot] = entry.getKey();
+        keys[slot] = key;
+        hashes[slot] = hash;
+        values[slot] = entry.getValue();
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private @Nullable T get(byte[] bytes, int start, int end) {
+      int hash = hash(bytes, start, end);
+      for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+        if (hashes[slot] == hash && equals(keys[slot], bytes, start, end)) {
+          return (T) values[slot];
+        }
+      }
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private @Nullable T get(CharSequence name) {
+      int hash = hash(name);
+      for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+        if (hashes[slot] == hash && equals(names[slot], name)) {
+          return (T) values[slot];
+        }
+      }
+      return null;
+    }
+
+    private static boolean equals(byte[] key, byte[] bytes, int start, int end) {
+      if (key.length != end - start) {
+        return false;
+      }
+      for (int i = 0; i < key.length; i++) {
+        if (key[i] != bytes[start + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean equals(String name, CharSequence other) {
+      if (name.length() != other.length()) {
+        return false;
+      }
+      for (int i = 0; i < name.length(); i++) {
+        if (name.charAt(i) != other.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+      int hash = HASH_SEED;
+      for (int i = start; i < end; i++) {
+        hash = (hash ^ (bytes[i] & 0xff)) * HASH_PRIME;
+      }
+      return spread(hash);
+    }
+
+    // Hash of the UTF-8 encoding of the characters, encoded as they are read
+    private static int hash(CharSequence chars) {
+      int hash = HASH_SEED;
+      for (int i = 0; i < chars.length(); i++) {
+        char c = chars.charAt(i);
+        if (c < 0x80) {
+          hash = (hash ^ c) * HASH_PRIME;
+        } else if (c < 0x800) {
+          hash = (hash ^ (0xc0 | c >> 6)) * HASH_PRIME;
+          hash = (hash ^ (0x80 | c & 0x3f)) * HASH_PRIME;
+        } else if (Character.isHighSurrogate(c)
+            && i + 1 < chars.length()
+            && Character.isLowSurrogate(chars.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+          hash = (hash ^ (0xf0 | codePoint >> 18)) * HASH_PRIME;
+          hash = (hash ^ (0x80 | codePoint >> 12 & 0x3f)) * HASH_PRIME;
+          hash = (hash ^ (0x80 | codePoint >> 6 & 0x3f)) * HASH_PRIME;
+          hash = (hash ^ (0x80 | codePoint & 0x3f)) * HASH_PRIME;
+        } else if (Character.isSurrogate(c)) {
+          // Unpaired surrogates encode as a question mark
+          hash = (hash ^ '?') * HASH_PRIME;
+        } else {
+          hash = (hash ^ (0xe0 | c >> 12)) * HASH_PRIME;
+          hash = (hash ^ (0x80 | c >> 6 & 0x3f)) * HASH_PRIME;
+          hash = (hash ^ (0x80 | c & 0x3f)) * HASH_PRIME;
+        }
+      }
+      return spread(hash);
+    }
+
+    private static int spread(int hash) {
+      return hash ^ (hash >>> 16);
+    }
+  }
+}
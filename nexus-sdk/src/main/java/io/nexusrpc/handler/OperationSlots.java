@@ -0,0 +1,87 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Values kept per operation, such as the counters, limiters or caches of a middleware, in an array
+ * indexed by {@link OperationContext#getOperationId} so a lookup does no hashing. The value of an
+ * operation is created by the factory the first time the operation is seen. Contexts without an
+ * operation ID, such as ones not built by a {@link ServiceHandler}, fall back to a lookup by
+ * service and operation name. Each slot remembers the names it was filled for, so slots shared by
+ * handlers that gave an ID to different operations still hold one value per operation.
+ *
+ * @param <T> The value type.
+ */
+@Experimental
+public final class OperationSlots<T> {
+  private final Function<OperationContext, ? extends T> factory;
+  // Every value, with the slots caching them by operation ID
+  private final Map<String, Map<String, T>> valuesByName = new ConcurrentHashMap<>();
+  // Grown under lock, read without
+  private volatile AtomicReferenceArray<Slot<T>> slots = new AtomicReferenceArray<>(16);
+
+  /** Create slots whose values are created by the factory from the first context seen. */
+  public OperationSlots(Function<OperationContext, ? extends T> factory) {
+    this.factory = factory;
+  }
+
+  /** Get the value of the operation of the context, creating it if not yet present. */
+  public T get(OperationContext context) {
+    int id = context.getOperationId();
+    if (id < 0) {
+      return getByName(context);
+    }
+    AtomicReferenceArray<Slot<T>> slots = this.slots;
+    if (id < slots.length()) {
+      Slot<T> slot = slots.get(id);
+      if (slot != null
+          && slot.service.equals(context.getService())
+          && slot.operation.equals(context.getOperation())) {
+        return slot.value;
+      }
+    }
+    return fill(id, context);
+  }
+
+  private T getByName(OperationContext context) {
+    return valuesByName
+        .computeIfAbsent(context.getService(), k -> new ConcurrentHashMap<>())
+        .computeIfAbsent(context.getOperation(), k -> create(context));
+  }
+
+  private synchronized T fill(int id, OperationContext context) {
+    AtomicReferenceArray<Slot<T>> slots = this.slots;
+    if (id >= slots.length()) {
+      AtomicReferenceArray<Slot<T>> grown =
+          new AtomicReferenceArray<>(Math.max(id + 1, slots.length() * 2));
+      for (int i = 0; i < slots.length(); i++) {
+        grown.set(i, slots.get(i));
+      }
+      this.slots = slots = grown;
+    }
+    T value = getByName(context);
+    slots.set(id, new Slot<>(context.getService(), context.getOperation(), value));
+    return value;
+  }
+
+  private T create(OperationContext context) {
+    return Objects.requireNonNull(factory.apply(context), "Factory returned null");
+  }
+
+  private static final class Slot<T> {
+    private final String service;
+    private final String operation;
+    private final T value;
+
+    private Slot(String service, String operation, T value) {
+      this.service = service;
+      this.operation = operation;
+      this.value = value;
+    }
+  }
+}
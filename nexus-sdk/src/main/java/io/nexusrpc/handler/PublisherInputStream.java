@@ -0,0 +1,127 @@
+package io.nexusrpc.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Blocking stream over a {@link ContentPublisher}. Only a fixed number of chunks are requested
+ * ahead of the reader, and another is requested as each is read, so a slow reader holds back the
+ * publisher.
+ *
+ * <p>Reads block until the publisher delivers content, so this must not be read on a thread the
+ * publisher delivers on, such as a transport event loop, or a read waiting for content that thread
+ * would deliver never returns. Publishers that deliver within {@link
+ * ContentPublisher.Subscription#request} are fine to read on any thread.
+ */
+final class PublisherInputStream extends InputStream implements ContentPublisher.Subscriber {
+  private static final Object COMPLETE = new Object();
+
+  private final int prefetch;
+  // Chunks, then a throwable or COMPLETE
+  private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+  private volatile ContentPublisher.@Nullable Subscription subscription;
+  private @Nullable ByteBuffer current;
+  private boolean done;
+  private boolean closed;
+
+  PublisherInputStream(ContentPublisher publisher, int prefetch) {
+    if (prefetch <= 0) {
+      throw new IllegalArgumentException("Prefetch must be positive");
+    }
+    this.prefetch = prefetch;
+    publisher.subscribe(this);
+  }
+
+  @Override
+  public void onSubscribe(ContentPublisher.Subscription subscription) {
+    this.subscription = subscription;
+    subscription.request(prefetch);
+  }
+
+  @Override
+  public void onNext(ByteBuffer chunk) {
+    signals.add(chunk);
+  }
+
+  @Override
+  public void onError(Throwable error) {
+    signals.add(error);
+  }
+
+  @Override
+  public void onComplete() {
+    signals.add(COMPLETE);
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    } else if (len == 0) {
+      return 0;
+    }
+    ByteBuffer current = this.current;
+    while (current == null || !current.hasRemaining()) {
+      if (done) {
+        return -1;
+      } else if (current != null) {
+        // Replace the chunk just read so the same number stay requested
+        this.current = null;
+        ContentPublisher.Subscription subscription = this.subscription;
+        if (subscription != null) {
+          subscription.request(1);
+        }
+      }
+      Object signal;
+      try {
+        signal = signals.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for content");
+      }
+      if (signal == COMPLETE) {
+        done = true;
+        return -1;
+      } else if (signal instanceof Throwable) {
+        done = true;
+        throw new IOException("Content publisher failed", (Throwable) signal);
+      }
+      current = (ByteBuffer) signal;
+      this.current = current;
+    }
+    int n = Math.min(len, current.remaining());
+    current.get(b, off, n);
+    return n;
+  }
+
+  @Override
+  public int available() {
+    ByteBuffer current = this.current;
+    return closed || current == null ? 0 : current.remaining();
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    ContentPublisher.Subscription subscription = this.subscription;
+    if (!done && subscription != null) {
+      subscription.cancel();
+    }
+    signals.clear();
+    current = null;
+  }
+}
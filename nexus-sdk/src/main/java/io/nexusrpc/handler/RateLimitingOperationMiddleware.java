@@ -0,0 +1,299 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Middleware that rate limits operation starts using token buckets keyed by service, operation and
+ * optionally the value of a caller header such as a tenant ID.
+ *
+ * <p>Taking a token from a bucket is lock-free. Without a key header, each operation has a single
+ * bucket kept in {@link OperationSlots}, so it is found by operation ID without hashing or locking.
+ * With a key header, buckets are stored in a fixed number of shards, each bounded and evicting the
+ * least recently used bucket, so the number of tracked keys is bounded and idle keys are dropped
+ * first. Only the shard a key hashes to is locked while looking up its bucket.
+ *
+ * <p>Starts over the limit fail with a {@link HandlerException} of type {@link
+ * HandlerException.ErrorType#RESOURCE_EXHAUSTED}. Cancels are never rate limited.
+ */
+@Experimental
+public class RateLimitingOperationMiddleware implements OperationMiddleware {
+  /** Create a builder for a rate limiting middleware. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final int MAX_SHARDS = 16;
+
+  private final Limit defaultLimit;
+  private final Map<String, Map<String, Limit>> operationLimits;
+  private final @Nullable String keyHeader;
+  private final int maxKeys;
+  private final BucketShard[] shards;
+  private final OperationSlots<TokenBucket> operationBuckets;
+
+  private RateLimitingOperationMiddleware(
+      Limit defaultLimit,
+      Map<String, Map<String, Limit>> operationLimits,
+      @Nullable String keyHeader,
+      int maxKeys) {
+    this.defaultLimit = defaultLimit;
+    this.operationLimits = operationLimits;
+    this.keyHeader = keyHeader;
+    this.maxKeys = maxKeys;
+    // Power of two shard count so the shard can be picked by masking the hash
+    int shardCount = Integer.highestOneBit(Math.min(MAX_SHARDS, maxKeys));
+    int shardCapacity = (maxKeys + shardCount - 1) / shardCount;
+    shards = new BucketShard[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new BucketShard(shardCapacity);
+    }
+    operationBuckets =
+        new OperationSlots<>(
+            context ->
+                new TokenBucket(
+                    limitFor(context.getService(), context.getOperation()), System.nanoTime()));
+  }
+
+  /** Header whose value is part of the rate limit key, or null if keyed by operation only. */
+  public @Nullable String getKeyHeader() {
+    return keyHeader;
+  }
+
+  /** Maximum number of keys tracked before idle buckets are evicted. */
+  public int getMaxKeys() {
+    return maxKeys;
+  }
+
+  @Override
+  public OperationHandler<Object, Object> intercept(
+      OperationContext context, OperationHandler<Object, Object> next) {
+    return new RateLimitedOperationHandler(next);
+  }
+
+  private boolean tryAcquire(OperationContext context) {
+    if (keyHeader == null) {
+      return operationBuckets.get(context).tryAcquire(System.nanoTime());
+    }
+    String keyValue = context.getHeaders().get(keyHeader);
+    BucketKey key = new BucketKey(context.getService(), context.getOperation(), keyValue);
+    BucketShard shard = shards[spread(key.hashCode()) & (shards.length - 1)];
+    long now = System.nanoTime();
+    return shard.bucketFor(key, context, now).tryAcquire(now);
+  }
+
+  private Limit limitFor(String service, String operation) {
+    Map<String, Limit> serviceLimits = operationLimits.get(service);
+    if (serviceLimits != null) {
+      Limit limit = serviceLimits.get(operation);
+      if (limit != null) {
+        return limit;
+      }
+    }
+    return defaultLimit;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private class RateLimitedOperationHandler implements OperationHandler<Object, Object> {
+    private final OperationHandler<Object, Object> next;
+
+    private RateLimitedOperationHandler(OperationHandler<Object, Object> next) {
+      this.next = next;
+    }
+
+    @Override
+    public OperationStartResult<Object> start(
+        OperationContext context, OperationStartDetails details, @Nullable Object param)
+        throws OperationException, HandlerException {
+      if (!tryAcquire(context)) {
+        throw new HandlerException(
+            HandlerException.ErrorType.RESOURCE_EXHAUSTED,
+            "Rate limit exceeded for service "
+                + context.getService()
+                + " operation "
+                + context.getOperation(),
+            null,
+            HandlerException.RetryBehavior.UNSPECIFIED,
+            false);
+      }
+      return next.start(context, details, param);
+    }
+
+    @Override
+    public void cancel(OperationContext context, OperationCancelDetails details)
+        throws HandlerException {
+      next.cancel(context, details);
+    }
+  }
+
+  private static final class Limit {
+    // Bound on the burst window so it and the arrival times stay far from overflowing
+    private static final long MAX_WINDOW_NANOS = Long.MAX_VALUE / 4;
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+
+    private Limit(double permitsPerSecond, int burst) {
+      if (!(permitsPerSecond > 0)) {
+        throw new IllegalArgumentException("Permits per second must be positive");
+      } else if (burst < 1) {
+        throw new IllegalArgumentException("Burst must be at least 1");
+      }
+      // Clamping only raises rates below one permit per several decades
+      double intervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+      emissionIntervalNanos = (long) Math.max(1, Math.min(intervalNanos, MAX_WINDOW_NANOS / burst));
+      burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+    }
+  }
+
+  /**
+   * Token bucket implemented as a generic cell rate algorithm, which tracks a single theoretical
+   * arrival time instead of a token count so that it can be updated with a single CAS.
+   */
+  private static final class TokenBucket {
+    private final Limit limit;
+    private final AtomicLong theoreticalArrivalNanos;
+
+    private TokenBucket(Limit limit, long nowNanos) {
+      this.limit = limit;
+      theoreticalArrivalNanos = new AtomicLong(nowNanos);
+    }
+
+    private boolean tryAcquire(long nowNanos) {
+      while (true) {
+        long arrival = theoreticalArrivalNanos.get();
+        // Compare with subtraction to be safe on nano time overflow
+        long base = arrival - nowNanos > 0 ? arrival : nowNanos;
+        if (base - nowNanos > limit.burstToleranceNanos) {
+          return false;
+        }
+        if (theoreticalArrivalNanos.compareAndSet(arrival, base + limit.emissionIntervalNanos)) {
+          return true;
+        }
+      }
+    }
+  }
+
+  private static final class BucketKey {
+    private final String service;
+    private final String operation;
+    private final @Nullable String keyValue;
+    private final int hash;
+
+    private BucketKey(String service, String operation, @Nullable String keyValue) {
+      this.service = service;
+      this.operation = operation;
+      this.keyValue = keyValue;
+      hash = Objects.hash(service, operation, keyValue);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      BucketKey that = (BucketKey) o;
+      return hash == that.hash
+          && service.equals(that.service)
+          && operation.equals(that.operation)
+          && Objects.equals(keyValue, that.keyValue);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private final class BucketShard {
+    // Access ordered so the eldest entry is the least recently used bucket
+    private final LinkedHashMap<BucketKey, TokenBucket> buckets =
+        new LinkedHashMap<>(16, 0.75f, true);
+    private final int capacity;
+
+    private BucketShard(int capacity) {
+      this.capacity = capacity;
+    }
+
+    private synchronized TokenBucket bucketFor(
+        BucketKey key, OperationContext context, long nowNanos) {
+      TokenBucket bucket = buckets.get(key);
+      if (bucket == null) {
+        bucket = new TokenBucket(limitFor(context.getService(), context.getOperation()), nowNanos);
+        buckets.put(key, bucket);
+        if (buckets.size() > capacity) {
+          Iterator<TokenBucket> eldest = buckets.values().iterator();
+          eldest.next();
+          eldest.remove();
+        }
+      }
+      return bucket;
+    }
+  }
+
+  /** Builder for a rate limiting middleware. */
+  public static class Builder {
+    private double permitsPerSecond;
+    private int burst = 1;
+    private final Map<String, Map<String, Limit>> operationLimits;
+    private @Nullable String keyHeader;
+    private int maxKeys = 10_000;
+
+    private Builder() {
+      operationLimits = new HashMap<>();
+    }
+
+    /** Set permits per second for every key without an operation-specific limit. Required. */
+    public Builder setPermitsPerSecond(double permitsPerSecond) {
+      this.permitsPerSecond = permitsPerSecond;
+      return this;
+    }
+
+    /** Set the number of starts that can be made at once on an idle key. Default is 1. */
+    public Builder setBurst(int burst) {
+      this.burst = burst;
+      return this;
+    }
+
+    /** Set a limit that applies to the given operation instead of the default. */
+    public Builder putOperationLimit(
+        String service, String operation, double permitsPerSecond, int burst) {
+      operationLimits
+          .computeIfAbsent(service, k -> new HashMap<>())
+          .put(operation, new Limit(permitsPerSecond, burst));
+      return this;
+    }
+
+    /**
+     * Set the header, such as a tenant ID, whose value is part of the rate limit key. Calls without
+     * the header share a single bucket per operation. Optional.
+     */
+    public Builder setKeyHeader(String keyHeader) {
+      this.keyHeader = keyHeader;
+      return this;
+    }
+
+    /** Set the maximum number of keys tracked before idle buckets are evicted. Default 10,000. */
+    public Builder setMaxKeys(int maxKeys) {
+      this.maxKeys = maxKeys;
+      return this;
+    }
+
+    /** Build the middleware. */
+    public RateLimitingOperationMiddleware build() {
+      if (maxKeys < 1) {
+        throw new IllegalArgumentException("Max keys must be at least 1");
+      }
+      Map<String, Map<String, Limit>> limits = new HashMap<>(operationLimits.size());
+      operationLimits.forEach((service, ops) -> limits.put(service, new HashMap<>(ops)));
+      return new RateLimitingOperationMiddleware(
+          new Limit(permitsPerSecond, burst), limits, keyHeader, maxKeys);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Handler that delegates to a {@link ServiceHandler} that can be replaced under live traffic.
+ *
+ * <p>Each call runs on the service handler that was current when it began. Calls never lock, they
+ * only count themselves in and out of that handler. Replacing the handler returns a future that
+ * completes once every call on the replaced handler has returned, so resources of the old
+ * configuration can be released then. Results streamed after a start returns are not tracked.
+ */
+@Experimental
+public class ReconfigurableHandler implements Handler {
+  /** Create a builder for a reconfigurable handler. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private final AtomicReference<Snapshot> current;
+  // Updates are serialized so each one sees the result of the last
+  private final Object updateLock = new Object();
+
+  private ReconfigurableHandler(ServiceHandler handler) {
+    current = new AtomicReference<>(new Snapshot(handler));
+  }
+
+  /** Service handler new calls run on. */
+  public ServiceHandler getHandler() {
+    return current.get().handler;
+  }
+
+  /**
+   * Replace the service handler new calls run on.
+   *
+   * @return Future completed once all calls on the replaced handler have returned.
+   */
+  public CompletableFuture<Void> setHandler(ServiceHandler handler) {
+    Objects.requireNonNull(handler);
+    return update(existing -> handler);
+  }
+
+  /**
+   * Replace the service handler with the result of the given function applied to the current one.
+   * Updates run one at a time. The function should not block.
+   *
+   * @return Future completed once all calls on the replaced handler have returned.
+   */
+  public CompletableFuture<Void> update(UnaryOperator<ServiceHandler> updater) {
+    Snapshot old;
+    synchronized (updateLock) {
+      old = current.get();
+      ServiceHandler handler = Objects.requireNonNull(updater.apply(old.handler));
+      current.set(new Snapshot(handler));
+    }
+    old.retire();
+    return old.drained;
+  }
+
+  /**
+   * Add the instance, replacing any instance of the same service. See {@link
+   * ServiceHandler#withInstance}.
+   *
+   * @return Future completed once all calls on the replaced handler have returned.
+   */
+  public CompletableFuture<Void> addInstance(ServiceImplInstance instance) {
+    return update(handler -> handler.withInstance(instance));
+  }
+
+  /**
+   * Remove the instance of the service. See {@link ServiceHandler#withoutService}.
+   *
+   * @return Future completed once all calls on the replaced handler have returned.
+   */
+  public CompletableFuture<Void> removeService(String service) {
+    return update(handler -> handler.withoutService(service));
+  }
+
+  @Override
+  public OperationStartResult<HandlerResultContent> startOperation(
+      OperationContext context, OperationStartDetails details, HandlerInputContent input)
+      throws OperationException {
+    Snapshot snapshot = acquire();
+    try {
+      return snapshot.handler.startOperation(context, details, input);
+    } finally {
+      snapshot.release();
+    }
+  }
+
+  @Override
+  public List<BatchStartResult> startOperations(List<BatchStartRequest> requests) {
+    Snapshot snapshot = acquire();
+    try {
+      return snapshot.handler.startOperations(requests);
+    } finally {
+      snapshot.release();
+    }
+  }
+
+  @Override
+  public void cancelOperation(OperationContext context, OperationCancelDetails details) {
+    Snapshot snapshot = acquire();
+    try {
+      snapshot.handler.cancelOperation(context, details);
+    } finally {
+      snapshot.release();
+    }
+  }
+
+  private Snapshot acquire() {
+    while (true) {
+      Snapshot snapshot = current.get();
+      snapshot.inFlight.incrementAndGet();
+      // If replaced before being counted in, the replacement may already think it drained
+      if (current.get() == snapshot) {
+        return snapshot;
+      }
+      snapshot.release();
+    }
+  }
+
+  private static final class Snapshot {
+    private final ServiceHandler handler;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final CompletableFuture<Void> drained = new CompletableFuture<>();
+    private volatile boolean retired;
+
+    private Snapshot(ServiceHandler handler) {
+      this.handler = handler;
+    }
+
+    private void release() {
+      if (inFlight.decrementAndGet() == 0 && retired) {
+        drained.complete(null);
+      }
+    }
+
+    private void retire() {
+      retired = true;
+      if (inFlight.get() == 0) {
+        drained.complete(null);
+      }
+    }
+  }
+
+  /** Builder for a reconfigurable handler. */
+  public static class Builder {
+    private @Nullable ServiceHandler handler;
+
+    private Builder() {}
+
+    /** Set the service handler to start with. Required. */
+    public Builder setHandler(ServiceHandler handler) {
+      this.handler = handler;
+      return this;
+    }
+
+    /** Build the handler. */
+    public ReconfigurableHandler build() {
+      Objects.requireNonNull(handler, "Handler required");
+      return new ReconfigurableHandler(handler);
+    }
+  }
+}
@@ -0,0 +1,405 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationDefinition;
+import java.time.Duration;
+import java.util.*;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Size-bounded cache of serialized synchronous operation results for operations that set {@link
+ * OperationDefinition#getResultCacheTtl}. Set on a handler via {@link
+ * ServiceHandler.Builder#setResultCache}.
+ *
+ * <p>Entries are keyed by service, operation, a digest of the raw input bytes and input headers,
+ * and the values of the operation's {@link OperationDefinition#getResultCacheKeyHeaders}. Cached
+ * values are the already serialized {@link HandlerResultContent}. The cache is consulted below the
+ * middlewares, so they run for every start. A hit skips the operation handler, and a result the
+ * middlewares pass through is not serialized again.
+ *
+ * <p>Entries are spread over segments by key, each with its own lock, so concurrent calls rarely
+ * contend. Each segment evicts using W-TinyLFU: new entries enter a small LRU window, and entries
+ * leaving the window are only admitted to the main segmented LRU if they have been requested more
+ * often than the entry they would evict, as estimated by a count-min sketch. Entries also expire
+ * after their operation's TTL.
+ */
+@Experimental
+public class ResultCache {
+  /** Create a builder for a result cache. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  // Rough per-entry bookkeeping cost counted towards the weight
+  private static final int ENTRY_OVERHEAD_BYTES = 128;
+  private static final int MAX_SEGMENTS = 16;
+  // Smaller caches get fewer segments so that each can still hold a useful number of entries
+  private static final long MIN_SEGMENT_WEIGHT = 1024 * 1024;
+
+  private final long maximumWeight;
+  private final Segment[] segments;
+
+  private ResultCache(long maximumWeight) {
+    this.maximumWeight = maximumWeight;
+    // Power of two segment count so the segment can be picked by masking the hash
+    long segmentCount = Math.min(MAX_SEGMENTS, maximumWeight / MIN_SEGMENT_WEIGHT);
+    segments = new Segment[(int) Long.highestOneBit(Math.max(1, segmentCount))];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment(maximumWeight / segments.length);
+    }
+  }
+
+  /** Maximum total weight, in approximate bytes, of all entries. */
+  public long getMaximumWeight() {
+    return maximumWeight;
+  }
+
+  /** Current total weight, in approximate bytes, of all entries. */
+  public long getWeight() {
+    long weight = 0;
+    for (Segment segment : segments) {
+      weight += segment.getWeight();
+    }
+    return weight;
+  }
+
+  /** Current number of entries, including any expired entries not yet removed. */
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /** Remove all entries. */
+  public void invalidateAll() {
+    for (Segment segment : segments) {
+      segment.invalidateAll();
+    }
+  }
+
+  @Nullable HandlerResultContent get(OperationInputKey key) {
+    return segmentFor(key).get(key);
+  }
+
+  void put(OperationInputKey key, HandlerResultContent content, Duration ttl) {
+    byte[] data = content.getDataBytes();
+    if (data == null) {
+      return;
+    }
+    long weight = ENTRY_OVERHEAD_BYTES + key.weight() + data.length;
+    for (Map.Entry<String, String> header : content.getHeaders().entrySet()) {
+      weight += 2L * (header.getKey().length() + header.getValue().length());
+    }
+    segmentFor(key).put(key, content, weight, ttl);
+  }
+
+  private Segment segmentFor(OperationInputKey key) {
+    int hash = key.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+  }
+
+  // Independently locked and evicted part of the cache, so that calls for keys in other segments
+  // do not contend
+  private static final class Segment {
+    private final long maximumWeight;
+    private final long windowMaximumWeight;
+    private final long protectedMaximumWeight;
+    // Everything below is guarded by this
+    private final Map<OperationInputKey, Node> entries = new HashMap<>();
+    private final AccessOrderQueue window = new AccessOrderQueue();
+    private final AccessOrderQueue probation = new AccessOrderQueue();
+    private final AccessOrderQueue protectedQueue = new AccessOrderQueue();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long windowWeight;
+    private long mainWeight;
+    private long protectedWeight;
+
+    private Segment(long maximumWeight) {
+      this.maximumWeight = maximumWeight;
+      // Same proportions as Caffeine: 1% window, and 80% of the main space protected
+      windowMaximumWeight = Math.max(1, maximumWeight / 100);
+      protectedMaximumWeight = (maximumWeight - windowMaximumWeight) * 8 / 10;
+    }
+
+    private synchronized long getWeight() {
+      return windowWeight + mainWeight;
+    }
+
+    private synchronized int size() {
+      return entries.size();
+    }
+
+    private synchronized void invalidateAll() {
+      entries.clear();
+      window.clear();
+      probation.clear();
+      protectedQueue.clear();
+      windowWeight = 0;
+      mainWeight = 0;
+      protectedWeight = 0;
+    }
+
+    private synchronized @Nullable HandlerResultContent get(OperationInputKey key) {
+      Node node = entries.get(key);
+      sketch.increment(key.hashCode());
+      if (node == null) {
+        return null;
+      } else if (node.expiresAtNanos - System.nanoTime() <= 0) {
+        remove(node);
+        return null;
+      }
+      onHit(node);
+      return node.content;
+    }
+
+    private synchronized void put(
+        OperationInputKey key, HandlerResultContent content, long weight, Duration ttl) {
+      if (weight > maximumWeight) {
+        return;
+      }
+      Node existing = entries.get(key);
+      if (existing != null) {
+        remove(existing);
+      }
+      Node node = new Node(key, content, weight, System.nanoTime() + ttl.toNanos());
+      entries.put(key, node);
+      sketch.ensureCapacity(entries.size());
+      node.queue = window;
+      window.addLast(node);
+      windowWeight += weight;
+      evict();
+    }
+
+    private void onHit(Node node) {
+      if (node.queue == window || node.queue == protectedQueue) {
+        node.queue.moveToLast(node);
+        return;
+      }
+      // Promote from probation to protected, demoting the oldest protected entries if needed
+      probation.remove(node);
+      node.queue = protectedQueue;
+      protectedQueue.addLast(node);
+      protectedWeight += node.weight;
+      while (protectedWeight > protectedMaximumWeight) {
+        Node demoted = protectedQueue.first();
+        if (demoted == null) {
+          break;
+        }
+        protectedQueue.remove(demoted);
+        protectedWeight -= demoted.weight;
+        demoted.queue = probation;
+        probation.addLast(demoted);
+      }
+    }
+
+    private void evict() {
+      // Move entries over the window limit to the probation segment as admission candidates
+      Node candidates = null;
+      while (windowWeight > windowMaximumWeight) {
+        Node node = window.first();
+        if (node == null) {
+          break;
+        }
+        window.remove(node);
+        windowWeight -= node.weight;
+        node.queue = probation;
+        probation.addLast(node);
+        mainWeight += node.weight;
+        if (candidates == null) {
+          candidates = node;
+        }
+      }
+      // Evict the least frequently used of the oldest probation entry and the candidate until
+      // everything fits
+      while (windowWeight + mainWeight > maximumWeight) {
+        Node victim = probation.first();
+        if (victim == null) {
+          victim = protectedQueue.first();
+          if (victim == null) {
+            break;
+          }
+        }
+        Node candidate = candidates != null && candidates.queue == probation ? candidates : null;
+        if (candidate == null || candidate == victim) {
+          if (candidate != null) {
+            candidates = candidate.next;
+          }
+          remove(victim);
+          continue;
+        }
+        if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+          remove(victim);
+        } else {
+          candidates = candidate.next;
+          remove(candidate);
+        }
+      }
+    }
+
+    private void remove(Node node) {
+      entries.remove(node.key);
+      node.queue.remove(node);
+      if (node.queue == window) {
+        windowWeight -= node.weight;
+      } else {
+        mainWeight -= node.weight;
+        if (node.queue == protectedQueue) {
+          protectedWeight -= node.weight;
+        }
+      }
+    }
+  }
+
+  private static final class Node {
+    private final OperationInputKey key;
+    private final HandlerResultContent content;
+    private final long weight;
+    private final long expiresAtNanos;
+    private @Nullable AccessOrderQueue queue;
+    private @Nullable Node prev;
+    private @Nullable Node next;
+
+    private Node(
+        OperationInputKey key, HandlerResultContent content, long weight, long expiresAtNanos) {
+      this.key = key;
+      this.content = content;
+      this.weight = weight;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+  }
+
+  // Intrusive doubly linked list ordered from least to most recently used
+  private static final class AccessOrderQueue {
+    private @Nullable Node head;
+    private @Nullable Node tail;
+
+    private @Nullable Node first() {
+      return head;
+    }
+
+    private void addLast(Node node) {
+      node.prev = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+    }
+
+    private void remove(Node node) {
+      if (node.prev == null) {
+        head = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+    }
+
+    private void moveToLast(Node node) {
+      if (node != tail) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+    private void clear() {
+      head = null;
+      tail = null;
+    }
+  }
+
+  /**
+   * Count-min sketch of 4-bit counters, 16 per long, used to estimate how often a key has been
+   * requested. All counters are halved periodically so that old popularity fades.
+   */
+  private static final class FrequencySketch {
+    private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private long[] table = new long[16];
+    private int sampleSize = 160;
+    private int additions;
+
+    private void ensureCapacity(int size) {
+      int needed = Integer.highestOneBit(Math.max(16, size - 1) << 1);
+      if (needed > table.length && needed > 0) {
+        table = new long[needed];
+        sampleSize = 10 * needed;
+        additions = 0;
+      }
+    }
+
+    private int frequency(int hash) {
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < SEEDS.length; i++) {
+        int index = indexOf(hash, i);
+        int offset = counterOffset(hash, i);
+        frequency = Math.min(frequency, (int) ((table[index] >>> offset) & 0xfL));
+      }
+      return frequency;
+    }
+
+    private void increment(int hash) {
+      boolean added = false;
+      for (int i = 0; i < SEEDS.length; i++) {
+        int index = indexOf(hash, i);
+        int offset = counterOffset(hash, i);
+        if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+          table[index] += 1L << offset;
+          added = true;
+        }
+      }
+      if (added && ++additions >= sampleSize) {
+        for (int i = 0; i < table.length; i++) {
+          table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+      }
+    }
+
+    private int indexOf(int hash, int depth) {
+      long h = (hash + SEEDS[depth]) * SEEDS[depth];
+      h += h >>> 32;
+      return ((int) h) & (table.length - 1);
+    }
+
+    private int counterOffset(int hash, int depth) {
+      // Each depth uses its own quarter of the 16 counters in a long
+      int spread = (hash ^ (hash >>> 16)) * 0x45d9f3b;
+      return ((depth << 2) + ((spread >>> (depth << 3)) & 3)) << 2;
+    }
+  }
+
+  /** Builder for a result cache. */
+  public static class Builder {
+    private long maximumWeight = 64L * 1024 * 1024;
+
+    private Builder() {}
+
+    /** Set maximum total weight, in approximate bytes, of all entries. Default is 64MB. */
+    public Builder setMaximumWeight(long maximumWeight) {
+      this.maximumWeight = maximumWeight;
+      return this;
+    }
+
+    /** Build the result cache. */
+    public ResultCache build() {
+      if (maximumWeight < 1) {
+        throw new IllegalArgumentException("Maximum weight must be positive");
+      }
+      return new ResultCache(maximumWeight);
+    }
+  }
+}
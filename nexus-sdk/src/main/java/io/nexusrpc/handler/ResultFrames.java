@@ -0,0 +1,183 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.Serializer;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Framing of the results of streaming operations (see {@link
+ * io.nexusrpc.OperationDefinition#isStreaming}) into a single result stream.
+ *
+ * <p>Each result is serialized and written as a 4-byte big-endian length followed by that many
+ * bytes of data. Content headers of individual results are not kept. Result content of a streaming
+ * operation has the {@link #FRAMING_HEADER} header set to {@link #LENGTH_PREFIXED}.
+ */
+@Experimental
+public final class ResultFrames {
+  /** Content header naming the framing of a streaming result. */
+  public static final String FRAMING_HEADER = "framing";
+
+  /** Value of {@link #FRAMING_HEADER} for length-prefixed frames. */
+  public static final String LENGTH_PREFIXED = "length-prefixed";
+
+  /** Maximum size in bytes of a frame read by {@link #readFrame(InputStream)}, 16MB. */
+  public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+  // Frames are read into a buffer grown as data arrives, so a bad length allocates no more than
+  // the data actually sent
+  private static final int INITIAL_BUFFER_SIZE = 8192;
+
+  private ResultFrames() {}
+
+  /**
+   * Create a stream of the framed results. Each result is taken from the iterator and serialized
+   * only once the previous one has been read, so a slow reader holds back the iterator. Closing
+   * the stream closes the iterator if it is {@link AutoCloseable}. Failures taking or serializing
+   * a result are thrown from the stream as {@link IOException}.
+   */
+  public static InputStream encode(Iterator<?> results, Serializer.Codec<Object> codec) {
+    return new FramingInputStream(results, codec);
+  }
+
+  /**
+   * Read the data of the next frame, or null if the stream has ended. Frames larger than {@link
+   * #DEFAULT_MAX_FRAME_SIZE} fail.
+   *
+   * @throws IOException If reading fails, the stream ends within a frame, or the frame is too
+   *     large.
+   */
+  public static byte @Nullable [] readFrame(InputStream in) throws IOException {
+    return readFrame(in, DEFAULT_MAX_FRAME_SIZE);
+  }
+
+  /**
+   * Read the data of the next frame, or null if the stream has ended. Frames larger than the given
+   * maximum size in bytes fail.
+   *
+   * @throws IOException If reading fails, the stream ends within a frame, or the frame is too
+   *     large.
+   */
+  public static byte @Nullable [] readFrame(InputStream in, int maxFrameSize) throws IOException {
+    int first = in.read();
+    if (first == -1) {
+      return null;
+    }
+    int length = first << 24 | readByte(in) << 16 | readByte(in) << 8 | readByte(in);
+    if (length < 0) {
+      throw new IOException("Invalid frame length");
+    } else if (length > maxFrameSize) {
+      throw new IOException("Frame too large");
+    }
+    byte[] data = new byte[Math.min(length, INITIAL_BUFFER_SIZE)];
+    int offset = 0;
+    while (offset < length) {
+      if (offset == data.length) {
+        data = Arrays.copyOf(data, (int) Math.min(length, data.length * 2L));
+      }
+      int read = in.read(data, offset, data.length - offset);
+      if (read == -1) {
+        throw new EOFException("Unexpected end of frame");
+      }
+      offset += read;
+    }
+    return data;
+  }
+
+  private static int readByte(InputStream in) throws IOException {
+    int b = in.read();
+    if (b == -1) {
+      throw new EOFException("Unexpected end of frame");
+    }
+    return b;
+  }
+
+  private static final class FramingInputStream extends InputStream {
+    private final Iterator<?> results;
+    private final Serializer.Codec<Object> codec;
+    private final byte[] header = new byte[4];
+    private byte[] data = new byte[0];
+    // Position in the current frame, header then data, starts past the end so a frame is taken
+    private int pos = 4;
+    private boolean closed;
+
+    private FramingInputStream(Iterator<?> results, Serializer.Codec<Object> codec) {
+      this.results = results;
+      this.codec = codec;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      } else if (len == 0) {
+        return 0;
+      }
+      if (pos == header.length + data.length && !nextFrame()) {
+        return -1;
+      }
+      int n = 0;
+      if (pos < header.length) {
+        n = Math.min(len, header.length - pos);
+        System.arraycopy(header, pos, b, off, n);
+        pos += n;
+      }
+      int fromData = Math.min(len - n, header.length + data.length - pos);
+      if (fromData > 0) {
+        System.arraycopy(data, pos - header.length, b, off + n, fromData);
+        pos += fromData;
+        n += fromData;
+      }
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return closed ? 0 : header.length + data.length - pos;
+    }
+
+    private boolean nextFrame() throws IOException {
+      try {
+        if (!results.hasNext()) {
+          return false;
+        }
+        data = codec.serialize(results.next()).getData();
+      } catch (RuntimeException e) {
+        throw new IOException("Failed producing streaming result", e);
+      }
+      header[0] = (byte) (data.length >>> 24);
+      header[1] = (byte) (data.length >>> 16);
+      header[2] = (byte) (data.length >>> 8);
+      header[3] = (byte) data.length;
+      pos = 0;
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (results instanceof AutoCloseable) {
+        try {
+          ((AutoCloseable) results).close();
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IOException("Failed closing streaming results", e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,230 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationDefinition;
+import io.nexusrpc.OperationException;
+import io.nexusrpc.Serializer;
+import io.nexusrpc.ServiceDefinition;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Operation of a service bound to the options of a client, with codecs for its input and output
+ * types resolved once when bound. Generated service clients (see {@link ServiceClientProcessor})
+ * hold one per operation and call it directly, so calls do no reflection.
+ *
+ * <p>Results of streaming operations are iterators that read and deserialize each frame as it is
+ * taken. The iterators are {@link AutoCloseable}, and closing one closes the result stream.
+ *
+ * @param <I> The input type, {@link Void} if the operation has no input.
+ * @param <O> The output type, boxed if primitive.
+ */
+@Experimental
+public final class ServiceClientOperation<I, O> {
+  /**
+   * Bind the operation of the given name to the client options.
+   *
+   * @throws IllegalArgumentException If the service has no operation of the given name.
+   */
+  public static <I, O> ServiceClientOperation<I, O> bind(
+      ServiceClientOptions options, ServiceDefinition service, String operation) {
+    OperationDefinition definition = service.getOperations().get(operation);
+    if (definition == null) {
+      throw new IllegalArgumentException(
+          "Service " + service.getName() + " has no operation " + operation);
+    }
+    return new ServiceClientOperation<>(options, service, definition);
+  }
+
+  private final ServiceClientOptions options;
+  private final String service;
+  private final OperationDefinition definition;
+  private final Serializer.@Nullable Codec<Object> input;
+  private final Serializer.Codec<Object> output;
+
+  private ServiceClientOperation(
+      ServiceClientOptions options, ServiceDefinition service, OperationDefinition definition) {
+    this.options = options;
+    this.service = service.getName();
+    this.definition = definition;
+    Serializer serializer = options.getSerializer();
+    input =
+        definition.getInputType() == Void.TYPE
+            ? null
+            : serializer.codecFor(definition.getInputType());
+    Type streamElementType = definition.getStreamElementType();
+    output =
+        serializer.codecFor(
+            streamElementType != null ? streamElementType : definition.getOutputType());
+  }
+
+  /** Options the operation is bound to. */
+  public ServiceClientOptions getOptions() {
+    return options;
+  }
+
+  /** Definition of the operation. */
+  public OperationDefinition getDefinition() {
+    return definition;
+  }
+
+  /** Start the operation with the given input. */
+  @SuppressWarnings("unchecked")
+  public OperationStartResult<O> start(@Nullable I input) throws OperationException {
+    OperationContext.Builder context =
+        OperationContext.newBuilder().setService(service).setOperation(definition.getName());
+    context.getHeaders().putAll(options.getHeaders());
+    Duration timeout = options.getTimeout();
+    if (timeout != null) {
+      context.setDeadline(Instant.now().plus(timeout));
+    }
+    OperationStartResult<HandlerResultContent> result =
+        options
+            .getHandler()
+            .startOperation(
+                context.build(),
+                OperationStartDetails.newBuilder()
+                    .setRequestId(UUID.randomUUID().toString())
+                    .build(),
+                serialize(input));
+    if (!result.isSync()) {
+      return OperationStartResult.async(Objects.requireNonNull(result.getAsyncOperationToken()));
+    }
+    HandlerResultContent content = Objects.requireNonNull(result.getSyncResult());
+    Object value;
+    try {
+      value = definition.isStreaming() ? new FrameIterator(content) : deserialize(content);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed reading result", e);
+    }
+    return OperationStartResult.sync((O) value);
+  }
+
+  /**
+   * Call the operation with the given input and return its result.
+   *
+   * @throws IllegalStateException If the operation was started asynchronously.
+   */
+  public @Nullable O call(@Nullable I input) throws OperationException {
+    OperationStartResult<O> result = start(input);
+    if (!result.isSync()) {
+      throw new IllegalStateException(
+          "Operation "
+              + definition.getName()
+              + " started asynchronously with token "
+              + result.getAsyncOperationToken());
+    }
+    return result.getSyncResult();
+  }
+
+  /**
+   * Call the operation with the given input on the executor of the options. The future fails with
+   * whatever {@link #call} throws.
+   */
+  public CompletableFuture<O> callAsync(@Nullable I input) {
+    CompletableFuture<O> future = new CompletableFuture<>();
+    options
+        .getExecutor()
+        .execute(
+            () -> {
+              try {
+                future.complete(call(input));
+              } catch (Throwable e) {
+                future.completeExceptionally(e);
+              }
+            });
+    return future;
+  }
+
+  private HandlerInputContent serialize(@Nullable I value) {
+    HandlerInputContent.Builder builder = HandlerInputContent.newBuilder();
+    if (input == null) {
+      return builder.setDataStream(new ByteArrayInputStream(new byte[0])).build();
+    }
+    Serializer.Content content = input.serialize(value);
+    builder.getHeaders().putAll(content.getHeaders());
+    return builder.setDataStream(new ByteArrayInputStream(content.getData())).build();
+  }
+
+  private @Nullable Object deserialize(HandlerResultContent content) throws IOException {
+    byte[] data = content.getDataBytes();
+    if (data == null) {
+      try (InputStream in = Objects.requireNonNull(content.getDataStream())) {
+        data = readAll(in);
+      }
+    }
+    return deserialize(data, content.getHeaders());
+  }
+
+  private @Nullable Object deserialize(byte[] data, Map<String, String> headers) {
+    Serializer.Content.Builder builder = Serializer.Content.newBuilder().setData(data);
+    builder.getHeaders().putAll(headers);
+    return output.deserialize(builder.build());
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    int read;
+    while ((read = in.read(chunk)) != -1) {
+      out.write(chunk, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  // Reads the next frame only once the previous result has been taken
+  private class FrameIterator implements Iterator<Object>, AutoCloseable {
+    private final InputStream in;
+    private final Map<String, String> headers;
+    private byte @Nullable [] next;
+    private boolean done;
+
+    private FrameIterator(HandlerResultContent content) {
+      byte[] data = content.getDataBytes();
+      in =
+          data != null
+              ? new ByteArrayInputStream(data)
+              : Objects.requireNonNull(content.getDataStream());
+      headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      headers.putAll(content.getHeaders());
+      headers.remove(ResultFrames.FRAMING_HEADER);
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null && !done) {
+        try {
+          next = ResultFrames.readFrame(in);
+        } catch (IOException e) {
+          throw new RuntimeException("Failed reading result", e);
+        }
+        done = next == null;
+      }
+      return !done;
+    }
+
+    @Override
+    public @Nullable Object next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      byte[] data = Objects.requireNonNull(next);
+      next = null;
+      return deserialize(data, headers);
+    }
+
+    @Override
+    public void close() throws IOException {
+      done = true;
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.Serializer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Options shared by the operations of a generated service client, see {@link
+ * ServiceClientProcessor}. Calls go to the handler, which is the transport, such as a {@link
+ * ServiceHandler} in the same process or a {@link ForwardingHandler} to a remote endpoint.
+ */
+@Experimental
+public class ServiceClientOptions {
+  /** Create a builder for service client options. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private final Handler handler;
+  private final Serializer serializer;
+  private final Map<String, String> headers;
+  private final @Nullable Duration timeout;
+  private final Executor executor;
+
+  private ServiceClientOptions(
+      Handler handler,
+      Serializer serializer,
+      Map<String, String> headers,
+      @Nullable Duration timeout,
+      Executor executor) {
+    this.handler = handler;
+    this.serializer = serializer;
+    this.headers = headers;
+    this.timeout = timeout;
+    this.executor = executor;
+  }
+
+  /** Handler every call goes to. */
+  public Handler getHandler() {
+    return handler;
+  }
+
+  /** Serializer the operation codecs are resolved from. */
+  public Serializer getSerializer() {
+    return serializer;
+  }
+
+  /** Headers sent with every call. */
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  /** Time each call may take before its deadline, or null if there is no deadline. */
+  public @Nullable Duration getTimeout() {
+    return timeout;
+  }
+
+  /** Executor that calls returning a future run on. */
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /** Builder for service client options. */
+  public static class Builder {
+    private @Nullable Handler handler;
+    private @Nullable Serializer serializer;
+    private final Map<String, String> headers;
+    private @Nullable Duration timeout;
+    private @Nullable Executor executor;
+
+    private Builder() {
+      headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /** Set the handler every call goes to. Required. */
+    public Builder setHandler(Handler handler) {
+      this.handler = handler;
+      return this;
+    }
+
+    /** Set the serializer the operation codecs are resolved from. Required. */
+    public Builder setSerializer(Serializer serializer) {
+      this.serializer = serializer;
+      return this;
+    }
+
+    /** Get headers to mutate. */
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    /** Add a header sent with every call. */
+    public Builder putHeader(String key, String value) {
+      headers.put(key, value);
+      return this;
+    }
+
+    /** Set the time each call may take before its deadline. Default is no deadline. */
+    public Builder setTimeout(@Nullable Duration timeout) {
+      this.timeout = timeout;
+      return this;
+    }
+
+    /**
+     * Set the executor that calls returning a future run on. Default is the common fork join pool.
+     */
+    public Builder setExecutor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /** Build the options. */
+    public ServiceClientOptions build() {
+      Objects.requireNonNull(handler, "Handler required");
+      Objects.requireNonNull(serializer, "Serializer required");
+      return new ServiceClientOptions(
+          handler,
+          serializer,
+          Collections.unmodifiableMap(new TreeMap<>(headers)),
+          timeout,
+          executor == null ? ForkJoinPool.commonPool() : executor);
+    }
+  }
+}
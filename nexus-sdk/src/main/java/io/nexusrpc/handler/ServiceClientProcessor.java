@@ -0,0 +1,227 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.Operation;
+import io.nexusrpc.Service;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Annotation processor that generates a typed client for each {@link Service} interface. The
+ * client of interface {@code Foo} is the class {@code FooClient} in the same package, with the
+ * names of enclosing types joined by underscores for nested interfaces. It is created from {@link
+ * ServiceClientOptions}, and for each operation has a method of the operation's signature that
+ * returns the result of a synchronous operation, plus the same method suffixed with {@code Async}
+ * returning a {@link java.util.concurrent.CompletableFuture} of that result.
+ *
+ * <p>Client methods call a {@link ServiceClientOperation} bound with its codecs when the client is
+ * created, so calls do no reflection. Only creating a client reads the service definition.
+ *
+ * <p>The processor is not registered for discovery, so builds only run it when they opt in. With
+ * Gradle, add this library as an {@code annotationProcessor} dependency and pass {@code -processor
+ * io.nexusrpc.handler.ServiceClientProcessor} in the compiler arguments. With javac, put this
+ * library on {@code -processorpath} and pass the same {@code -processor} option.
+ */
+@Experimental
+@SupportedAnnotationTypes("io.nexusrpc.Service")
+public class ServiceClientProcessor extends AbstractProcessor {
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(Service.class)) {
+      if (element.getKind() != ElementKind.INTERFACE) {
+        error(element, "@Service must be on an interface");
+        continue;
+      }
+      TypeElement service = (TypeElement) element;
+      List<ExecutableElement> methods = operationMethods(service);
+      if (methods == null) {
+        continue;
+      }
+      try {
+        generate(service, methods);
+      } catch (IOException e) {
+        error(service, "Failed writing service client: " + e.getMessage());
+      }
+    }
+    // Leave the annotation to other processors
+    return false;
+  }
+
+  // Null if the interface has no valid client, after reporting why
+  private @Nullable List<ExecutableElement> operationMethods(TypeElement service) {
+    boolean valid = true;
+    if (!service.getTypeParameters().isEmpty()) {
+      error(service, "Cannot generate a client for a generic service interface");
+      valid = false;
+    }
+    for (Element type = service; type instanceof TypeElement; type = type.getEnclosingElement()) {
+      if (type.getModifiers().contains(Modifier.PRIVATE)) {
+        error(service, "Cannot generate a client for a private service interface");
+        valid = false;
+      }
+    }
+    List<ExecutableElement> methods = new ArrayList<>();
+    for (ExecutableElement method :
+        ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(service))) {
+      if (!method.getModifiers().contains(Modifier.ABSTRACT)
+          || method.getEnclosingElement().getKind() != ElementKind.INTERFACE) {
+        continue;
+      }
+      String failure = null;
+      if (method.getAnnotation(Operation.class) == null) {
+        failure = "Missing @Operation annotation";
+      } else if (method.getParameters().size() > 1) {
+        failure = "Can have no more than one parameter";
+      } else if (!method.getTypeParameters().isEmpty()) {
+        failure = "Cannot be generic";
+      } else if (!method.getThrownTypes().isEmpty()) {
+        failure = "Cannot have throws clause";
+      }
+      if (failure != null) {
+        error(method, "Operation definition is invalid: " + failure);
+        valid = false;
+      }
+      methods.add(method);
+    }
+    return valid ? methods : null;
+  }
+
+  private void generate(TypeElement service, List<ExecutableElement> methods) throws IOException {
+    String packageName =
+        processingEnv.getElementUtils().getPackageOf(service).getQualifiedName().toString();
+    String clientName = service.getSimpleName() + "Client";
+    Element enclosing = service.getEnclosingElement();
+    while (enclosing instanceof TypeElement) {
+      clientName = enclosing.getSimpleName() + "_" + clientName;
+      enclosing = enclosing.getEnclosingElement();
+    }
+
+    StringBuilder source = new StringBuilder();
+    source.append("// Generated by ").append(getClass().getName()).append(", do not edit\n");
+    if (!packageName.isEmpty()) {
+      source.append("package ").append(packageName).append(";\n\n");
+    }
+    source.append("/** Client for {@link ").append(service.getQualifiedName()).append("}. */\n");
+    if (service.getModifiers().contains(Modifier.PUBLIC)) {
+      source.append("public ");
+    }
+    source.append("final class ").append(clientName).append(" {\n");
+    source
+        .append("  private static final io.nexusrpc.ServiceDefinition DEFINITION =\n")
+        .append("      io.nexusrpc.ServiceDefinition.fromClass(")
+        .append(service.getQualifiedName())
+        .append(".class);\n\n");
+    for (ExecutableElement method : methods) {
+      source
+          .append("  private final io.nexusrpc.handler.ServiceClientOperation<")
+          .append(boxedName(inputType(method)))
+          .append(", ")
+          .append(boxedName(method.getReturnType()))
+          .append("> ")
+          .append(method.getSimpleName())
+          .append("Operation;\n");
+    }
+
+    source
+        .append("\n  public ")
+        .append(clientName)
+        .append("(io.nexusrpc.handler.ServiceClientOptions options) {\n");
+    for (ExecutableElement method : methods) {
+      Operation operation = method.getAnnotation(Operation.class);
+      String name =
+          operation.name().isEmpty() ? method.getSimpleName().toString() : operation.name();
+      source
+          .append("    this.")
+          .append(method.getSimpleName())
+          .append("Operation =\n")
+          .append("        io.nexusrpc.handler.ServiceClientOperation.bind(options, DEFINITION, ")
+          .append(processingEnv.getElementUtils().getConstantExpression(name))
+          .append(");\n");
+    }
+    source.append("  }\n");
+
+    for (ExecutableElement method : methods) {
+      String parameter = method.getParameters().isEmpty() ? "" : inputType(method) + " input";
+      String argument = method.getParameters().isEmpty() ? "null" : "input";
+      boolean returnsValue = method.getReturnType().getKind() != TypeKind.VOID;
+      source
+          .append("\n  /** Call operation {@code ")
+          .append(method.getSimpleName())
+          .append("} and return its result. */\n")
+          .append("  public ")
+          .append(method.getReturnType())
+          .append(' ')
+          .append(method.getSimpleName())
+          .append('(')
+          .append(parameter)
+          .append(") throws io.nexusrpc.OperationException {\n")
+          .append(returnsValue ? "    return " : "    ")
+          .append(method.getSimpleName())
+          .append("Operation.call(")
+          .append(argument)
+          .append(");\n  }\n");
+      source
+          .append("\n  /** Call operation {@code ")
+          .append(method.getSimpleName())
+          .append("} on the executor of the options. */\n")
+          .append("  public java.util.concurrent.CompletableFuture<")
+          .append(boxedName(method.getReturnType()))
+          .append("> ")
+          .append(method.getSimpleName())
+          .append("Async(")
+          .append(parameter)
+          .append(") {\n    return ")
+          .append(method.getSimpleName())
+          .append("Operation.callAsync(")
+          .append(argument)
+          .append(");\n  }\n");
+    }
+    source.append("}\n");
+
+    String qualifiedName = packageName.isEmpty() ? clientName : packageName + "." + clientName;
+    try (Writer writer =
+        processingEnv.getFiler().createSourceFile(qualifiedName, service).openWriter()) {
+      writer.write(source.toString());
+    }
+  }
+
+  private @Nullable TypeMirror inputType(ExecutableElement method) {
+    return method.getParameters().isEmpty() ? null : method.getParameters().get(0).asType();
+  }
+
+  private String boxedName(@Nullable TypeMirror type) {
+    if (type == null || type.getKind() == TypeKind.VOID) {
+      return "java.lang.Void";
+    } else if (type.getKind().isPrimitive()) {
+      return processingEnv
+          .getTypeUtils()
+          .boxedClass((PrimitiveType) type)
+          .getQualifiedName()
+          .toString();
+    }
+    return type.toString();
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+}
@@ -1,10 +1,24 @@
 package io.nexusrpc.handler;
 
 import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import org.jspecify.annotations.Nullable;
 
-/** Handler that delegates to service implementations. */
+/**
+ * Handler that delegates to service implementations.
+ *
+ * <p>Operations with a {@link HandlerInputContent} input type or a {@link HandlerResultContent}
+ * output type are raw. Their input is handed to the implementation untouched, as a stream with its
+ * headers, and their sync result content is returned as is, so neither is buffered or passed
+ * through the serializer. Raw operations are never cached or coalesced.
+ */
 @Experimental
 public class ServiceHandler implements Handler {
   /** Create a builder for a service handler. */
@@ -20,14 +34,37 @@ public class ServiceHandler implements Handler {
   private final Map<String, ServiceImplInstance> instances;
   private final Serializer serializer;
   private final List<OperationMiddleware> middlewares;
+  private final Map<String, Bulkhead> serviceBulkheads;
+  private final Map<String, Map<String, Bulkhead>> operationBulkheads;
+  private final @Nullable ResultCache resultCache;
+  private final @Nullable SingleFlight singleFlight;
+  private final Map<String, Map<String, OperationCodecs>> codecs;
+  private final OperationIds operationIds;
+  private final @Nullable Executor batchExecutor;
+  // Built on first use, since handlers are rebuilt on every instance swap
+  private volatile @Nullable OperationResolver operationResolver;
 
   private ServiceHandler(
       Map<String, ServiceImplInstance> instances,
       Serializer serializer,
-      List<OperationMiddleware> middlewares) {
+      Map<String, Map<String, OperationCodecs>> codecs,
+      OperationIds operationIds,
+      List<OperationMiddleware> middlewares,
+      Map<String, Bulkhead> serviceBulkheads,
+      Map<String, Map<String, Bulkhead>> operationBulkheads,
+      @Nullable ResultCache resultCache,
+      @Nullable SingleFlight singleFlight,
+      @Nullable Executor batchExecutor) {
     this.instances = instances;
     this.serializer = serializer;
+    this.codecs = codecs;
+    this.operationIds = operationIds;
     this.middlewares = middlewares;
+    this.serviceBulkheads = serviceBulkheads;
+    this.operationBulkheads = operationBulkheads;
+    this.resultCache = resultCache;
+    this.singleFlight = singleFlight;
+    this.batchExecutor = batchExecutor;
   }
 
   /** Instances, by service name. */
@@ -44,6 +81,183 @@ public class ServiceHandler implements Handler {
     return middlewares;
   }
 
+  /** Bulkheads for all operations of a service, by service name. */
+  public Map<String, Bulkhead> getServiceBulkheads() {
+    return serviceBulkheads;
+  }
+
+  /** Bulkheads for specific operations, by service name then operation name. */
+  public Map<String, Map<String, Bulkhead>> getOperationBulkheads() {
+    return operationBulkheads;
+  }
+
+  /** Cache for results of operations that set a result cache TTL, if any. */
+  public @Nullable ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  /** Whether identical concurrent starts of operations that set a result cache TTL coalesce. */
+  public boolean isRequestCoalescing() {
+    return singleFlight != null;
+  }
+
+  /** Executor that the starts of a batch run on, if any. */
+  public @Nullable Executor getBatchExecutor() {
+    return batchExecutor;
+  }
+
+  /**
+   * Resolver of the operations of the instances, for transports to build contexts from names in
+   * request bytes without allocating. Built on first call. Contexts built from its entries are
+   * dispatched by this handler without looking up the operation by name.
+   */
+  public OperationResolver getOperationResolver() {
+    OperationResolver operationResolver = this.operationResolver;
+    if (operationResolver == null) {
+      synchronized (this) {
+        operationResolver = this.operationResolver;
+        if (operationResolver == null) {
+          operationResolver =
+              OperationResolver.fromHandler(definitions(instances.values()), operationIds, this);
+          this.operationResolver = operationResolver;
+        }
+      }
+    }
+    return operationResolver;
+  }
+
+  /**
+   * Create a handler like this one with the given instance added, replacing any instance of the
+   * same service. Only the state of that service is resolved, and only if its definition differs
+   * from the replaced instance. Everything else is shared with this handler.
+   *
+   * @throws IllegalStateException If an operation bulkhead of the service names an operation the
+   *     new instance does not have.
+   */
+  public ServiceHandler withInstance(ServiceImplInstance instance) {
+    String service = instance.getDefinition().getName();
+    Map<String, Bulkhead> bulkheads = operationBulkheads.get(service);
+    if (bulkheads != null) {
+      for (String operation : bulkheads.keySet()) {
+        if (!instance.getDefinition().getOperations().containsKey(operation)) {
+          throw new IllegalStateException(
+              "Bulkhead registered for unknown operation '"
+                  + operation
+                  + "' on service '"
+                  + service
+                  + "'");
+        }
+      }
+    }
+    Map<String, ServiceImplInstance> newInstances = new HashMap<>(instances);
+    newInstances.put(service, instance);
+    Map<String, Map<String, OperationCodecs>> newCodecs = codecs;
+    OperationIds newOperationIds = operationIds;
+    ServiceImplInstance existing = instances.get(service);
+    // Instances of the same service impl class share a definition, so they can share codecs too
+    if (existing == null || !existing.getDefinition().equals(instance.getDefinition())) {
+      // Other operations keep their IDs, so their codecs are still shared
+      newOperationIds = operationIds.with(definitions(newInstances.values()));
+      newCodecs = new HashMap<>(codecs);
+      newCodecs.put(service, resolveCodecs(serializer, instance, newOperationIds));
+    }
+    return new ServiceHandler(
+        Collections.unmodifiableMap(newInstances),
+        serializer,
+        newCodecs,
+        newOperationIds,
+        middlewares,
+        serviceBulkheads,
+        operationBulkheads,
+        resultCache,
+        singleFlight,
+        batchExecutor);
+  }
+
+  /**
+   * Create a handler like this one without the instance of the given service or its bulkheads.
+   * Everything else is shared with this handler.
+   *
+   * @throws IllegalStateException If there is no instance of the service or it is the only one.
+   */
+  public ServiceHandler withoutService(String service) {
+    if (!instances.containsKey(service)) {
+      throw new IllegalStateException("No instance registered for service name '" + service + "'");
+    } else if (instances.size() == 1) {
+      throw new IllegalStateException("Cannot remove the only service instance");
+    }
+    Map<String, ServiceImplInstance> newInstances = new HashMap<>(instances);
+    newInstances.remove(service);
+    Map<String, Map<String, OperationCodecs>> newCodecs = new HashMap<>(codecs);
+    newCodecs.remove(service);
+    Map<String, Bulkhead> newServiceBulkheads = serviceBulkheads;
+    if (serviceBulkheads.containsKey(service)) {
+      newServiceBulkheads = new HashMap<>(serviceBulkheads);
+      newServiceBulkheads.remove(service);
+      newServiceBulkheads = Collections.unmodifiableMap(newServiceBulkheads);
+    }
+    Map<String, Map<String, Bulkhead>> newOperationBulkheads = operationBulkheads;
+    if (operationBulkheads.containsKey(service)) {
+      newOperationBulkheads = new HashMap<>(operationBulkheads);
+      newOperationBulkheads.remove(service);
+      newOperationBulkheads = Collections.unmodifiableMap(newOperationBulkheads);
+    }
+    return new ServiceHandler(
+        Collections.unmodifiableMap(newInstances),
+        serializer,
+        newCodecs,
+        operationIds.with(definitions(newInstances.values())),
+        middlewares,
+        newServiceBulkheads,
+        newOperationBulkheads,
+        resultCache,
+        singleFlight,
+        batchExecutor);
+  }
+
+  private @Nullable Bulkhead getBulkhead(String service, String operation) {
+    Map<String, Bulkhead> serviceOperationBulkheads = operationBulkheads.get(service);
+    if (serviceOperationBulkheads != null) {
+      Bulkhead bulkhead = serviceOperationBulkheads.get(operation);
+      if (bulkhead != null) {
+        return bulkhead;
+      }
+    }
+    return serviceBulkheads.get(service);
+  }
+
+  // What a context built from an entry of this handler's resolver carries, otherwise looked up by
+  // name
+  private ResolvedOperation resolveOperation(OperationContext context) {
+    ResolvedOperation resolved = context.getResolvedOperation();
+    if (resolved != null && resolved.owner == this) {
+      return resolved;
+    }
+    resolved = resolveOperation(context.getService(), context.getOperation());
+    if (resolved == null) {
+      throw newUnrecognizedOperationException(context.getService(), context.getOperation());
+    }
+    return resolved;
+  }
+
+  // Null if there is no such service or operation, also used to build resolver entries
+  @Nullable ResolvedOperation resolveOperation(String service, String operation) {
+    ServiceImplInstance instance = instances.get(service);
+    if (instance == null) {
+      return null;
+    }
+    OperationHandler<Object, Object> handler = instance.getOperationHandlers().get(operation);
+    if (handler == null) {
+      return null;
+    }
+    return new ResolvedOperation(
+        this,
+        instance,
+        handler,
+        codecs.get(service).get(operation),
+        getBulkhead(service, operation));
+  }
+
   private OperationHandler<Object, Object> interceptOperationHandler(
       OperationContext context, OperationHandler<Object, Object> rootHandler) {
     OperationHandler<Object, Object> handler = rootHandler;
@@ -55,37 +269,167 @@ public class ServiceHandler implements Handler {
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public OperationStartResult<HandlerResultContent> startOperation(
       OperationContext context, OperationStartDetails details, HandlerInputContent input)
       throws OperationException {
-    ServiceImplInstance instance = instances.get(context.getService());
-    if (instance == null) {
-      throw newUnrecognizedOperationException(context.getService(), context.getOperation());
-    }
-    OperationHandler<Object, Object> handler =
-        instance.getOperationHandlers().get(context.getOperation());
-    if (handler == null) {
-      throw newUnrecognizedOperationException(context.getService(), context.getOperation());
-    }
-    // Populate the service definition in the context so that the handler can use it
+    ResolvedOperation resolved = resolveOperation(context);
+    OperationHandler<Object, Object> handler = resolved.handler;
+    OperationCodecs operationCodecs = resolved.codecs;
+    // Attach the service definition and operation ID to the context so that the handler and
+    // middlewares can use them, sharing the rest of the context instead of rebuilding it
     OperationContext contextWithServiceDef =
-        OperationContext.newBuilder(context).setServiceDefinition(instance.getDefinition()).build();
+        context.withResolved(
+            resolved.instance.getDefinition(), operationCodecs.definition, operationCodecs.id);
 
-    OperationHandler<Object, Object> interceptedHandler =
-        interceptOperationHandler(contextWithServiceDef, handler);
-    OperationDefinition definition =
-        instance.getDefinition().getOperations().get(context.getOperation());
+    // Limited by the bulkhead if there is one for the operation
+    Bulkhead bulkhead = resolved.bulkhead;
+    if (bulkhead == null) {
+      return startOperation(contextWithServiceDef, details, input, handler, operationCodecs);
+    }
+    return Objects.requireNonNull(
+        bulkhead.execute(
+            contextWithServiceDef,
+            () -> startOperation(contextWithServiceDef, details, input, handler, operationCodecs)));
+  }
 
-    Object inputObject;
+  private OperationStartResult<HandlerResultContent> startOperation(
+      OperationContext contextWithServiceDef,
+      OperationStartDetails details,
+      HandlerInputContent input,
+      OperationHandler<Object, Object> handler,
+      OperationCodecs operationCodecs)
+      throws OperationException {
+    OperationDefinition definition = operationCodecs.definition;
+    byte[] inputBytes = null;
+    SharedResultHandler sharedResultHandler = null;
+    // Results are in a format matching the input where the serializer supports it. The input
+    // codec is resolved for the headers too, so an unsupported content type fails before the
+    // input is read.
+    Serializer.@Nullable Codec<Object> outputCodec;
     try {
-      // Deserialize to expected input type
-      Serializer.Content.Builder contentBuilder = Serializer.Content.newBuilder();
-      contentBuilder.setData(input.consumeBytes());
-      contentBuilder.getHeaders().putAll(input.getHeaders());
-      inputObject = serializer.deserialize(contentBuilder.build(), definition.getInputType());
-    } catch (Exception e) {
-      throw new RuntimeException("Failed deserializing input", e);
+      if (operationCodecs.input != null) {
+        operationCodecs.input.forHeaders(input.getHeaders());
+      }
+      outputCodec =
+          operationCodecs.output == null
+              ? null
+              : operationCodecs.output.forHeaders(input.getHeaders());
+    } catch (IllegalArgumentException e) {
+      throw new HandlerException(
+          HandlerException.ErrorType.BAD_REQUEST,
+          Objects.toString(e.getMessage(), "Unsupported content type"),
+          e,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    }
+    if (operationCodecs.input != null) {
+      try {
+        inputBytes = input.consumeBytes();
+      } catch (HandlerException e) {
+        // Such as input streams that enforce a size limit
+        throw e;
+      } catch (Exception e) {
+        throw new RuntimeException("Failed deserializing input", e);
+      }
+      // Operations with a result cache TTL are pure, so identical starts can share results
+      // Raw results are streams that can only be read once, so they are never shared
+      Duration ttl = definition.getResultCacheTtl();
+      if (ttl != null && outputCodec != null && (resultCache != null || singleFlight != null)) {
+        // Results are shared below the middlewares so that they run for every start
+        sharedResultHandler =
+            new SharedResultHandler(
+                handler,
+                OperationInputKey.of(
+                    contextWithServiceDef, definition, input.getHeaders(), inputBytes),
+                outputCodec,
+                ttl);
+        handler = sharedResultHandler;
+      }
+    }
+    Serializer.@Nullable Codec<Object> inputCodec = operationCodecs.input;
+    if (middlewares.isEmpty()) {
+      return invokeOperation(
+          contextWithServiceDef,
+          details,
+          input,
+          inputBytes,
+          definition,
+          inputCodec,
+          outputCodec,
+          handler,
+          sharedResultHandler);
+    }
+    // Each middleware intercepts the codecs with the handler it intercepted the start as, the
+    // outermost wrapping the others as for handlers. Streamed results are serialized as the
+    // caller reads them, after the start, so only their handler is intercepted.
+    // Filled from the innermost, so in the order of the middlewares once reversed
+    List<OperationHandler<Object, Object>> intercepted = new ArrayList<>(middlewares.size());
+    for (int i = middlewares.size() - 1; i >= 0; i--) {
+      handler = middlewares.get(i).intercept(contextWithServiceDef, handler);
+      intercepted.add(handler);
+    }
+    Collections.reverse(intercepted);
+    for (int i = intercepted.size() - 1; i >= 0; i--) {
+      OperationMiddleware middleware = middlewares.get(i);
+      if (inputCodec != null) {
+        inputCodec =
+            middleware.interceptCodec(contextWithServiceDef, intercepted.get(i), inputCodec);
+      }
+      if (outputCodec != null && !definition.isStreaming()) {
+        outputCodec =
+            middleware.interceptCodec(contextWithServiceDef, intercepted.get(i), outputCodec);
+      }
+    }
+    if (sharedResultHandler != null) {
+      sharedResultHandler.outputCodec = Objects.requireNonNull(outputCodec);
+    }
+    Throwable failure = null;
+    try {
+      return invokeOperation(
+          contextWithServiceDef,
+          details,
+          input,
+          inputBytes,
+          definition,
+          inputCodec,
+          outputCodec,
+          handler,
+          sharedResultHandler);
+    } catch (OperationException | RuntimeException e) {
+      failure = e;
+      throw e;
+    } finally {
+      // Inner handlers may not have started, such as when an outer middleware rejected the start
+      for (int i = 0; i < intercepted.size(); i++) {
+        middlewares.get(i).onStartFinished(contextWithServiceDef, intercepted.get(i), failure);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private OperationStartResult<HandlerResultContent> invokeOperation(
+      OperationContext contextWithServiceDef,
+      OperationStartDetails details,
+      HandlerInputContent input,
+      byte @Nullable [] inputBytes,
+      OperationDefinition definition,
+      Serializer.@Nullable Codec<Object> inputCodec,
+      Serializer.@Nullable Codec<Object> outputCodec,
+      OperationHandler<Object, Object> interceptedHandler,
+      @Nullable SharedResultHandler sharedResultHandler)
+      throws OperationException {
+    Object inputObject;
+    if (inputCodec == null) {
+      inputObject = input;
+    } else {
+      try {
+        // Deserialize to expected input type
+        Serializer.Content.Builder contentBuilder = Serializer.Content.newBuilder();
+        contentBuilder.setData(Objects.requireNonNull(inputBytes));
+        contentBuilder.getHeaders().putAll(input.getHeaders());
+        inputObject = inputCodec.deserialize(contentBuilder.build());
+      } catch (Exception e) {
+        throw new RuntimeException("Failed deserializing input", e);
+      }
     }
 
     // Invoke handler
@@ -97,13 +441,129 @@ public class ServiceHandler implements Handler {
     if (!result.isSync()) {
       return (OperationStartResult<HandlerResultContent>) result;
     }
-    // Convert to result content
-    return OperationStartResult.sync(resultToContent(result.getSyncResult()));
+    if (outputCodec == null) {
+      HandlerResultContent content = (HandlerResultContent) result.getSyncResult();
+      if (content == null) {
+        content = HandlerResultContent.newBuilder().setData(new byte[0]).build();
+      }
+      return OperationStartResult.sync(content);
+    }
+    // A shared result that the middlewares passed through is already serialized
+    if (sharedResultHandler != null) {
+      HandlerResultContent content = sharedResultHandler.contentOf(result.getSyncResult());
+      if (content != null) {
+        return OperationStartResult.sync(content);
+      }
+    }
+    if (definition.isStreaming()) {
+      return OperationStartResult.sync(streamToContent(outputCodec, result.getSyncResult()));
+    }
+    return OperationStartResult.sync(resultToContent(outputCodec, result.getSyncResult()));
   }
 
-  private HandlerResultContent resultToContent(Object result) {
+  /**
+   * Innermost handler of an operation whose results are shared through the result cache or by
+   * coalescing identical concurrent starts, below the middlewares so that they run for every start.
+   * Created per start, it keeps the serialized form of the result it returns, so a result the
+   * middlewares pass through is not serialized again.
+   */
+  private final class SharedResultHandler implements OperationHandler<Object, Object> {
+    private final OperationHandler<Object, Object> handler;
+    private final OperationInputKey key;
+    // Replaced with the codec as intercepted by the middlewares, if any
+    private Serializer.Codec<Object> outputCodec;
+    private final Duration ttl;
+    // Set when this start ran the handler instead of sharing the result of another
+    private @Nullable OperationStartResult<Object> started;
+    private @Nullable Object result;
+    private @Nullable HandlerResultContent content;
+
+    private SharedResultHandler(
+        OperationHandler<Object, Object> handler,
+        OperationInputKey key,
+        Serializer.Codec<Object> outputCodec,
+        Duration ttl) {
+      this.handler = handler;
+      this.key = key;
+      this.outputCodec = outputCodec;
+      this.ttl = ttl;
+    }
+
+    @Override
+    public OperationStartResult<Object> start(
+        OperationContext context, OperationStartDetails details, @Nullable Object param)
+        throws OperationException, HandlerException {
+      if (resultCache != null) {
+        HandlerResultContent cached = resultCache.get(key);
+        if (cached != null) {
+          return OperationStartResult.sync(share(cached));
+        }
+      }
+      if (singleFlight == null) {
+        return run(context, details, param);
+      }
+      // Async results are never shared, so a follower of an async leader runs the handler itself
+      OperationStartResult<HandlerResultContent> shared =
+          singleFlight.execute(context, key, () -> runForFlight(context, details, param));
+      OperationStartResult<Object> started = this.started;
+      if (started != null) {
+        return started;
+      }
+      return OperationStartResult.sync(share(Objects.requireNonNull(shared.getSyncResult())));
+    }
+
+    private OperationStartResult<Object> run(
+        OperationContext context, OperationStartDetails details, @Nullable Object param)
+        throws OperationException {
+      OperationStartResult<Object> started = handler.start(context, details, param);
+      this.started = started;
+      if (started.isSync()) {
+        result = started.getSyncResult();
+        content = resultToContent(outputCodec, result);
+        if (resultCache != null) {
+          resultCache.put(key, content, ttl);
+        }
+      }
+      return started;
+    }
+
+    @SuppressWarnings("unchecked")
+    private OperationStartResult<HandlerResultContent> runForFlight(
+        OperationContext context, OperationStartDetails details, @Nullable Object param)
+        throws OperationException {
+      OperationStartResult<Object> started = run(context, details, param);
+      if (!started.isSync()) {
+        // Async results have no value, so only the type differs
+        return (OperationStartResult<HandlerResultContent>) (OperationStartResult<?>) started;
+      }
+      return OperationStartResult.sync(content);
+    }
+
+    @Override
+    public void cancel(OperationContext context, OperationCancelDetails details)
+        throws HandlerException {
+      handler.cancel(context, details);
+    }
+
+    // Each start gets its own copy of a shared result, since results may be mutable
+    private @Nullable Object share(HandlerResultContent shared) {
+      Serializer.Content.Builder builder =
+          Serializer.Content.newBuilder().setData(Objects.requireNonNull(shared.getDataBytes()));
+      builder.getHeaders().putAll(shared.getHeaders());
+      result = outputCodec.deserialize(builder.build());
+      content = shared;
+      return result;
+    }
+
+    private @Nullable HandlerResultContent contentOf(@Nullable Object result) {
+      return content != null && result == this.result ? content : null;
+    }
+  }
+
+  private static HandlerResultContent resultToContent(
+      Serializer.Codec<Object> codec, @Nullable Object result) {
     try {
-      Serializer.Content output = serializer.serialize(result);
+      Serializer.Content output = codec.serialize(result);
       HandlerResultContent.Builder contentBuilder = HandlerResultContent.newBuilder();
       contentBuilder.setData(output.getData());
       contentBuilder.getHeaders().putAll(output.getHeaders());
@@ -113,29 +573,272 @@ public class ServiceHandler implements Handler {
     }
   }
 
+  /**
+   * Start an operation in the same process with the input as is, without serializing the input or
+   * output. Bulkheads and middlewares apply as they do for {@link #startOperation}, but results are
+   * not cached or coalesced. If the serializer requires copies (see {@link
+   * Serializer#isCopyRequired}), the input and any sync result are copied through the serializer.
+   */
+  public OperationStartResult<Object> startLocalOperation(
+      OperationContext context, OperationStartDetails details, @Nullable Object input)
+      throws OperationException {
+    ResolvedOperation resolved = resolveOperation(context);
+    OperationHandler<Object, Object> handler = resolved.handler;
+    OperationCodecs operationCodecs = resolved.codecs;
+    // Attach the service definition and operation ID to the context so that the handler and
+    // middlewares can use them, sharing the rest of the context instead of rebuilding it
+    OperationContext contextWithServiceDef =
+        context.withResolved(
+            resolved.instance.getDefinition(), operationCodecs.definition, operationCodecs.id);
+    Bulkhead bulkhead = resolved.bulkhead;
+    if (bulkhead == null) {
+      return startLocalOperation(contextWithServiceDef, details, input, handler, operationCodecs);
+    }
+    return Objects.requireNonNull(
+        bulkhead.execute(
+            contextWithServiceDef,
+            () ->
+                startLocalOperation(
+                    contextWithServiceDef, details, input, handler, operationCodecs)));
+  }
+
+  private OperationStartResult<Object> startLocalOperation(
+      OperationContext contextWithServiceDef,
+      OperationStartDetails details,
+      @Nullable Object input,
+      OperationHandler<Object, Object> handler,
+      OperationCodecs operationCodecs)
+      throws OperationException {
+    OperationHandler<Object, Object> interceptedHandler =
+        interceptOperationHandler(contextWithServiceDef, handler);
+    if (!serializer.isCopyRequired()) {
+      return interceptedHandler.start(contextWithServiceDef, details, input);
+    }
+    OperationStartResult<Object> result =
+        interceptedHandler.start(
+            contextWithServiceDef, details, copy(operationCodecs.input, input));
+    if (!result.isSync()) {
+      return result;
+    }
+    OperationDefinition definition = operationCodecs.definition;
+    if (definition.isStreaming() && result.getSyncResult() != null) {
+      // Copy each result as it is taken
+      Iterator<?> results = (Iterator<?>) result.getSyncResult();
+      return OperationStartResult.sync(
+          new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+              return results.hasNext();
+            }
+
+            @Override
+            public @Nullable Object next() {
+              return copy(operationCodecs.output, results.next());
+            }
+          });
+    }
+    return OperationStartResult.sync(copy(operationCodecs.output, result.getSyncResult()));
+  }
+
+  private static @Nullable Object copy(
+      Serializer.@Nullable Codec<Object> codec, @Nullable Object value) {
+    // Raw content is passed as is
+    return codec == null ? value : codec.deserialize(codec.serialize(value));
+  }
+
+  /**
+   * Start a batch of operations. The input of every request is read up front on the calling thread,
+   * then the starts run concurrently on the batch executor if one is set, otherwise in turn on the
+   * calling thread. The calling thread waits for all of them. Starts the executor rejects run on
+   * the calling thread.
+   */
   @Override
-  public void cancelOperation(OperationContext context, OperationCancelDetails details) {
-    ServiceImplInstance instance = instances.get(context.getService());
-    if (instance == null) {
-      throw newUnrecognizedOperationException(context.getService(), context.getOperation());
+  public List<BatchStartResult> startOperations(List<BatchStartRequest> requests) {
+    Executor executor = batchExecutor;
+    if (executor == null || requests.size() < 2) {
+      return Handler.super.startOperations(requests);
     }
-    OperationHandler<Object, Object> handler =
-        instance.getOperationHandlers().get(context.getOperation());
-    if (handler == null) {
-      throw newUnrecognizedOperationException(context.getService(), context.getOperation());
+    BatchStartResult[] results = new BatchStartResult[requests.size()];
+    BatchStartRequest[] buffered = new BatchStartRequest[requests.size()];
+    int pending = 0;
+    for (int i = 0; i < buffered.length; i++) {
+      BatchStartRequest request = requests.get(i);
+      try {
+        // Transport streams may not be readable from other threads, so they are drained here
+        byte[] inputBytes = request.getInput().consumeBytes();
+        HandlerInputContent.Builder input =
+            HandlerInputContent.newBuilder().setDataStream(new ByteArrayInputStream(inputBytes));
+        input.getHeaders().putAll(request.getInput().getHeaders());
+        buffered[i] = BatchStartRequest.newBuilder(request).setInput(input.build()).build();
+        pending++;
+      } catch (HandlerException e) {
+        results[i] = BatchStartResult.failure(e);
+      } catch (IOException | RuntimeException e) {
+        results[i] =
+            BatchStartResult.failure(new RuntimeException("Failed deserializing input", e));
+      }
+    }
+    CountDownLatch remaining = new CountDownLatch(pending);
+    for (int i = 0; i < buffered.length; i++) {
+      BatchStartRequest request = buffered[i];
+      if (request == null) {
+        continue;
+      }
+      int index = i;
+      Runnable start =
+          () -> {
+            try {
+              results[index] = BatchStartResult.start(this, request);
+            } finally {
+              remaining.countDown();
+            }
+          };
+      try {
+        executor.execute(start);
+      } catch (RejectedExecutionException e) {
+        start.run();
+      }
+    }
+    try {
+      remaining.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new HandlerException(
+          HandlerException.ErrorType.INTERNAL,
+          "Interrupted waiting for batch",
+          e,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    }
+    for (int i = 0; i < results.length; i++) {
+      // Only null if the start threw an error
+      if (results[i] == null) {
+        results[i] =
+            BatchStartResult.failure(
+                new HandlerException(
+                    HandlerException.ErrorType.INTERNAL,
+                    "Failed starting operation",
+                    null,
+                    HandlerException.RetryBehavior.UNSPECIFIED));
+      }
     }
-    // Populate the service definition in the context so that the handler can use it
+    return Arrays.asList(results);
+  }
+
+  private static HandlerResultContent streamToContent(
+      Serializer.Codec<Object> elementCodec, @Nullable Object result) {
+    // Results are serialized as the caller reads them
+    Iterator<?> results = result == null ? Collections.emptyIterator() : (Iterator<?>) result;
+    return HandlerResultContent.newBuilder()
+        .setData(ResultFrames.encode(results, elementCodec))
+        .putHeader(ResultFrames.FRAMING_HEADER, ResultFrames.LENGTH_PREFIXED)
+        .build();
+  }
+
+  @Override
+  public void cancelOperation(OperationContext context, OperationCancelDetails details) {
+    ResolvedOperation resolved = resolveOperation(context);
+    OperationHandler<Object, Object> handler = resolved.handler;
+    OperationCodecs operationCodecs = resolved.codecs;
+    // Attach the service definition and operation ID to the context so that the handler and
+    // middlewares can use them, sharing the rest of the context instead of rebuilding it
     OperationContext contextWithServiceDef =
-        OperationContext.newBuilder(context).setServiceDefinition(instance.getDefinition()).build();
+        context.withResolved(
+            resolved.instance.getDefinition(), operationCodecs.definition, operationCodecs.id);
+    // Cancels are not limited by bulkheads so that they can always stop work that holds them
     interceptOperationHandler(contextWithServiceDef, handler)
         .cancel(contextWithServiceDef, details);
   }
 
+  /**
+   * Everything a handler resolves for an operation of one of its instances, carried by contexts
+   * built from its resolver's entries.
+   */
+  static final class ResolvedOperation {
+    private final ServiceHandler owner;
+    private final ServiceImplInstance instance;
+    private final OperationHandler<Object, Object> handler;
+    private final OperationCodecs codecs;
+    private final @Nullable Bulkhead bulkhead;
+
+    private ResolvedOperation(
+        ServiceHandler owner,
+        ServiceImplInstance instance,
+        OperationHandler<Object, Object> handler,
+        OperationCodecs codecs,
+        @Nullable Bulkhead bulkhead) {
+      this.owner = owner;
+      this.instance = instance;
+      this.handler = handler;
+      this.codecs = codecs;
+      this.bulkhead = bulkhead;
+    }
+
+    ServiceDefinition getServiceDefinition() {
+      return instance.getDefinition();
+    }
+
+    OperationDefinition getDefinition() {
+      return codecs.definition;
+    }
+  }
+
+  // Codecs resolved once per operation so calls do no per-call type resolution, null when raw,
+  // along with the operation definition and ID
+  private static final class OperationCodecs {
+    private final OperationDefinition definition;
+    private final int id;
+    private final Serializer.@Nullable Codec<Object> input;
+    private final Serializer.@Nullable Codec<Object> output;
+
+    private OperationCodecs(Serializer serializer, OperationDefinition definition, int id) {
+      this.definition = definition;
+      this.id = id;
+      input =
+          definition.getInputType() == HandlerInputContent.class
+              ? null
+              : serializer.codecFor(definition.getInputType());
+      // Streaming operations serialize each result on its own
+      Type streamElementType = definition.getStreamElementType();
+      if (streamElementType != null) {
+        output = serializer.codecFor(streamElementType);
+      } else if (definition.getOutputType() == HandlerResultContent.class) {
+        output = null;
+      } else {
+        output = serializer.codecFor(definition.getOutputType());
+      }
+    }
+  }
+
+  private static Map<String, OperationCodecs> resolveCodecs(
+      Serializer serializer, ServiceImplInstance instance, OperationIds operationIds) {
+    Map<String, OperationCodecs> operationCodecs = new HashMap<>();
+    String service = instance.getDefinition().getName();
+    for (OperationDefinition definition : instance.getDefinition().getOperations().values()) {
+      operationCodecs.put(
+          definition.getName(),
+          new OperationCodecs(
+              serializer, definition, operationIds.get(service, definition.getName())));
+    }
+    return operationCodecs;
+  }
+
+  private static List<ServiceDefinition> definitions(Collection<ServiceImplInstance> instances) {
+    List<ServiceDefinition> definitions = new ArrayList<>(instances.size());
+    for (ServiceImplInstance instance : instances) {
+      definitions.add(instance.getDefinition());
+    }
+    return definitions;
+  }
+
   private static HandlerException newUnrecognizedOperationException(
       String service, String operation) {
+    // Routinely used for control flow, so skip the stack trace
     return new HandlerException(
         HandlerException.ErrorType.NOT_FOUND,
-        "Unrecognized service " + service + " or operation " + operation);
+        "Unrecognized service " + service + " or operation " + operation,
+        null,
+        HandlerException.RetryBehavior.UNSPECIFIED,
+        false);
   }
 
   /** Builder for operation start details. */
@@ -143,10 +846,21 @@ public class ServiceHandler implements Handler {
     private final List<ServiceImplInstance> instances;
     private @Nullable Serializer serializer;
     private List<OperationMiddleware> middlewares;
+    private final Map<String, Bulkhead> serviceBulkheads;
+    private final Map<String, Map<String, Bulkhead>> operationBulkheads;
+    private @Nullable ResultCache resultCache;
+    private boolean requestCoalescing;
+    // In-flight starts of the handler this builder was created from, shared if still coalescing
+    private @Nullable SingleFlight singleFlight;
+    // Operation IDs of the handler this builder was created from, kept for operations it still has
+    private OperationIds operationIds = OperationIds.EMPTY;
+    private @Nullable Executor batchExecutor;
 
     private Builder() {
       this.instances = new ArrayList<>();
       this.middlewares = new ArrayList<>();
+      this.serviceBulkheads = new HashMap<>();
+      this.operationBulkheads = new HashMap<>();
     }
 
     private Builder(ServiceHandler handler) {
@@ -155,6 +869,15 @@ public class ServiceHandler implements Handler {
       instances = new ArrayList<>(handler.instances.values());
       serializer = handler.serializer;
       middlewares = new ArrayList<>(handler.middlewares);
+      serviceBulkheads = new HashMap<>(handler.serviceBulkheads);
+      operationBulkheads = new HashMap<>();
+      handler.operationBulkheads.forEach(
+          (service, bulkheads) -> operationBulkheads.put(service, new HashMap<>(bulkheads)));
+      resultCache = handler.resultCache;
+      requestCoalescing = handler.singleFlight != null;
+      singleFlight = handler.singleFlight;
+      operationIds = handler.operationIds;
+      batchExecutor = handler.batchExecutor;
     }
 
     /** Get instances to mutate. */
@@ -188,6 +911,63 @@ public class ServiceHandler implements Handler {
       return middlewares;
     }
 
+    /**
+     * Limit starts of all operations of the given service with the given bulkhead unless the
+     * operation has its own bulkhead. The same bulkhead can be shared by multiple services. Cancels
+     * are never limited.
+     */
+    public Builder putServiceBulkhead(String service, Bulkhead bulkhead) {
+      serviceBulkheads.put(service, bulkhead);
+      return this;
+    }
+
+    /** Limit starts of the given operation with the given bulkhead instead of any service one. */
+    public Builder putOperationBulkhead(String service, String operation, Bulkhead bulkhead) {
+      operationBulkheads.computeIfAbsent(service, k -> new HashMap<>()).put(operation, bulkhead);
+      return this;
+    }
+
+    /**
+     * Set the cache used for results of operations whose definition has a result cache TTL.
+     * Optional, without it no results are cached.
+     */
+    public Builder setResultCache(@Nullable ResultCache resultCache) {
+      this.resultCache = resultCache;
+      return this;
+    }
+
+    /**
+     * Set whether identical concurrent starts of operations whose definition has a result cache
+     * TTL run only once. Starts are identical when they have the same result cache key, and all
+     * share the serialized result of the first. Handlers derived from the built one, such as with
+     * {@link ServiceHandler#withInstance}, share its starts in flight as they share its result
+     * cache, so a start on a swapped-in handler joins an identical one still running on the old
+     * handler. Default is false.
+     */
+    public Builder setRequestCoalescing(boolean requestCoalescing) {
+      this.requestCoalescing = requestCoalescing;
+      return this;
+    }
+
+    /**
+     * Set the executor that the starts of a batch from {@link ServiceHandler#startOperations} run
+     * on concurrently. Optional, without it the starts run in turn on the calling thread.
+     */
+    public Builder setBatchExecutor(@Nullable Executor batchExecutor) {
+      this.batchExecutor = batchExecutor;
+      return this;
+    }
+
+    /** Get service bulkheads to mutate, by service name. */
+    public Map<String, Bulkhead> getServiceBulkheads() {
+      return serviceBulkheads;
+    }
+
+    /** Get operation bulkheads to mutate, by service name then operation name. */
+    public Map<String, Map<String, Bulkhead>> getOperationBulkheads() {
+      return operationBulkheads;
+    }
+
     /** Build the handler. */
     public ServiceHandler build() {
       if (instances.isEmpty()) {
@@ -204,10 +984,49 @@ public class ServiceHandler implements Handler {
         }
         instancesByName.put(instance.getDefinition().getName(), instance);
       }
+      for (String service : serviceBulkheads.keySet()) {
+        if (!instancesByName.containsKey(service)) {
+          throw new IllegalStateException(
+              "Bulkhead registered for unknown service '" + service + "'");
+        }
+      }
+      Map<String, Map<String, Bulkhead>> operationBulkheadsByName =
+          new HashMap<>(operationBulkheads.size());
+      operationBulkheads.forEach(
+          (service, bulkheads) -> {
+            ServiceImplInstance instance = instancesByName.get(service);
+            for (String operation : bulkheads.keySet()) {
+              if (instance == null
+                  || !instance.getDefinition().getOperations().containsKey(operation)) {
+                throw new IllegalStateException(
+                    "Bulkhead registered for unknown operation '"
+                        + operation
+                        + "' on service '"
+                        + service
+                        + "'");
+              }
+            }
+            operationBulkheadsByName.put(
+                service, Collections.unmodifiableMap(new HashMap<>(bulkheads)));
+          });
+      OperationIds newOperationIds = operationIds.with(definitions(instancesByName.values()));
+      Map<String, Map<String, OperationCodecs>> codecs = new HashMap<>(instancesByName.size());
+      for (ServiceImplInstance instance : instancesByName.values()) {
+        codecs.put(
+            instance.getDefinition().getName(),
+            resolveCodecs(serializer, instance, newOperationIds));
+      }
       return new ServiceHandler(
           Collections.unmodifiableMap(instancesByName),
           serializer,
-          Collections.unmodifiableList(new ArrayList<>(middlewares)));
+          codecs,
+          newOperationIds,
+          Collections.unmodifiableList(new ArrayList<>(middlewares)),
+          Collections.unmodifiableMap(new HashMap<>(serviceBulkheads)),
+          Collections.unmodifiableMap(operationBulkheadsByName),
+          resultCache,
+          requestCoalescing ? (singleFlight != null ? singleFlight : new SingleFlight()) : null,
+          batchExecutor);
     }
   }
 }
@@ -12,51 +12,106 @@ import org.jspecify.annotations.Nullable;
 
 /** Instance of a {@link ServiceImpl} annotated class. */
 public class ServiceImplInstance {
+  // Reflection and validation of each class is only done once and then shared by all of its
+  // instances
+  private static final ClassValue<Template> TEMPLATES =
+      new ClassValue<Template>() {
+        @Override
+        protected Template computeValue(Class<?> type) {
+          return Template.fromClass(type);
+        }
+      };
+
   /**
    * Create a service instance from the given object instance. The object must an instance of a
    * class annotated with {@link ServiceImpl} and must pass all validation for the required
-   * operations.
+   * operations. The class is only reflected on and validated for its first instance, later
+   * instances share its service definition.
    */
   public static ServiceImplInstance fromInstance(Object instance) {
-    // Expect the annotation on the class of the instance itself, do not expect it to be inherited
-    // and go searching through superclasses
-    ServiceImpl serviceImpl = instance.getClass().getDeclaredAnnotation(ServiceImpl.class);
-    if (serviceImpl == null) {
-      throw new IllegalArgumentException("Missing @ServiceImpl annotation");
-    } else if (serviceImpl.service() == null) {
-      throw new IllegalArgumentException("@ServiceImpl annotation missing service class");
-    }
-    ServiceDefinition serviceDefinition;
-    try {
-      serviceDefinition = ServiceDefinition.fromClass(serviceImpl.service());
-    } catch (Exception e) {
-      throw new RuntimeException("Failed loading @ServiceImpl class " + serviceImpl.service(), e);
-    }
-
-    // Collect all methods, then walk them looking for operation handlers
-    List<Method> methods = new ArrayList<>();
-    collectClassMethods(instance.getClass(), methods);
-    Builder builder = newBuilder().setDefinition(serviceDefinition);
-    for (Method method : methods) {
-      OperationImpl operationImpl = method.getDeclaredAnnotation(OperationImpl.class);
-      if (operationImpl == null) {
-        continue;
+    return TEMPLATES.get(instance.getClass()).newInstance(instance);
+  }
+
+  /** Service definition and operation handler methods of a {@link ServiceImpl} class. */
+  private static final class Template {
+    private final ServiceDefinition definition;
+    private final Map<String, Method> methodsByOperation;
+
+    private Template(ServiceDefinition definition, Map<String, Method> methodsByOperation) {
+      this.definition = definition;
+      this.methodsByOperation = methodsByOperation;
+    }
+
+    private static Template fromClass(Class<?> clazz) {
+      // Expect the annotation on the class of the instance itself, do not expect it to be
+      // inherited and go searching through superclasses
+      ServiceImpl serviceImpl = clazz.getDeclaredAnnotation(ServiceImpl.class);
+      if (serviceImpl == null) {
+        throw new IllegalArgumentException("Missing @ServiceImpl annotation");
+      } else if (serviceImpl.service() == null) {
+        throw new IllegalArgumentException("@ServiceImpl annotation missing service class");
       }
+      ServiceDefinition serviceDefinition;
       try {
-        addOperationHandler(builder, serviceDefinition, instance, method);
+        serviceDefinition = ServiceDefinition.fromClass(serviceImpl.service());
       } catch (Exception e) {
-        throw new RuntimeException(
-            "Failed obtaining operation handler from " + method.getName(), e);
+        throw new RuntimeException("Failed loading @ServiceImpl class " + serviceImpl.service(), e);
       }
+
+      // Collect all methods, then walk them looking for operation handlers
+      List<Method> methods = new ArrayList<>();
+      collectClassMethods(clazz, methods);
+      Map<String, Method> methodsByOperation = new HashMap<>();
+      for (Method method : methods) {
+        OperationImpl operationImpl = method.getDeclaredAnnotation(OperationImpl.class);
+        if (operationImpl == null) {
+          continue;
+        }
+        try {
+          OperationDefinition operationDefinition =
+              validateOperationMethod(serviceDefinition, method);
+          if (methodsByOperation.put(operationDefinition.getName(), method) != null) {
+            throw new RuntimeException("Multiple overloads with @OperationImpl");
+          }
+        } catch (Exception e) {
+          throw new RuntimeException(
+              "Failed obtaining operation handler from " + method.getName(), e);
+        }
+      }
+      return new Template(serviceDefinition, methodsByOperation);
     }
 
-    // Do build which will fail if there are any handlers missing for the definitions or any
-    // handlers without a definition
-    return builder.build();
+    private ServiceImplInstance newInstance(Object instance) {
+      Builder builder = newBuilder().setDefinition(definition);
+      methodsByOperation.forEach(
+          (operation, method) -> {
+            // Invoke to get handler
+            Object handler;
+            try {
+              handler = method.invoke(instance);
+            } catch (Exception e) {
+              throw new RuntimeException(
+                  "Failed obtaining operation handler from " + method.getName(),
+                  new RuntimeException("Obtaining handler failed", e));
+            }
+            Objects.requireNonNull(handler);
+            if (!(handler instanceof OperationHandler)) {
+              throw new RuntimeException(
+                  "Failed obtaining operation handler from " + method.getName(),
+                  new RuntimeException(
+                      "Expected handler to be instance of OperationHandler, was "
+                          + handler.getClass()));
+            }
+            builder.putOperationHandler(operation, (OperationHandler<?, ?>) handler);
+          });
+      // Do build which will fail if there are any handlers missing for the definitions or any
+      // handlers without a definition
+      return builder.build();
+    }
   }
 
-  private static void addOperationHandler(
-      Builder builder, ServiceDefinition serviceDefinition, Object instance, Method method) {
+  private static OperationDefinition validateOperationMethod(
+      ServiceDefinition serviceDefinition, Method method) {
     // Basic validation
     if (method.getParameterCount() > 0) {
       throw new IllegalArgumentException("Cannot have any parameters");
@@ -104,24 +159,7 @@ public class ServiceImplInstance {
               + " but got "
               + handleType.getActualTypeArguments()[1].getTypeName());
     }
-    // Invoke to get handler
-    Object handler;
-    try {
-      handler = method.invoke(instance);
-    } catch (Exception e) {
-      throw new RuntimeException("Obtaining handler failed", e);
-    }
-    Objects.requireNonNull(handler);
-    if (!(handler instanceof OperationHandler)) {
-      throw new RuntimeException(
-          "Expected handler to be instance of OperationHandler, was " + handler.getClass());
-    }
-
-    // Add to builder
-    if (builder.operationHandlers.containsKey(operationDefinition.getName())) {
-      throw new RuntimeException("Multiple overloads with @OperationImpl");
-    }
-    builder.putOperationHandler(operationDefinition.getName(), (OperationHandler<?, ?>) handler);
+    return operationDefinition;
   }
 
   private static void collectClassMethods(Class<?> clazz, final List<Method> methods) {
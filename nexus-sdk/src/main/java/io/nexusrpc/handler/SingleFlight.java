@@ -0,0 +1,145 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.OperationException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.*;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Coalesces identical concurrent operation starts so only the first, the leader, runs and every
+ * other caller waiting on the same key shares its serialized result. It is used below the
+ * middlewares, so every caller still passes through its own middleware chain before joining.
+ *
+ * <p>Each waiter only waits up to its own deadline and stops waiting when its own method is
+ * cancelled, without affecting the leader or other waiters. If the leader fails because its method
+ * was cancelled, waiters try again instead of sharing that failure. If the leader's result is
+ * asynchronous, waiters run the operation themselves since an operation token is specific to a
+ * start.
+ */
+final class SingleFlight {
+  @FunctionalInterface
+  interface Start {
+    OperationStartResult<HandlerResultContent> start() throws OperationException;
+  }
+
+  private final ConcurrentMap<OperationInputKey, Flight> flights = new ConcurrentHashMap<>();
+
+  OperationStartResult<HandlerResultContent> execute(
+      OperationContext context, OperationInputKey key, Start start) throws OperationException {
+    while (true) {
+      Flight flight = new Flight();
+      Flight existing = flights.putIfAbsent(key, flight);
+      if (existing == null) {
+        return lead(context, key, flight, start);
+      }
+      Flight.Outcome outcome = await(context, existing);
+      if (outcome.failure != null) {
+        if (outcome.leaderMethodCancelled) {
+          continue;
+        }
+        throw rethrow(outcome.failure);
+      }
+      OperationStartResult<HandlerResultContent> result = outcome.result;
+      if (result == null || !result.isSync()) {
+        return start.start();
+      }
+      return result;
+    }
+  }
+
+  /** Number of keys with a start currently running. */
+  int size() {
+    return flights.size();
+  }
+
+  private OperationStartResult<HandlerResultContent> lead(
+      OperationContext context, OperationInputKey key, Flight flight, Start start)
+      throws OperationException {
+    OperationStartResult<HandlerResultContent> result = null;
+    Throwable failure = null;
+    try {
+      result = start.start();
+      return result;
+    } catch (Throwable e) {
+      failure = e;
+      throw e;
+    } finally {
+      // Remove before completing so waiters that retry do not find this flight again
+      flights.remove(key, flight);
+      flight.outcome.complete(
+          new Flight.Outcome(result, failure, failure != null && context.isMethodCancelled()));
+    }
+  }
+
+  private static Flight.Outcome await(OperationContext context, Flight flight)
+      throws HandlerException {
+    // Each waiter gets its own dependent future so cancelling it leaves the flight alone
+    CompletableFuture<Flight.Outcome> waiter = flight.outcome.thenApply(outcome -> outcome);
+    OperationMethodCancellationListener listener = () -> waiter.cancel(false);
+    context.addMethodCancellationListener(listener);
+    try {
+      Instant deadline = context.getDeadline();
+      if (deadline == null) {
+        return waiter.get();
+      }
+      long remainingNanos = Duration.between(Instant.now(), deadline).toNanos();
+      return waiter.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      throw new HandlerException(
+          HandlerException.ErrorType.REQUEST_TIMEOUT,
+          "Identical in-flight operation did not complete before deadline",
+          null,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    } catch (CancellationException e) {
+      throw new HandlerException(
+          HandlerException.ErrorType.REQUEST_TIMEOUT,
+          "Waiting on identical in-flight operation cancelled: "
+              + context.getMethodCancellationReason(),
+          null,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new HandlerException(
+          HandlerException.ErrorType.INTERNAL,
+          "Interrupted waiting on identical in-flight operation",
+          e,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    } catch (ExecutionException e) {
+      // The outcome future is only ever completed normally
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      context.removeMethodCancellationListener(listener);
+    }
+  }
+
+  private static OperationException rethrow(Throwable failure) {
+    if (failure instanceof OperationException) {
+      return (OperationException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new RuntimeException(failure);
+  }
+
+  private static final class Flight {
+    private final CompletableFuture<Outcome> outcome = new CompletableFuture<>();
+
+    private static final class Outcome {
+      private final @Nullable OperationStartResult<HandlerResultContent> result;
+      private final @Nullable Throwable failure;
+      private final boolean leaderMethodCancelled;
+
+      private Outcome(
+          @Nullable OperationStartResult<HandlerResultContent> result,
+          @Nullable Throwable failure,
+          boolean leaderMethodCancelled) {
+        this.result = result;
+        this.failure = failure;
+        this.leaderMethodCancelled = leaderMethodCancelled;
+      }
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package io.nexusrpc.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Single-subscriber publisher that reads a blocking stream on demand. */
+final class StreamContentPublisher implements ContentPublisher {
+  private final InputStream stream;
+  private final int chunkSize;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  StreamContentPublisher(InputStream stream, int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive");
+    }
+    this.stream = stream;
+    this.chunkSize = chunkSize;
+  }
+
+  @Override
+  public void subscribe(Subscriber subscriber) {
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(
+          new Subscription() {
+            @Override
+            public void request(long n) {}
+
+            @Override
+            public void cancel() {}
+          });
+      subscriber.onError(new IllegalStateException("Content already subscribed to"));
+      return;
+    }
+    subscriber.onSubscribe(new StreamSubscription(subscriber));
+  }
+
+  private final class StreamSubscription implements Subscription {
+    private final Subscriber subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    // Work-in-progress counter so only one thread reads and signals at a time, and a request from
+    // within onNext is picked up by the loop already running instead of recursing
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private boolean done;
+    private boolean invalidRequest;
+    private long invalidRequestCount;
+
+    private StreamSubscription(Subscriber subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = true;
+        invalidRequestCount = n;
+      } else {
+        demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        while (!done && !cancelled) {
+          if (invalidRequest) {
+            done = true;
+            subscriber.onError(
+                new IllegalArgumentException(
+                    "Request must be positive, got " + invalidRequestCount));
+          } else if (demand.get() == 0) {
+            break;
+          } else {
+            emitNext();
+          }
+        }
+      } while (wip.decrementAndGet() != 0);
+    }
+
+    private void emitNext() {
+      byte[] chunk = new byte[chunkSize];
+      int read;
+      try {
+        read = stream.read(chunk, 0, chunk.length);
+        if (read == 0) {
+          // Some streams return nothing instead of blocking, a single byte read blocks until data
+          // or the end instead of spinning
+          int b = stream.read();
+          if (b != -1) {
+            chunk[0] = (byte) b;
+          }
+          read = b == -1 ? -1 : 1;
+        }
+      } catch (IOException | RuntimeException e) {
+        done = true;
+        subscriber.onError(e);
+        return;
+      }
+      if (read == -1) {
+        done = true;
+        subscriber.onComplete();
+      } else {
+        demand.decrementAndGet();
+        subscriber.onNext(ByteBuffer.wrap(chunk, 0, read));
+      }
+    }
+  }
+}
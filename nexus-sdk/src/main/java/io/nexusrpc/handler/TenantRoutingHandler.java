@@ -0,0 +1,297 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.OperationException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Handler that routes each call to a handler for the tenant named in a request header, creating
+ * the tenant's handler on its first call.
+ *
+ * <p>At most a maximum number of tenant handlers are kept, the least recently used is evicted to
+ * make room for another. Tenant handlers not used within the idle timeout, if set, are evicted as
+ * well. An evicted tenant's handler is created again on its next call, so idle tenants take no
+ * memory here. Tenants whose handler is still being created are never evicted, so while many
+ * are the number kept can briefly exceed the maximum.
+ *
+ * <p>Calls for a kept tenant do not lock. Recency is kept in a list that calls reorder only if no
+ * other call is, so under contention the evicted tenant is only roughly the least recently used.
+ * Eviction takes tenants off the front of that list, so its cost follows the tenants evicted, not
+ * the tenants kept. A tenant's handler is created outside of any lock, so a slow factory only
+ * holds up calls for that tenant.
+ *
+ * <p>Tenant handlers are cheapest when derived from one template with {@link
+ * ServiceHandler#withInstance}. Instances of the same {@link ServiceImpl} class share their
+ * service definition and reflection, and the derived handlers share codecs, middlewares and
+ * bulkheads with the template.
+ */
+@Experimental
+public class TenantRoutingHandler implements Handler {
+  /** Create a builder for a tenant routing handler. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private final String tenantHeader;
+  private final Function<String, ? extends Handler> handlerFactory;
+  private final int maxTenants;
+  private final @Nullable Duration idleTimeout;
+  private final long idleTimeoutNanos;
+  private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+  // Least recently used first, guarded by the lock
+  private final LinkedHashMap<String, Tenant> recency = new LinkedHashMap<>(16, 0.75f, true);
+  private final ReentrantLock recencyLock = new ReentrantLock();
+
+  private TenantRoutingHandler(
+      String tenantHeader,
+      Function<String, ? extends Handler> handlerFactory,
+      int maxTenants,
+      @Nullable Duration idleTimeout) {
+    this.tenantHeader = tenantHeader;
+    this.handlerFactory = handlerFactory;
+    this.maxTenants = maxTenants;
+    this.idleTimeout = idleTimeout;
+    this.idleTimeoutNanos = idleTimeout == null ? Long.MAX_VALUE : idleTimeout.toNanos();
+  }
+
+  /** Name of the request header with the tenant. */
+  public String getTenantHeader() {
+    return tenantHeader;
+  }
+
+  /** Factory creating the handler of a tenant. */
+  public Function<String, ? extends Handler> getHandlerFactory() {
+    return handlerFactory;
+  }
+
+  /** Maximum number of tenant handlers kept. */
+  public int getMaxTenants() {
+    return maxTenants;
+  }
+
+  /** How long a tenant handler is kept without being used, or null if kept until evicted. */
+  public @Nullable Duration getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /** Number of tenant handlers currently kept. */
+  public int getTenantCount() {
+    return tenants.size();
+  }
+
+  /** Evict the handler of the given tenant if kept. */
+  public void evict(String tenant) {
+    recencyLock.lock();
+    try {
+      recency.remove(tenant);
+      tenants.remove(tenant);
+    } finally {
+      recencyLock.unlock();
+    }
+  }
+
+  @Override
+  public OperationStartResult<HandlerResultContent> startOperation(
+      OperationContext context, OperationStartDetails details, HandlerInputContent input)
+      throws OperationException {
+    return handlerFor(context).startOperation(context, details, input);
+  }
+
+  /**
+   * Start a batch of operations, passing the requests of each tenant to its handler as one batch.
+   * Requests without a tenant fail on their own.
+   */
+  @Override
+  public List<BatchStartResult> startOperations(List<BatchStartRequest> requests) {
+    return BatchStartResult.startRouted(requests, request -> handlerFor(request.getContext()));
+  }
+
+  @Override
+  public void cancelOperation(OperationContext context, OperationCancelDetails details) {
+    handlerFor(context).cancelOperation(context, details);
+  }
+
+  private Handler handlerFor(OperationContext context) {
+    String tenantName = context.getHeaders().get(tenantHeader);
+    if (tenantName == null || tenantName.isEmpty()) {
+      throw new HandlerException(
+          HandlerException.ErrorType.BAD_REQUEST,
+          "Missing " + tenantHeader + " header",
+          null,
+          HandlerException.RetryBehavior.UNSPECIFIED);
+    }
+    long now = System.nanoTime();
+    Tenant tenant = tenants.get(tenantName);
+    if (tenant != null) {
+      tenant.lastUsedNanos = now;
+      if (recencyLock.tryLock()) {
+        try {
+          recency.get(tenantName);
+          evictIdle(now);
+        } finally {
+          recencyLock.unlock();
+        }
+      }
+      return tenant.awaitHandler();
+    }
+    Tenant created = new Tenant(now);
+    tenant = tenants.putIfAbsent(tenantName, created);
+    if (tenant != null) {
+      tenant.lastUsedNanos = now;
+      return tenant.awaitHandler();
+    }
+    add(tenantName, created, now);
+    Handler handler;
+    try {
+      handler = Objects.requireNonNull(handlerFactory.apply(tenantName), "Tenant handler");
+    } catch (RuntimeException | Error e) {
+      // Calls waiting on this attempt fail with it, later calls try again
+      evict(tenantName, created);
+      created.handler.completeExceptionally(e);
+      throw e;
+    }
+    created.handler.complete(handler);
+    return handler;
+  }
+
+  private void add(String tenantName, Tenant tenant, long now) {
+    recencyLock.lock();
+    try {
+      // Unless already evicted
+      if (tenants.get(tenantName) == tenant) {
+        recency.put(tenantName, tenant);
+      }
+      Iterator<Map.Entry<String, Tenant>> eldest = recency.entrySet().iterator();
+      while (recency.size() > maxTenants && eldest.hasNext()) {
+        Map.Entry<String, Tenant> entry = eldest.next();
+        // Evicting a tenant still being created would let its next call create it again
+        if (!entry.getValue().handler.isDone()) {
+          continue;
+        }
+        eldest.remove();
+        tenants.remove(entry.getKey(), entry.getValue());
+      }
+      evictIdle(now);
+    } finally {
+      recencyLock.unlock();
+    }
+  }
+
+  private void evict(String tenantName, Tenant tenant) {
+    recencyLock.lock();
+    try {
+      recency.remove(tenantName, tenant);
+      tenants.remove(tenantName, tenant);
+    } finally {
+      recencyLock.unlock();
+    }
+  }
+
+  // Called with the lock held. Stops at the first tenant in use, as those after it were used later
+  // but for reorders skipped under contention. Tenants still being created are skipped.
+  private void evictIdle(long now) {
+    if (idleTimeout == null) {
+      return;
+    }
+    Iterator<Map.Entry<String, Tenant>> eldest = recency.entrySet().iterator();
+    while (eldest.hasNext()) {
+      Map.Entry<String, Tenant> entry = eldest.next();
+      if (now - entry.getValue().lastUsedNanos <= idleTimeoutNanos) {
+        return;
+      } else if (!entry.getValue().handler.isDone()) {
+        continue;
+      }
+      eldest.remove();
+      tenants.remove(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private static final class Tenant {
+    // Completed by the call that added the tenant, once the factory returns
+    private final CompletableFuture<Handler> handler = new CompletableFuture<>();
+    private volatile long lastUsedNanos;
+
+    private Tenant(long lastUsedNanos) {
+      this.lastUsedNanos = lastUsedNanos;
+    }
+
+    private Handler awaitHandler() {
+      Handler handler = this.handler.getNow(null);
+      if (handler != null) {
+        return handler;
+      }
+      try {
+        return this.handler.join();
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw e;
+      }
+    }
+  }
+
+  /** Builder for a tenant routing handler. */
+  public static class Builder {
+    private @Nullable String tenantHeader;
+    private @Nullable Function<String, ? extends Handler> handlerFactory;
+    private int maxTenants = 1000;
+    private @Nullable Duration idleTimeout;
+
+    private Builder() {}
+
+    /** Set the name of the request header with the tenant. Required. */
+    public Builder setTenantHeader(String tenantHeader) {
+      this.tenantHeader = tenantHeader;
+      return this;
+    }
+
+    /**
+     * Set the factory creating the handler of a tenant, given the tenant. It is called at most once
+     * at a time per tenant, and again for a tenant after its handler was evicted or the factory
+     * failed. Other calls for the tenant wait for it, calls for other tenants do not. Required.
+     */
+    public Builder setHandlerFactory(Function<String, ? extends Handler> handlerFactory) {
+      this.handlerFactory = handlerFactory;
+      return this;
+    }
+
+    /** Set the maximum number of tenant handlers kept. Default is 1000. */
+    public Builder setMaxTenants(int maxTenants) {
+      this.maxTenants = maxTenants;
+      return this;
+    }
+
+    /** Set how long a tenant handler is kept without being used. Default is no timeout. */
+    public Builder setIdleTimeout(@Nullable Duration idleTimeout) {
+      this.idleTimeout = idleTimeout;
+      return this;
+    }
+
+    /** Build the handler. */
+    public TenantRoutingHandler build() {
+      Objects.requireNonNull(tenantHeader, "Tenant header required");
+      Objects.requireNonNull(handlerFactory, "Handler factory required");
+      if (maxTenants <= 0) {
+        throw new IllegalArgumentException("Max tenants must be positive");
+      } else if (idleTimeout != null && (idleTimeout.isNegative() || idleTimeout.isZero())) {
+        throw new IllegalArgumentException("Idle timeout must be positive");
+      }
+      return new TenantRoutingHandler(tenantHeader, handlerFactory, maxTenants, idleTimeout);
+    }
+  }
+}
@@ -0,0 +1,248 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * W3C trace context of a span, as carried in the {@code traceparent} and {@code tracestate}
+ * headers.
+ */
+@Experimental
+public class TraceContext {
+  /** Header with the trace ID, parent span ID and flags. */
+  public static final String TRACEPARENT_HEADER = "traceparent";
+
+  /** Header with vendor-specific trace state. */
+  public static final String TRACESTATE_HEADER = "tracestate";
+
+  private static final int TRACEPARENT_LENGTH = 55;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /** Create a builder. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Create a builder from an existing trace context. */
+  public static Builder newBuilder(TraceContext context) {
+    return new Builder(context);
+  }
+
+  /**
+   * Parse the trace context from header values, or return null if the {@code traceparent} value is
+   * missing or invalid.
+   */
+  public static @Nullable TraceContext parse(
+      @Nullable String traceparent, @Nullable String tracestate) {
+    int sampled = sampledState(traceparent);
+    if (sampled == -1) {
+      return null;
+    }
+    String value = Objects.requireNonNull(traceparent);
+    return new TraceContext(
+        value.substring(3, 35),
+        value.substring(36, 52),
+        sampled == 1,
+        tracestate == null || tracestate.isEmpty() ? null : tracestate);
+  }
+
+  /** Create a random trace ID. */
+  public static String newTraceId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return toHex(random.nextLong(), random.nextLong() | 1);
+  }
+
+  /** Create a random span ID. */
+  public static String newSpanId() {
+    return toHex(ThreadLocalRandom.current().nextLong() | 1);
+  }
+
+  /**
+   * Whether the given {@code traceparent} value is valid and sampled, without allocating. Returns 1
+   * if sampled, 0 if not sampled, or -1 if missing or invalid.
+   */
+  static int sampledState(@Nullable String traceparent) {
+    if (traceparent == null || traceparent.length() < TRACEPARENT_LENGTH) {
+      return -1;
+    }
+    int version = hexValue(traceparent, 0, 2);
+    if (version == -1 || version == 0xff) {
+      return -1;
+    } else if (version == 0 && traceparent.length() != TRACEPARENT_LENGTH) {
+      return -1;
+    } else if (traceparent.length() > TRACEPARENT_LENGTH
+        && traceparent.charAt(TRACEPARENT_LENGTH) != '-') {
+      // Later versions may append fields
+      return -1;
+    } else if (traceparent.charAt(2) != '-'
+        || traceparent.charAt(35) != '-'
+        || traceparent.charAt(52) != '-') {
+      return -1;
+    } else if (!isNonZeroHex(traceparent, 3, 35) || !isNonZeroHex(traceparent, 36, 52)) {
+      return -1;
+    }
+    int flags = hexValue(traceparent, 53, 55);
+    return flags == -1 ? -1 : flags & 1;
+  }
+
+  private static int hexValue(String str, int start, int end) {
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      char c = str.charAt(i);
+      int digit = c >= '0' && c <= '9' ? c - '0' : c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+      if (digit == -1) {
+        return -1;
+      }
+      value = value << 4 | digit;
+    }
+    return value;
+  }
+
+  private static boolean isNonZeroHex(String str, int start, int end) {
+    boolean nonZero = false;
+    for (int i = start; i < end; i++) {
+      char c = str.charAt(i);
+      if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+        return false;
+      }
+      nonZero |= c != '0';
+    }
+    return nonZero;
+  }
+
+  private static String toHex(long... values) {
+    char[] chars = new char[values.length * 16];
+    for (int i = 0; i < values.length; i++) {
+      for (int j = 0; j < 16; j++) {
+        chars[i * 16 + j] = HEX[(int) (values[i] >>> (60 - j * 4)) & 0xf];
+      }
+    }
+    return new String(chars);
+  }
+
+  private final String traceId;
+  private final String spanId;
+  private final boolean sampled;
+  private final @Nullable String traceState;
+
+  private TraceContext(
+      String traceId, String spanId, boolean sampled, @Nullable String traceState) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.sampled = sampled;
+    this.traceState = traceState;
+  }
+
+  /** Trace ID as 32 lowercase hex characters. */
+  public String getTraceId() {
+    return traceId;
+  }
+
+  /** Span ID as 16 lowercase hex characters. */
+  public String getSpanId() {
+    return spanId;
+  }
+
+  /** Whether the trace is sampled. */
+  public boolean isSampled() {
+    return sampled;
+  }
+
+  /** Vendor-specific trace state, or null if none. */
+  public @Nullable String getTraceState() {
+    return traceState;
+  }
+
+  /** Value of the {@code traceparent} header for this context. */
+  public String toTraceparent() {
+    return "00-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    TraceContext that = (TraceContext) o;
+    return sampled == that.sampled
+        && Objects.equals(traceId, that.traceId)
+        && Objects.equals(spanId, that.spanId)
+        && Objects.equals(traceState, that.traceState);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(traceId, spanId, sampled, traceState);
+  }
+
+  @Override
+  public String toString() {
+    return "TraceContext{"
+        + "traceId='"
+        + traceId
+        + '\''
+        + ", spanId='"
+        + spanId
+        + '\''
+        + ", sampled="
+        + sampled
+        + ", traceState='"
+        + traceState
+        + '\''
+        + '}';
+  }
+
+  /** Builder for a trace context. */
+  public static class Builder {
+    private @Nullable String traceId;
+    private @Nullable String spanId;
+    private boolean sampled;
+    private @Nullable String traceState;
+
+    private Builder() {}
+
+    private Builder(TraceContext context) {
+      traceId = context.traceId;
+      spanId = context.spanId;
+      sampled = context.sampled;
+      traceState = context.traceState;
+    }
+
+    /** Set trace ID as 32 lowercase hex characters, not all zero. Required. */
+    public Builder setTraceId(String traceId) {
+      this.traceId = traceId;
+      return this;
+    }
+
+    /** Set span ID as 16 lowercase hex characters, not all zero. Required. */
+    public Builder setSpanId(String spanId) {
+      this.spanId = spanId;
+      return this;
+    }
+
+    /** Set whether the trace is sampled. Default is false. */
+    public Builder setSampled(boolean sampled) {
+      this.sampled = sampled;
+      return this;
+    }
+
+    /** Set vendor-specific trace state. Optional. */
+    public Builder setTraceState(@Nullable String traceState) {
+      this.traceState = traceState;
+      return this;
+    }
+
+    /** Build the trace context. */
+    public TraceContext build() {
+      Objects.requireNonNull(traceId, "Trace ID required");
+      Objects.requireNonNull(spanId, "Span ID required");
+      if (traceId.length() != 32 || !isNonZeroHex(traceId, 0, 32)) {
+        throw new IllegalArgumentException("Invalid trace ID " + traceId);
+      } else if (spanId.length() != 16 || !isNonZeroHex(spanId, 0, 16)) {
+        throw new IllegalArgumentException("Invalid span ID " + spanId);
+      }
+      return new TraceContext(traceId, spanId, sampled, traceState);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Tracing system used by {@link TracingOperationMiddleware}, to be implemented as an adapter for a
+ * tracing library.
+ */
+@Experimental
+public interface Tracer {
+  /**
+   * Whether to trace a call that has no incoming trace context. Called for every such call, so this
+   * should be cheap and should not allocate.
+   */
+  boolean sampleRoot(OperationContext context);
+
+  /**
+   * Start a span. The returned span's context must be a child of the parent if there is one, and
+   * is propagated to the operation handler and any callback.
+   *
+   * @param name Name of the span.
+   * @param parent Context of the incoming trace, or null if this is a new trace.
+   */
+  Span startSpan(String name, @Nullable TraceContext parent);
+
+  /** Span started by a {@link Tracer}. */
+  interface Span {
+    /** Context of this span. */
+    TraceContext getContext();
+
+    /** Set an attribute on the span. */
+    void setAttribute(String key, String value);
+
+    /** Record that the traced call failed with the given exception. */
+    void recordException(Throwable exception);
+
+    /** End the span. Called exactly once. */
+    void end();
+  }
+}
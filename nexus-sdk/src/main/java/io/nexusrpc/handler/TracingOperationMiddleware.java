@@ -0,0 +1,278 @@
+package io.nexusrpc.handler;
+
+import io.nexusrpc.Experimental;
+import io.nexusrpc.Link;
+import io.nexusrpc.OperationException;
+import io.nexusrpc.Serializer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Middleware that traces operation starts and cancels with a {@link Tracer}, continuing the W3C
+ * trace context of the caller.
+ *
+ * <p>The incoming trace context is read from the {@code traceparent} and {@code tracestate}
+ * headers. Calls whose incoming context is not sampled, or that have none and are not sampled by
+ * {@link Tracer#sampleRoot}, pass through untouched without allocating. For traced calls, a span
+ * is started around the call and its context replaces the trace headers seen by the operation
+ * handler. It is also put in the callback headers of asynchronous starts and added as a link of
+ * type {@link #TRACE_LINK_TYPE} on asynchronous results, so completions can join the trace.
+ *
+ * <p>When used with a {@link ServiceHandler}, deserializing the input and serializing a sync result
+ * get child spans of the start span, with a {@code nexus.method} of {@code deserialize} and {@code
+ * serialize}. The start span is started before the input is deserialized, so it covers that too,
+ * and is ended even if an outer middleware rejects the start before it reaches this one.
+ */
+@Experimental
+public class TracingOperationMiddleware implements OperationMiddleware {
+  /** Create a builder for a tracing middleware. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Type of the link holding the trace context, whose URI is {@code traceparent:<value>}. */
+  public static final String TRACE_LINK_TYPE = "w3c.TraceContext";
+
+  private final Tracer tracer;
+
+  private TracingOperationMiddleware(Tracer tracer) {
+    this.tracer = tracer;
+  }
+
+  /** Tracer spans are started with. */
+  public Tracer getTracer() {
+    return tracer;
+  }
+
+  @Override
+  public OperationHandler<Object, Object> intercept(
+      OperationContext context, OperationHandler<Object, Object> next) {
+    int sampled =
+        TraceContext.sampledState(context.getHeaders().get(TraceContext.TRACEPARENT_HEADER));
+    if (sampled == 0 || (sampled == -1 && !tracer.sampleRoot(context))) {
+      return next;
+    }
+    return new TracingOperationHandler(context, next);
+  }
+
+  @Override
+  public Serializer.Codec<Object> interceptCodec(
+      OperationContext context,
+      OperationHandler<Object, Object> intercepted,
+      Serializer.Codec<Object> codec) {
+    // Untraced calls got the next handler back from intercept
+    if (!(intercepted instanceof TracingOperationHandler)) {
+      return codec;
+    }
+    return new TracingCodec((TracingOperationHandler) intercepted, codec);
+  }
+
+  @Override
+  public void onStartFinished(
+      OperationContext context,
+      OperationHandler<Object, Object> intercepted,
+      @Nullable Throwable failure) {
+    if (intercepted instanceof TracingOperationHandler) {
+      ((TracingOperationHandler) intercepted).endIfNotStarted(failure);
+    }
+  }
+
+  private final class TracingOperationHandler implements OperationHandler<Object, Object> {
+    private final OperationContext context;
+    private final OperationHandler<Object, Object> next;
+    // Started by whichever of the input codec and the start comes first, so codec spans can be its
+    // children. Codecs run on the thread of the start, so this is not shared across threads.
+    private Tracer.@Nullable Span span;
+    private boolean started;
+
+    private TracingOperationHandler(
+        OperationContext context, OperationHandler<Object, Object> next) {
+      this.context = context;
+      this.next = next;
+    }
+
+    private Tracer.Span startSpanOnce(OperationContext context) {
+      Tracer.Span span = this.span;
+      if (span == null) {
+        span = startSpan(context, null, "start");
+        this.span = span;
+      }
+      return span;
+    }
+
+    private Tracer.Span startCodecSpan(String method) {
+      return startSpan(context, startSpanOnce(context).getContext(), method);
+    }
+
+    // The start span begun by the input codec is ended by the start, unless the start never ran,
+    // such as when the input failed to deserialize or an outer middleware rejected the start
+    private void endIfNotStarted(@Nullable Throwable failure) {
+      Tracer.Span span = this.span;
+      if (!started && span != null) {
+        started = true;
+        if (failure != null) {
+          span.recordException(failure);
+        }
+        span.end();
+      }
+    }
+
+    @Override
+    public OperationStartResult<Object> start(
+        OperationContext context, OperationStartDetails details, @Nullable Object param)
+        throws OperationException {
+      started = true;
+      Tracer.Span span = startSpanOnce(context);
+      try {
+        span.setAttribute("nexus.request_id", details.getRequestId());
+        TraceContext trace = span.getContext();
+        String traceparent = trace.toTraceparent();
+        if (details.getCallbackUrl() != null) {
+          OperationStartDetails.Builder builder = OperationStartDetails.newBuilder(details);
+          putTraceHeaders(builder.getCallbackHeaders(), trace, traceparent);
+          details = builder.build();
+        }
+        OperationStartResult<Object> result =
+            next.start(withTrace(context, trace, traceparent), details, param);
+        if (!result.isSync()) {
+          span.setAttribute(
+              "nexus.operation_token", Objects.requireNonNull(result.getAsyncOperationToken()));
+          context.addLinks(traceLink(traceparent));
+        }
+        return result;
+      } catch (OperationException | RuntimeException e) {
+        span.recordException(e);
+        throw e;
+      } finally {
+        span.end();
+      }
+    }
+
+    @Override
+    public void cancel(OperationContext context, OperationCancelDetails details) {
+      Tracer.Span span = startSpan(context, null, "cancel");
+      try {
+        span.setAttribute("nexus.operation_token", details.getOperationToken());
+        TraceContext trace = span.getContext();
+        next.cancel(withTrace(context, trace, trace.toTraceparent()), details);
+      } catch (RuntimeException e) {
+        span.recordException(e);
+        throw e;
+      } finally {
+        span.end();
+      }
+    }
+  }
+
+  private final class TracingCodec implements Serializer.Codec<Object> {
+    private final TracingOperationHandler handler;
+    private final Serializer.Codec<Object> codec;
+
+    private TracingCodec(TracingOperationHandler handler, Serializer.Codec<Object> codec) {
+      this.handler = handler;
+      this.codec = codec;
+    }
+
+    @Override
+    public Serializer.Content serialize(@Nullable Object value) {
+      Tracer.Span span = handler.startCodecSpan("serialize");
+      try {
+        Serializer.Content content = codec.serialize(value);
+        span.setAttribute("nexus.content_length", String.valueOf(content.getData().length));
+        return content;
+      } catch (RuntimeException e) {
+        span.recordException(e);
+        throw e;
+      } finally {
+        span.end();
+      }
+    }
+
+    @Override
+    public @Nullable Object deserialize(Serializer.Content content) {
+      Tracer.Span span = handler.startCodecSpan("deserialize");
+      try {
+        span.setAttribute("nexus.content_length", String.valueOf(content.getData().length));
+        return codec.deserialize(content);
+      } catch (RuntimeException e) {
+        span.recordException(e);
+        throw e;
+      } finally {
+        span.end();
+      }
+    }
+
+    @Override
+    public Serializer.Codec<Object> forHeaders(Map<String, String> headers) {
+      return new TracingCodec(handler, codec.forHeaders(headers));
+    }
+  }
+
+  // Parented on the trace context of the headers if no parent is given
+  private Tracer.Span startSpan(
+      OperationContext context, @Nullable TraceContext parent, String method) {
+    if (parent == null) {
+      parent =
+          TraceContext.parse(
+              context.getHeaders().get(TraceContext.TRACEPARENT_HEADER),
+              context.getHeaders().get(TraceContext.TRACESTATE_HEADER));
+    }
+    Tracer.Span span =
+        tracer.startSpan(context.getService() + "/" + context.getOperation(), parent);
+    span.setAttribute("nexus.service", context.getService());
+    span.setAttribute("nexus.operation", context.getOperation());
+    span.setAttribute("nexus.method", method);
+    return span;
+  }
+
+  private static OperationContext withTrace(
+      OperationContext context, TraceContext trace, String traceparent) {
+    OperationContext.Builder builder = OperationContext.newBuilder(context);
+    putTraceHeaders(builder.getHeaders(), trace, traceparent);
+    return builder.build();
+  }
+
+  private static void putTraceHeaders(
+      Map<String, String> headers, TraceContext trace, String traceparent) {
+    headers.put(TraceContext.TRACEPARENT_HEADER, traceparent);
+    if (trace.getTraceState() != null) {
+      headers.put(TraceContext.TRACESTATE_HEADER, trace.getTraceState());
+    } else {
+      headers.remove(TraceContext.TRACESTATE_HEADER);
+    }
+  }
+
+  private static Link traceLink(String traceparent) {
+    try {
+      return Link.newBuilder()
+          .setUri(new URI(TraceContext.TRACEPARENT_HEADER, traceparent, null))
+          .setType(TRACE_LINK_TYPE)
+          .build();
+    } catch (URISyntaxException e) {
+      // Trace parent values are always valid URI parts
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Builder for a tracing middleware. */
+  public static class Builder {
+    private @Nullable Tracer tracer;
+
+    private Builder() {}
+
+    /** Set tracer. Required. */
+    public Builder setTracer(Tracer tracer) {
+      this.tracer = tracer;
+      return this;
+    }
+
+    /** Build the middleware. */
+    public TracingOperationMiddleware build() {
+      Objects.requireNonNull(tracer, "Tracer required");
+      return new TracingOperationMiddleware(tracer);
+    }
+  }
+}
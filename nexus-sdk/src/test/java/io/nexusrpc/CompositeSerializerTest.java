@@ -0,0 +1,150 @@
+package io.nexusrpc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.example.TestServices;
+import io.nexusrpc.handler.*;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class CompositeSerializerTest {
+  // Stand-in for a second format, writes strings reversed
+  private static class ReversedStringSerializer implements Serializer {
+    @Override
+    public Content serialize(@Nullable Object value) {
+      String str = new StringBuilder(String.valueOf(value)).reverse().toString();
+      return Content.newBuilder().setData(str.getBytes(StandardCharsets.UTF_8)).build();
+    }
+
+    @Override
+    public @Nullable Object deserialize(Content content, Type type) {
+      return new StringBuilder(new String(content.getData(), StandardCharsets.UTF_8))
+          .reverse()
+          .toString();
+    }
+  }
+
+  private static CompositeSerializer newSerializer() {
+    return CompositeSerializer.newBuilder()
+        .addSerializer("text/plain", new StringOnlySerializer())
+        .addSerializer("application/x-reversed", new ReversedStringSerializer())
+        .build();
+  }
+
+  private static Serializer.Content content(String data, @Nullable String contentType) {
+    Serializer.Content.Builder builder =
+        Serializer.Content.newBuilder().setData(data.getBytes(StandardCharsets.UTF_8));
+    if (contentType != null) {
+      builder.putHeader("Type", contentType);
+    }
+    return builder.build();
+  }
+
+  @Test
+  void dispatchesByContentType() {
+    CompositeSerializer serializer = newSerializer();
+    assertEquals("abc", serializer.deserialize(content("abc", null), String.class));
+    assertEquals("abc", serializer.deserialize(content("abc", "text/plain"), String.class));
+    assertEquals(
+        "abc", serializer.deserialize(content("cba", "Application/X-Reversed"), String.class));
+    assertEquals(
+        "abc",
+        serializer.deserialize(
+            content("cba", "application/x-reversed; charset=utf-8"), String.class));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> serializer.deserialize(content("abc", "application/json"), String.class));
+
+    Serializer.Content serialized = serializer.serialize("abc");
+    assertEquals("text/plain", serialized.getHeaders().get("type"));
+    assertEquals("abc", new String(serialized.getData(), StandardCharsets.UTF_8));
+    assertInstanceOf(StringOnlySerializer.class, serializer.getSerializer("TEXT/PLAIN"));
+  }
+
+  @Test
+  void codecNegotiatesResponseContentType() {
+    Serializer.Codec<Object> codec = newSerializer().codecFor(String.class);
+    assertEquals("abc", codec.deserialize(content("cba", "application/x-reversed")));
+    Serializer.Codec<Object> reversed =
+        codec.forHeaders(Collections.singletonMap("type", "application/x-reversed"));
+    Serializer.Content serialized = reversed.serialize("abc");
+    assertEquals("application/x-reversed", serialized.getHeaders().get("type"));
+    assertEquals("cba", new String(serialized.getData(), StandardCharsets.UTF_8));
+    assertEquals("text/plain", codec.serialize("abc").getHeaders().get("type"));
+  }
+
+  @Test
+  void duplicateContentTypes() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            CompositeSerializer.newBuilder()
+                .addSerializer("text/plain", new StringOnlySerializer())
+                .addSerializer("Text/Plain", new ReversedStringSerializer())
+                .build());
+    assertThrows(IllegalStateException.class, () -> CompositeSerializer.newBuilder().build());
+  }
+
+  @ServiceImpl(service = TestServices.GenericService.class)
+  public static class EchoServiceImpl {
+    @OperationImpl
+    public OperationHandler<String, String> operation() {
+      return OperationHandler.sync((ctx, details, input) -> input + "!");
+    }
+  }
+
+  @Test
+  void handlerRespondsInRequestContentType() throws OperationException {
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(newSerializer())
+            .addInstance(ServiceImplInstance.fromInstance(new EchoServiceImpl()))
+            .build();
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            OperationContext.newBuilder()
+                .setService("GenericService")
+                .setOperation("operation")
+                .build(),
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream("cba".getBytes(StandardCharsets.UTF_8)))
+                .putHeader("type", "application/x-reversed")
+                .build());
+    HandlerResultContent content = Objects.requireNonNull(result.getSyncResult());
+    assertEquals("application/x-reversed", content.getHeaders().get("type"));
+    assertEquals(
+        "!cba", new String(Objects.requireNonNull(content.getDataBytes()), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void handlerRejectsUnsupportedContentType() {
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(newSerializer())
+            .addInstance(ServiceImplInstance.fromInstance(new EchoServiceImpl()))
+            .build();
+    HandlerException e =
+        assertThrows(
+            HandlerException.class,
+            () ->
+                handler.startOperation(
+                    OperationContext.newBuilder()
+                        .setService("GenericService")
+                        .setOperation("operation")
+                        .build(),
+                    OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+                    HandlerInputContent.newBuilder()
+                        .setDataStream(
+                            new ByteArrayInputStream("abc".getBytes(StandardCharsets.UTF_8)))
+                        .putHeader("type", "application/json")
+                        .build()));
+    assertEquals(HandlerException.ErrorType.BAD_REQUEST, e.getErrorType());
+    assertEquals("Unsupported content type application/json", e.getMessage());
+  }
+}
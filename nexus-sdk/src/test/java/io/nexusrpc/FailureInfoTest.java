@@ -127,4 +127,24 @@ public class FailureInfoTest {
     assertTrue(str.contains("value"));
     assertTrue(str.contains("{}"));
   }
+
+  @Test
+  void stackTraceFromThrowable() {
+    RuntimeException cause = new RuntimeException("boom");
+    FailureInfo failure =
+        FailureInfo.newBuilder().setMessage("Test").setStackTraceFrom(cause).build();
+
+    String stackTrace = failure.getStackTrace();
+    assertNotNull(stackTrace);
+    assertTrue(stackTrace.startsWith("java.lang.RuntimeException: boom"));
+    assertTrue(stackTrace.contains("stackTraceFromThrowable"));
+    // Rendered once
+    assertSame(stackTrace, failure.getStackTrace());
+    assertEquals(
+        failure, FailureInfo.newBuilder().setMessage("Test").setStackTrace(stackTrace).build());
+    assertSame(stackTrace, FailureInfo.newBuilder(failure).build().getStackTrace());
+    // Setting a string replaces the throwable
+    assertEquals(
+        "other", FailureInfo.newBuilder(failure).setStackTrace("other").build().getStackTrace());
+  }
 }
@@ -74,4 +74,17 @@ public class OperationExceptionTest {
     assertEquals(rootCause, ex.getCause().getCause());
     assertEquals(OperationState.FAILED, ex.getState());
   }
+
+  @Test
+  void withoutStackTrace() {
+    OperationException failed = OperationException.failedWithoutStackTrace("Failed");
+    assertEquals("Failed", failed.getMessage());
+    assertEquals(OperationState.FAILED, failed.getState());
+    assertEquals(0, failed.getStackTrace().length);
+
+    OperationException canceled = OperationException.canceledWithoutStackTrace("Canceled");
+    assertEquals("Canceled", canceled.getMessage());
+    assertEquals(OperationState.CANCELED, canceled.getState());
+    assertEquals(0, canceled.getStackTrace().length);
+  }
 }
@@ -3,6 +3,11 @@ package io.nexusrpc;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 public class ServiceDefinitionTest {
@@ -171,4 +176,101 @@ public class ServiceDefinitionTest {
     assertOperationExists(defn, "singleParamSingleReturn", String.class, String.class);
     assertOperationExists(defn, "custom-name", Void.TYPE, Void.TYPE);
   }
+
+  @Service
+  interface CachedResultService {
+    @Operation(resultCacheTtlMillis = 5000, resultCacheKeyHeaders = {"Tenant-Id"})
+    String cached(String param);
+
+    @Operation
+    String uncached(String param);
+  }
+
+  @Test
+  void resultCacheSettings() {
+    ServiceDefinition defn = ServiceDefinition.fromClass(CachedResultService.class);
+    OperationDefinition cached = defn.getOperations().get("cached");
+    assertEquals(Duration.ofSeconds(5), cached.getResultCacheTtl());
+    assertEquals(Collections.singletonList("Tenant-Id"), cached.getResultCacheKeyHeaders());
+    assertEquals(cached, OperationDefinition.newBuilder(cached).build());
+    OperationDefinition uncached = defn.getOperations().get("uncached");
+    assertNull(uncached.getResultCacheTtl());
+    assertEquals(Collections.emptyList(), uncached.getResultCacheKeyHeaders());
+    assertNotEquals(
+        uncached,
+        OperationDefinition.newBuilder(uncached).setResultCacheTtl(Duration.ofSeconds(1)).build());
+    assertThrows(
+        IllegalStateException.class,
+        () -> OperationDefinition.newBuilder(uncached).setResultCacheTtl(Duration.ZERO).build());
+    assertEquals(
+        Arrays.asList("a", "b"),
+        OperationDefinition.newBuilder(uncached)
+            .addResultCacheKeyHeader("a")
+            .addResultCacheKeyHeader("b")
+            .build()
+            .getResultCacheKeyHeaders());
+  }
+
+  @Service
+  interface StreamingService {
+    @Operation(streaming = true)
+    Iterator<String> streaming(String param);
+  }
+
+  @Service
+  interface InvalidStreamingService {
+    @Operation(streaming = true)
+    List<String> notIterator(String param);
+  }
+
+  @Service
+  interface RawIteratorStreamingService {
+    @SuppressWarnings("rawtypes")
+    @Operation(streaming = true)
+    Iterator rawIterator(String param);
+  }
+
+  @Service
+  interface WildcardStreamingService {
+    @Operation(streaming = true)
+    Iterator<? extends CharSequence> wildcard(String param);
+  }
+
+  @Test
+  void streamingSettings() {
+    OperationDefinition streaming =
+        ServiceDefinition.fromClass(StreamingService.class).getOperations().get("streaming");
+    assertTrue(streaming.isStreaming());
+    assertEquals(String.class, streaming.getStreamElementType());
+    assertEquals(streaming, OperationDefinition.newBuilder(streaming).build());
+    assertInvalidService(
+        InvalidStreamingService.class,
+        expectedOperationFailure(
+            "notIterator",
+            InvalidStreamingService.class,
+            "Streaming return type must be an Iterator"));
+    assertInvalidService(
+        RawIteratorStreamingService.class,
+        expectedOperationFailure(
+            "rawIterator",
+            RawIteratorStreamingService.class,
+            "Streaming return type must be a parameterized Iterator, not a raw Iterator"));
+    assertInvalidService(
+        WildcardStreamingService.class,
+        expectedOperationFailure(
+            "wildcard",
+            WildcardStreamingService.class,
+            "Streaming return type must be an Iterator of a concrete element type, not "
+                + "java.util.Iterator<? extends java.lang.CharSequence>"));
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            OperationDefinition.newBuilder(streaming)
+                .setResultCacheTtl(Duration.ofSeconds(1))
+                .build());
+    OperationDefinition notStreaming =
+        OperationDefinition.newBuilder(streaming).setStreaming(false).build();
+    assertFalse(notStreaming.isStreaming());
+    assertNull(notStreaming.getStreamElementType());
+  }
 }
@@ -0,0 +1,188 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+
+public class BatchStartTest {
+  @Service
+  public interface LookupService {
+    @Operation
+    String lookup(String key);
+  }
+
+  @ServiceImpl(service = LookupService.class)
+  public static class LookupServiceImpl {
+    private final CyclicBarrier barrier;
+
+    public LookupServiceImpl(int parties) {
+      barrier = new CyclicBarrier(parties);
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> lookup() {
+      return OperationHandler.sync(
+          (ctx, details, key) -> {
+            if ("fail".equals(key)) {
+              throw new IllegalArgumentException("bad key");
+            } else if ("wait".equals(key)) {
+              // Only passes if the other waiting starts run at the same time
+              try {
+                barrier.await(10, TimeUnit.SECONDS);
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            }
+            return key + "-" + Thread.currentThread().getName();
+          });
+    }
+  }
+
+  private static ServiceHandler.Builder newHandlerBuilder(int parties) {
+    return ServiceHandler.newBuilder()
+        .setSerializer(new StringOnlySerializer())
+        .addInstance(ServiceImplInstance.fromInstance(new LookupServiceImpl(parties)));
+  }
+
+  private static BatchStartRequest request(String operation, String key) {
+    return BatchStartRequest.newBuilder()
+        .setContext(
+            OperationContext.newBuilder()
+                .setService("LookupService")
+                .setOperation(operation)
+                .putHeader("Tenant-Id", "tenant")
+                .build())
+        .setDetails(OperationStartDetails.newBuilder().setRequestId("request-id").build())
+        .setInput(
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream(key.getBytes(StandardCharsets.UTF_8)))
+                .build())
+        .build();
+  }
+
+  private static String resultString(BatchStartResult result) throws OperationException {
+    HandlerResultContent content =
+        Objects.requireNonNull(result.getResultOrThrow().getSyncResult());
+    return new String(Objects.requireNonNull(content.getDataBytes()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void sequentialWithoutExecutor() throws OperationException {
+    ServiceHandler handler = newHandlerBuilder(1).build();
+    List<BatchStartRequest> requests = new ArrayList<>();
+    requests.add(request("lookup", "a"));
+    requests.add(request("lookup", "fail"));
+    requests.add(request("unknown", "b"));
+    requests.add(request("lookup", "c"));
+    List<BatchStartResult> results = handler.startOperations(requests);
+    assertEquals(4, results.size());
+    String thread = Thread.currentThread().getName();
+    assertEquals("a-" + thread, resultString(results.get(0)));
+    assertFalse(results.get(1).isSuccess());
+    assertInstanceOf(IllegalArgumentException.class, results.get(1).getException());
+    HandlerException notFound =
+        assertInstanceOf(HandlerException.class, results.get(2).getException());
+    assertEquals(HandlerException.ErrorType.NOT_FOUND, notFound.getErrorType());
+    assertThrows(HandlerException.class, results.get(2)::getResultOrThrow);
+    assertEquals("c-" + thread, resultString(results.get(3)));
+  }
+
+  @Test
+  void concurrentOnExecutor() throws OperationException {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      ServiceHandler handler = newHandlerBuilder(3).setBatchExecutor(executor).build();
+      List<BatchStartRequest> requests = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        requests.add(request("lookup", "wait"));
+      }
+      requests.add(request("lookup", "fail"));
+      List<BatchStartResult> results = handler.startOperations(requests);
+      assertEquals(4, results.size());
+      for (int i = 0; i < 3; i++) {
+        String result = resultString(results.get(i));
+        assertTrue(result.startsWith("wait-"));
+        assertNotEquals("wait-" + Thread.currentThread().getName(), result);
+      }
+      assertInstanceOf(IllegalArgumentException.class, results.get(3).getException());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void wrappingHandlersForwardBatches() throws OperationException {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    ExecutorService hedgeExecutor = Executors.newFixedThreadPool(3);
+    try {
+      ServiceHandler handler = newHandlerBuilder(3).setBatchExecutor(executor).build();
+      List<Handler> wrappers = new ArrayList<>();
+      wrappers.add(CompressingHandler.newBuilder().setHandler(handler).build());
+      wrappers.add(
+          TenantRoutingHandler.newBuilder()
+              .setTenantHeader("Tenant-Id")
+              .setHandlerFactory(tenant -> handler)
+              .build());
+      wrappers.add(
+          LoadBalancingHandler.newBuilder()
+              .addEndpoint("http://replica")
+              .setReplicaFactory(endpoint -> handler)
+              .build());
+      wrappers.add(
+          HedgingHandler.newBuilder()
+              .addHandler(handler)
+              .setExecutor(hedgeExecutor)
+              .setInitialDelay(Duration.ofSeconds(10))
+              .build());
+      wrappers.add(
+          HedgingHandler.newBuilder()
+              .addHandler(handler)
+              .setExecutor(hedgeExecutor)
+              .setHedgeFilter(context -> false)
+              .build());
+      for (Handler wrapper : wrappers) {
+        List<BatchStartRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+          requests.add(request("lookup", "wait"));
+        }
+        requests.add(request("lookup", "fail"));
+        // The waiting starts only pass if the batch reaches the service handler concurrently
+        List<BatchStartResult> results = wrapper.startOperations(requests);
+        assertEquals(4, results.size());
+        for (int i = 0; i < 3; i++) {
+          assertTrue(resultString(results.get(i)).startsWith("wait-"), wrapper.toString());
+        }
+        assertInstanceOf(IllegalArgumentException.class, results.get(3).getException());
+      }
+    } finally {
+      executor.shutdown();
+      hedgeExecutor.shutdown();
+    }
+  }
+
+  @Test
+  void rejectedStartsRunOnCallingThread() throws OperationException {
+    ServiceHandler handler =
+        newHandlerBuilder(1)
+            .setBatchExecutor(
+                command -> {
+                  throw new RejectedExecutionException();
+                })
+            .build();
+    List<BatchStartRequest> requests = new ArrayList<>();
+    requests.add(request("lookup", "a"));
+    requests.add(request("lookup", "b"));
+    List<BatchStartResult> results = handler.startOperations(requests);
+    String thread = Thread.currentThread().getName();
+    assertEquals("a-" + thread, resultString(results.get(0)));
+    assertEquals("b-" + thread, resultString(results.get(1)));
+  }
+}
@@ -0,0 +1,232 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.OperationException;
+import io.nexusrpc.StringOnlySerializer;
+import io.nexusrpc.example.TestServices;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+
+public class BulkheadTest {
+  @ServiceImpl(service = TestServices.GenericService.class)
+  public static class BlockingServiceImpl {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @OperationImpl
+    public OperationHandler<String, String> operation() {
+      return OperationHandler.sync(
+          (ctx, details, input) -> {
+            if ("block".equals(input)) {
+              started.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+              }
+            }
+            return "done: " + Thread.currentThread().getName();
+          });
+    }
+  }
+
+  @Test
+  void runsOnCallingThread() throws OperationException {
+    Bulkhead bulkhead = Bulkhead.newBuilder().setName("generic").setMaxConcurrency(1).build();
+    ServiceHandler handler = newHandler(new BlockingServiceImpl(), bulkhead);
+    assertEquals(
+        "done: " + Thread.currentThread().getName(), start(handler, newContext(), "value"));
+    assertEquals(0, bulkhead.getActiveCount());
+    // Cancels are not limited, so they reach the sync handler that rejects them
+    bulkhead.shutdown();
+    assertThrows(HandlerException.class, () -> start(handler, newContext(), "value"));
+    assertThrows(
+        UnsupportedOperationException.class,
+        () ->
+            handler.cancelOperation(
+                newContext(),
+                OperationCancelDetails.newBuilder().setOperationToken("token").build()));
+  }
+
+  @Test
+  void saturatedBulkheadFailsFast() throws Exception {
+    Bulkhead bulkhead = Bulkhead.newBuilder().setName("generic").setMaxConcurrency(1).build();
+    BlockingServiceImpl impl = new BlockingServiceImpl();
+    ServiceHandler handler = newHandler(impl, bulkhead);
+    ExecutorService caller = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> blocked = caller.submit(() -> start(handler, newContext(), "block"));
+      assertTrue(impl.started.await(10, TimeUnit.SECONDS));
+      HandlerException ex =
+          assertThrows(HandlerException.class, () -> start(handler, newContext(), "value"));
+      assertEquals(HandlerException.ErrorType.RESOURCE_EXHAUSTED, ex.getErrorType());
+      impl.release.countDown();
+      assertTrue(blocked.get(10, TimeUnit.SECONDS).startsWith("done"));
+    } finally {
+      caller.shutdownNow();
+    }
+  }
+
+  @Test
+  void queuedCallsWaitForRunningCall() throws Exception {
+    Bulkhead bulkhead =
+        Bulkhead.newBuilder().setName("generic").setMaxConcurrency(1).setMaxQueueSize(1).build();
+    BlockingServiceImpl impl = new BlockingServiceImpl();
+    ServiceHandler handler = newHandler(impl, bulkhead);
+    ExecutorService caller = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> blocked = caller.submit(() -> start(handler, newContext(), "block"));
+      assertTrue(impl.started.await(10, TimeUnit.SECONDS));
+      Future<String> queued = caller.submit(() -> start(handler, newContext(), "value"));
+      while (!queued.isDone() && bulkhead.getQueuedCount() == 0) {
+        Thread.sleep(1);
+      }
+      // The queue is full
+      HandlerException ex =
+          assertThrows(HandlerException.class, () -> start(handler, newContext(), "value"));
+      assertEquals(HandlerException.ErrorType.RESOURCE_EXHAUSTED, ex.getErrorType());
+      impl.release.countDown();
+      assertTrue(blocked.get(10, TimeUnit.SECONDS).startsWith("done"));
+      assertTrue(queued.get(10, TimeUnit.SECONDS).startsWith("done"));
+    } finally {
+      caller.shutdownNow();
+    }
+  }
+
+  @Test
+  void deadlineExceededWhileQueued() throws Exception {
+    Bulkhead bulkhead =
+        Bulkhead.newBuilder().setName("generic").setMaxConcurrency(1).setMaxQueueSize(1).build();
+    BlockingServiceImpl impl = new BlockingServiceImpl();
+    ServiceHandler handler = newHandler(impl, bulkhead);
+    ExecutorService caller = Executors.newSingleThreadExecutor();
+    try {
+      caller.submit(() -> start(handler, newContext(), "block"));
+      assertTrue(impl.started.await(10, TimeUnit.SECONDS));
+      OperationContext context =
+          OperationContext.newBuilder(newContext())
+              .setDeadline(Instant.now().plusMillis(100))
+              .build();
+      HandlerException ex =
+          assertThrows(HandlerException.class, () -> start(handler, context, "value"));
+      assertEquals(HandlerException.ErrorType.REQUEST_TIMEOUT, ex.getErrorType());
+    } finally {
+      impl.release.countDown();
+      caller.shutdownNow();
+    }
+  }
+
+  @Test
+  void methodCancellationStopsWaiting() throws Exception {
+    Bulkhead bulkhead =
+        Bulkhead.newBuilder().setName("generic").setMaxConcurrency(1).setMaxQueueSize(1).build();
+    BlockingServiceImpl impl = new BlockingServiceImpl();
+    ExecutorService caller = Executors.newFixedThreadPool(2);
+    try {
+      ServiceHandler handler = newHandler(impl, bulkhead);
+      caller.submit(() -> start(handler, newContext(), "block"));
+      assertTrue(impl.started.await(10, TimeUnit.SECONDS));
+      OperationMethodCanceller canceller = new OperationMethodCanceller();
+      OperationContext context =
+          OperationContext.newBuilder(newContext()).setMethodCanceller(canceller).build();
+      Future<String> queued = caller.submit(() -> start(handler, context, "value"));
+      canceller.cancel("caller went away");
+      ExecutionException ex =
+          assertThrows(ExecutionException.class, () -> queued.get(10, TimeUnit.SECONDS));
+      assertEquals(
+          HandlerException.ErrorType.REQUEST_TIMEOUT,
+          ((HandlerException) ex.getCause()).getErrorType());
+    } finally {
+      impl.release.countDown();
+      caller.shutdownNow();
+    }
+  }
+
+  @Test
+  void operationBulkheadOverridesServiceBulkhead() throws Exception {
+    Bulkhead serviceBulkhead =
+        Bulkhead.newBuilder().setName("service").setMaxConcurrency(1).build();
+    Bulkhead operationBulkhead =
+        Bulkhead.newBuilder().setName("operation").setMaxConcurrency(1).build();
+    BlockingServiceImpl impl = new BlockingServiceImpl();
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(new StringOnlySerializer())
+            .addInstance(ServiceImplInstance.fromInstance(impl))
+            .putServiceBulkhead("GenericService", serviceBulkhead)
+            .putOperationBulkhead("GenericService", "operation", operationBulkhead)
+            .build();
+    ExecutorService caller = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> blocked = caller.submit(() -> start(handler, newContext(), "block"));
+      assertTrue(impl.started.await(10, TimeUnit.SECONDS));
+      assertEquals(1, operationBulkhead.getActiveCount());
+      assertEquals(0, serviceBulkhead.getActiveCount());
+      impl.release.countDown();
+      assertTrue(blocked.get(10, TimeUnit.SECONDS).startsWith("done"));
+      // Bulkheads carry over to a new builder
+      ServiceHandler copy = ServiceHandler.newBuilder(handler).build();
+      assertSame(
+          operationBulkhead, copy.getOperationBulkheads().get("GenericService").get("operation"));
+    } finally {
+      caller.shutdownNow();
+    }
+  }
+
+  @Test
+  void unknownBulkheadTargets() {
+    Bulkhead bulkhead = Bulkhead.newBuilder().setName("generic").setMaxConcurrency(1).build();
+    ServiceImplInstance instance = ServiceImplInstance.fromInstance(new BlockingServiceImpl());
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            ServiceHandler.newBuilder()
+                .setSerializer(new StringOnlySerializer())
+                .addInstance(instance)
+                .putServiceBulkhead("UnknownService", bulkhead)
+                .build());
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            ServiceHandler.newBuilder()
+                .setSerializer(new StringOnlySerializer())
+                .addInstance(instance)
+                .putOperationBulkhead("GenericService", "unknown", bulkhead)
+                .build());
+  }
+
+  private static ServiceHandler newHandler(BlockingServiceImpl impl, Bulkhead bulkhead) {
+    return ServiceHandler.newBuilder()
+        .setSerializer(new StringOnlySerializer())
+        .addInstance(ServiceImplInstance.fromInstance(impl))
+        .putServiceBulkhead("GenericService", bulkhead)
+        .build();
+  }
+
+  private static OperationContext newContext() {
+    return OperationContext.newBuilder()
+        .setService("GenericService")
+        .setOperation("operation")
+        .build();
+  }
+
+  private static String start(ServiceHandler handler, OperationContext context, String input)
+      throws OperationException {
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            context,
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)))
+                .build());
+    return new String(
+        Objects.requireNonNull(Objects.requireNonNull(result.getSyncResult()).getDataBytes()),
+        StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,252 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.OperationException;
+import io.nexusrpc.StringOnlySerializer;
+import io.nexusrpc.example.TestServices;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class CompressingHandlerTest {
+  @ServiceImpl(service = TestServices.GenericService.class)
+  public static class EchoServiceImpl {
+    @OperationImpl
+    public OperationHandler<String, String> operation() {
+      return OperationHandler.sync((ctx, details, input) -> input);
+    }
+  }
+
+  private static final String LARGE = repeat("compressible ", 1000);
+
+  @Test
+  void gzipRoundTrip() throws Exception {
+    CompressingHandler handler = newHandler();
+    HandlerResultContent result =
+        start(handler, "gzip", gzip(LARGE.getBytes(StandardCharsets.UTF_8)), "gzip");
+    assertEquals("gzip", result.getHeaders().get("encoding"));
+    byte[] data = Objects.requireNonNull(result.getDataBytes());
+    assertTrue(data.length < LARGE.length() / 10);
+    assertEquals(LARGE, readString(new GZIPInputStream(new ByteArrayInputStream(data))));
+  }
+
+  @Test
+  void negotiatesAcceptedEncoding() throws Exception {
+    CompressingHandler handler = newHandler();
+    byte[] input = LARGE.getBytes(StandardCharsets.UTF_8);
+    HandlerResultContent result = start(handler, null, input, "br, gzip;q=0, deflate");
+    assertEquals("deflate", result.getHeaders().get("encoding"));
+    assertEquals(
+        LARGE,
+        readString(
+            new InflaterInputStream(
+                new ByteArrayInputStream(Objects.requireNonNull(result.getDataBytes())))));
+    // Nothing accepted
+    result = start(handler, null, input, null);
+    assertNull(result.getHeaders().get("encoding"));
+    assertArrayEquals(input, result.getDataBytes());
+    // Below the minimum size
+    result = start(handler, null, "small".getBytes(StandardCharsets.UTF_8), "gzip");
+    assertNull(result.getHeaders().get("encoding"));
+    assertEquals("small", new String(result.getDataBytes(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void invalidInput() {
+    CompressingHandler handler = newHandler();
+    HandlerException ex =
+        assertThrows(
+            HandlerException.class, () -> start(handler, "br", new byte[] {1, 2, 3}, null));
+    assertEquals(HandlerException.ErrorType.BAD_REQUEST, ex.getErrorType());
+    ex =
+        assertThrows(
+            HandlerException.class, () -> start(handler, "gzip", new byte[] {1, 2, 3}, null));
+    assertEquals(HandlerException.ErrorType.BAD_REQUEST, ex.getErrorType());
+  }
+
+  @Test
+  void decodedInputLimited() throws Exception {
+    CompressingHandler handler =
+        CompressingHandler.newBuilder()
+            .setHandler(newHandler().getHandler())
+            .setMaxDecodedSize(1000)
+            .build();
+    HandlerException ex =
+        assertThrows(
+            HandlerException.class,
+            () -> start(handler, "gzip", gzip(LARGE.getBytes(StandardCharsets.UTF_8)), null));
+    assertEquals(HandlerException.ErrorType.BAD_REQUEST, ex.getErrorType());
+    assertEquals(
+        "small",
+        new String(
+            Objects.requireNonNull(
+                start(handler, "gzip", gzip("small".getBytes(StandardCharsets.UTF_8)), null)
+                    .getDataBytes()),
+            StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void batchesForwardedToHandler() throws Exception {
+    AtomicInteger batches = new AtomicInteger();
+    Handler serviceHandler = newHandler().getHandler();
+    CompressingHandler handler =
+        CompressingHandler.newBuilder()
+            .setHandler(
+                new Handler() {
+                  @Override
+                  public OperationStartResult<HandlerResultContent> startOperation(
+                      OperationContext context,
+                      OperationStartDetails details,
+                      HandlerInputContent input)
+                      throws OperationException {
+                    return serviceHandler.startOperation(context, details, input);
+                  }
+
+                  @Override
+                  public List<BatchStartResult> startOperations(List<BatchStartRequest> requests) {
+                    batches.incrementAndGet();
+                    return serviceHandler.startOperations(requests);
+                  }
+
+                  @Override
+                  public void cancelOperation(
+                      OperationContext context, OperationCancelDetails details) {
+                    serviceHandler.cancelOperation(context, details);
+                  }
+                })
+            .build();
+    List<BatchStartResult> results =
+        handler.startOperations(
+            Arrays.asList(
+                batchRequest("gzip", gzip(LARGE.getBytes(StandardCharsets.UTF_8))),
+                batchRequest("br", new byte[] {1, 2, 3}),
+                batchRequest(null, LARGE.getBytes(StandardCharsets.UTF_8))));
+    assertEquals(1, batches.get());
+    for (int i : new int[] {0, 2}) {
+      HandlerResultContent result =
+          Objects.requireNonNull(results.get(i).getResultOrThrow().getSyncResult());
+      assertEquals("gzip", result.getHeaders().get("encoding"));
+      assertEquals(
+          LARGE,
+          readString(
+              new GZIPInputStream(
+                  new ByteArrayInputStream(Objects.requireNonNull(result.getDataBytes())))));
+    }
+    assertEquals(
+        HandlerException.ErrorType.BAD_REQUEST,
+        ((HandlerException) Objects.requireNonNull(results.get(1).getException())).getErrorType());
+  }
+
+  @Test
+  void streamingEncodings() throws IOException {
+    byte[] data = LARGE.getBytes(StandardCharsets.UTF_8);
+    for (ContentEncoding encoding :
+        new ContentEncoding[] {ContentEncoding.gzip(), ContentEncoding.deflate()}) {
+      // Streaming and byte forms agree and round trip, including many times through the pool
+      for (int i = 0; i < 20; i++) {
+        byte[] encoded = readAll(encoding.encode(new ByteArrayInputStream(data)));
+        assertArrayEquals(encoded, encoding.encode(data));
+        assertArrayEquals(data, readAll(encoding.decode(new ByteArrayInputStream(encoded))));
+      }
+      byte[] empty = readAll(encoding.encode(new ByteArrayInputStream(new byte[0])));
+      assertArrayEquals(new byte[0], readAll(encoding.decode(new ByteArrayInputStream(empty))));
+    }
+    // Interoperates with the JDK gzip streams
+    assertArrayEquals(
+        data, readAll(ContentEncoding.gzip().decode(new ByteArrayInputStream(gzip(data)))));
+  }
+
+  private static CompressingHandler newHandler() {
+    return CompressingHandler.newBuilder()
+        .setHandler(
+            ServiceHandler.newBuilder()
+                .setSerializer(new StringOnlySerializer())
+                .addInstance(ServiceImplInstance.fromInstance(new EchoServiceImpl()))
+                .build())
+        .build();
+  }
+
+  private static BatchStartRequest batchRequest(@Nullable String encoding, byte[] input) {
+    HandlerInputContent.Builder content =
+        HandlerInputContent.newBuilder().setDataStream(new ByteArrayInputStream(input));
+    if (encoding != null) {
+      content.putHeader("Encoding", encoding);
+    }
+    return BatchStartRequest.newBuilder()
+        .setContext(
+            OperationContext.newBuilder()
+                .setService("GenericService")
+                .setOperation("operation")
+                .putHeader("Accept-Encoding", "gzip")
+                .build())
+        .setDetails(OperationStartDetails.newBuilder().setRequestId("request-id").build())
+        .setInput(content.build())
+        .build();
+  }
+
+  private static HandlerResultContent start(
+      Handler handler, @Nullable String encoding, byte[] input, @Nullable String acceptEncoding)
+      throws OperationException {
+    OperationContext.Builder context =
+        OperationContext.newBuilder().setService("GenericService").setOperation("operation");
+    if (acceptEncoding != null) {
+      context.putHeader("Accept-Encoding", acceptEncoding);
+    }
+    HandlerInputContent.Builder content =
+        HandlerInputContent.newBuilder().setDataStream(new ByteArrayInputStream(input));
+    if (encoding != null) {
+      content.putHeader("Encoding", encoding);
+    }
+    return Objects.requireNonNull(
+        handler
+            .startOperation(
+                context.build(),
+                OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+                content.build())
+            .getSyncResult());
+  }
+
+  private static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(data);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    try (InputStream stream = in) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[100];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  private static String readString(InputStream in) throws IOException {
+    return new String(readAll(in), StandardCharsets.UTF_8);
+  }
+
+  private static String repeat(String str, int times) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      builder.append(str);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,211 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class ContentPublisherTest {
+  private static class RecordingSubscriber implements ContentPublisher.Subscriber {
+    private ContentPublisher.@Nullable Subscription subscription;
+    private final StringBuilder received = new StringBuilder();
+    private int chunks;
+    private @Nullable Throwable error;
+    private boolean complete;
+
+    @Override
+    public void onSubscribe(ContentPublisher.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(ByteBuffer chunk) {
+      chunks++;
+      received.append(StandardCharsets.UTF_8.decode(chunk));
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      this.error = error;
+    }
+
+    @Override
+    public void onComplete() {
+      complete = true;
+    }
+
+    private void request(long n) {
+      Objects.requireNonNull(subscription).request(n);
+    }
+  }
+
+  // Publishes the given chunks synchronously as they are requested
+  private static class ChunkPublisher implements ContentPublisher {
+    private final List<String> chunks;
+    private final @Nullable RuntimeException failure;
+    private long requested;
+    private int sent;
+    private boolean cancelled;
+
+    private ChunkPublisher(List<String> chunks, @Nullable RuntimeException failure) {
+      this.chunks = chunks;
+      this.failure = failure;
+    }
+
+    @Override
+    public void subscribe(Subscriber subscriber) {
+      subscriber.onSubscribe(
+          new Subscription() {
+            @Override
+            public void request(long n) {
+              requested += n;
+              while (!cancelled && sent < requested && sent < chunks.size()) {
+                String chunk = chunks.get(sent++);
+                subscriber.onNext(ByteBuffer.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+              }
+              if (sent == chunks.size() && !cancelled) {
+                cancelled = true;
+                if (failure != null) {
+                  subscriber.onError(failure);
+                } else {
+                  subscriber.onComplete();
+                }
+              }
+            }
+
+            @Override
+            public void cancel() {
+              cancelled = true;
+            }
+          });
+    }
+  }
+
+  private static InputStream stream(String data) {
+    return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void streamPublishesOnDemand() {
+    ContentPublisher publisher = ContentPublisher.fromStream(stream("abcdefghij"), 4);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    assertEquals(0, subscriber.chunks);
+    subscriber.request(1);
+    assertEquals("abcd", subscriber.received.toString());
+    subscriber.request(1);
+    assertEquals("abcdefgh", subscriber.received.toString());
+    assertFalse(subscriber.complete);
+    subscriber.request(Long.MAX_VALUE);
+    assertEquals("abcdefghij", subscriber.received.toString());
+    assertEquals(3, subscriber.chunks);
+    assertTrue(subscriber.complete);
+    assertNull(subscriber.error);
+
+    // Only one subscriber allowed
+    RecordingSubscriber second = new RecordingSubscriber();
+    publisher.subscribe(second);
+    assertInstanceOf(IllegalStateException.class, second.error);
+  }
+
+  @Test
+  void streamReturningNothingReadByByte() {
+    // Returns nothing from bulk reads, as some non-blocking streams do
+    InputStream stream =
+        new ByteArrayInputStream("ab".getBytes(StandardCharsets.UTF_8)) {
+          @Override
+          public synchronized int read(byte[] b, int off, int len) {
+            return 0;
+          }
+        };
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    ContentPublisher.fromStream(stream, 4).subscribe(subscriber);
+    subscriber.request(Long.MAX_VALUE);
+    assertEquals("ab", subscriber.received.toString());
+    assertTrue(subscriber.complete);
+  }
+
+  @Test
+  void invalidRequestFails() {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    ContentPublisher.fromStream(stream("abc"), 4).subscribe(subscriber);
+    subscriber.request(0);
+    assertInstanceOf(IllegalArgumentException.class, subscriber.error);
+    subscriber.request(1);
+    assertEquals(0, subscriber.chunks);
+  }
+
+  @Test
+  void inputContentFromStreamAsPublisher() {
+    HandlerInputContent content =
+        HandlerInputContent.newBuilder().setDataStream(stream("abc")).build();
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    content.consumePublisher().subscribe(subscriber);
+    subscriber.request(10);
+    assertEquals("abc", subscriber.received.toString());
+    assertTrue(subscriber.complete);
+    assertThrows(IllegalStateException.class, content::consumeStream);
+  }
+
+  @Test
+  void inputContentFromPublisherAsStream() throws IOException {
+    List<String> chunks = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      chunks.add("chunk-" + i + ";");
+    }
+    ChunkPublisher publisher = new ChunkPublisher(chunks, null);
+    HandlerInputContent content =
+        HandlerInputContent.newBuilder().setDataPublisher(publisher).putHeader("a", "b").build();
+    InputStream stream = content.consumeStream();
+    // Only a few chunks are requested ahead of the reader
+    assertTrue(publisher.requested < 10);
+    byte[] first = new byte[3];
+    assertEquals(3, stream.read(first));
+    assertEquals("chu", new String(first, StandardCharsets.UTF_8));
+    assertTrue(publisher.requested < 10);
+
+    StringBuilder rest = new StringBuilder();
+    int b;
+    while ((b = stream.read()) != -1) {
+      rest.append((char) b);
+    }
+    assertEquals(String.join("", chunks).substring(3), rest.toString());
+    assertEquals(-1, stream.read());
+  }
+
+  @Test
+  void publisherFailureThrownFromStream() {
+    ChunkPublisher publisher =
+        new ChunkPublisher(
+            Collections.singletonList("abc"), new IllegalStateException("boom"));
+    HandlerInputContent content =
+        HandlerInputContent.newBuilder().setDataPublisher(publisher).build();
+    IOException e = assertThrows(IOException.class, content::consumeBytes);
+    assertInstanceOf(IllegalStateException.class, e.getCause());
+  }
+
+  @Test
+  void closingStreamCancelsPublisher() throws IOException {
+    List<String> chunks = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      chunks.add("chunk");
+    }
+    ChunkPublisher publisher = new ChunkPublisher(chunks, null);
+    InputStream stream =
+        HandlerInputContent.newBuilder().setDataPublisher(publisher).build().consumeStream();
+    assertEquals('c', stream.read());
+    stream.close();
+    assertTrue(publisher.cancelled);
+    assertTrue(publisher.sent < 10);
+    assertThrows(IOException.class, stream::read);
+  }
+}
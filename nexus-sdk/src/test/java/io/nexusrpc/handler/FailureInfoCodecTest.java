@@ -0,0 +1,125 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.FailureInfo;
+import io.nexusrpc.OperationException;
+import io.nexusrpc.OperationState;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class FailureInfoCodecTest {
+  @Test
+  void roundTrip() throws IOException {
+    FailureInfo failure =
+        FailureInfo.newBuilder()
+            .setMessage("quote \" backslash \\ newline \n tab \t control \u0001")
+            .putMetadata("unicode", "\u00e9 \ud83d\ude00")
+            .setStackTrace("at Test.method(Test.java:1)\nat Test.main(Test.java:2)")
+            .putMetadata("type", "custom")
+            .putMetadata("k\u00e9", "v\u00e9")
+            .setDetailsJson("{\"nested\":[1,2.5,true,null,{\"a\":\"b\\\"c\"}]}")
+            .build();
+
+    byte[] bytes = FailureInfoCodec.toBytes(failure);
+    assertEquals(failure, FailureInfoCodec.read(bytes));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    FailureInfoCodec.write(failure, out);
+    assertArrayEquals(bytes, out.toByteArray());
+    assertEquals(failure, FailureInfoCodec.read(new ByteArrayInputStream(bytes)));
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 10);
+    buffer.position(5);
+    FailureInfoCodec.write(failure, buffer);
+    assertEquals(5 + bytes.length, buffer.position());
+    buffer.flip().position(5);
+    assertEquals(failure, FailureInfoCodec.read(buffer));
+    assertFalse(buffer.hasRemaining());
+  }
+
+  @Test
+  void detailsEmbeddedRaw() {
+    FailureInfo failure =
+        FailureInfo.newBuilder().setMessage("m").setDetailsJson("{ \"a\" : [ 1 ] }").build();
+    assertEquals(
+        "{\"message\":\"m\",\"details\":{ \"a\" : [ 1 ] }}",
+        new String(FailureInfoCodec.toBytes(failure), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void readsAndSkipsFields() {
+    FailureInfo failure =
+        FailureInfoCodec.read(
+            (" { \"unknown\": {\"x\": [\"y\", -1e3]}, \"message\": \"esc \\u00e9\\/\","
+                    + " \"stackTrace\": null, \"metadata\": {\"k\": \"v\"}, \"details\": \"s\" }")
+                .getBytes(StandardCharsets.UTF_8));
+    assertEquals("esc \u00e9/", failure.getMessage());
+    assertNull(failure.getStackTrace());
+    assertEquals("v", failure.getMetadata().get("k"));
+    assertEquals("\"s\"", failure.getDetailsJson());
+  }
+
+  @Test
+  void invalidJson() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> FailureInfoCodec.read("{\"metadata\":{}}".getBytes(StandardCharsets.UTF_8)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> FailureInfoCodec.read("{\"message\":\"m".getBytes(StandardCharsets.UTF_8)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> FailureInfoCodec.read("[]".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  void handlerExceptionRoundTrip() {
+    HandlerException ex =
+        new HandlerException(
+            HandlerException.ErrorType.UNAVAILABLE,
+            "try later",
+            null,
+            HandlerException.RetryBehavior.NON_RETRYABLE);
+    FailureInfo failure = FailureInfoCodec.fromHandlerException(ex);
+    assertEquals("try later", failure.getMessage());
+    assertEquals(FailureInfoCodec.HANDLER_ERROR_TYPE, failure.getMetadata().get("type"));
+    assertTrue(failure.getStackTrace().contains("handlerExceptionRoundTrip"));
+
+    HandlerException decoded =
+        FailureInfoCodec.toHandlerException(
+            FailureInfoCodec.read(FailureInfoCodec.toBytes(failure)));
+    assertEquals(HandlerException.ErrorType.UNAVAILABLE, decoded.getErrorType());
+    assertEquals(HandlerException.RetryBehavior.NON_RETRYABLE, decoded.getRetryBehavior());
+    assertEquals("try later", decoded.getMessage());
+    // The original failure is reused when converting back
+    assertSame(decoded.getOriginalFailure(), FailureInfoCodec.fromHandlerException(decoded));
+
+    HandlerException unknown =
+        FailureInfoCodec.toHandlerException(FailureInfo.newBuilder().setMessage("m").build());
+    assertEquals(HandlerException.ErrorType.INTERNAL, unknown.getErrorType());
+  }
+
+  @Test
+  void operationExceptionRoundTrip() {
+    FailureInfo failure =
+        FailureInfoCodec.fromOperationException(OperationException.canceled("stopped"));
+    assertEquals(FailureInfoCodec.OPERATION_ERROR_TYPE, failure.getMetadata().get("type"));
+    OperationException decoded =
+        FailureInfoCodec.toOperationException(
+            FailureInfoCodec.read(FailureInfoCodec.toBytes(failure)));
+    assertEquals(OperationState.CANCELED, decoded.getState());
+    assertEquals("stopped", decoded.getMessage());
+
+    decoded =
+        FailureInfoCodec.toOperationException(
+            FailureInfoCodec.fromOperationException(OperationException.failed("bad")));
+    assertEquals(OperationState.FAILED, decoded.getState());
+    assertEquals("bad", decoded.getMessage());
+    assertSame(decoded.getOriginalFailure(), FailureInfoCodec.fromOperationException(decoded));
+  }
+}
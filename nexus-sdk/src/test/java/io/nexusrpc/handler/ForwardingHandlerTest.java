@@ -0,0 +1,300 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class ForwardingHandlerTest {
+  private static class Request {
+    private final String path;
+    private final @Nullable String query;
+    private final Headers headers;
+    private final String body;
+    private final int remotePort;
+
+    private Request(HttpExchange exchange, String body) {
+      this.path = exchange.getRequestURI().getRawPath();
+      this.query = exchange.getRequestURI().getRawQuery();
+      this.headers = exchange.getRequestHeaders();
+      this.body = body;
+      this.remotePort = exchange.getRemoteAddress().getPort();
+    }
+  }
+
+  // Stub upstream endpoint that records requests
+  private static class Upstream implements AutoCloseable {
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private final HttpServer server;
+    private final String baseUrl;
+
+    private Upstream() throws IOException {
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+      server.createContext("/", this::handle);
+      server.start();
+      baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+      server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+      String body = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+      requests.add(new Request(exchange, body));
+      String path = exchange.getRequestURI().getPath();
+      if (path.endsWith("/echo")) {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange
+            .getResponseHeaders()
+            .add("Nexus-Link", "<http://upstream/event/1>; type=\"test.Event\"");
+        respond(exchange, 200, body.toUpperCase());
+      } else if (path.endsWith("/async")) {
+        exchange
+            .getResponseHeaders()
+            .add("Nexus-Link", "<http://upstream/run/1>; type=\"test.Run\"");
+        respond(exchange, 201, "{\"token\":\"up-token\",\"state\":\"running\"}");
+      } else if (path.endsWith("/cancel")) {
+        respond(exchange, 202, "");
+      } else if (path.endsWith("/canceled")) {
+        exchange.getResponseHeaders().set("Nexus-Operation-State", "canceled");
+        respond(exchange, 424, "{\"message\":\"gone\",\"metadata\":{\"origin\":\"upstream\"}}");
+      } else {
+        exchange.getResponseHeaders().set("Nexus-Request-Retryable", "false");
+        respond(exchange, 503, "{\"message\":\"busy\"}");
+      }
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[1024];
+    int read;
+    while ((read = in.read(chunk)) != -1) {
+      out.write(chunk, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  private static OperationContext context(String operation) {
+    return OperationContext.newBuilder()
+        .setService("Proxied Service")
+        .setOperation(operation)
+        .putHeader("Tenant-Id", "tenant-1")
+        .putHeader("Connection", "close")
+        .build();
+  }
+
+  private static HandlerInputContent input(String data) {
+    return HandlerInputContent.newBuilder()
+        .setDataStream(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)))
+        .putHeader("type", "text/plain")
+        .build();
+  }
+
+  @Test
+  void syncResultStreamedOverReusedConnection() throws Exception {
+    try (Upstream upstream = new Upstream()) {
+      ForwardingHandler handler =
+          ForwardingHandler.newBuilder()
+              .setDefaultEndpoint(upstream.baseUrl + "/edge/")
+              .setCallbackUrlRewriter(url -> "http://edge/callback?to=" + url)
+              .build();
+      for (int i = 0; i < 2; i++) {
+        OperationContext context = context("echo");
+        OperationStartResult<HandlerResultContent> result =
+            handler.startOperation(
+                context,
+                OperationStartDetails.newBuilder()
+                    .setRequestId("request-" + i)
+                    .setCallbackUrl("http://caller/cb")
+                    .putCallbackHeader("Token", "cb-token")
+                    .build(),
+                input("hello"));
+        HandlerResultContent content = Objects.requireNonNull(result.getSyncResult());
+        assertEquals("text/plain", content.getHeaders().get("type"));
+        try (InputStream in = Objects.requireNonNull(content.getDataStream())) {
+          assertEquals("HELLO", new String(readAll(in), StandardCharsets.UTF_8));
+        }
+        // Links of sync results are copied too
+        assertEquals(1, context.getLinks().size());
+        assertEquals("test.Event", context.getLinks().get(0).getType());
+      }
+
+      assertEquals(2, upstream.requests.size());
+      Request request = upstream.requests.get(0);
+      assertEquals("/edge/Proxied%20Service/echo", request.path);
+      assertEquals(
+          "callback=http://edge/callback?to=http://caller/cb",
+          URLDecoder.decode(Objects.requireNonNull(request.query), "UTF-8"));
+      assertEquals("request-0", request.headers.getFirst("Nexus-Request-Id"));
+      assertEquals("cb-token", request.headers.getFirst("Nexus-Callback-Token"));
+      assertEquals("tenant-1", request.headers.getFirst("Tenant-Id"));
+      assertEquals("text/plain", request.headers.getFirst("Content-Type"));
+      // Input of unknown length is streamed in chunks rather than buffered
+      assertEquals("chunked", request.headers.getFirst("Transfer-Encoding"));
+      assertEquals("hello", request.body);
+      // The connection header of the caller is not forwarded, so the connection is reused
+      assertEquals(request.remotePort, upstream.requests.get(1).remotePort);
+    }
+  }
+
+  @Test
+  void asyncTokensRewritten() throws Exception {
+    try (Upstream upstream = new Upstream()) {
+      ForwardingHandler handler =
+          ForwardingHandler.newBuilder()
+              .putServiceEndpoint("Proxied Service", upstream.baseUrl + "/service")
+              .putOperationEndpoint("Proxied Service", "async", upstream.baseUrl + "/operation")
+              .setOperationTokenRewriter(token -> "edge:" + token)
+              .setOperationTokenResolver(token -> token.substring("edge:".length()))
+              .build();
+      OperationContext context = context("async");
+      Link link =
+          Link.newBuilder().setUri(new URI("http://caller/run/1")).setType("test.Caller").build();
+      OperationStartResult<HandlerResultContent> result =
+          handler.startOperation(
+              context,
+              OperationStartDetails.newBuilder().setRequestId("request-id").addLink(link).build(),
+              input("hello"));
+      assertEquals("edge:up-token", result.getAsyncOperationToken());
+      Request start = upstream.requests.get(0);
+      assertEquals("/operation/Proxied%20Service/async", start.path);
+      assertEquals(
+          "<http://caller/run/1>; type=\"test.Caller\"", start.headers.getFirst("Nexus-Link"));
+      assertEquals(1, context.getLinks().size());
+      assertEquals("test.Run", context.getLinks().get(0).getType());
+
+      handler.cancelOperation(
+          context, OperationCancelDetails.newBuilder().setOperationToken("edge:up-token").build());
+      Request cancel = upstream.requests.get(1);
+      assertEquals("/operation/Proxied%20Service/async/cancel", cancel.path);
+      assertEquals("up-token", cancel.headers.getFirst("Nexus-Operation-Token"));
+    }
+  }
+
+  @Test
+  void upstreamFailures() throws Exception {
+    Upstream upstream = new Upstream();
+    ForwardingHandler handler =
+        ForwardingHandler.newBuilder()
+            .putServiceEndpoint("Proxied Service", upstream.baseUrl)
+            .build();
+    OperationStartDetails details =
+        OperationStartDetails.newBuilder().setRequestId("request-id").build();
+
+    OperationException operationException =
+        assertThrows(
+            OperationException.class,
+            () -> handler.startOperation(context("canceled"), details, input("")));
+    assertEquals(OperationState.CANCELED, operationException.getState());
+    assertEquals("gone", operationException.getMessage());
+    // The upstream failure is passed on as is
+    FailureInfo failure = Objects.requireNonNull(operationException.getOriginalFailure());
+    assertEquals("upstream", failure.getMetadata().get("origin"));
+    assertSame(failure, FailureInfoCodec.fromOperationException(operationException));
+
+    HandlerException handlerException =
+        assertThrows(
+            HandlerException.class,
+            () -> handler.startOperation(context("busy"), details, input("")));
+    assertEquals(HandlerException.ErrorType.UNAVAILABLE, handlerException.getErrorType());
+    assertEquals(HandlerException.RetryBehavior.NON_RETRYABLE, handlerException.getRetryBehavior());
+    assertEquals("busy", handlerException.getMessage());
+
+    OperationContext unrouted =
+        OperationContext.newBuilder().setService("OtherService").setOperation("echo").build();
+    handlerException =
+        assertThrows(
+            HandlerException.class, () -> handler.startOperation(unrouted, details, input("")));
+    assertEquals(HandlerException.ErrorType.NOT_FOUND, handlerException.getErrorType());
+
+    upstream.close();
+    handlerException =
+        assertThrows(
+            HandlerException.class,
+            () -> handler.startOperation(context("echo"), details, input("")));
+    assertEquals(HandlerException.ErrorType.UNAVAILABLE, handlerException.getErrorType());
+  }
+
+  @Test
+  void batchSentBeforeResponsesRead() throws Exception {
+    try (Upstream upstream = new Upstream()) {
+      ForwardingHandler handler =
+          ForwardingHandler.newBuilder().setDefaultEndpoint(upstream.baseUrl).build();
+      List<BatchStartResult> results =
+          handler.startOperations(
+              Arrays.asList(
+                  batchRequest(context("echo"), "a"),
+                  batchRequest(context("async"), ""),
+                  batchRequest(
+                      OperationContext.newBuilder()
+                          .setService("Proxied Service")
+                          .setOperation("echo")
+                          .setDeadline(Instant.now().minusSeconds(1))
+                          .build(),
+                      ""),
+                  batchRequest(context("busy"), ""),
+                  batchRequest(context("echo"), "b")));
+      assertEquals("up-token", results.get(1).getResultOrThrow().getAsyncOperationToken());
+      HandlerException timeout =
+          assertInstanceOf(HandlerException.class, results.get(2).getException());
+      assertEquals(HandlerException.ErrorType.REQUEST_TIMEOUT, timeout.getErrorType());
+      HandlerException busy =
+          assertInstanceOf(HandlerException.class, results.get(3).getException());
+      assertEquals(HandlerException.ErrorType.UNAVAILABLE, busy.getErrorType());
+      for (int i : new int[] {0, 4}) {
+        HandlerResultContent content =
+            Objects.requireNonNull(results.get(i).getResultOrThrow().getSyncResult());
+        try (InputStream in = Objects.requireNonNull(content.getDataStream())) {
+          assertEquals(i == 0 ? "A" : "B", new String(readAll(in), StandardCharsets.UTF_8));
+        }
+      }
+      assertEquals(4, upstream.requests.size());
+    }
+  }
+
+  private static BatchStartRequest batchRequest(OperationContext context, String data) {
+    return BatchStartRequest.newBuilder()
+        .setContext(context)
+        .setDetails(OperationStartDetails.newBuilder().setRequestId("request-id").build())
+        .setInput(input(data))
+        .build();
+  }
+
+  @Test
+  void invalidEndpoints() {
+    assertThrows(IllegalStateException.class, () -> ForwardingHandler.newBuilder().build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ForwardingHandler.newBuilder().setDefaultEndpoint("ftp://upstream").build());
+  }
+}
@@ -230,4 +230,23 @@ public class HandlerExceptionTest {
     assertEquals("BAD_REQUEST", ex.getRawErrorType());
     assertEquals(HandlerException.ErrorType.BAD_REQUEST, ex.getErrorType());
   }
+
+  @Test
+  void withoutStackTrace() {
+    HandlerException ex =
+        new HandlerException(
+            HandlerException.ErrorType.RESOURCE_EXHAUSTED,
+            "Shed",
+            null,
+            HandlerException.RetryBehavior.UNSPECIFIED,
+            false);
+
+    assertEquals("Shed", ex.getMessage());
+    assertEquals("RESOURCE_EXHAUSTED", ex.getRawErrorType());
+    assertEquals(HandlerException.ErrorType.RESOURCE_EXHAUSTED, ex.getErrorType());
+    assertEquals(0, ex.getStackTrace().length);
+    // Suppression is disabled so a preallocated instance does not accumulate state
+    ex.addSuppressed(new RuntimeException("other"));
+    assertEquals(0, ex.getSuppressed().length);
+  }
 }
@@ -0,0 +1,245 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.OperationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class HedgingHandlerTest {
+  private static class Replica implements Handler {
+    private final long latencyMillis;
+    private final @Nullable String asyncToken;
+    private final HandlerException.@Nullable ErrorType failure;
+    private final List<String> requestIds = new CopyOnWriteArrayList<>();
+    private final List<String> inputs = new CopyOnWriteArrayList<>();
+    private final List<String> cancelledTokens = new CopyOnWriteArrayList<>();
+    private final CountDownLatch methodCancelled = new CountDownLatch(1);
+
+    private Replica(
+        long latencyMillis,
+        @Nullable String asyncToken,
+        HandlerException.@Nullable ErrorType failure) {
+      this.latencyMillis = latencyMillis;
+      this.asyncToken = asyncToken;
+      this.failure = failure;
+    }
+
+    @Override
+    public OperationStartResult<HandlerResultContent> startOperation(
+        OperationContext context, OperationStartDetails details, HandlerInputContent input) {
+      requestIds.add(details.getRequestId());
+      try {
+        inputs.add(new String(input.consumeBytes(), StandardCharsets.UTF_8));
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      context.addMethodCancellationListener(methodCancelled::countDown);
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      if (failure != null) {
+        throw new HandlerException(
+            failure, "failed", null, HandlerException.RetryBehavior.UNSPECIFIED);
+      } else if (asyncToken != null) {
+        return OperationStartResult.async(asyncToken);
+      }
+      return OperationStartResult.sync(
+          HandlerResultContent.newBuilder()
+              .setData(("result after " + latencyMillis).getBytes(StandardCharsets.UTF_8))
+              .build());
+    }
+
+    @Override
+    public void cancelOperation(OperationContext context, OperationCancelDetails details) {
+      cancelledTokens.add(details.getOperationToken());
+    }
+  }
+
+  private static OperationStartResult<HandlerResultContent> start(HedgingHandler handler)
+      throws OperationException {
+    return handler.startOperation(
+        OperationContext.newBuilder().setService("service").setOperation("operation").build(),
+        OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+        HandlerInputContent.newBuilder()
+            .setDataStream(new ByteArrayInputStream("input".getBytes(StandardCharsets.UTF_8)))
+            .build());
+  }
+
+  private static String resultString(OperationStartResult<HandlerResultContent> result) {
+    HandlerResultContent content = Objects.requireNonNull(result.getSyncResult());
+    return new String(Objects.requireNonNull(content.getDataBytes()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void slowAttemptHedged() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Replica slow = new Replica(300, "slow-token", null);
+      Replica fast = new Replica(0, null, null);
+      HedgingHandler handler =
+          HedgingHandler.newBuilder()
+              .addHandler(slow)
+              .addHandler(fast)
+              .setExecutor(executor)
+              .setInitialDelay(Duration.ofMillis(20))
+              .setBudget(1)
+              .build();
+      long startNanos = System.nanoTime();
+      assertEquals("result after 0", resultString(start(handler)));
+      assertTrue(System.nanoTime() - startNanos < TimeUnit.MILLISECONDS.toNanos(250));
+
+      // Both attempts share the request ID and input
+      assertEquals("request-id", slow.requestIds.get(0));
+      assertEquals("request-id", fast.requestIds.get(0));
+      assertEquals("input", fast.inputs.get(0));
+      // The loser has its method cancelled and its async operation cancelled when it completes
+      assertTrue(slow.methodCancelled.await(1, TimeUnit.SECONDS));
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+      assertEquals("slow-token", slow.cancelledTokens.get(0));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void sharedOperationNotCancelled() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      // Replicas deduplicating by request ID return the same operation for both attempts
+      Replica slow = new Replica(100, "shared-token", null);
+      Replica fast = new Replica(0, "shared-token", null);
+      HedgingHandler handler =
+          HedgingHandler.newBuilder()
+              .addHandler(slow)
+              .addHandler(fast)
+              .setExecutor(executor)
+              .setInitialDelay(Duration.ofMillis(20))
+              .setBudget(1)
+              .build();
+      assertEquals("shared-token", start(handler).getAsyncOperationToken());
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+      assertEquals(1, slow.requestIds.size());
+      assertTrue(slow.cancelledTokens.isEmpty());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void unreadableInputRejected() {
+    HedgingHandler handler =
+        HedgingHandler.newBuilder()
+            .addHandler(new Replica(0, null, null))
+            .setExecutor(Runnable::run)
+            .build();
+    HandlerException e =
+        assertThrows(
+            HandlerException.class,
+            () ->
+                handler.startOperation(
+                    OperationContext.newBuilder()
+                        .setService("service")
+                        .setOperation("operation")
+                        .build(),
+                    OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+                    HandlerInputContent.newBuilder()
+                        .setDataStream(
+                            new InputStream() {
+                              @Override
+                              public int read() throws IOException {
+                                throw new IOException("reset");
+                              }
+                            })
+                        .build()));
+    assertEquals(HandlerException.ErrorType.BAD_REQUEST, e.getErrorType());
+  }
+
+  @Test
+  void budgetLimitsHedges() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Replica slow = new Replica(50, null, null);
+      Replica fast = new Replica(0, null, null);
+      HedgingHandler handler =
+          HedgingHandler.newBuilder()
+              .addHandler(slow)
+              .addHandler(fast)
+              .setExecutor(executor)
+              .setInitialDelay(Duration.ofMillis(5))
+              .setBudget(0)
+              .build();
+      assertEquals("result after 50", resultString(start(handler)));
+      assertTrue(fast.requestIds.isEmpty());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void retryableFailureHedgedRightAway() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Replica unavailable = new Replica(0, null, HandlerException.ErrorType.UNAVAILABLE);
+      Replica healthy = new Replica(0, null, null);
+      HedgingHandler handler =
+          HedgingHandler.newBuilder()
+              .addHandler(unavailable)
+              .addHandler(healthy)
+              .setExecutor(executor)
+              .setInitialDelay(Duration.ofSeconds(10))
+              .setBudget(1)
+              .build();
+      assertEquals("result after 0", resultString(start(handler)));
+
+      Replica badRequest = new Replica(0, null, HandlerException.ErrorType.BAD_REQUEST);
+      HedgingHandler nonRetryable =
+          HedgingHandler.newBuilder()
+              .addHandler(badRequest)
+              .addHandler(healthy)
+              .setExecutor(executor)
+              .setBudget(1)
+              .build();
+      HandlerException e = assertThrows(HandlerException.class, () -> start(nonRetryable));
+      assertEquals(HandlerException.ErrorType.BAD_REQUEST, e.getErrorType());
+      assertEquals(1, healthy.requestIds.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void delayFollowsLatencies() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      HedgingHandler handler =
+          HedgingHandler.newBuilder()
+              .addHandler(new Replica(0, null, null))
+              .setExecutor(executor)
+              .setInitialDelay(Duration.ofSeconds(10))
+              .build();
+      for (int i = 0; i < 16; i++) {
+        start(handler);
+      }
+      assertTrue(handler.getHedgeDelay().compareTo(Duration.ofSeconds(1)) < 0);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,244 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.OperationException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class LoadBalancingHandlerTest {
+  private static class Replica implements Handler {
+    private final long latencyMillis;
+    private volatile HandlerException.@Nullable ErrorType failure;
+    // Every this many calls succeeds instead of failing, or 0 if none do
+    private final int succeedEvery;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private Replica(long latencyMillis, HandlerException.@Nullable ErrorType failure) {
+      this(latencyMillis, failure, 0);
+    }
+
+    private Replica(
+        long latencyMillis, HandlerException.@Nullable ErrorType failure, int succeedEvery) {
+      this.latencyMillis = latencyMillis;
+      this.failure = failure;
+      this.succeedEvery = succeedEvery;
+    }
+
+    @Override
+    public OperationStartResult<HandlerResultContent> startOperation(
+        OperationContext context, OperationStartDetails details, HandlerInputContent input) {
+      int call = calls.incrementAndGet();
+      // Failures are fast
+      if (failure != null && (succeedEvery == 0 || call % succeedEvery != 0)) {
+        throw new HandlerException(
+            failure, "failed", null, HandlerException.RetryBehavior.UNSPECIFIED);
+      }
+      if (latencyMillis > 0) {
+        try {
+          Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return OperationStartResult.async("token");
+    }
+
+    @Override
+    public void cancelOperation(OperationContext context, OperationCancelDetails details) {
+      calls.incrementAndGet();
+    }
+  }
+
+  private static void start(Handler handler, int times) {
+    for (int i = 0; i < times; i++) {
+      try {
+        handler.startOperation(
+            OperationContext.newBuilder().setService("service").setOperation("operation").build(),
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream("input".getBytes(StandardCharsets.UTF_8)))
+                .build());
+      } catch (HandlerException | OperationException e) {
+        // Failures are counted by the replicas
+      }
+    }
+  }
+
+  @Test
+  void prefersFasterReplica() {
+    Map<String, Replica> replicas = new HashMap<>();
+    replicas.put("fast", new Replica(0, null));
+    replicas.put("slow", new Replica(20, null));
+    LoadBalancingHandler handler =
+        LoadBalancingHandler.newBuilder()
+            .addEndpoint("fast")
+            .addEndpoint("slow")
+            .setReplicaFactory(replicas::get)
+            .build();
+    start(handler, 40);
+    assertTrue(replicas.get("slow").calls.get() <= 2);
+    assertTrue(replicas.get("fast").calls.get() >= 38);
+  }
+
+  @Test
+  void ejectsOnReplicaFailures() {
+    Map<String, Replica> replicas = new HashMap<>();
+    replicas.put("good", new Replica(0, null));
+    replicas.put("timeout", new Replica(0, HandlerException.ErrorType.UPSTREAM_TIMEOUT));
+    replicas.put("unavailable", new Replica(0, HandlerException.ErrorType.UNAVAILABLE));
+    replicas.put("unauthorized", new Replica(0, HandlerException.ErrorType.UNAUTHORIZED));
+    replicas.put("bad-request", new Replica(0, HandlerException.ErrorType.BAD_REQUEST));
+    LoadBalancingHandler handler =
+        LoadBalancingHandler.newBuilder()
+            .addEndpoint("good")
+            .addEndpoint("timeout")
+            .addEndpoint("unavailable")
+            .setReplicaFactory(replicas::get)
+            .build();
+    start(handler, 50);
+    assertTrue(handler.isEjected("timeout"));
+    assertTrue(handler.isEjected("unavailable"));
+    assertFalse(handler.isEjected("good"));
+    // Timeouts eject at once, retryable failures once repeated
+    assertEquals(1, replicas.get("timeout").calls.get());
+    assertEquals(3, replicas.get("unavailable").calls.get());
+
+    // Failures that are the caller's fault never eject, and a lone ejected replica is still used
+    for (String endpoint : Arrays.asList("unauthorized", "bad-request", "unavailable")) {
+      LoadBalancingHandler lone =
+          LoadBalancingHandler.newBuilder()
+              .addEndpoint(endpoint)
+              .setReplicaFactory(replicas::get)
+              .build();
+      start(lone, 2);
+      assertFalse(lone.isEjected(endpoint));
+      start(lone, 1);
+      assertEquals(endpoint.equals("unavailable"), lone.isEjected(endpoint));
+    }
+    assertEquals(6, replicas.get("unavailable").calls.get());
+
+    // Successes in between reset the count
+    replicas.put("flaky", new Replica(0, HandlerException.ErrorType.UNAVAILABLE, 2));
+    LoadBalancingHandler flaky =
+        LoadBalancingHandler.newBuilder()
+            .addEndpoint("flaky")
+            .setReplicaFactory(replicas::get)
+            .build();
+    start(flaky, 10);
+    assertFalse(flaky.isEjected("flaky"));
+  }
+
+  @Test
+  void failuresPenalized() {
+    Map<String, Replica> replicas = new HashMap<>();
+    replicas.put("good", new Replica(2, null));
+    // Fails fast two calls out of three, so is never ejected
+    replicas.put("flaky", new Replica(0, HandlerException.ErrorType.UNAVAILABLE, 3));
+    LoadBalancingHandler handler =
+        LoadBalancingHandler.newBuilder()
+            .addEndpoint("good")
+            .addEndpoint("flaky")
+            .setReplicaFactory(replicas::get)
+            .build();
+    start(handler, 40);
+    assertFalse(handler.isEjected("flaky"));
+    assertTrue(replicas.get("good").calls.get() > replicas.get("flaky").calls.get());
+  }
+
+  @Test
+  void recoversAfterOutage() throws InterruptedException {
+    Map<String, Replica> replicas = new HashMap<>();
+    replicas.put("fast", new Replica(0, null));
+    replicas.put("slow", new Replica(5, null));
+    LoadBalancingHandler handler =
+        LoadBalancingHandler.newBuilder()
+            .addEndpoint("fast")
+            .addEndpoint("slow")
+            .setReplicaFactory(replicas::get)
+            .setEjectionDuration(Duration.ofMillis(50))
+            .build();
+    start(handler, 10);
+
+    // A long outage of every replica must not grow the estimates without bound
+    for (Replica replica : replicas.values()) {
+      replica.failure = HandlerException.ErrorType.UNAVAILABLE;
+    }
+    start(handler, 5000);
+    for (Replica replica : replicas.values()) {
+      replica.failure = null;
+      replica.calls.set(0);
+    }
+    // Penalties fade over the ejection duration
+    Thread.sleep(200);
+    start(handler, 60);
+    assertTrue(replicas.get("slow").calls.get() <= 5);
+    assertTrue(replicas.get("fast").calls.get() >= 55);
+  }
+
+  @Test
+  void endpointsFileReloaded() throws Exception {
+    Path file = Files.createTempFile("endpoints", ".txt");
+    try {
+      Files.write(file, Arrays.asList("a", "", "b"));
+      Map<String, Replica> replicas = new ConcurrentHashMap<>();
+      AtomicInteger created = new AtomicInteger();
+      LoadBalancingHandler handler =
+          LoadBalancingHandler.newBuilder()
+              .setEndpointsFile(file)
+              .setReloadInterval(Duration.ZERO)
+              .setReplicaFactory(
+                  endpoint -> {
+                    created.incrementAndGet();
+                    return replicas.computeIfAbsent(endpoint, k -> new Replica(0, null));
+                  })
+              .build();
+      assertEquals(Arrays.asList("a", "b"), handler.getEndpoints());
+      start(handler, 10);
+      assertEquals(10, replicas.get("a").calls.get() + replicas.get("b").calls.get());
+
+      Files.write(file, Arrays.asList("# comment", "b", "c"));
+      start(handler, 10);
+      assertEquals(Arrays.asList("b", "c"), handler.getEndpoints());
+      assertTrue(replicas.get("c").calls.get() > 0);
+      // The replica of b was kept
+      assertEquals(3, created.get());
+
+      // An empty or missing file keeps the current endpoints
+      Files.write(file, Collections.singletonList("# nothing"));
+      handler.reload();
+      Files.delete(file);
+      handler.reload();
+      assertEquals(Arrays.asList("b", "c"), handler.getEndpoints());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  void invalidEndpoints() {
+    assertThrows(IllegalStateException.class, () -> LoadBalancingHandler.newBuilder().build());
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            LoadBalancingHandler.newBuilder()
+                .addEndpoint("a")
+                .setEndpointsFile(Paths.get("endpoints.txt"))
+                .build());
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            LoadBalancingHandler.newBuilder()
+                .setEndpointsFile(Paths.get("missing-endpoints.txt"))
+                .build());
+  }
+}
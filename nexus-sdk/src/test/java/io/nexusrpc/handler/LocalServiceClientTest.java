@@ -0,0 +1,169 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class LocalServiceClientTest {
+  @Service
+  public interface BufferService {
+    @Operation
+    StringBuilder append(StringBuilder buffer);
+
+    @Operation
+    String deadline();
+
+    @Operation
+    String async();
+
+    @Operation
+    String fail();
+  }
+
+  @ServiceImpl(service = BufferService.class)
+  public static class BufferServiceImpl {
+    private @Nullable StringBuilder lastInput;
+    private final AtomicInteger asyncStarts = new AtomicInteger();
+
+    @OperationImpl
+    public OperationHandler<StringBuilder, StringBuilder> append() {
+      return OperationHandler.sync(
+          (ctx, details, buffer) -> {
+            lastInput = buffer;
+            return buffer.append("!");
+          });
+    }
+
+    @OperationImpl
+    public OperationHandler<Void, String> deadline() {
+      return OperationHandler.sync(
+          (ctx, details, input) -> ctx.getDeadline() == null ? "none" : "set");
+    }
+
+    @OperationImpl
+    public OperationHandler<Void, String> async() {
+      return new OperationHandler<Void, String>() {
+        @Override
+        public OperationStartResult<String> start(
+            OperationContext context, OperationStartDetails details, @Nullable Void param) {
+          asyncStarts.incrementAndGet();
+          return OperationStartResult.async("token");
+        }
+
+        @Override
+        public void cancel(OperationContext context, OperationCancelDetails details) {}
+      };
+    }
+
+    @OperationImpl
+    public OperationHandler<Void, String> fail() {
+      return OperationHandler.sync(
+          (ctx, details, input) -> {
+            throw OperationException.failed("failed");
+          });
+    }
+  }
+
+  // Serializes string builders as their text, counting serializations
+  private static class BufferSerializer implements Serializer {
+    private final boolean copyRequired;
+    private final AtomicInteger serializations = new AtomicInteger();
+
+    private BufferSerializer(boolean copyRequired) {
+      this.copyRequired = copyRequired;
+    }
+
+    @Override
+    public Content serialize(@Nullable Object value) {
+      serializations.incrementAndGet();
+      String str = value == null ? "" : value.toString();
+      return Content.newBuilder().setData(str.getBytes(StandardCharsets.UTF_8)).build();
+    }
+
+    @Override
+    public @Nullable Object deserialize(Content content, Type type) {
+      String str = new String(content.getData(), StandardCharsets.UTF_8);
+      return type == StringBuilder.class ? new StringBuilder(str) : str;
+    }
+
+    @Override
+    public boolean isCopyRequired() {
+      return copyRequired;
+    }
+  }
+
+  private static LocalServiceClient<BufferService> newClient(
+      BufferServiceImpl impl, BufferSerializer serializer, AtomicInteger intercepted) {
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(serializer)
+            .addInstance(ServiceImplInstance.fromInstance(impl))
+            .addOperationMiddleware(
+                (context, next) -> {
+                  intercepted.incrementAndGet();
+                  return next;
+                })
+            .build();
+    return LocalServiceClient.newBuilder(BufferService.class)
+        .setHandler(handler)
+        .setTimeout(Duration.ofSeconds(10))
+        .build();
+  }
+
+  @Test
+  void passesObjectsWithoutSerializing() throws OperationException {
+    BufferServiceImpl impl = new BufferServiceImpl();
+    BufferSerializer serializer = new BufferSerializer(false);
+    AtomicInteger intercepted = new AtomicInteger();
+    LocalServiceClient<BufferService> client = newClient(impl, serializer, intercepted);
+    StringBuilder input = new StringBuilder("hello");
+    StringBuilder output = client.getStub().append(input);
+    assertSame(input, impl.lastInput);
+    assertSame(input, output);
+    assertEquals("hello!", output.toString());
+    assertEquals(0, serializer.serializations.get());
+    assertEquals(1, intercepted.get());
+    assertEquals("set", client.getStub().deadline());
+  }
+
+  @Test
+  void copiesWhenSerializerRequires() {
+    BufferServiceImpl impl = new BufferServiceImpl();
+    BufferSerializer serializer = new BufferSerializer(true);
+    LocalServiceClient<BufferService> client = newClient(impl, serializer, new AtomicInteger());
+    StringBuilder input = new StringBuilder("hello");
+    StringBuilder output = client.getStub().append(input);
+    assertNotSame(input, impl.lastInput);
+    assertEquals("hello", input.toString());
+    assertEquals("hello!", output.toString());
+    assertNotSame(impl.lastInput, output);
+    assertEquals(2, serializer.serializations.get());
+  }
+
+  @Test
+  void asyncAndFailedOperations() throws OperationException {
+    BufferServiceImpl impl = new BufferServiceImpl();
+    LocalServiceClient<BufferService> client =
+        newClient(impl, new BufferSerializer(false), new AtomicInteger());
+    assertEquals("token", client.startOperation("async", null).getAsyncOperationToken());
+    // Refused before starting, since it may not complete synchronously
+    assertThrows(IllegalStateException.class, () -> client.getStub().async());
+    assertEquals(1, impl.asyncStarts.get());
+    UncheckedOperationException e =
+        assertThrows(UncheckedOperationException.class, () -> client.getStub().fail());
+    assertEquals(OperationState.FAILED, e.getState());
+    assertEquals("failed", e.getCause().getMessage());
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            LocalServiceClient.newBuilder(TracingOperationMiddlewareTest.TracedService.class)
+                .setHandler(client.getHandler())
+                .build());
+  }
+}
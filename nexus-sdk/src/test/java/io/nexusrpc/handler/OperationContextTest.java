@@ -1,13 +1,21 @@
 package io.nexusrpc.handler;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 import io.nexusrpc.Link;
 import io.nexusrpc.example.TestServices;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.jupiter.api.Test;
 
 public class OperationContextTest {
@@ -33,6 +41,71 @@ public class OperationContextTest {
     assertEquals(octx.getLinks(), Arrays.asList());
   }
 
+  @Test
+  void linksSnapshotAndFreeze() throws URISyntaxException {
+    OperationContext octx =
+        OperationContext.newBuilder().setService("service").setOperation("operation").build();
+    Link first = Link.newBuilder().setUri(new URI("http://first")).setType("com.example.R").build();
+    octx.addLinks(first);
+    // Snapshots are reused until links change
+    List<Link> snapshot = octx.getLinks();
+    assertSame(snapshot, octx.getLinks());
+
+    Link second =
+        Link.newBuilder().setUri(new URI("http://second")).setType("com.example.R").build();
+    octx.addLinks(second);
+    assertEquals(Arrays.asList(first), snapshot);
+    assertEquals(Arrays.asList(first, second), octx.getLinks());
+
+    // Links changed after freezing are dropped
+    assertFalse(octx.isLinksFrozen());
+    assertEquals(Arrays.asList(first, second), octx.freezeLinks());
+    assertTrue(octx.isLinksFrozen());
+    octx.addLinks(first);
+    octx.setLinks();
+    assertEquals(Arrays.asList(first, second), octx.getLinks());
+    assertTrue(OperationContext.newBuilder(octx).build().isLinksFrozen());
+  }
+
+  @Test
+  void linksAddedConcurrently() throws Exception {
+    OperationContext octx =
+        OperationContext.newBuilder().setService("service").setOperation("operation").build();
+    int threads = 8;
+    int linksPerThread = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        futures.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  for (int i = 0; i < linksPerThread; i++) {
+                    octx.addLinks(
+                        Link.newBuilder()
+                            .setUri(new URI("http://link/" + thread + "/" + i))
+                            .setType("com.example.R")
+                            .build());
+                    octx.getLinks();
+                  }
+                  return null;
+                }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    List<Link> links = octx.freezeLinks();
+    assertEquals(threads * linksPerThread, links.size());
+    assertEquals(links.size(), new HashSet<>(links).size());
+  }
+
   @Test
   void deadlineTest() {
     Instant deadline = Instant.now().plusMillis(1000);
@@ -63,4 +136,46 @@ public class OperationContextTest {
     octx.setLinks(Link.newBuilder().setUri(url).setType("com.example.MyResource").build());
     assertEquals(octx, OperationContext.newBuilder(octx).build());
   }
+
+  @Test
+  void copiesShareState() throws URISyntaxException {
+    ServiceImplInstance serviceImpl = ServiceImplInstance.fromInstance(new IntegerServiceImpl());
+    OperationContext octx =
+        OperationContext.newBuilder()
+            .setService("IntegerService")
+            .setOperation("operation")
+            .putHeader("Key", "value")
+            .build();
+    List<Link> links = octx.getLinks();
+    assertThrows(UnsupportedOperationException.class, links::clear);
+
+    // Unchanged headers are shared by a copy, changed ones are copied first
+    OperationContext copy = OperationContext.newBuilder(octx).build();
+    assertSame(octx.getHeaders(), copy.getHeaders());
+    OperationContext changed = OperationContext.newBuilder(octx).putHeader("Other", "x").build();
+    assertEquals("value", changed.getHeaders().get("KEY"));
+    assertEquals("x", changed.getHeaders().get("other"));
+    assertFalse(octx.getHeaders().containsKey("other"));
+
+    // Resolved state is attached without copying, and links stay shared
+    OperationContext resolved =
+        octx.withResolved(
+            serviceImpl.getDefinition(),
+            serviceImpl.getDefinition().getOperations().get("operation"),
+            7);
+    assertSame(octx.getHeaders(), resolved.getHeaders());
+    assertEquals(7, resolved.getOperationId());
+    assertEquals("operation", Objects.requireNonNull(resolved.getOperationDefinition()).getName());
+    assertNull(octx.getOperationDefinition());
+    resolved.addLinks(
+        Link.newBuilder().setUri(new URI("http://somepath")).setType("com.example.R").build());
+    assertEquals(0, links.size());
+    assertEquals(1, octx.getLinks().size());
+
+    // The operation definition is otherwise found from the service definition
+    OperationContext withDefinition =
+        OperationContext.newBuilder(octx).setServiceDefinition(serviceImpl.getDefinition()).build();
+    assertEquals(
+        "operation", Objects.requireNonNull(withDefinition.getOperationDefinition()).getName());
+  }
 }
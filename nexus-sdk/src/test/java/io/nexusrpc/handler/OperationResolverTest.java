@@ -0,0 +1,177 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import io.nexusrpc.example.GreetingService;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import org.junit.jupiter.api.Test;
+
+public class OperationResolverTest {
+  @Service(name = "Gr\u00fc\u00dfe")
+  public interface UnicodeService {
+    @Operation(name = "wave\ud83d\udc4b")
+    String wave(String name);
+
+    @Operation(name = "\u4f60\u597d")
+    String hello(String name);
+  }
+
+  @ServiceImpl(service = UnicodeService.class)
+  public static class UnicodeServiceImpl {
+    @OperationImpl
+    public OperationHandler<String, String> wave() {
+      return OperationHandler.sync((ctx, details, name) -> "waved at " + name);
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> hello() {
+      return OperationHandler.sync((ctx, details, name) -> "hello " + name);
+    }
+  }
+
+  @ServiceImpl(service = UnicodeService.class)
+  public static class OtherUnicodeServiceImpl {
+    @OperationImpl
+    public OperationHandler<String, String> wave() {
+      return OperationHandler.sync((ctx, details, name) -> "waved at " + name);
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> hello() {
+      return OperationHandler.sync((ctx, details, name) -> "hi " + name);
+    }
+  }
+
+  private static OperationResolver resolver() {
+    return OperationResolver.fromDefinitions(
+        Arrays.asList(
+            ServiceDefinition.fromClass(GreetingService.class),
+            ServiceDefinition.fromClass(UnicodeService.class)));
+  }
+
+  @Test
+  void resolveByteRanges() {
+    OperationResolver resolver = resolver();
+    byte[] path = "/GreetingService/sayHello2?x=1".getBytes(StandardCharsets.UTF_8);
+    OperationResolver.Entry entry = Objects.requireNonNull(resolver.resolve(path, 1, 16, 17, 26));
+    assertEquals("GreetingService", entry.getService());
+    assertEquals("sayHello2", entry.getOperation());
+    assertEquals("sayHello2", entry.getDefinition().getName());
+    assertTrue(entry.getOperationId() >= 0);
+    // Resolving again returns the same entry
+    assertSame(entry, resolver.resolve(path, 1, 16, 17, 26));
+
+    assertNull(resolver.resolve(path, 1, 16, 17, 25));
+    assertNull(resolver.resolve(path, 1, 15, 17, 26));
+    assertNull(resolver.resolve(path, 0, 0, 0, 0));
+
+    byte[] unicode = "Gr\u00fc\u00dfe/wave\ud83d\udc4b".getBytes(StandardCharsets.UTF_8);
+    int slash = "Gr\u00fc\u00dfe".getBytes(StandardCharsets.UTF_8).length;
+    OperationResolver.Entry wave =
+        Objects.requireNonNull(resolver.resolve(unicode, 0, slash, slash + 1, unicode.length));
+    assertEquals("wave\ud83d\udc4b", wave.getOperation());
+  }
+
+  @Test
+  void resolveCharSequences() {
+    OperationResolver resolver = resolver();
+    OperationResolver.Entry entry =
+        Objects.requireNonNull(
+            resolver.resolve(new StringBuilder("GreetingService"), new StringBuilder("sayHello1")));
+    assertEquals("sayHello1", entry.getOperation());
+    assertSame(entry, resolver.resolve("GreetingService", "sayHello1"));
+    assertNotNull(resolver.resolve("Gr\u00fc\u00dfe", "wave\ud83d\udc4b"));
+    assertNotNull(resolver.resolve("Gr\u00fc\u00dfe", "\u4f60\u597d"));
+    assertNull(resolver.resolve("GreetingService", "sayHello3"));
+    assertNull(resolver.resolve("greetingservice", "sayHello1"));
+    assertNull(resolver.resolve("Gr\u00fc\u00dfe", "wave\ud83d"));
+  }
+
+  @Test
+  void resolvedContextsStartOperations() throws OperationException {
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(new StringOnlySerializer())
+            .addInstance(ServiceImplInstance.fromInstance(new UnicodeServiceImpl()))
+            .build();
+    OperationResolver.Entry entry =
+        Objects.requireNonNull(
+            handler.getOperationResolver().resolve("Gr\u00fc\u00dfe", "\u4f60\u597d"));
+    OperationContext context = entry.newContextBuilder().build();
+    assertEquals(entry.getOperationId(), context.getOperationId());
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            context,
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream("you".getBytes(StandardCharsets.UTF_8)))
+                .build());
+    HandlerResultContent content = Objects.requireNonNull(result.getSyncResult());
+    assertEquals(
+        "hello you",
+        new String(Objects.requireNonNull(content.getDataBytes()), StandardCharsets.UTF_8));
+
+    // Unknown names fall back to strings, which the handler rejects
+    assertNull(handler.getOperationResolver().resolve("GreetingService", "sayHello1"));
+    HandlerException e =
+        assertThrows(
+            HandlerException.class,
+            () ->
+                handler.startOperation(
+                    OperationContext.newBuilder()
+                        .setService("GreetingService")
+                        .setOperation("sayHello1")
+                        .build(),
+                    OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+                    HandlerInputContent.newBuilder()
+                        .setDataStream(new ByteArrayInputStream(new byte[0]))
+                        .build()));
+    assertEquals(HandlerException.ErrorType.NOT_FOUND, e.getErrorType());
+  }
+
+  @Test
+  void resolvedContextsCarryOperation() throws OperationException {
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(new StringOnlySerializer())
+            .addInstance(ServiceImplInstance.fromInstance(new UnicodeServiceImpl()))
+            .build();
+    OperationResolver resolver = handler.getOperationResolver();
+    assertSame(resolver, handler.getOperationResolver());
+    OperationResolver.Entry entry =
+        Objects.requireNonNull(resolver.resolve("Gr\u00fc\u00dfe", "\u4f60\u597d"));
+    OperationContext context = entry.newContextBuilder().build();
+    assertSame(entry.getDefinition(), context.getOperationDefinition());
+    assertEquals(
+        "Gr\u00fc\u00dfe", Objects.requireNonNull(context.getServiceDefinition()).getName());
+    assertEquals("hello you", start(handler, context));
+
+    // Another handler looks the operation up by name, even one derived from this one
+    ServiceHandler swapped =
+        handler.withInstance(ServiceImplInstance.fromInstance(new OtherUnicodeServiceImpl()));
+    assertEquals("hi you", start(swapped, context));
+    assertEquals("hello you", start(handler, context));
+
+    // Changing the operation drops what the entry resolved
+    OperationContext changed = entry.newContextBuilder().setOperation("wave\ud83d\udc4b").build();
+    assertEquals("waved at you", start(handler, changed));
+  }
+
+  private static String start(ServiceHandler handler, OperationContext context)
+      throws OperationException {
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            context,
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream("you".getBytes(StandardCharsets.UTF_8)))
+                .build());
+    return new String(
+        Objects.requireNonNull(Objects.requireNonNull(result.getSyncResult()).getDataBytes()),
+        StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,183 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class OperationSlotsTest {
+  @Service
+  public interface SlotService {
+    @Operation
+    String first(String input);
+
+    @Operation
+    String second(String input);
+  }
+
+  @ServiceImpl(service = SlotService.class)
+  public static class SlotServiceImpl {
+    @OperationImpl
+    public OperationHandler<String, String> first() {
+      return OperationHandler.sync((ctx, details, input) -> "first");
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> second() {
+      return OperationHandler.sync((ctx, details, input) -> "second");
+    }
+  }
+
+  @Service
+  public interface OtherService {
+    @Operation
+    String third(String input);
+  }
+
+  @ServiceImpl(service = OtherService.class)
+  public static class OtherServiceImpl {
+    @OperationImpl
+    public OperationHandler<String, String> third() {
+      return OperationHandler.sync((ctx, details, input) -> "third");
+    }
+  }
+
+  // Counts starts per operation in slots, recording the operation IDs seen
+  private static class CountingMiddleware implements OperationMiddleware {
+    private final List<Integer> operationIds = new CopyOnWriteArrayList<>();
+    private final AtomicInteger created = new AtomicInteger();
+    private final OperationSlots<AtomicInteger> counts =
+        new OperationSlots<>(
+            context -> {
+              created.incrementAndGet();
+              return new AtomicInteger();
+            });
+
+    @Override
+    public OperationHandler<Object, Object> intercept(
+        OperationContext context, OperationHandler<Object, Object> next) {
+      operationIds.add(context.getOperationId());
+      counts.get(context).incrementAndGet();
+      return next;
+    }
+  }
+
+  private static ServiceHandler handler(CountingMiddleware middleware) {
+    return ServiceHandler.newBuilder()
+        .setSerializer(new StringOnlySerializer())
+        .addInstance(ServiceImplInstance.fromInstance(new SlotServiceImpl()))
+        .addOperationMiddleware(middleware)
+        .build();
+  }
+
+  private static void start(ServiceHandler handler, String operation) throws OperationException {
+    start(handler, "SlotService", operation);
+  }
+
+  private static void start(ServiceHandler handler, String service, String operation)
+      throws OperationException {
+    handler.startOperation(
+        OperationContext.newBuilder().setService(service).setOperation(operation).build(),
+        OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+        HandlerInputContent.newBuilder()
+            .setDataStream(new ByteArrayInputStream("input".getBytes(StandardCharsets.UTF_8)))
+            .build());
+  }
+
+  private static OperationContext context(String operation) {
+    return OperationContext.newBuilder().setService("SlotService").setOperation(operation).build();
+  }
+
+  @Test
+  void operationIdsAssignedByHandler() throws OperationException {
+    CountingMiddleware middleware = new CountingMiddleware();
+    ServiceHandler handler = handler(middleware);
+    start(handler, "first");
+    start(handler, "second");
+    start(handler, "first");
+    int firstId = middleware.operationIds.get(0);
+    int secondId = middleware.operationIds.get(1);
+    assertTrue(firstId >= 0);
+    assertTrue(secondId >= 0);
+    assertNotEquals(firstId, secondId);
+    assertEquals(firstId, (int) middleware.operationIds.get(2));
+
+    // Another handler of the same service assigns the same IDs
+    CountingMiddleware otherMiddleware = new CountingMiddleware();
+    start(handler(otherMiddleware), "second");
+    assertEquals(secondId, (int) otherMiddleware.operationIds.get(0));
+
+    // A derived handler keeps the IDs of the operations it still has, new ones get free IDs
+    ServiceHandler derived =
+        handler.withInstance(ServiceImplInstance.fromInstance(new OtherServiceImpl()));
+    start(derived, "OtherService", "third");
+    start(derived, "first");
+    int thirdId = middleware.operationIds.get(3);
+    assertNotEquals(firstId, thirdId);
+    assertNotEquals(secondId, thirdId);
+    assertEquals(firstId, (int) middleware.operationIds.get(4));
+    start(derived.withoutService("SlotService"), "OtherService", "third");
+    assertEquals(thirdId, (int) middleware.operationIds.get(5));
+
+    // Contexts built elsewhere have no ID, and a copy keeps it
+    assertEquals(-1, context("first").getOperationId());
+    OperationContext withId =
+        OperationContext.newBuilder(context("first")).setOperationId(3).build();
+    assertEquals(3, OperationContext.newBuilder(withId).build().getOperationId());
+  }
+
+  @Test
+  void slotsHoldValuePerOperation() throws OperationException {
+    CountingMiddleware middleware = new CountingMiddleware();
+    ServiceHandler handler = handler(middleware);
+    for (int i = 0; i < 3; i++) {
+      start(handler, "first");
+    }
+    start(handler, "second");
+    assertEquals(2, middleware.created.get());
+    int firstId = middleware.operationIds.get(0);
+    OperationContext first =
+        OperationContext.newBuilder(context("first")).setOperationId(firstId).build();
+    assertEquals(3, middleware.counts.get(first).get());
+
+    // IDs past the initial capacity grow the slots
+    OperationContext far = OperationContext.newBuilder(context("far")).setOperationId(1000).build();
+    middleware.counts.get(far).incrementAndGet();
+    assertEquals(1, middleware.counts.get(far).get());
+    assertEquals(3, middleware.counts.get(first).get());
+
+    // Contexts without an ID are looked up by name
+    middleware.counts.get(context("unassigned")).incrementAndGet();
+    assertEquals(1, middleware.counts.get(context("unassigned")).get());
+    assertEquals(4, middleware.created.get());
+  }
+
+  @Test
+  void slotsSharedByUnrelatedHandlers() throws OperationException {
+    CountingMiddleware middleware = new CountingMiddleware();
+    ServiceHandler handler = handler(middleware);
+    ServiceHandler other =
+        ServiceHandler.newBuilder()
+            .setSerializer(new StringOnlySerializer())
+            .addInstance(ServiceImplInstance.fromInstance(new OtherServiceImpl()))
+            .addOperationMiddleware(middleware)
+            .build();
+    start(handler, "first");
+    start(other, "OtherService", "third");
+    start(handler, "first");
+    start(other, "OtherService", "third");
+    start(other, "OtherService", "third");
+    // Each handler gave its only or first operation ID 0, yet each operation keeps its own value
+    assertEquals(middleware.operationIds.get(0), middleware.operationIds.get(1));
+    assertEquals(2, middleware.created.get());
+    assertEquals(2, middleware.counts.get(context("first")).get());
+    OperationContext third =
+        OperationContext.newBuilder().setService("OtherService").setOperation("third").build();
+    assertEquals(3, middleware.counts.get(third).get());
+  }
+}
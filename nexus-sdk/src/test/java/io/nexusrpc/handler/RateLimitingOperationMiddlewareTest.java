@@ -0,0 +1,142 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.OperationException;
+import io.nexusrpc.StringOnlySerializer;
+import io.nexusrpc.example.GreetingServiceImpl;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class RateLimitingOperationMiddlewareTest {
+  private static final String TENANT_HEADER = "Tenant-Id";
+
+  @Test
+  void burstThenRejected() throws OperationException {
+    ServiceHandler handler =
+        newHandler(
+            RateLimitingOperationMiddleware.newBuilder()
+                .setPermitsPerSecond(0.001)
+                .setBurst(2)
+                .build());
+    start(handler, "sayHello1", null);
+    start(handler, "sayHello1", null);
+    HandlerException ex =
+        assertThrows(HandlerException.class, () -> start(handler, "sayHello1", null));
+    assertEquals(HandlerException.ErrorType.RESOURCE_EXHAUSTED, ex.getErrorType());
+    assertTrue(ex.isRetryable());
+    // Other operations have their own bucket
+    start(handler, "sayHello2", null);
+  }
+
+  @Test
+  void separateBucketPerKeyHeader() throws OperationException {
+    ServiceHandler handler =
+        newHandler(
+            RateLimitingOperationMiddleware.newBuilder()
+                .setPermitsPerSecond(0.001)
+                .setKeyHeader(TENANT_HEADER)
+                .build());
+    start(handler, "sayHello1", "tenant-a");
+    assertThrows(HandlerException.class, () -> start(handler, "sayHello1", "tenant-a"));
+    start(handler, "sayHello1", "tenant-b");
+    start(handler, "sayHello1", null);
+    assertThrows(HandlerException.class, () -> start(handler, "sayHello1", null));
+  }
+
+  @Test
+  void operationLimitOverridesDefault() throws OperationException {
+    ServiceHandler handler =
+        newHandler(
+            RateLimitingOperationMiddleware.newBuilder()
+                .setPermitsPerSecond(0.001)
+                .putOperationLimit("GreetingService", "sayHello1", 0.001, 3)
+                .build());
+    for (int i = 0; i < 3; i++) {
+      start(handler, "sayHello1", null);
+    }
+    assertThrows(HandlerException.class, () -> start(handler, "sayHello1", null));
+    start(handler, "sayHello2", null);
+    assertThrows(HandlerException.class, () -> start(handler, "sayHello2", null));
+  }
+
+  @Test
+  void idleBucketsEvicted() throws OperationException {
+    ServiceHandler handler =
+        newHandler(
+            RateLimitingOperationMiddleware.newBuilder()
+                .setPermitsPerSecond(0.001)
+                .setKeyHeader(TENANT_HEADER)
+                .setMaxKeys(1)
+                .build());
+    start(handler, "sayHello1", "tenant-a");
+    assertThrows(HandlerException.class, () -> start(handler, "sayHello1", "tenant-a"));
+    // Tracking a second tenant evicts the first, which then starts over with a full bucket
+    start(handler, "sayHello1", "tenant-b");
+    start(handler, "sayHello1", "tenant-a");
+  }
+
+  @Test
+  void tinyRatesDoNotOverflow() throws OperationException {
+    ServiceHandler handler =
+        newHandler(
+            RateLimitingOperationMiddleware.newBuilder()
+                .setPermitsPerSecond(1e-15)
+                .setBurst(Integer.MAX_VALUE)
+                .build());
+    for (int i = 0; i < 3; i++) {
+      start(handler, "sayHello1", null);
+    }
+    ServiceHandler single =
+        newHandler(RateLimitingOperationMiddleware.newBuilder().setPermitsPerSecond(1e-15).build());
+    start(single, "sayHello1", null);
+    assertThrows(HandlerException.class, () -> start(single, "sayHello1", null));
+  }
+
+  @Test
+  void invalidLimits() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> RateLimitingOperationMiddleware.newBuilder().build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            RateLimitingOperationMiddleware.newBuilder()
+                .setPermitsPerSecond(1)
+                .setBurst(0)
+                .build());
+  }
+
+  private static ServiceHandler newHandler(RateLimitingOperationMiddleware middleware) {
+    return ServiceHandler.newBuilder()
+        .setSerializer(new StringOnlySerializer())
+        .addInstance(
+            ServiceImplInstance.fromInstance(
+                new GreetingServiceImpl(
+                    name -> {
+                      throw new UnsupportedOperationException();
+                    })))
+        .addOperationMiddleware(middleware)
+        .build();
+  }
+
+  private static void start(ServiceHandler handler, String operation, @Nullable String tenant)
+      throws OperationException {
+    OperationContext.Builder context =
+        OperationContext.newBuilder().setService("GreetingService").setOperation(operation);
+    if (tenant != null) {
+      context.putHeader(TENANT_HEADER, tenant);
+    }
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            context.build(),
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(
+                    new ByteArrayInputStream("sync-user".getBytes(StandardCharsets.UTF_8)))
+                .build());
+    assertTrue(result.isSync());
+  }
+}
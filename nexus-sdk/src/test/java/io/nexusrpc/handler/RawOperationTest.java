@@ -0,0 +1,127 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class RawOperationTest {
+  @Service
+  public interface ProxyService {
+    @Operation(resultCacheTtlMillis = 60_000)
+    HandlerResultContent forward(HandlerInputContent input);
+
+    @Operation
+    String length(HandlerInputContent input);
+
+    @Operation
+    HandlerResultContent greet(String name);
+  }
+
+  @ServiceImpl(service = ProxyService.class)
+  public static class ProxyServiceImpl {
+    private final AtomicInteger forwardCount = new AtomicInteger();
+
+    @OperationImpl
+    public OperationHandler<HandlerInputContent, HandlerResultContent> forward() {
+      return OperationHandler.sync(
+          (ctx, details, input) -> {
+            forwardCount.incrementAndGet();
+            return HandlerResultContent.newBuilder()
+                .setData(input.consumeStream())
+                .putHeader("type", input.getHeaders().get("type"))
+                .build();
+          });
+    }
+
+    @OperationImpl
+    public OperationHandler<HandlerInputContent, String> length() {
+      return OperationHandler.sync(
+          (ctx, details, input) -> {
+            try {
+              return String.valueOf(input.consumeBytes().length);
+            } catch (Exception e) {
+              throw new RuntimeException(e);
+            }
+          });
+    }
+
+    @OperationImpl
+    public OperationHandler<String, HandlerResultContent> greet() {
+      return OperationHandler.sync(
+          (ctx, details, name) ->
+              HandlerResultContent.newBuilder()
+                  .setData(("Hello, " + name).getBytes(StandardCharsets.UTF_8))
+                  .build());
+    }
+  }
+
+  private static ServiceHandler newHandler(ProxyServiceImpl impl) {
+    return ServiceHandler.newBuilder()
+        .setSerializer(new StringOnlySerializer())
+        .addInstance(ServiceImplInstance.fromInstance(impl))
+        .setResultCache(ResultCache.newBuilder().build())
+        .build();
+  }
+
+  private static HandlerResultContent start(
+      ServiceHandler handler, String operation, HandlerInputContent input)
+      throws OperationException {
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            OperationContext.newBuilder()
+                .setService("ProxyService")
+                .setOperation(operation)
+                .build(),
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            input);
+    return Objects.requireNonNull(result.getSyncResult());
+  }
+
+  private static HandlerInputContent input(String data) {
+    return HandlerInputContent.newBuilder()
+        .setDataStream(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)))
+        .putHeader("type", "application/octet-stream")
+        .build();
+  }
+
+  @Test
+  void inputAndResultPassedThrough() throws Exception {
+    ProxyServiceImpl impl = new ProxyServiceImpl();
+    ServiceHandler handler = newHandler(impl);
+    InputStream stream = new ByteArrayInputStream("raw".getBytes(StandardCharsets.UTF_8));
+    HandlerResultContent content =
+        start(
+            handler,
+            "forward",
+            HandlerInputContent.newBuilder()
+                .setDataStream(stream)
+                .putHeader("type", "application/octet-stream")
+                .build());
+    // The stream reaches the result unread
+    assertSame(stream, content.getDataStream());
+    assertEquals("application/octet-stream", content.getHeaders().get("type"));
+
+    // Raw results are never cached
+    start(handler, "forward", input("raw"));
+    assertEquals(2, impl.forwardCount.get());
+    assertEquals(0, Objects.requireNonNull(handler.getResultCache()).size());
+  }
+
+  @Test
+  void rawInputOrOutputOnly() throws Exception {
+    ServiceHandler handler = newHandler(new ProxyServiceImpl());
+    HandlerResultContent length = start(handler, "length", input("four"));
+    assertEquals(
+        "4", new String(Objects.requireNonNull(length.getDataBytes()), StandardCharsets.UTF_8));
+    HandlerResultContent greeting = start(handler, "greet", input("raw"));
+    assertEquals(
+        "Hello, raw",
+        new String(Objects.requireNonNull(greeting.getDataBytes()), StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,133 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+
+public class ReconfigurableHandlerTest {
+  @Service
+  public interface GreetingService {
+    @Operation
+    String greet(String name);
+  }
+
+  @Service
+  public interface FarewellService {
+    @Operation
+    String farewell(String name);
+  }
+
+  @ServiceImpl(service = GreetingService.class)
+  public static class GreetingServiceImpl {
+    private final String greeting;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release;
+
+    public GreetingServiceImpl(String greeting, boolean block) {
+      this.greeting = greeting;
+      this.release = new CountDownLatch(block ? 1 : 0);
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> greet() {
+      return OperationHandler.sync(
+          (ctx, details, name) -> {
+            started.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new RuntimeException(e);
+            }
+            return greeting + ", " + name;
+          });
+    }
+  }
+
+  @ServiceImpl(service = FarewellService.class)
+  public static class FarewellServiceImpl {
+    @OperationImpl
+    public OperationHandler<String, String> farewell() {
+      return OperationHandler.sync((ctx, details, name) -> "Bye, " + name);
+    }
+  }
+
+  private static String call(Handler handler, String service, String operation)
+      throws OperationException {
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            OperationContext.newBuilder().setService(service).setOperation(operation).build(),
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream("Ann".getBytes(StandardCharsets.UTF_8)))
+                .build());
+    return new String(
+        Objects.requireNonNull(Objects.requireNonNull(result.getSyncResult()).getDataBytes()),
+        StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void replacedHandlerDrains() throws Exception {
+    GreetingServiceImpl blocking = new GreetingServiceImpl("Hello", true);
+    ReconfigurableHandler handler =
+        ReconfigurableHandler.newBuilder()
+            .setHandler(
+                ServiceHandler.newBuilder()
+                    .setSerializer(new StringOnlySerializer())
+                    .addInstance(ServiceImplInstance.fromInstance(blocking))
+                    .build())
+            .build();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> inFlight = executor.submit(() -> call(handler, "GreetingService", "greet"));
+      assertTrue(blocking.started.await(10, TimeUnit.SECONDS));
+
+      // Swap in a new greeting and add a service while the old call is still running
+      CompletableFuture<Void> drained =
+          handler.addInstance(
+              ServiceImplInstance.fromInstance(new GreetingServiceImpl("Hi", false)));
+      handler.addInstance(ServiceImplInstance.fromInstance(new FarewellServiceImpl())).get();
+      assertFalse(drained.isDone());
+      assertEquals("Hi, Ann", call(handler, "GreetingService", "greet"));
+      assertEquals("Bye, Ann", call(handler, "FarewellService", "farewell"));
+
+      blocking.release.countDown();
+      assertEquals("Hello, Ann", inFlight.get(10, TimeUnit.SECONDS));
+      drained.get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdown();
+    }
+
+    handler.removeService("FarewellService").get();
+    HandlerException e =
+        assertThrows(HandlerException.class, () -> call(handler, "FarewellService", "farewell"));
+    assertEquals(HandlerException.ErrorType.NOT_FOUND, e.getErrorType());
+    assertThrows(IllegalStateException.class, () -> handler.removeService("FarewellService"));
+    assertThrows(IllegalStateException.class, () -> handler.removeService("GreetingService"));
+  }
+
+  @Test
+  void incrementalChangesShareUnchangedState() {
+    Bulkhead bulkhead = Bulkhead.newBuilder().setName("greeting").setMaxConcurrency(1).build();
+    ServiceHandler original =
+        ServiceHandler.newBuilder()
+            .setSerializer(new StringOnlySerializer())
+            .addInstance(ServiceImplInstance.fromInstance(new GreetingServiceImpl("Hello", false)))
+            .putServiceBulkhead("GreetingService", bulkhead)
+            .build();
+    ServiceHandler added =
+        original.withInstance(ServiceImplInstance.fromInstance(new FarewellServiceImpl()));
+    assertEquals(2, added.getInstances().size());
+    assertSame(original.getServiceBulkheads(), added.getServiceBulkheads());
+    assertSame(original.getOperationMiddlewares(), added.getOperationMiddlewares());
+    ServiceHandler removed = added.withoutService("GreetingService");
+    assertEquals(1, removed.getInstances().size());
+    assertTrue(removed.getServiceBulkheads().isEmpty());
+    bulkhead.shutdown();
+  }
+}
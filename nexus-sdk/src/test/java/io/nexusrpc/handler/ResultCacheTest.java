@@ -0,0 +1,203 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class ResultCacheTest {
+  @Service
+  public interface LookupService {
+    @Operation(resultCacheTtlMillis = 60_000, resultCacheKeyHeaders = "Tenant-Id")
+    String lookup(String key);
+
+    @Operation(resultCacheTtlMillis = 50)
+    String shortLived(String key);
+
+    @Operation
+    String uncached(String key);
+  }
+
+  @ServiceImpl(service = LookupService.class)
+  public static class LookupServiceImpl {
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @OperationImpl
+    public OperationHandler<String, String> lookup() {
+      return OperationHandler.sync(
+          (ctx, details, key) ->
+              key + "-" + ctx.getHeaders().get("Tenant-Id") + "-" + calls.incrementAndGet());
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> shortLived() {
+      return OperationHandler.sync((ctx, details, key) -> key + "-" + calls.incrementAndGet());
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> uncached() {
+      return OperationHandler.sync((ctx, details, key) -> key + "-" + calls.incrementAndGet());
+    }
+  }
+
+  @Test
+  void cachedResultSkipsHandler() throws OperationException {
+    LookupServiceImpl impl = new LookupServiceImpl();
+    ServiceHandler handler = newHandler(impl, ResultCache.newBuilder().build());
+    assertEquals("a-t1-1", start(handler, "lookup", "a", "t1"));
+    assertEquals("a-t1-1", start(handler, "lookup", "a", "t1"));
+    // Different input or key header values are different entries
+    assertEquals("b-t1-2", start(handler, "lookup", "b", "t1"));
+    assertEquals("a-t2-3", start(handler, "lookup", "a", "t2"));
+    assertEquals("a-null-4", start(handler, "lookup", "a", null));
+    assertEquals("a-t1-1", start(handler, "lookup", "a", "t1"));
+    assertEquals(4, impl.calls.get());
+    assertEquals(4, Objects.requireNonNull(handler.getResultCache()).size());
+  }
+
+  // Rejects starts without an allowed token and marks the results of the others
+  private static class AuthorizingMiddleware implements OperationMiddleware {
+    private final AtomicInteger starts = new AtomicInteger();
+
+    @Override
+    public OperationHandler<Object, Object> intercept(
+        OperationContext context, OperationHandler<Object, Object> next) {
+      return new OperationHandler<Object, Object>() {
+        @Override
+        public OperationStartResult<Object> start(
+            OperationContext context, OperationStartDetails details, @Nullable Object param)
+            throws OperationException {
+          starts.incrementAndGet();
+          if (!"allowed".equals(context.getHeaders().get("Authorization"))) {
+            throw new HandlerException(
+                HandlerException.ErrorType.UNAUTHORIZED,
+                "Not allowed",
+                null,
+                HandlerException.RetryBehavior.UNSPECIFIED);
+          }
+          OperationStartResult<Object> result = next.start(context, details, param);
+          return OperationStartResult.sync(result.getSyncResult() + "!");
+        }
+
+        @Override
+        public void cancel(OperationContext context, OperationCancelDetails details) {
+          next.cancel(context, details);
+        }
+      };
+    }
+  }
+
+  @Test
+  void middlewaresRunForCachedResults() throws OperationException {
+    LookupServiceImpl impl = new LookupServiceImpl();
+    AuthorizingMiddleware middleware = new AuthorizingMiddleware();
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(new StringOnlySerializer())
+            .addInstance(ServiceImplInstance.fromInstance(impl))
+            .setResultCache(ResultCache.newBuilder().build())
+            .addOperationMiddleware(middleware)
+            .build();
+    OperationContext allowed =
+        OperationContext.newBuilder()
+            .setService("LookupService")
+            .setOperation("lookup")
+            .putHeader("Authorization", "allowed")
+            .build();
+    // The handler result is cached, and middlewares apply to it on every start
+    assertEquals("a-null-1!", start(handler, allowed, "a"));
+    assertEquals("a-null-1!", start(handler, allowed, "a"));
+    OperationContext denied =
+        OperationContext.newBuilder(allowed).putHeader("Authorization", "denied").build();
+    HandlerException e = assertThrows(HandlerException.class, () -> start(handler, denied, "a"));
+    assertEquals(HandlerException.ErrorType.UNAUTHORIZED, e.getErrorType());
+    assertEquals(3, middleware.starts.get());
+    assertEquals(1, impl.calls.get());
+  }
+
+  @Test
+  void uncachedOperationsAndHandlersWithoutCache() throws OperationException {
+    LookupServiceImpl impl = new LookupServiceImpl();
+    ServiceHandler handler = newHandler(impl, ResultCache.newBuilder().build());
+    assertEquals("a-1", start(handler, "uncached", "a", null));
+    assertEquals("a-2", start(handler, "uncached", "a", null));
+
+    ServiceHandler noCacheHandler = newHandler(impl, null);
+    assertEquals("a-null-3", start(noCacheHandler, "lookup", "a", null));
+    assertEquals("a-null-4", start(noCacheHandler, "lookup", "a", null));
+  }
+
+  @Test
+  void entriesExpire() throws Exception {
+    LookupServiceImpl impl = new LookupServiceImpl();
+    ServiceHandler handler = newHandler(impl, ResultCache.newBuilder().build());
+    assertEquals("a-1", start(handler, "shortLived", "a", null));
+    assertEquals("a-1", start(handler, "shortLived", "a", null));
+    Thread.sleep(100);
+    assertEquals("a-2", start(handler, "shortLived", "a", null));
+  }
+
+  @Test
+  void weightBoundedWithFrequentEntriesRetained() throws OperationException {
+    LookupServiceImpl impl = new LookupServiceImpl();
+    ResultCache cache = ResultCache.newBuilder().setMaximumWeight(20_000).build();
+    ServiceHandler handler = newHandler(impl, cache);
+    // Make one entry popular
+    String popular = start(handler, "lookup", "popular", null);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(popular, start(handler, "lookup", "popular", null));
+    }
+    // Scan through many entries that are only requested once
+    for (int i = 0; i < 1000; i++) {
+      start(handler, "lookup", "scan-" + i, null);
+      assertTrue(cache.getWeight() <= cache.getMaximumWeight());
+    }
+    int callsBefore = impl.calls.get();
+    assertEquals(popular, start(handler, "lookup", "popular", null));
+    assertEquals(callsBefore, impl.calls.get());
+    assertTrue(cache.size() < 1000);
+
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getWeight());
+  }
+
+  private static ServiceHandler newHandler(LookupServiceImpl impl, @Nullable ResultCache cache) {
+    return ServiceHandler.newBuilder()
+        .setSerializer(new StringOnlySerializer())
+        .addInstance(ServiceImplInstance.fromInstance(impl))
+        .setResultCache(cache)
+        .build();
+  }
+
+  private static String start(
+      ServiceHandler handler, String operation, String input, @Nullable String tenant)
+      throws OperationException {
+    OperationContext.Builder context =
+        OperationContext.newBuilder().setService("LookupService").setOperation(operation);
+    if (tenant != null) {
+      context.putHeader("Tenant-Id", tenant);
+    }
+    return start(handler, context.build(), input);
+  }
+
+  private static String start(ServiceHandler handler, OperationContext context, String input)
+      throws OperationException {
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            context,
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)))
+                .build());
+    return new String(
+        Objects.requireNonNull(Objects.requireNonNull(result.getSyncResult()).getDataBytes()),
+        StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,238 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import io.nexusrpc.example.TestServices;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.tools.*;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ServiceClientProcessorTest {
+  private static final String CLASS_PATH = System.getProperty("java.class.path");
+
+  @Service
+  public interface TextService {
+    @Operation
+    String echo(String text);
+
+    @Operation(name = "greet")
+    String greeting();
+
+    @Operation(streaming = true)
+    Iterator<String> split(String text);
+
+    @Operation
+    String fail(String text);
+
+    @Operation
+    String async(String text);
+  }
+
+  @Service
+  public interface InvalidService {
+    String notAnOperation(String text);
+  }
+
+  @ServiceImpl(service = TextService.class)
+  public static class TextServiceImpl {
+    private final List<String> tenants = Collections.synchronizedList(new ArrayList<>());
+
+    @OperationImpl
+    public OperationHandler<String, String> echo() {
+      return OperationHandler.sync(
+          (ctx, details, text) -> {
+            tenants.add(String.valueOf(ctx.getHeaders().get("tenant")));
+            return text;
+          });
+    }
+
+    @OperationImpl
+    public OperationHandler<Void, String> greeting() {
+      return OperationHandler.sync((ctx, details, input) -> "Hello!");
+    }
+
+    @OperationImpl
+    public OperationHandler<String, Iterator<String>> split() {
+      return OperationHandler.sync(
+          (ctx, details, text) -> Arrays.asList(text.split(" ")).iterator());
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> fail() {
+      return OperationHandler.sync(
+          (ctx, details, text) -> {
+            throw OperationException.failed(text);
+          });
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> async() {
+      return new OperationHandler<String, String>() {
+        @Override
+        public OperationStartResult<String> start(
+            OperationContext context, OperationStartDetails details, @Nullable String param) {
+          return OperationStartResult.async("token");
+        }
+
+        @Override
+        public void cancel(OperationContext context, OperationCancelDetails details) {}
+      };
+    }
+  }
+
+  // Strings, with no content for operations without input
+  private static class TextSerializer extends StringOnlySerializer {
+    @Override
+    public @Nullable Object deserialize(Content content, Type type) {
+      return type == Void.TYPE ? null : super.deserialize(content, type);
+    }
+  }
+
+  private static ServiceClientOptions options(TextServiceImpl impl) {
+    return ServiceClientOptions.newBuilder()
+        .setHandler(
+            ServiceHandler.newBuilder()
+                .setSerializer(new TextSerializer())
+                .addInstance(ServiceImplInstance.fromInstance(impl))
+                .build())
+        .setSerializer(new TextSerializer())
+        .putHeader("tenant", "tenant-1")
+        .build();
+  }
+
+  // Run the processor over the compiled interfaces, returning the diagnostics on failure
+  private static @Nullable String generate(Path dir, Class<?>... interfaces) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    List<String> names = new ArrayList<>();
+    for (Class<?> iface : interfaces) {
+      names.add(iface.getCanonicalName());
+    }
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(diagnostics, null, null)) {
+      JavaCompiler.CompilationTask task =
+          compiler.getTask(
+              null,
+              fileManager,
+              diagnostics,
+              Arrays.asList("-proc:only", "-s", dir.toString(), "-classpath", CLASS_PATH),
+              names,
+              null);
+      task.setProcessors(Collections.singletonList(new ServiceClientProcessor()));
+      return task.call() ? null : diagnostics.getDiagnostics().toString();
+    }
+  }
+
+  private static boolean compile(Path dir, Path... sources) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+      List<java.io.File> files = new ArrayList<>();
+      for (Path source : sources) {
+        files.add(source.toFile());
+      }
+      return compiler
+          .getTask(
+              null,
+              fileManager,
+              null,
+              Arrays.asList("-proc:none", "-d", dir.toString(), "-classpath", CLASS_PATH),
+              null,
+              fileManager.getJavaFileObjectsFromFiles(files))
+          .call();
+    }
+  }
+
+  @Test
+  void generatedClientCallsOperations(@TempDir Path dir) throws Exception {
+    assertNull(generate(dir, TextService.class));
+    Path source =
+        dir.resolve("io/nexusrpc/handler/ServiceClientProcessorTest_TextServiceClient.java");
+    assertTrue(compile(dir, source));
+
+    TextServiceImpl impl = new TextServiceImpl();
+    try (URLClassLoader loader =
+        new URLClassLoader(new URL[] {dir.toUri().toURL()}, getClass().getClassLoader())) {
+      Class<?> clientClass =
+          loader.loadClass("io.nexusrpc.handler.ServiceClientProcessorTest_TextServiceClient");
+      Object client =
+          clientClass.getConstructor(ServiceClientOptions.class).newInstance(options(impl));
+      Method echo = clientClass.getMethod("echo", String.class);
+      assertEquals(String.class, echo.getReturnType());
+      assertEquals(
+          Collections.singletonList(OperationException.class),
+          Arrays.asList(echo.getExceptionTypes()));
+      assertEquals("hello", echo.invoke(client, "hello"));
+      assertEquals("tenant-1", impl.tenants.get(0));
+      assertEquals("Hello!", clientClass.getMethod("greeting").invoke(client));
+      Method echoAsync = clientClass.getMethod("echoAsync", String.class);
+      CompletableFuture<?> future = (CompletableFuture<?>) echoAsync.invoke(client, "a");
+      assertEquals("a", future.get(1, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  void generatedClientsOfTestServicesCompile(@TempDir Path dir) throws Exception {
+    assertNull(
+        generate(
+            dir,
+            TestServices.VoidService.class,
+            TestServices.IntService.class,
+            TestServices.GenericParameterService.class));
+    Path packageDir = dir.resolve("io/nexusrpc/example");
+    assertTrue(
+        compile(
+            dir,
+            packageDir.resolve("TestServices_VoidServiceClient.java"),
+            packageDir.resolve("TestServices_IntServiceClient.java"),
+            packageDir.resolve("TestServices_GenericParameterServiceClient.java")));
+  }
+
+  @Test
+  void invalidServiceReported(@TempDir Path dir) throws Exception {
+    String diagnostics = generate(dir, InvalidService.class);
+    assertNotNull(diagnostics);
+    assertTrue(Objects.requireNonNull(diagnostics).contains("Missing @Operation annotation"));
+  }
+
+  @Test
+  void boundOperations() throws Exception {
+    ServiceClientOptions options = options(new TextServiceImpl());
+    ServiceDefinition definition = ServiceDefinition.fromClass(TextService.class);
+
+    ServiceClientOperation<String, Iterator<String>> split =
+        ServiceClientOperation.bind(options, definition, "split");
+    Iterator<String> parts = Objects.requireNonNull(split.call("a b c"));
+    List<String> collected = new ArrayList<>();
+    parts.forEachRemaining(collected::add);
+    assertEquals(Arrays.asList("a", "b", "c"), collected);
+
+    ServiceClientOperation<String, String> fail =
+        ServiceClientOperation.bind(options, definition, "fail");
+    OperationException e = assertThrows(OperationException.class, () -> fail.call("failed"));
+    assertEquals("failed", e.getMessage());
+    ExecutionException failure =
+        assertThrows(ExecutionException.class, () -> fail.callAsync("failed").get());
+    assertInstanceOf(OperationException.class, failure.getCause());
+
+    ServiceClientOperation<String, String> async =
+        ServiceClientOperation.bind(options, definition, "async");
+    assertEquals("token", async.start("x").getAsyncOperationToken());
+    assertThrows(IllegalStateException.class, () -> async.call("x"));
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ServiceClientOperation.bind(options, definition, "missing"));
+  }
+}
@@ -7,6 +7,7 @@ import io.nexusrpc.example.ApiClient;
 import io.nexusrpc.example.GreetingServiceImpl;
 import io.nexusrpc.example.TestServices;
 import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
@@ -277,6 +278,60 @@ public class ServiceHandlerTest {
     assertEquals(loggingInterceptor.getOperations(), Collections.singletonList("sayHello1"));
   }
 
+  @Test
+  void codecsResolvedOnceAtBuild() throws OperationException {
+    CodecCountingSerializer serializer = new CodecCountingSerializer();
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(serializer)
+            .addInstance(ServiceImplInstance.fromInstance(new GreetingServiceImpl(name -> null)))
+            .build();
+    // One input and one output codec per operation
+    int operationCount =
+        handler.getInstances().get("GreetingService").getDefinition().getOperations().size();
+    assertEquals(2 * operationCount, serializer.resolved.size());
+    assertTrue(serializer.resolved.contains(String.class));
+
+    for (int i = 0; i < 3; i++) {
+      OperationStartResult<HandlerResultContent> result =
+          handler.startOperation(
+              newGreetingServiceContext("sayHello1"),
+              OperationStartDetails.newBuilder().setRequestId("request-id-" + i).build(),
+              newSimpleInputContent("SomeUser"));
+      assertEquals(
+          "Hello, SomeUser!",
+          new String(
+              Objects.requireNonNull(Objects.requireNonNull(result.getSyncResult()).getDataBytes()),
+              StandardCharsets.UTF_8));
+    }
+    assertEquals(2 * operationCount, serializer.resolved.size());
+  }
+
+  private static class CodecCountingSerializer extends StringOnlySerializer {
+    private final List<Type> resolved = new ArrayList<>();
+
+    @Override
+    public Codec<Object> codecFor(Type type) {
+      resolved.add(type);
+      return new Codec<Object>() {
+        @Override
+        public Content serialize(@Nullable Object value) {
+          return CodecCountingSerializer.this.serialize(value);
+        }
+
+        @Override
+        public @Nullable Object deserialize(Content content) {
+          return new String(content.getData(), StandardCharsets.UTF_8);
+        }
+      };
+    }
+
+    @Override
+    public @Nullable Object deserialize(Content content, Type type) {
+      throw new AssertionError("Type should have been resolved at build");
+    }
+  }
+
   private static class LoggingInterceptor implements OperationMiddleware {
     private List<String> operations = Collections.synchronizedList(new ArrayList<>());
 
@@ -0,0 +1,249 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class SingleFlightTest {
+  @Service
+  public interface SlowLookupService {
+    @Operation(resultCacheTtlMillis = 60_000)
+    String lookup(String key);
+
+    @Operation
+    String uncached(String key);
+  }
+
+  @ServiceImpl(service = SlowLookupService.class)
+  public static class SlowLookupServiceImpl {
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @OperationImpl
+    public OperationHandler<String, String> lookup() {
+      return OperationHandler.sync(
+          (ctx, details, key) -> {
+            int call = calls.incrementAndGet();
+            started.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new RuntimeException(e);
+            }
+            if ("fail".equals(key)) {
+              throw new IllegalArgumentException("bad key");
+            }
+            return key + "-" + call;
+          });
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> uncached() {
+      return OperationHandler.sync((ctx, details, key) -> key + "-" + calls.incrementAndGet());
+    }
+  }
+
+  @Test
+  void identicalConcurrentStartsRunOnce() throws Exception {
+    SlowLookupServiceImpl impl = new SlowLookupServiceImpl();
+    ServiceHandler handler = newHandler(impl);
+    ExecutorService callers = Executors.newFixedThreadPool(4);
+    try {
+      Future<String> leader = callers.submit(() -> start(handler, newContext("lookup"), "a"));
+      assertTrue(impl.started.await(10, TimeUnit.SECONDS));
+      List<Future<String>> followers = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        followers.add(callers.submit(() -> start(handler, newContext("lookup"), "a")));
+      }
+      // Give followers a chance to join the flight before releasing
+      Thread.sleep(100);
+      impl.release.countDown();
+      assertEquals("a-1", leader.get(10, TimeUnit.SECONDS));
+      for (Future<String> follower : followers) {
+        assertEquals("a-1", follower.get(10, TimeUnit.SECONDS));
+      }
+      assertEquals(1, impl.calls.get());
+      // Once done, a new start runs again
+      assertEquals("a-2", start(handler, newContext("lookup"), "a"));
+    } finally {
+      callers.shutdownNow();
+    }
+  }
+
+  @Test
+  void derivedHandlersShareFlights() throws Exception {
+    SlowLookupServiceImpl impl = new SlowLookupServiceImpl();
+    ServiceHandler handler = newHandler(impl);
+    ServiceHandler derived = handler.withInstance(ServiceImplInstance.fromInstance(impl));
+    ServiceHandler rebuilt = ServiceHandler.newBuilder(derived).build();
+    ExecutorService callers = Executors.newFixedThreadPool(3);
+    try {
+      Future<String> leader = callers.submit(() -> start(handler, newContext("lookup"), "a"));
+      assertTrue(impl.started.await(10, TimeUnit.SECONDS));
+      Future<String> onDerived = callers.submit(() -> start(derived, newContext("lookup"), "a"));
+      Future<String> onRebuilt = callers.submit(() -> start(rebuilt, newContext("lookup"), "a"));
+      Thread.sleep(100);
+      impl.release.countDown();
+      assertEquals("a-1", leader.get(10, TimeUnit.SECONDS));
+      assertEquals("a-1", onDerived.get(10, TimeUnit.SECONDS));
+      assertEquals("a-1", onRebuilt.get(10, TimeUnit.SECONDS));
+      assertEquals(1, impl.calls.get());
+    } finally {
+      callers.shutdownNow();
+    }
+  }
+
+  @Test
+  void followersRunTheirOwnMiddlewares() throws Exception {
+    SlowLookupServiceImpl impl = new SlowLookupServiceImpl();
+    AtomicInteger intercepted = new AtomicInteger();
+    ServiceHandler handler =
+        ServiceHandler.newBuilder(newHandler(impl))
+            .addOperationMiddleware(
+                (context, next) ->
+                    new OperationHandler<Object, Object>() {
+                      @Override
+                      public OperationStartResult<Object> start(
+                          OperationContext context,
+                          OperationStartDetails details,
+                          @Nullable Object param)
+                          throws OperationException {
+                        intercepted.incrementAndGet();
+                        if (context.getHeaders().containsKey("Denied")) {
+                          throw new HandlerException(
+                              HandlerException.ErrorType.UNAUTHORIZED,
+                              "Denied",
+                              null,
+                              HandlerException.RetryBehavior.UNSPECIFIED);
+                        }
+                        return next.start(context, details, param);
+                      }
+
+                      @Override
+                      public void cancel(OperationContext context, OperationCancelDetails details) {
+                        next.cancel(context, details);
+                      }
+                    })
+            .build();
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> leader = callers.submit(() -> start(handler, newContext("lookup"), "a"));
+      assertTrue(impl.started.await(10, TimeUnit.SECONDS));
+      Future<String> follower = callers.submit(() -> start(handler, newContext("lookup"), "a"));
+      OperationContext denied =
+          OperationContext.newBuilder(newContext("lookup")).putHeader("Denied", "true").build();
+      HandlerException e = assertThrows(HandlerException.class, () -> start(handler, denied, "a"));
+      assertEquals(HandlerException.ErrorType.UNAUTHORIZED, e.getErrorType());
+      Thread.sleep(100);
+      impl.release.countDown();
+      assertEquals("a-1", leader.get(10, TimeUnit.SECONDS));
+      assertEquals("a-1", follower.get(10, TimeUnit.SECONDS));
+      assertEquals(1, impl.calls.get());
+      assertEquals(3, intercepted.get());
+    } finally {
+      callers.shutdownNow();
+    }
+  }
+
+  @Test
+  void followersShareFailure() throws Exception {
+    SlowLookupServiceImpl impl = new SlowLookupServiceImpl();
+    ServiceHandler handler = newHandler(impl);
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> leader = callers.submit(() -> start(handler, newContext("lookup"), "fail"));
+      assertTrue(impl.started.await(10, TimeUnit.SECONDS));
+      Future<String> follower = callers.submit(() -> start(handler, newContext("lookup"), "fail"));
+      Thread.sleep(100);
+      impl.release.countDown();
+      ExecutionException ex =
+          assertThrows(ExecutionException.class, () -> leader.get(10, TimeUnit.SECONDS));
+      assertInstanceOf(IllegalArgumentException.class, ex.getCause());
+      ex = assertThrows(ExecutionException.class, () -> follower.get(10, TimeUnit.SECONDS));
+      assertInstanceOf(IllegalArgumentException.class, ex.getCause());
+      assertEquals(1, impl.calls.get());
+    } finally {
+      callers.shutdownNow();
+    }
+  }
+
+  @Test
+  void cancelledFollowerStopsWaitingAlone() throws Exception {
+    SlowLookupServiceImpl impl = new SlowLookupServiceImpl();
+    ServiceHandler handler = newHandler(impl);
+    ExecutorService callers = Executors.newFixedThreadPool(3);
+    try {
+      Future<String> leader = callers.submit(() -> start(handler, newContext("lookup"), "a"));
+      assertTrue(impl.started.await(10, TimeUnit.SECONDS));
+      OperationMethodCanceller canceller = new OperationMethodCanceller();
+      OperationContext cancellable =
+          OperationContext.newBuilder(newContext("lookup")).setMethodCanceller(canceller).build();
+      Future<String> cancelled = callers.submit(() -> start(handler, cancellable, "a"));
+      Future<String> follower = callers.submit(() -> start(handler, newContext("lookup"), "a"));
+      Thread.sleep(100);
+      canceller.cancel("caller went away");
+      ExecutionException ex =
+          assertThrows(ExecutionException.class, () -> cancelled.get(10, TimeUnit.SECONDS));
+      assertEquals(
+          HandlerException.ErrorType.REQUEST_TIMEOUT,
+          ((HandlerException) ex.getCause()).getErrorType());
+      // The leader and the other follower are unaffected
+      impl.release.countDown();
+      assertEquals("a-1", leader.get(10, TimeUnit.SECONDS));
+      assertEquals("a-1", follower.get(10, TimeUnit.SECONDS));
+      assertEquals(1, impl.calls.get());
+    } finally {
+      callers.shutdownNow();
+    }
+  }
+
+  @Test
+  void operationsWithoutTtlNotCoalesced() throws OperationException {
+    SlowLookupServiceImpl impl = new SlowLookupServiceImpl();
+    ServiceHandler handler = newHandler(impl);
+    assertTrue(handler.isRequestCoalescing());
+    assertTrue(ServiceHandler.newBuilder(handler).build().isRequestCoalescing());
+    assertEquals("a-1", start(handler, newContext("uncached"), "a"));
+    assertEquals("a-2", start(handler, newContext("uncached"), "a"));
+  }
+
+  private static ServiceHandler newHandler(SlowLookupServiceImpl impl) {
+    return ServiceHandler.newBuilder()
+        .setSerializer(new StringOnlySerializer())
+        .addInstance(ServiceImplInstance.fromInstance(impl))
+        .setRequestCoalescing(true)
+        .build();
+  }
+
+  private static OperationContext newContext(String operation) {
+    return OperationContext.newBuilder()
+        .setService("SlowLookupService")
+        .setOperation(operation)
+        .build();
+  }
+
+  private static String start(ServiceHandler handler, OperationContext context, String input)
+      throws OperationException {
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            context,
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)))
+                .build());
+    return new String(
+        Objects.requireNonNull(Objects.requireNonNull(result.getSyncResult()).getDataBytes()),
+        StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,139 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class StreamingOperationTest {
+  @Service
+  public interface CountService {
+    @Operation(streaming = true)
+    Iterator<String> count(String prefix);
+  }
+
+  @ServiceImpl(service = CountService.class)
+  public static class CountServiceImpl {
+    private final AtomicInteger produced = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    @OperationImpl
+    public OperationHandler<String, Iterator<String>> count() {
+      return OperationHandler.sync((ctx, details, prefix) -> new CountingIterator(prefix));
+    }
+
+    private class CountingIterator implements Iterator<String>, AutoCloseable {
+      private final String prefix;
+
+      private CountingIterator(String prefix) {
+        this.prefix = prefix;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return produced.get() < 1000;
+      }
+
+      @Override
+      public String next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return prefix + produced.incrementAndGet();
+      }
+
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    }
+  }
+
+  private static HandlerResultContent start(CountServiceImpl impl) throws OperationException {
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(new StringOnlySerializer())
+            .addInstance(ServiceImplInstance.fromInstance(impl))
+            .build();
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            OperationContext.newBuilder().setService("CountService").setOperation("count").build(),
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream("item-".getBytes(StandardCharsets.UTF_8)))
+                .build());
+    return Objects.requireNonNull(result.getSyncResult());
+  }
+
+  @Test
+  void resultsProducedAsRead() throws Exception {
+    CountServiceImpl impl = new CountServiceImpl();
+    HandlerResultContent content = start(impl);
+    assertEquals(
+        ResultFrames.LENGTH_PREFIXED, content.getHeaders().get(ResultFrames.FRAMING_HEADER));
+    // Nothing is produced until the caller reads
+    assertEquals(0, impl.produced.get());
+    InputStream stream = Objects.requireNonNull(content.getDataStream());
+    assertArrayEquals("item-1".getBytes(StandardCharsets.UTF_8), ResultFrames.readFrame(stream));
+    assertEquals(1, impl.produced.get());
+    int count = 1;
+    byte[] frame;
+    while ((frame = ResultFrames.readFrame(stream)) != null) {
+      count++;
+      assertEquals("item-" + count, new String(frame, StandardCharsets.UTF_8));
+    }
+    assertEquals(1000, count);
+    stream.close();
+    assertTrue(impl.closed.get());
+  }
+
+  @Test
+  void closingStopsProduction() throws Exception {
+    CountServiceImpl impl = new CountServiceImpl();
+    InputStream stream = Objects.requireNonNull(start(impl).getDataStream());
+    ResultFrames.readFrame(stream);
+    ResultFrames.readFrame(stream);
+    stream.close();
+    assertTrue(impl.closed.get());
+    assertEquals(2, impl.produced.get());
+    assertThrows(IOException.class, stream::read);
+  }
+
+  @Test
+  void truncatedFrame() {
+    InputStream stream = new ByteArrayInputStream(new byte[] {0, 0, 0, 5, 'a', 'b'});
+    assertThrows(IOException.class, () -> ResultFrames.readFrame(stream));
+  }
+
+  @Test
+  void frameSizeLimited() throws IOException {
+    // A huge length with little data fails without allocating for the whole length
+    InputStream huge = new ByteArrayInputStream(new byte[] {0x7f, 0, 0, 0, 'a'});
+    IOException e = assertThrows(IOException.class, () -> ResultFrames.readFrame(huge));
+    assertEquals("Frame too large", e.getMessage());
+    InputStream truncated = new ByteArrayInputStream(new byte[] {0, 0x7f, 0, 0, 'a'});
+    assertThrows(EOFException.class, () -> ResultFrames.readFrame(truncated, Integer.MAX_VALUE));
+
+    // Frames larger than the initial buffer are read in full
+    byte[] frame = new byte[20000];
+    Arrays.fill(frame, (byte) 'x');
+    byte[] framed = new byte[frame.length + 4];
+    framed[2] = (byte) (frame.length >>> 8);
+    framed[3] = (byte) frame.length;
+    System.arraycopy(frame, 0, framed, 4, frame.length);
+    assertArrayEquals(frame, ResultFrames.readFrame(new ByteArrayInputStream(framed)));
+    assertThrows(
+        IOException.class, () -> ResultFrames.readFrame(new ByteArrayInputStream(framed), 10000));
+  }
+}
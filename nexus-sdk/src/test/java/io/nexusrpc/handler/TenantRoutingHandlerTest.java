@@ -0,0 +1,233 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class TenantRoutingHandlerTest {
+  @Service
+  public interface GreetingService {
+    @Operation
+    String greet(String name);
+  }
+
+  @ServiceImpl(service = GreetingService.class)
+  public static class GreetingServiceImpl {
+    private final String tenant;
+
+    public GreetingServiceImpl(String tenant) {
+      this.tenant = tenant;
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> greet() {
+      return OperationHandler.sync((ctx, details, name) -> "Hello from " + tenant + ", " + name);
+    }
+  }
+
+  private static final ServiceHandler TEMPLATE =
+      ServiceHandler.newBuilder()
+          .setSerializer(new StringOnlySerializer())
+          .addInstance(ServiceImplInstance.fromInstance(new GreetingServiceImpl("template")))
+          .build();
+
+  private static class CountingFactory {
+    private final Map<String, AtomicInteger> created = new ConcurrentHashMap<>();
+
+    private ServiceHandler create(String tenant) {
+      created.computeIfAbsent(tenant, k -> new AtomicInteger()).incrementAndGet();
+      return TEMPLATE.withInstance(
+          ServiceImplInstance.fromInstance(new GreetingServiceImpl(tenant)));
+    }
+
+    private int created(String tenant) {
+      AtomicInteger count = created.get(tenant);
+      return count == null ? 0 : count.get();
+    }
+  }
+
+  private static String greet(Handler handler, @Nullable String tenant) throws OperationException {
+    OperationContext.Builder context =
+        OperationContext.newBuilder().setService("GreetingService").setOperation("greet");
+    if (tenant != null) {
+      context.putHeader("Tenant-Id", tenant);
+    }
+    OperationStartResult<HandlerResultContent> result =
+        handler.startOperation(
+            context.build(),
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            HandlerInputContent.newBuilder()
+                .setDataStream(new ByteArrayInputStream("Ann".getBytes(StandardCharsets.UTF_8)))
+                .build());
+    return new String(
+        Objects.requireNonNull(Objects.requireNonNull(result.getSyncResult()).getDataBytes()),
+        StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void routesByTenantHeader() throws OperationException {
+    CountingFactory factory = new CountingFactory();
+    TenantRoutingHandler handler =
+        TenantRoutingHandler.newBuilder()
+            .setTenantHeader("tenant-id")
+            .setHandlerFactory(factory::create)
+            .build();
+    assertEquals("Hello from a, Ann", greet(handler, "a"));
+    assertEquals("Hello from b, Ann", greet(handler, "b"));
+    assertEquals("Hello from a, Ann", greet(handler, "a"));
+    assertEquals(1, factory.created("a"));
+    assertEquals(2, handler.getTenantCount());
+    HandlerException e = assertThrows(HandlerException.class, () -> greet(handler, null));
+    assertEquals(HandlerException.ErrorType.BAD_REQUEST, e.getErrorType());
+  }
+
+  @Test
+  void evictsLeastRecentlyUsed() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    TenantRoutingHandler handler =
+        TenantRoutingHandler.newBuilder()
+            .setTenantHeader("tenant-id")
+            .setHandlerFactory(factory::create)
+            .setMaxTenants(2)
+            .build();
+    greet(handler, "a");
+    Thread.sleep(2);
+    greet(handler, "b");
+    Thread.sleep(2);
+    greet(handler, "a");
+    Thread.sleep(2);
+    // Adding c evicts b, the least recently used
+    greet(handler, "c");
+    assertEquals(2, handler.getTenantCount());
+    greet(handler, "a");
+    assertEquals(1, factory.created("a"));
+    greet(handler, "b");
+    assertEquals(2, factory.created("b"));
+  }
+
+  @Test
+  void evictsIdle() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    TenantRoutingHandler handler =
+        TenantRoutingHandler.newBuilder()
+            .setTenantHeader("tenant-id")
+            .setHandlerFactory(factory::create)
+            .setIdleTimeout(Duration.ofMillis(20))
+            .build();
+    greet(handler, "a");
+    Thread.sleep(50);
+    greet(handler, "b");
+    assertEquals(1, handler.getTenantCount());
+    greet(handler, "a");
+    assertEquals(2, factory.created("a"));
+  }
+
+  @Test
+  void slowFactoryOnlyHoldsUpItsTenant() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    CountDownLatch slowStarted = new CountDownLatch(1);
+    CountDownLatch releaseSlow = new CountDownLatch(1);
+    AtomicInteger failures = new AtomicInteger(1);
+    TenantRoutingHandler handler =
+        TenantRoutingHandler.newBuilder()
+            .setTenantHeader("tenant-id")
+            .setHandlerFactory(
+                tenant -> {
+                  if (tenant.equals("slow")) {
+                    slowStarted.countDown();
+                    try {
+                      releaseSlow.await();
+                    } catch (InterruptedException e) {
+                      throw new RuntimeException(e);
+                    }
+                  } else if (tenant.equals("flaky") && failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("not ready");
+                  }
+                  return factory.create(tenant);
+                })
+            .build();
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> slow = callers.submit(() -> greet(handler, "slow"));
+      assertTrue(slowStarted.await(10, TimeUnit.SECONDS));
+      Future<String> slowWaiter = callers.submit(() -> greet(handler, "slow"));
+      // Other tenants are created while the slow one is
+      assertEquals("Hello from fast, Ann", greet(handler, "fast"));
+      assertFalse(slow.isDone());
+      releaseSlow.countDown();
+      assertEquals("Hello from slow, Ann", slow.get(10, TimeUnit.SECONDS));
+      assertEquals("Hello from slow, Ann", slowWaiter.get(10, TimeUnit.SECONDS));
+      assertEquals(1, factory.created("slow"));
+    } finally {
+      callers.shutdownNow();
+    }
+    // A failed factory call is not kept
+    assertThrows(IllegalStateException.class, () -> greet(handler, "flaky"));
+    assertEquals(2, handler.getTenantCount());
+    assertEquals("Hello from flaky, Ann", greet(handler, "flaky"));
+  }
+
+  @Test
+  void tenantsBeingCreatedNotEvicted() throws Exception {
+    CountingFactory factory = new CountingFactory();
+    CountDownLatch slowStarted = new CountDownLatch(1);
+    CountDownLatch releaseSlow = new CountDownLatch(1);
+    TenantRoutingHandler handler =
+        TenantRoutingHandler.newBuilder()
+            .setTenantHeader("tenant-id")
+            .setMaxTenants(1)
+            .setHandlerFactory(
+                tenant -> {
+                  if (tenant.equals("slow")) {
+                    slowStarted.countDown();
+                    try {
+                      releaseSlow.await();
+                    } catch (InterruptedException e) {
+                      throw new RuntimeException(e);
+                    }
+                  }
+                  return factory.create(tenant);
+                })
+            .build();
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> slow = callers.submit(() -> greet(handler, "slow"));
+      assertTrue(slowStarted.await(10, TimeUnit.SECONDS));
+      // New tenants past the maximum evict each other but not the one being created
+      assertEquals("Hello from a, Ann", greet(handler, "a"));
+      assertEquals("Hello from b, Ann", greet(handler, "b"));
+      Future<String> slowWaiter = callers.submit(() -> greet(handler, "slow"));
+      releaseSlow.countDown();
+      assertEquals("Hello from slow, Ann", slow.get(10, TimeUnit.SECONDS));
+      assertEquals("Hello from slow, Ann", slowWaiter.get(10, TimeUnit.SECONDS));
+      assertEquals(1, factory.created("slow"));
+    } finally {
+      callers.shutdownNow();
+    }
+    // Once created it can be evicted again
+    greet(handler, "c");
+    assertEquals(1, handler.getTenantCount());
+  }
+
+  @Test
+  void tenantInstancesShareDefinitionsAndCodecs() {
+    ServiceImplInstance a = ServiceImplInstance.fromInstance(new GreetingServiceImpl("a"));
+    ServiceImplInstance b = ServiceImplInstance.fromInstance(new GreetingServiceImpl("b"));
+    assertSame(a.getDefinition(), b.getDefinition());
+    assertNotSame(a.getOperationHandlers().get("greet"), b.getOperationHandlers().get("greet"));
+  }
+}
@@ -0,0 +1,355 @@
+package io.nexusrpc.handler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.nexusrpc.*;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class TracingOperationMiddlewareTest {
+  private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+  private static final String SAMPLED = "00-" + TRACE_ID + "-00f067aa0ba902b7-01";
+  private static final String UNSAMPLED = "00-" + TRACE_ID + "-00f067aa0ba902b7-00";
+
+  @Service
+  public interface TracedService {
+    @Operation
+    String sync(String input);
+
+    @Operation
+    String async(String input);
+  }
+
+  @ServiceImpl(service = TracedService.class)
+  public static class TracedServiceImpl {
+    private final List<OperationStartDetails> asyncDetails = new ArrayList<>();
+
+    @OperationImpl
+    public OperationHandler<String, String> sync() {
+      return OperationHandler.sync(
+          (ctx, details, input) -> {
+            if ("fail".equals(input)) {
+              throw new IllegalArgumentException("bad input");
+            }
+            return String.valueOf(ctx.getHeaders().get("traceparent"));
+          });
+    }
+
+    @OperationImpl
+    public OperationHandler<String, String> async() {
+      return new OperationHandler<String, String>() {
+        @Override
+        public OperationStartResult<String> start(
+            OperationContext context, OperationStartDetails details, @Nullable String param) {
+          asyncDetails.add(details);
+          return OperationStartResult.async("token");
+        }
+
+        @Override
+        public void cancel(OperationContext context, OperationCancelDetails details) {}
+      };
+    }
+  }
+
+  private static class RecordingTracer implements Tracer {
+    private final boolean sampleRoots;
+    private final List<RecordingSpan> spans = new ArrayList<>();
+
+    private RecordingTracer(boolean sampleRoots) {
+      this.sampleRoots = sampleRoots;
+    }
+
+    @Override
+    public boolean sampleRoot(OperationContext context) {
+      return sampleRoots;
+    }
+
+    @Override
+    public Span startSpan(String name, @Nullable TraceContext parent) {
+      RecordingSpan span = new RecordingSpan(name, parent);
+      spans.add(span);
+      return span;
+    }
+  }
+
+  private static class RecordingSpan implements Tracer.Span {
+    private final String name;
+    private final @Nullable TraceContext parent;
+    private final TraceContext context;
+    private final Map<String, String> attributes = new HashMap<>();
+    private @Nullable Throwable exception;
+    private boolean ended;
+
+    private RecordingSpan(String name, @Nullable TraceContext parent) {
+      this.name = name;
+      this.parent = parent;
+      context =
+          TraceContext.newBuilder()
+              .setTraceId(parent == null ? TraceContext.newTraceId() : parent.getTraceId())
+              .setSpanId(TraceContext.newSpanId())
+              .setSampled(true)
+              .setTraceState(parent == null ? null : parent.getTraceState())
+              .build();
+    }
+
+    @Override
+    public TraceContext getContext() {
+      return context;
+    }
+
+    @Override
+    public void setAttribute(String key, String value) {
+      attributes.put(key, value);
+    }
+
+    @Override
+    public void recordException(Throwable exception) {
+      this.exception = exception;
+    }
+
+    @Override
+    public void end() {
+      assertFalse(ended);
+      ended = true;
+    }
+  }
+
+  private static ServiceHandler newHandler(TracedServiceImpl impl, Tracer tracer) {
+    return ServiceHandler.newBuilder()
+        .setSerializer(new StringOnlySerializer())
+        .addInstance(ServiceImplInstance.fromInstance(impl))
+        .addOperationMiddleware(TracingOperationMiddleware.newBuilder().setTracer(tracer).build())
+        .build();
+  }
+
+  private static OperationStartResult<HandlerResultContent> start(
+      Handler handler, OperationContext context, OperationStartDetails details, String input)
+      throws OperationException {
+    return handler.startOperation(
+        context,
+        details,
+        HandlerInputContent.newBuilder()
+            .setDataStream(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)))
+            .build());
+  }
+
+  private static String startSync(Handler handler, @Nullable String traceparent)
+      throws OperationException {
+    OperationContext.Builder context =
+        OperationContext.newBuilder().setService("TracedService").setOperation("sync");
+    if (traceparent != null) {
+      context.putHeader("traceparent", traceparent).putHeader("tracestate", "vendor=value");
+    }
+    OperationStartResult<HandlerResultContent> result =
+        start(
+            handler,
+            context.build(),
+            OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+            "input");
+    return new String(
+        Objects.requireNonNull(Objects.requireNonNull(result.getSyncResult()).getDataBytes()),
+        StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void sampledCallContinuesTrace() throws OperationException {
+    RecordingTracer tracer = new RecordingTracer(false);
+    String seen = startSync(newHandler(new TracedServiceImpl(), tracer), SAMPLED);
+    // Start, then input deserialization and result serialization
+    assertEquals(3, tracer.spans.size());
+    RecordingSpan span = tracer.spans.get(0);
+    assertEquals("TracedService/sync", span.name);
+    assertEquals(TraceContext.parse(SAMPLED, "vendor=value"), span.parent);
+    assertEquals("start", span.attributes.get("nexus.method"));
+    assertEquals("request-id", span.attributes.get("nexus.request_id"));
+    assertTrue(span.ended);
+    // Handler sees the span as its parent
+    assertEquals(span.context.toTraceparent(), seen);
+    assertEquals(TRACE_ID, span.context.getTraceId());
+  }
+
+  @Test
+  void unsampledCallsPassThrough() throws OperationException {
+    RecordingTracer tracer = new RecordingTracer(false);
+    ServiceHandler handler = newHandler(new TracedServiceImpl(), tracer);
+    assertEquals(UNSAMPLED, startSync(handler, UNSAMPLED));
+    assertEquals("null", startSync(handler, null));
+    assertTrue(tracer.spans.isEmpty());
+
+    RecordingTracer rootTracer = new RecordingTracer(true);
+    String seen = startSync(newHandler(new TracedServiceImpl(), rootTracer), null);
+    assertEquals(3, rootTracer.spans.size());
+    assertNull(rootTracer.spans.get(0).parent);
+    assertEquals(rootTracer.spans.get(0).context.toTraceparent(), seen);
+  }
+
+  @Test
+  void codecsTracedUnderStart() throws OperationException {
+    RecordingTracer tracer = new RecordingTracer(true);
+    startSync(newHandler(new TracedServiceImpl(), tracer), null);
+    assertEquals(3, tracer.spans.size());
+    RecordingSpan start = tracer.spans.get(0);
+    RecordingSpan deserialize = tracer.spans.get(1);
+    RecordingSpan serialize = tracer.spans.get(2);
+    assertEquals("start", start.attributes.get("nexus.method"));
+    assertEquals("deserialize", deserialize.attributes.get("nexus.method"));
+    assertEquals("5", deserialize.attributes.get("nexus.content_length"));
+    assertEquals("serialize", serialize.attributes.get("nexus.method"));
+    // Root calls keep the codec spans in the trace of the start
+    for (RecordingSpan span : Arrays.asList(deserialize, serialize)) {
+      assertEquals("TracedService/sync", span.name);
+      assertEquals(start.context, span.parent);
+      assertTrue(span.ended);
+    }
+    assertTrue(start.ended);
+  }
+
+  @Test
+  void failedDeserializeEndsStart() {
+    RecordingTracer tracer = new RecordingTracer(true);
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(
+                new StringOnlySerializer() {
+                  @Override
+                  public @Nullable Object deserialize(Content content, Type type) {
+                    throw new IllegalStateException("bad content");
+                  }
+                })
+            .addInstance(ServiceImplInstance.fromInstance(new TracedServiceImpl()))
+            .addOperationMiddleware(
+                TracingOperationMiddleware.newBuilder().setTracer(tracer).build())
+            .build();
+    assertThrows(RuntimeException.class, () -> startSync(handler, null));
+    assertEquals(2, tracer.spans.size());
+    for (RecordingSpan span : tracer.spans) {
+      Throwable exception = Objects.requireNonNull(span.exception);
+      // The start span gets the failure of the start, wrapping that of the deserialize
+      if (exception.getCause() != null) {
+        exception = exception.getCause();
+      }
+      assertInstanceOf(IllegalStateException.class, exception);
+      assertTrue(span.ended);
+    }
+  }
+
+  @Test
+  void startRejectedByOuterMiddlewareEndsSpan() {
+    RecordingTracer tracer = new RecordingTracer(true);
+    ServiceHandler handler =
+        ServiceHandler.newBuilder()
+            .setSerializer(new StringOnlySerializer())
+            .addInstance(ServiceImplInstance.fromInstance(new TracedServiceImpl()))
+            .addOperationMiddleware(
+                new OperationMiddleware() {
+                  @Override
+                  public OperationHandler<Object, Object> intercept(
+                      OperationContext context, OperationHandler<Object, Object> next) {
+                    return new OperationHandler<Object, Object>() {
+                      @Override
+                      public OperationStartResult<Object> start(
+                          OperationContext context,
+                          OperationStartDetails details,
+                          @Nullable Object param) {
+                        throw new HandlerException(
+                            HandlerException.ErrorType.RESOURCE_EXHAUSTED,
+                            "Rejected",
+                            null,
+                            HandlerException.RetryBehavior.RETRYABLE);
+                      }
+
+                      @Override
+                      public void cancel(
+                          OperationContext context, OperationCancelDetails details) {}
+                    };
+                  }
+                })
+            .addOperationMiddleware(
+                TracingOperationMiddleware.newBuilder().setTracer(tracer).build())
+            .build();
+    assertThrows(HandlerException.class, () -> startSync(handler, null));
+    assertEquals(2, tracer.spans.size());
+    RecordingSpan start = tracer.spans.get(0);
+    assertEquals("start", start.attributes.get("nexus.method"));
+    assertInstanceOf(HandlerException.class, start.exception);
+    assertTrue(start.ended);
+    assertEquals("deserialize", tracer.spans.get(1).attributes.get("nexus.method"));
+    assertTrue(tracer.spans.get(1).ended);
+  }
+
+  @Test
+  void asyncStartPropagatesToCallbackAndLinks() throws OperationException {
+    RecordingTracer tracer = new RecordingTracer(false);
+    TracedServiceImpl impl = new TracedServiceImpl();
+    OperationContext context =
+        OperationContext.newBuilder()
+            .setService("TracedService")
+            .setOperation("async")
+            .putHeader("traceparent", SAMPLED)
+            .build();
+    OperationStartResult<HandlerResultContent> result =
+        start(
+            newHandler(impl, tracer),
+            context,
+            OperationStartDetails.newBuilder()
+                .setRequestId("request-id")
+                .setCallbackUrl("http://localhost/callback")
+                .build(),
+            "input");
+    assertEquals("token", result.getAsyncOperationToken());
+    String traceparent = tracer.spans.get(0).context.toTraceparent();
+    assertEquals(traceparent, impl.asyncDetails.get(0).getCallbackHeaders().get("traceparent"));
+    assertEquals("token", tracer.spans.get(0).attributes.get("nexus.operation_token"));
+    assertEquals(1, context.getLinks().size());
+    Link link = context.getLinks().get(0);
+    assertEquals(TracingOperationMiddleware.TRACE_LINK_TYPE, link.getType());
+    assertEquals("traceparent:" + traceparent, link.getUri().toString());
+  }
+
+  @Test
+  void failureRecorded() {
+    RecordingTracer tracer = new RecordingTracer(true);
+    ServiceHandler handler = newHandler(new TracedServiceImpl(), tracer);
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            start(
+                handler,
+                OperationContext.newBuilder()
+                    .setService("TracedService")
+                    .setOperation("sync")
+                    .build(),
+                OperationStartDetails.newBuilder().setRequestId("request-id").build(),
+                "fail"));
+    assertInstanceOf(IllegalArgumentException.class, tracer.spans.get(0).exception);
+    assertTrue(tracer.spans.get(0).ended);
+  }
+
+  @Test
+  void parseTraceparent() {
+    TraceContext context = Objects.requireNonNull(TraceContext.parse(SAMPLED, null));
+    assertEquals(TRACE_ID, context.getTraceId());
+    assertEquals("00f067aa0ba902b7", context.getSpanId());
+    assertTrue(context.isSampled());
+    assertNull(context.getTraceState());
+    assertEquals(SAMPLED, context.toTraceparent());
+    assertFalse(Objects.requireNonNull(TraceContext.parse(UNSAMPLED, null)).isSampled());
+    // Later versions may have more fields
+    assertNotNull(TraceContext.parse("01" + SAMPLED.substring(2) + "-extra", null));
+
+    assertNull(TraceContext.parse(null, null));
+    assertNull(TraceContext.parse("ff" + SAMPLED.substring(2), null));
+    assertNull(TraceContext.parse(SAMPLED.toUpperCase(), null));
+    assertNull(TraceContext.parse(SAMPLED + "-extra", null));
+    assertNull(TraceContext.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01", null));
+    assertNull(TraceContext.parse("00-" + TRACE_ID + "-0000000000000000-01", null));
+    assertEquals(32, TraceContext.newTraceId().length());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> TraceContext.newBuilder().setTraceId("abc").setSpanId("def").build());
+  }
+}